@@ -15,13 +15,23 @@
  */
 package saker.nest;
 
+import java.io.BufferedReader;
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
@@ -42,8 +52,10 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Supplier;
@@ -64,8 +76,10 @@ import saker.build.thirdparty.saker.util.StringUtils;
 import saker.build.thirdparty.saker.util.function.Functionals;
 import saker.build.thirdparty.saker.util.io.FileUtils;
 import saker.build.util.java.JavaTools;
+import saker.nest.RepositoryIOExecutor.TaskGroup;
 import saker.nest.bundle.AbstractExternalArchive;
 import saker.nest.bundle.AbstractNestRepositoryBundle;
+import saker.nest.bundle.ArchiveEntryBytesCache;
 import saker.nest.bundle.BundleDependency;
 import saker.nest.bundle.BundleDependencyInformation;
 import saker.nest.bundle.BundleDependencyList;
@@ -116,7 +130,9 @@ import saker.nest.exc.BundleLoadingFailedException;
 import saker.nest.exc.ExternalArchiveLoadingFailedException;
 import saker.nest.meta.Versions;
 import saker.nest.thirdparty.org.json.JSONArray;
+import saker.nest.thirdparty.org.json.JSONException;
 import saker.nest.thirdparty.org.json.JSONObject;
+import saker.nest.thirdparty.org.json.JSONTokener;
 import saker.nest.utils.IdentityComparisonPair;
 import saker.nest.utils.NonSpaceIterator;
 import testing.saker.nest.TestFlag;
@@ -145,6 +161,21 @@ public class ConfiguredRepositoryStorage implements Closeable, NestBundleStorage
 
 	private static final Pattern PATTERN_SEMICOLON_SPACES_SPLIT = Pattern.compile("[; \\t]+");
 
+	private static final int DEFAULT_BUNDLE_PREFETCH_THREAD_COUNT = 4;
+
+	private static final String STORAGE_DIRECTORY_NAME_CLASSPATH_RESOLUTION_CACHE = "classpath_resolution";
+	/**
+	 * The format version of the cached dependency resolution files.
+	 * <p>
+	 * Should be incremented if the format of the files change in an incompatible way.
+	 */
+	private static final int CLASSPATH_RESOLUTION_CACHE_FORMAT_VERSION = 2;
+	/**
+	 * The maximum number of cached dependency resolution files. The least recently used files are deleted above it.
+	 */
+	private static final int CLASSPATH_RESOLUTION_CACHE_MAX_FILE_COUNT = 256;
+	private static final String CLASSPATH_RESOLUTION_CACHE_FILE_EXTENSION = ".json";
+
 	private final NestRepositoryImpl repository;
 	private final AbstractBundleLookup lookupConfiguration;
 	private final Map<String, AbstractBundleLookup> storageKeyIdentifierBundleLookups = new TreeMap<>();
@@ -167,23 +198,54 @@ public class ConfiguredRepositoryStorage implements Closeable, NestBundleStorage
 
 	private final DependencyConstraintConfiguration constraintConfiguration;
 
+	/**
+	 * The task group on the I/O executor of the repository to prefetch the bundles on, or <code>null</code> if
+	 * disabled.
+	 */
+	private final TaskGroup bundlePrefetchTaskGroup;
+	private final Set<Object> bundlePrefetchRequests = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * The task group on the I/O executor of the repository to resolve the independent dependencies on, or
+	 * <code>null</code> if disabled.
+	 */
+	private final TaskGroup dependencyResolutionTaskGroup;
+
+	private final boolean mappedNestedExternalArchives;
+
+	/**
+	 * The shared entry contents cache of the repository, or <code>null</code> if disabled.
+	 */
+	private final ArchiveEntryBytesCache entryBytesCache;
+	/**
+	 * The directory where the class path dependency resolution results are cached, or <code>null</code> if disabled.
+	 */
+	private final Path classPathResolutionCacheDirectory;
+
 	private final Object detectChangeLock = new Object();
 	private DetectedChanges expectedDetectedChanges;
 
+	private final StorageSharedObjectAccessor sharedObjectAccessor;
+
 	public static ConfiguredRepositoryStorage forBuildRepository(NestRepositoryImpl nestRepository,
 			RepositoryBuildEnvironment environment) {
-		SakerFileProvider localfp;
 		boolean remotecluster;
 		if (saker.build.meta.Versions.VERSION_FULL_COMPOUND >= 8_015) {
-			localfp = environment.getLocalFileProvider();
 			remotecluster = environment.isRemoteCluster();
 		} else {
-			localfp = LocalFileProvider.getInstance();
 			remotecluster = false;
 		}
 		return new ConfiguredRepositoryStorage(nestRepository, environment.getIdentifier(),
 				environment.getPathConfiguration(), environment.getUserParameters(),
-				new RepositoryBuildEnvironmentStorageSharedObjectAccessor(environment), remotecluster, localfp);
+				new RepositoryBuildEnvironmentStorageSharedObjectAccessor(environment), remotecluster,
+				getLocalFileProvider(environment));
+	}
+
+	static SakerFileProvider getLocalFileProvider(RepositoryBuildEnvironment environment) {
+		if (saker.build.meta.Versions.VERSION_FULL_COMPOUND >= 8_015) {
+			return environment.getLocalFileProvider();
+		}
+		return LocalFileProvider.getInstance();
 	}
 
 	public static ConfiguredRepositoryStorage forRepositoryAction(NestRepositoryImpl repository, String repoid,
@@ -197,6 +259,7 @@ public class ConfiguredRepositoryStorage implements Closeable, NestBundleStorage
 			StorageSharedObjectAccessor sharedobjecthandler, boolean remotecluster,
 			SakerFileProvider localfileprovider) {
 		this.repository = repository;
+		this.sharedObjectAccessor = sharedobjecthandler;
 
 		final Integer classPathJreMajorVersion;
 		final String classPathRepositoryVersion;
@@ -283,6 +346,74 @@ public class ConfiguredRepositoryStorage implements Closeable, NestBundleStorage
 		this.constraintConfiguration = new SimpleDependencyConstraintConfiguration(classPathJreMajorVersion,
 				classPathRepositoryVersion, classPathBuildSystemVersion, nativeLibraryOsArchitecture);
 
+		{
+			String prefetchthreadsparamname = repoid + "." + PARAMETER_NEST_REPOSITORY_BUNDLE_PREFETCH_THREADS;
+			String prefetchthreadsstr = parameters.get(prefetchthreadsparamname);
+			int prefetchthreadcount;
+			if (prefetchthreadsstr != null) {
+				int parsed;
+				try {
+					parsed = Integer.parseInt(prefetchthreadsstr.trim());
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException("Failed to parse argument for: " + prefetchthreadsparamname
+							+ " : " + prefetchthreadsstr + " (" + repoid + ")", e);
+				}
+				if (parsed < 0) {
+					throw new IllegalArgumentException(
+							"Invalid bundle prefetch thread count: " + parsed + " (" + repoid + ")");
+				}
+				prefetchthreadcount = parsed;
+			} else {
+				//don't prefetch by default during testing so the server requests happen in a deterministic order
+				prefetchthreadcount = TestFlag.ENABLED ? 0 : DEFAULT_BUNDLE_PREFETCH_THREAD_COUNT;
+			}
+			this.bundlePrefetchTaskGroup = prefetchthreadcount > 0
+					? repository.getIOExecutor().newTaskGroup(prefetchthreadcount)
+					: null;
+		}
+		{
+			String resolutionthreadsparamname = repoid + "."
+					+ PARAMETER_NEST_REPOSITORY_DEPENDENCY_RESOLUTION_THREADS;
+			String resolutionthreadsstr = parameters.get(resolutionthreadsparamname);
+			if (resolutionthreadsstr != null) {
+				int parsed;
+				try {
+					parsed = Integer.parseInt(resolutionthreadsstr.trim());
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException("Failed to parse argument for: " + resolutionthreadsparamname
+							+ " : " + resolutionthreadsstr + " (" + repoid + ")", e);
+				}
+				if (parsed < 0) {
+					throw new IllegalArgumentException(
+							"Invalid dependency resolution thread count: " + parsed + " (" + repoid + ")");
+				}
+				this.dependencyResolutionTaskGroup = parsed > 0 ? repository.getIOExecutor().newTaskGroup(parsed)
+						: null;
+			} else {
+				this.dependencyResolutionTaskGroup = null;
+			}
+		}
+		this.mappedNestedExternalArchives = "mapped"
+				.equalsIgnoreCase(parameters.get(repoid + "." + PARAMETER_NEST_REPOSITORY_EXTERNAL_NESTED_ARCHIVES));
+		{
+			String entrycacheparam = parameters.get(repoid + "." + PARAMETER_NEST_REPOSITORY_CLASSLOADER_ENTRY_CACHE);
+			if ("false".equalsIgnoreCase(entrycacheparam)) {
+				this.entryBytesCache = null;
+			} else {
+				this.entryBytesCache = repository.getEntryBytesCache();
+			}
+		}
+		{
+			String resolutioncacheparam = parameters
+					.get(repoid + "." + PARAMETER_NEST_REPOSITORY_DEPENDENCY_RESOLUTION_CACHE);
+			if ("false".equalsIgnoreCase(resolutioncacheparam)) {
+				this.classPathResolutionCacheDirectory = null;
+			} else {
+				this.classPathResolutionCacheDirectory = repository.getRepositoryStorageDirectory()
+						.resolve(STORAGE_DIRECTORY_NAME_CLASSPATH_RESOLUTION_CACHE);
+			}
+		}
+
 		String storageconfigparamname = repoid + "." + PARAMETER_NEST_REPOSITORY_STORAGE_CONFIGURATION;
 		String storageconfigparam = parameters.get(storageconfigparamname);
 		List<?> storageconfig;
@@ -294,6 +425,8 @@ public class ConfiguredRepositoryStorage implements Closeable, NestBundleStorage
 			storageconfig = DEFAULT_STORAGE_CONFIG;
 			storagenametypes = DEFAULT_STORAGE_NAME_TYPES;
 		}
+		boolean mappedjarreader = "mapped"
+				.equalsIgnoreCase(parameters.get(repoid + "." + PARAMETER_NEST_REPOSITORY_JAR_READER));
 		Map<String, StorageInitializationInfo> namedstorageinitializers = new TreeMap<>();
 		for (Entry<String, String> entry : storagenametypes.entrySet()) {
 			String storagename = entry.getKey();
@@ -312,19 +445,21 @@ public class ConfiguredRepositoryStorage implements Closeable, NestBundleStorage
 			switch (entry.getValue()) {
 				case STORAGE_TYPE_LOCAL: {
 					initinfo = new StorageInitializationInfo(
-							LocalBundleStorage.LocalStorageKey.create(repository, storageuserparams),
+							LocalBundleStorage.LocalStorageKey.create(repository, storageuserparams, mappedjarreader),
 							storageuserparams);
 					break;
 				}
 				case STORAGE_TYPE_PARAMETER: {
 					initinfo = new StorageInitializationInfo(
-							ParameterBundleStorage.ParameterStorageKey.create(repository, storageuserparams),
+							ParameterBundleStorage.ParameterStorageKey.create(repository, storageuserparams,
+									mappedjarreader),
 							storageuserparams);
 					break;
 				}
 				case STORAGE_TYPE_SERVER: {
 					initinfo = new StorageInitializationInfo(
-							ServerBundleStorage.ServerStorageKey.create(repository, storageuserparams),
+							ServerBundleStorage.ServerStorageKey.create(repository, storageuserparams,
+									mappedjarreader),
 							storageuserparams);
 					break;
 				}
@@ -434,6 +569,15 @@ public class ConfiguredRepositoryStorage implements Closeable, NestBundleStorage
 		return repository;
 	}
 
+	/**
+	 * Gets the archive entry contents cache that the class loaders should use.
+	 * 
+	 * @return The cache or <code>null</code> if the cache is disabled.
+	 */
+	public ArchiveEntryBytesCache getEntryBytesCache() {
+		return entryBytesCache;
+	}
+
 	public AbstractBundleLookup getLookupConfiguration() {
 		return lookupConfiguration;
 	}
@@ -668,11 +812,34 @@ public class ConfiguredRepositoryStorage implements Closeable, NestBundleStorage
 	public void close() throws IOException {
 		// XXX release storages if it was allocated only for this configuration
 		closed = true;
+		if (bundlePrefetchTaskGroup != null) {
+			//don't wait for the prefetching to finish, the storages will handle the concurrent closing
+			bundlePrefetchTaskGroup.abort();
+		}
+		if (dependencyResolutionTaskGroup != null) {
+			//the resolving threads execute the tasks that weren't started
+			dependencyResolutionTaskGroup.abort();
+		}
 		synchronized (classLoaderLock) {
 			classLoaders.clear();
 			domainClassLoaders.clear();
 		}
 		taskClasses.clear();
+		bundlePrefetchRequests.clear();
+	}
+
+	/**
+	 * Sets the build environment that is used to access the shared objects of the storage views.
+	 * <p>
+	 * Called when the configured storage is reused for a new build environment.
+	 * 
+	 * @param environment
+	 *            The build environment.
+	 */
+	void rebindBuildEnvironment(RepositoryBuildEnvironment environment) {
+		if (sharedObjectAccessor instanceof RepositoryBuildEnvironmentStorageSharedObjectAccessor) {
+			((RepositoryBuildEnvironmentStorageSharedObjectAccessor) sharedObjectAccessor).environment = environment;
+		}
 	}
 
 	public Object detectChanges(ExecutionPathConfiguration pathconfig) {
@@ -704,8 +871,13 @@ public class ConfiguredRepositoryStorage implements Closeable, NestBundleStorage
 			synchronized (classLoaderLock) {
 				//XXX do not clear all, but only modifieds
 				taskClasses.clear();
+				for (NestRepositoryBundleClassLoader cl : domainClassLoaders.values()) {
+					//the class loaders may still be referenced, make sure they look up the classes again
+					cl.clearNotFoundClassNames();
+				}
 				classLoaders.clear();
 				domainClassLoaders.clear();
+				bundlePrefetchRequests.clear();
 
 				for (Entry<AbstractBundleStorageView, Object> entry : detectedchanges.detectedChanges.entrySet()) {
 					entry.getKey().handleChanges(pathconfig, entry.getValue());
@@ -1095,7 +1267,7 @@ public class ConfiguredRepositoryStorage implements Closeable, NestBundleStorage
 
 	private static final class RepositoryBuildEnvironmentStorageSharedObjectAccessor
 			implements StorageSharedObjectAccessor {
-		private final RepositoryBuildEnvironment environment;
+		private volatile RepositoryBuildEnvironment environment;
 
 		private RepositoryBuildEnvironmentStorageSharedObjectAccessor(RepositoryBuildEnvironment environment) {
 			this.environment = environment;
@@ -1174,6 +1346,43 @@ public class ConfiguredRepositoryStorage implements Closeable, NestBundleStorage
 		}
 	}
 
+	/**
+	 * Records the inputs of a class path dependency resolution that are necessary to validate the cached result.
+	 */
+	private final class ClassPathResolutionCacheRecorder {
+		protected final List<JSONObject> versionLookups = new ArrayList<>();
+		protected final Set<BundleKey> dependencyLookupBundles = new LinkedHashSet<>();
+		protected boolean unrecordable = false;
+
+		public ClassPathResolutionCacheRecorder(BundleKey rootbundlekey) {
+			dependencyLookupBundles.add(rootbundlekey);
+		}
+
+		public synchronized void recordVersionLookup(BundleLookup lookup, BundleIdentifier bundleid,
+				BundleVersionLookupResult lookupresult) {
+			if (unrecordable) {
+				return;
+			}
+			String lookupid = getClassPathResolutionLookupIdentifier(lookup);
+			JSONObject lookupobj = lookupid == null ? null
+					: classPathResolutionVersionLookupToJSON(lookupid, bundleid, lookupresult);
+			if (lookupobj == null) {
+				unrecordable = true;
+				return;
+			}
+			versionLookups.add(lookupobj);
+		}
+
+		public synchronized void recordDependencyLookup(BundleKey bundlekey) {
+			dependencyLookupBundles.add(bundlekey);
+		}
+
+		public synchronized void recordDependencyLookupFailure() {
+			//the resolution depends on a bundle that failed to load, don't cache the result
+			unrecordable = true;
+		}
+	}
+
 	private NestRepositoryBundleClassLoader getBundleClassLoader(AbstractNestRepositoryBundle bundle,
 			AbstractBundleLookup bundlelookupconfig, BundleStorageView bundlestorage) {
 		{
@@ -1208,11 +1417,85 @@ public class ConfiguredRepositoryStorage implements Closeable, NestBundleStorage
 		}
 		BundleDependencyInformation basefiltereddepinfo = filterDependencyInformationForClassPath(
 				bundleinfo.getDependencyInformation(), CLASSPATH_DEPENDENCY_KIND_SINGLETON);
+
+		String resolutioncachekey = getClassPathResolutionCacheKey(bundlekey, bundlelookupconfig);
+		ClassLoaderDomain rootbundledomain = null;
+		if (resolutioncachekey != null) {
+			rootbundledomain = readClassPathResolutionCache(resolutioncachekey, bundlekey);
+			if (TestFlag.ENABLED) {
+				TestFlag.metric().classPathResolutionCacheLookup(bundleid.toString(), rootbundledomain != null);
+			}
+		}
+		//the bundles of a cached resolution are not loaded when the cache is validated
+		//    if any of them fails to load, the dependencies are resolved again
+		boolean cachedresolution = rootbundledomain != null;
+		while (true) {
+			if (rootbundledomain == null) {
+				rootbundledomain = resolveClassLoaderDomain(bundlekey, bundlelookupconfig, bundlestorage,
+						basefiltereddepinfo, resolutioncachekey);
+			}
+
+			{
+				NestRepositoryBundleClassLoader presentdomaincl = domainClassLoaders.get(rootbundledomain);
+				if (presentdomaincl != null) {
+					classLoaders.putIfAbsent(bundle, presentdomaincl);
+					return presentdomaincl;
+				}
+				NestRepositoryBundleClassLoader presentcl = classLoaders.get(bundle);
+				if (presentcl != null) {
+					return presentcl;
+				}
+			}
+
+			synchronized (classLoaderLock) {
+				if (closed) {
+					throw new IllegalStateException("closed");
+				}
+				{
+					NestRepositoryBundleClassLoader presentcl = classLoaders.get(bundle);
+					if (presentcl != null) {
+						return presentcl;
+					}
+				}
+
+				BiConsumer<ClassLoaderDomain, BundleLoadingFailedException> failurehandler;
+				if (cachedresolution) {
+					failurehandler = (domain, e) -> {
+						//resolve again
+					};
+				} else {
+					failurehandler = (domain, e) -> {
+						throw new AssertionError("Failed to retrieve previously resolved bundle. ("
+								+ domain.bundle.getBundleIdentifier() + ")", e);
+					};
+				}
+				NestRepositoryBundleClassLoader result = createDomainClassLoaderLockedImpl(rootbundledomain,
+						failurehandler);
+				if (result != null) {
+					classLoaders.putIfAbsent(bundle, result);
+					return result;
+				}
+			}
+			rootbundledomain = null;
+			cachedresolution = false;
+		}
+	}
+
+	private ClassLoaderDomain resolveClassLoaderDomain(BundleKey bundlekey, AbstractBundleLookup bundlelookupconfig,
+			BundleStorageView bundlestorage, BundleDependencyInformation basefiltereddepinfo,
+			String resolutioncachekey) {
+		DependencyConstraintConfiguration constraints = getDependencyConstraintConfiguration();
 		DependencyResolutionLogger<ClassLoaderDependencyResolutionBundleContext> logger = null;
-		List<Throwable> unsatisfiedsuppressions = new ArrayList<>();
+		//synchronized, as the lookup functions may be called concurrently
+		List<Throwable> unsatisfiedsuppressions = Collections.synchronizedList(new ArrayList<>());
+		ClassPathResolutionCacheRecorder cacherecorder = resolutioncachekey == null ? null
+				: new ClassPathResolutionCacheRecorder(bundlekey);
 		BiFunction<? super BundleIdentifier, ? super ClassLoaderDependencyResolutionBundleContext, ? extends Iterable<? extends Entry<? extends BundleKey, ? extends ClassLoaderDependencyResolutionBundleContext>>> bundleslookupfunction = (
 				bi, bc) -> {
 			BundleVersionLookupResult lookedupversions = bc.getRelativeLookup().lookupBundleVersions(bi);
+			if (cacherecorder != null) {
+				cacherecorder.recordVersionLookup(bc.getRelativeLookup(), bi, lookedupversions);
+			}
 			if (lookedupversions == null) {
 				return null;
 			}
@@ -1221,6 +1504,9 @@ public class ConfiguredRepositoryStorage implements Closeable, NestBundleStorage
 		};
 		BiFunction<? super BundleKey, ? super ClassLoaderDependencyResolutionBundleContext, ? extends BundleDependencyInformation> bundledependencieslookupfunction = (
 				bi, bc) -> {
+			if (cacherecorder != null) {
+				cacherecorder.recordDependencyLookup(bi);
+			}
 			try {
 				BundleInformation lookupbundleinfo = bc.getStorageView().getBundleInformation(bi.getBundleIdentifier());
 				if (DependencyUtils.isDependencyConstraintClassPathExcludes(constraints, lookupbundleinfo)) {
@@ -1228,59 +1514,349 @@ public class ConfiguredRepositoryStorage implements Closeable, NestBundleStorage
 					return null;
 				}
 				BundleDependencyInformation lookupbundledepinfo = lookupbundleinfo.getDependencyInformation();
-				return filterDependencyInformationForClassPath(lookupbundledepinfo,
+				BundleDependencyInformation result = filterDependencyInformationForClassPath(lookupbundledepinfo,
 						CLASSPATH_DEPENDENCY_KIND_SINGLETON);
+				startDependencyBundlePrefetch(bc.getRelativeLookup(), result);
+				return result;
 			} catch (BundleLoadingFailedException e) {
 				unsatisfiedsuppressions.add(e);
+				if (cacherecorder != null) {
+					cacherecorder.recordDependencyLookupFailure();
+				}
 			}
 			return null;
 		};
+		startDependencyBundlePrefetch(bundlelookupconfig, basefiltereddepinfo);
 
 		DependencyDomainResolutionResult<BundleKey, ClassLoaderDependencyResolutionBundleContext> domainsatisfied = DependencyUtils
 				.satisfyDependencyDomain(bundlekey,
 						new ClassLoaderDependencyResolutionBundleContext(bundlestorage, bundlelookupconfig),
-						basefiltereddepinfo, bundleslookupfunction, bundledependencieslookupfunction, logger);
+						basefiltereddepinfo, bundleslookupfunction, bundledependencieslookupfunction, logger,
+						closed ? null : dependencyResolutionTaskGroup);
 		if (domainsatisfied == null) {
 			//XXX handle dependency satisfaction failure better
 			BundleDependencyUnsatisfiedException unsatisfiedexc = new BundleDependencyUnsatisfiedException(
-					"Failed to satisfy dependencies for: " + bundleid);
+					"Failed to satisfy dependencies for: " + bundlekey.getBundleIdentifier());
 			unsatisfiedsuppressions.forEach(unsatisfiedexc::addSuppressed);
 			throw unsatisfiedexc;
 		}
-		ClassLoaderDomain rootbundledomain = createClassLoaderDomain(bundlekey, domainsatisfied);
+		ClassLoaderDomain result = createClassLoaderDomain(bundlekey, domainsatisfied);
+		if (cacherecorder != null) {
+			writeClassPathResolutionCache(resolutioncachekey, result, cacherecorder);
+		}
+		return result;
+	}
 
-		{
-			NestRepositoryBundleClassLoader presentdomaincl = domainClassLoaders.get(rootbundledomain);
-			if (presentdomaincl != null) {
-				classLoaders.putIfAbsent(bundle, presentdomaincl);
-				return presentdomaincl;
+	private String getClassPathResolutionCacheKey(BundleKey bundlekey, BundleLookup lookup) {
+		if (classPathResolutionCacheDirectory == null) {
+			return null;
+		}
+		String lookupid = getClassPathResolutionLookupIdentifier(lookup);
+		String storageviewid = storageViewKeyStringIdentifiers.get(bundlekey.getStorageViewKey());
+		if (lookupid == null || storageviewid == null) {
+			//the lookup is not part of this configuration, don't cache
+			return null;
+		}
+		DependencyConstraintConfiguration constraints = getDependencyConstraintConfiguration();
+		StringBuilder sb = new StringBuilder();
+		sb.append(CLASSPATH_RESOLUTION_CACHE_FORMAT_VERSION).append('\n');
+		sb.append(bundlekey.getBundleIdentifier()).append('|').append(storageviewid).append('\n');
+		sb.append(lookupid).append('\n');
+		sb.append(constraints.getJreMajorVersion()).append('\n');
+		sb.append(constraints.getRepositoryVersion()).append('\n');
+		sb.append(constraints.getBuildSystemVersion()).append('\n');
+		sb.append(constraints.getNativeArchitecture());
+		//the resolution may examine the bundles of any storage in the configuration
+		for (Entry<String, AbstractBundleStorageView> entry : stringIdentifierStorageViews.entrySet()) {
+			String indexidentity = entry.getValue().getBundleIndexIdentity();
+			if (indexidentity == null) {
+				//the state of the storage can't be determined, don't cache
+				return null;
 			}
-			NestRepositoryBundleClassLoader presentcl = classLoaders.get(bundle);
-			if (presentcl != null) {
-				return presentcl;
+			sb.append('\n').append(entry.getKey()).append('=').append(indexidentity);
+		}
+		return sb.toString();
+	}
+
+	private String getClassPathResolutionLookupIdentifier(BundleLookup lookup) {
+		if (lookup == lookupConfiguration) {
+			return "";
+		}
+		return bundleLookupStorageIdentifiers.get(lookup);
+	}
+
+	private BundleLookup getClassPathResolutionLookupForIdentifier(String lookupid) {
+		if (lookupid.isEmpty()) {
+			return lookupConfiguration;
+		}
+		return storageKeyIdentifierBundleLookups.get(lookupid);
+	}
+
+	private Path getClassPathResolutionCacheFilePath(String cachekey) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError("JVM doesn't support MD5 hash.", e);
+		}
+		byte[] keyhash = digest.digest(cachekey.getBytes(StandardCharsets.UTF_8));
+		return classPathResolutionCacheDirectory
+				.resolve(StringUtils.toHexString(keyhash) + CLASSPATH_RESOLUTION_CACHE_FILE_EXTENSION);
+	}
+
+	private JSONObject classPathResolutionVersionLookupToJSON(String lookupid, BundleIdentifier bundleid,
+			BundleVersionLookupResult lookupresult) {
+		JSONObject result = new JSONObject();
+		result.put("l", lookupid);
+		result.put("b", bundleid.toString());
+		if (lookupresult != null) {
+			String storageviewid = storageViewKeyStringIdentifiers
+					.get(lookupresult.getStorageView().getStorageViewKey());
+			if (storageviewid == null) {
+				return null;
 			}
+			JSONArray bundlesarray = new JSONArray();
+			for (BundleIdentifier lookedupbundleid : lookupresult.getBundles()) {
+				bundlesarray.put(lookedupbundleid.toString());
+			}
+			result.put("s", storageviewid);
+			result.put("v", bundlesarray);
 		}
+		return result;
+	}
 
-		synchronized (classLoaderLock) {
-			if (closed) {
-				throw new IllegalStateException("closed");
+	/**
+	 * Reads the cached class path dependency resolution result for the given key.
+	 * <p>
+	 * The key contains the index identities of the storages, so the file only exists for the current state of the
+	 * storages. The cached result is only returned if the version lookups that were performed during the resolution
+	 * still produce the same results, and the bundles which had their dependencies examined have the same hashes, if
+	 * they are already known by the storages. That is, if the resolution would produce the same result as the cached
+	 * one.
+	 * <p>
+	 * The bundles are not loaded for the validation.
+	 * 
+	 * @return The class loader domain or <code>null</code> if there's no valid cached result.
+	 */
+	private ClassLoaderDomain readClassPathResolutionCache(String cachekey, BundleKey bundlekey) {
+		Path cachefilepath = getClassPathResolutionCacheFilePath(cachekey);
+		ClassLoaderDomain result;
+		try (BufferedReader reader = Files.newBufferedReader(cachefilepath, StandardCharsets.UTF_8)) {
+			JSONObject json = new JSONObject(new JSONTokener(reader));
+			if (!cachekey.equals(json.optString("key", null))) {
+				return null;
 			}
-			{
-				NestRepositoryBundleClassLoader presentcl = classLoaders.get(bundle);
-				if (presentcl != null) {
-					return presentcl;
+			JSONArray lookupsarray = json.getJSONArray("lookups");
+			for (int i = 0, len = lookupsarray.length(); i < len; i++) {
+				JSONObject lookupobj = lookupsarray.getJSONObject(i);
+				String lookupid = lookupobj.getString("l");
+				BundleLookup lookup = getClassPathResolutionLookupForIdentifier(lookupid);
+				if (lookup == null) {
+					return null;
+				}
+				BundleIdentifier bundleid = BundleIdentifier.valueOf(lookupobj.getString("b"));
+				JSONObject currentlookupobj = classPathResolutionVersionLookupToJSON(lookupid, bundleid,
+						lookup.lookupBundleVersions(bundleid));
+				if (!lookupobj.similar(currentlookupobj)) {
+					return null;
+				}
+			}
+			JSONObject hashesobj = json.getJSONObject("hashes");
+			for (String bkreconstructid : hashesobj.keySet()) {
+				BundleKey bk = reconstructionIdentifierToBundleKey(bkreconstructid);
+				if (bk == null) {
+					return null;
+				}
+				byte[] knownhash = storageViewKeyStorageViews.get(bk.getStorageViewKey())
+						.getKnownBundleHash(bk.getBundleIdentifier());
+				if (knownhash != null
+						&& !StringUtils.toHexString(knownhash).equals(hashesobj.getString(bkreconstructid))) {
+					return null;
 				}
 			}
+			result = domainFromReconstructionString(json.getString("domain"));
+			if (result == null || !result.bundle.equals(bundlekey)) {
+				return null;
+			}
+		} catch (IOException | JSONException | IllegalArgumentException e) {
+			//no cached result, or it is malformed
+			//resolve the dependencies again
+			return null;
+		}
+		try {
+			//mark the file as recently used for the eviction
+			Files.setLastModifiedTime(cachefilepath, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (IOException e) {
+		}
+		return result;
+	}
 
-			NestRepositoryBundleClassLoader result = createDomainClassLoaderLockedImpl(rootbundledomain,
-					(domain, e) -> {
-						throw new AssertionError("Failed to retrieve previously resolved bundle. ("
-								+ domain.bundle.getBundleIdentifier() + ")", e);
-					});
+	private void writeClassPathResolutionCache(String cachekey, ClassLoaderDomain domain,
+			ClassPathResolutionCacheRecorder recorder) {
+		JSONObject json = new JSONObject();
+		JSONObject hashesobj = new JSONObject();
+		synchronized (recorder) {
+			if (recorder.unrecordable) {
+				return;
+			}
+			for (BundleKey bk : recorder.dependencyLookupBundles) {
+				//only record the already known hashes, the bundles are not loaded for hashing
+				byte[] knownhash = storageViewKeyStorageViews.get(bk.getStorageViewKey())
+						.getKnownBundleHash(bk.getBundleIdentifier());
+				if (knownhash != null) {
+					hashesobj.put(bundleKeyToReconstructionIdentifier(bk), StringUtils.toHexString(knownhash));
+				}
+			}
+			json.put("lookups", new JSONArray(recorder.versionLookups));
+		}
+		json.put("key", cachekey);
+		json.put("hashes", hashesobj);
+		json.put("domain", domainToReconstructionString(domain));
 
-			classLoaders.putIfAbsent(bundle, result);
-			return result;
+		Path cachefilepath = getClassPathResolutionCacheFilePath(cachekey);
+		Path tempsibling = cachefilepath.resolveSibling(UUID.randomUUID() + ".temp");
+		try {
+			Files.createDirectories(cachefilepath.getParent());
+			try (OutputStream os = Files.newOutputStream(tempsibling, StandardOpenOption.CREATE_NEW);
+					OutputStreamWriter writer = new OutputStreamWriter(os, StandardCharsets.UTF_8)) {
+				json.write(writer);
+			}
+			Files.move(tempsibling, cachefilepath, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			//failed to write the cache file, the dependencies are resolved again next time
+			return;
+		} finally {
+			try {
+				Files.deleteIfExists(tempsibling);
+			} catch (IOException e) {
+			}
 		}
+		evictClassPathResolutionCacheFiles();
+	}
+
+	/**
+	 * Deletes the least recently used cached dependency resolution files if there are more than
+	 * {@link #CLASSPATH_RESOLUTION_CACHE_MAX_FILE_COUNT}.
+	 */
+	private void evictClassPathResolutionCacheFiles() {
+		List<Entry<Path, FileTime>> files = new ArrayList<>();
+		try (DirectoryStream<Path> ds = Files.newDirectoryStream(classPathResolutionCacheDirectory,
+				"*" + CLASSPATH_RESOLUTION_CACHE_FILE_EXTENSION)) {
+			for (Path p : ds) {
+				try {
+					files.add(ImmutableUtils.makeImmutableMapEntry(p, Files.getLastModifiedTime(p)));
+				} catch (IOException e) {
+					//deleted concurrently
+					continue;
+				}
+			}
+		} catch (IOException e) {
+			return;
+		}
+		if (files.size() <= CLASSPATH_RESOLUTION_CACHE_MAX_FILE_COUNT) {
+			return;
+		}
+		files.sort(Entry.comparingByValue());
+		for (int i = 0, c = files.size() - CLASSPATH_RESOLUTION_CACHE_MAX_FILE_COUNT; i < c; i++) {
+			try {
+				Files.deleteIfExists(files.get(i).getKey());
+			} catch (IOException e) {
+				//may be in use by others, or deleted concurrently
+				continue;
+			}
+		}
+	}
+
+	/**
+	 * Starts loading the bundles in the background which are most likely going to be selected for the argument
+	 * dependencies by the dependency resolution.
+	 * <p>
+	 * The most likely candidate is the most recent version of a bundle that satisfies the dependency ranges. The
+	 * prefetching continues transitively for the dependencies of the candidates.
+	 * <p>
+	 * The prefetching only causes the bundles to be loaded in the storages. It doesn't affect the outcome of the
+	 * dependency resolution. Any errors are ignored, as they are reported when the resolution actually attempts to
+	 * load the given bundle.
+	 */
+	private void startDependencyBundlePrefetch(BundleLookup lookup, BundleDependencyInformation depinfo) {
+		if (bundlePrefetchTaskGroup == null || depinfo == null || depinfo.isEmpty()) {
+			return;
+		}
+		for (Entry<BundleIdentifier, ? extends BundleDependencyList> entry : depinfo.getDependencies().entrySet()) {
+			//optional dependencies are not part of the resolution unless also declared otherwise
+			BundleDependencyList deplist = entry.getValue().withoutOptionals();
+			if (deplist.isEmpty()) {
+				continue;
+			}
+			BundleIdentifier depbundleid = entry.getKey();
+			if (!bundlePrefetchRequests
+					.add(ImmutableUtils.asUnmodifiableArrayList(lookup.getLookupKey(), depbundleid, deplist))) {
+				//already prefetching for the same dependency
+				continue;
+			}
+			if (closed) {
+				return;
+			}
+			try {
+				bundlePrefetchTaskGroup.execute(() -> prefetchDependencyBundle(lookup, depbundleid, deplist));
+			} catch (RejectedExecutionException e) {
+				//closed concurrently, or the executor is saturated
+				return;
+			}
+		}
+	}
+
+	private void prefetchDependencyBundle(BundleLookup lookup, BundleIdentifier depbundleid,
+			BundleDependencyList deplist) {
+		try {
+			BundleVersionLookupResult lookedupversions = lookup.lookupBundleVersions(depbundleid);
+			if (lookedupversions == null) {
+				return;
+			}
+			BundleIdentifier candidate = null;
+			//the bundles are in descending version order
+			for (BundleIdentifier bundleid : lookedupversions.getBundles()) {
+				if (isVersionIncludedInAllRanges(deplist, bundleid.getVersionNumber())) {
+					candidate = bundleid;
+					break;
+				}
+			}
+			if (candidate == null) {
+				return;
+			}
+			BundleStorageView storageview = lookedupversions.getStorageView();
+			if (!bundlePrefetchRequests.add(new SimpleBundleKey(candidate, storageview.getStorageViewKey()))) {
+				return;
+			}
+			if (closed) {
+				return;
+			}
+			BundleInformation candidateinfo = storageview.getBundleInformation(candidate);
+			if (TestFlag.ENABLED) {
+				TestFlag.metric().dependencyBundlePrefetched(candidate.toString());
+			}
+			if (DependencyUtils.isDependencyConstraintClassPathExcludes(getDependencyConstraintConfiguration(),
+					candidateinfo)) {
+				return;
+			}
+			startDependencyBundlePrefetch(lookedupversions.getRelativeLookup(),
+					filterDependencyInformationForClassPath(candidateinfo.getDependencyInformation(),
+							CLASSPATH_DEPENDENCY_KIND_SINGLETON));
+		} catch (Exception e) {
+			//ignore, the resolution will report it if it is relevant
+		}
+	}
+
+	private static boolean isVersionIncludedInAllRanges(BundleDependencyList deplist, String version) {
+		if (version == null) {
+			return false;
+		}
+		for (BundleDependency dep : deplist.getDependencies()) {
+			if (!dep.getRange().includes(version)) {
+				return false;
+			}
+		}
+		return true;
 	}
 
 	/**
@@ -1332,7 +1908,8 @@ public class ConfiguredRepositoryStorage implements Closeable, NestBundleStorage
 				ExternalDependencyInformation filteredextdep = filterExternalDependencyForClasspath(extdependencies);
 				Map<SimpleExternalArchiveKey, ? extends AbstractExternalArchive> loadedarchives;
 				try {
-					loadedarchives = repository.loadExternalArchives(filteredextdep, domainbundlestorage);
+					loadedarchives = repository.loadExternalArchives(filteredextdep, domainbundlestorage,
+							mappedNestedExternalArchives);
 				} catch (NullPointerException | IllegalArgumentException | ExternalArchiveLoadingFailedException e) {
 					throw new BundleDependencyUnsatisfiedException(
 							"Failed to load external dependencies for: " + bundleinfo.getBundleIdentifier(), e);
@@ -1398,7 +1975,8 @@ public class ConfiguredRepositoryStorage implements Closeable, NestBundleStorage
 	public Map<? extends ExternalArchiveKey, ? extends ExternalArchive> loadExternalArchives(
 			ExternalDependencyInformation depinfo)
 			throws NullPointerException, IllegalArgumentException, ExternalArchiveLoadingFailedException {
-		return repository.loadExternalArchives(depinfo, (uri, hashes) -> BundleUtils.openExternalDependencyURI(uri));
+		return repository.loadExternalArchives(depinfo, (uri, hashes) -> BundleUtils.openExternalDependencyURI(uri),
+				mappedNestedExternalArchives);
 	}
 
 	private ExternalDependencyInformation filterExternalDependencyForClasspath(
@@ -0,0 +1,400 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.nest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import saker.build.file.provider.SakerFileProvider;
+import saker.build.runtime.params.ExecutionPathConfiguration;
+import saker.build.runtime.repository.RepositoryBuildEnvironment;
+import saker.build.thirdparty.saker.util.io.IOUtils;
+import saker.nest.bundle.NestBundleStorageConfiguration;
+import testing.saker.nest.TestFlag;
+
+/**
+ * Cache of {@link ConfiguredRepositoryStorage} instances that allows them to be reused by consecutive build
+ * environments with the same configuration.
+ * <p>
+ * The configured storages are keyed by the repository identifier, the path configuration, the user parameters, and
+ * the local file provider of the build environment. A cached storage is checked out exclusively by a build
+ * repository, as the change detection of the storage cannot be shared by concurrent builds. If the cached storage is
+ * in use, a new one is created for the caller.
+ * <p>
+ * When a cached storage is checked out, its changes are detected and handled against the new path configuration to
+ * make sure that it reflects the current state of the storages. The loaded storage views, class loaders and tasks are
+ * kept in the storage between the builds.
+ * <p>
+ * The storages that are not used are closed after a timeout. The failures of closing the storages in the background
+ * are reported by the next {@link #release(ConfiguredRepositoryStorage)} or {@link #close()} call.
+ * <p>
+ * The caching can be turned off using the
+ * {@link NestBundleStorageConfiguration#PARAMETER_NEST_REPOSITORY_CONFIGURED_STORAGE_CACHE} parameter.
+ */
+final class ConfiguredRepositoryStorageCache implements Closeable {
+	/**
+	 * The time after which the idle configured storages are closed.
+	 */
+	private static final long IDLE_EVICTION_MILLIS = 5 * 60 * 1000;
+	/**
+	 * The maximum number of idle configured storages.
+	 */
+	private static final int MAX_IDLE_ENTRY_COUNT = 4;
+
+	private final NestRepositoryImpl repository;
+
+	private final Map<CacheKey, CacheEntry> entries = new HashMap<>();
+	private final Map<ConfiguredRepositoryStorage, CacheKey> checkedOutStorageKeys = new IdentityHashMap<>();
+	private ScheduledThreadPoolExecutor evictionExecutor;
+	private IOException closeException;
+	private boolean closed;
+
+	public ConfiguredRepositoryStorageCache(NestRepositoryImpl repository) {
+		this.repository = repository;
+	}
+
+	/**
+	 * Gets a configured storage for the argument build environment.
+	 * <p>
+	 * The returned storage must be released using {@link #release(ConfiguredRepositoryStorage)}.
+	 * 
+	 * @param environment
+	 *            The build environment.
+	 * @return The configured storage.
+	 */
+	public ConfiguredRepositoryStorage checkout(RepositoryBuildEnvironment environment) {
+		if (isRemoteCluster(environment) || !isCachingEnabled(environment)) {
+			//the cluster environments are transient and have their own file providers, don't cache
+			//the storage is not recorded, so it is closed when released
+			ConfiguredRepositoryStorage result = ConfiguredRepositoryStorage.forBuildRepository(repository,
+					environment);
+			if (TestFlag.ENABLED) {
+				TestFlag.metric().configuredStorageCacheCheckout(result, false);
+			}
+			return result;
+		}
+		//the storage views use the local file provider of the environment that created them,
+		//    so only environments with the same local file provider can reuse them
+		CacheKey key = new CacheKey(environment.getIdentifier(), environment.getPathConfiguration(),
+				new TreeMap<>(environment.getUserParameters()),
+				ConfiguredRepositoryStorage.getLocalFileProvider(environment));
+		List<ConfiguredRepositoryStorage> closestorages = new ArrayList<>();
+		CacheEntry entry;
+		synchronized (this) {
+			if (closed) {
+				throw new IllegalStateException("closed.");
+			}
+			collectExpiredIdleEntriesLocked(closestorages);
+			entry = entries.get(key);
+			if (entry != null && entry.inUse) {
+				entry = null;
+			}
+			if (entry != null) {
+				entry.inUse = true;
+			}
+		}
+		closeStoragesRecordException(closestorages);
+		if (entry != null) {
+			ConfiguredRepositoryStorage storage = entry.storage;
+			if (validate(storage, environment)) {
+				synchronized (this) {
+					checkedOutStorageKeys.put(storage, key);
+				}
+				if (TestFlag.ENABLED) {
+					TestFlag.metric().configuredStorageCacheCheckout(storage, true);
+				}
+				return storage;
+			}
+			synchronized (this) {
+				entries.remove(key, entry);
+			}
+			closeStoragesRecordException(Collections.singletonList(storage));
+		}
+		ConfiguredRepositoryStorage result = ConfiguredRepositoryStorage.forBuildRepository(repository, environment);
+		synchronized (this) {
+			checkedOutStorageKeys.put(result, key);
+		}
+		if (TestFlag.ENABLED) {
+			TestFlag.metric().configuredStorageCacheCheckout(result, false);
+		}
+		return result;
+	}
+
+	/**
+	 * Releases a configured storage that was retrieved using {@link #checkout(RepositoryBuildEnvironment)}.
+	 * <p>
+	 * The storage is either kept in the cache or closed.
+	 * 
+	 * @param storage
+	 *            The configured storage.
+	 * @throws IOException
+	 *             If the storage failed to close, or an evicted storage failed to close in the background.
+	 */
+	public void release(ConfiguredRepositoryStorage storage) throws IOException {
+		List<ConfiguredRepositoryStorage> closestorages = new ArrayList<>();
+		IOException exc;
+		synchronized (this) {
+			CacheKey key = checkedOutStorageKeys.remove(storage);
+			CacheEntry entry = key == null ? null : entries.get(key);
+			if (closed || key == null) {
+				closestorages.add(storage);
+			} else {
+				if (entry == null) {
+					entry = new CacheEntry(storage);
+					entries.put(key, entry);
+				}
+				if (entry.storage == storage) {
+					entry.inUse = false;
+					entry.idleSinceNanos = System.nanoTime();
+					entry.idleEvictionMillis = getIdleEvictionMillis();
+					collectExcessIdleEntriesLocked(closestorages);
+					scheduleEvictionLocked(entry.idleEvictionMillis);
+				} else {
+					//an other storage is already cached with the same configuration
+					closestorages.add(storage);
+				}
+			}
+			exc = closeException;
+			closeException = null;
+		}
+		IOUtils.throwExc(IOUtils.addExc(exc, closeStorages(closestorages)));
+	}
+
+	@Override
+	public void close() throws IOException {
+		List<ConfiguredRepositoryStorage> closestorages = new ArrayList<>();
+		IOException exc;
+		synchronized (this) {
+			closed = true;
+			for (Iterator<CacheEntry> it = entries.values().iterator(); it.hasNext();) {
+				CacheEntry entry = it.next();
+				if (!entry.inUse) {
+					//the in use storages are closed when released
+					closestorages.add(entry.storage);
+				}
+				it.remove();
+			}
+			if (evictionExecutor != null) {
+				evictionExecutor.shutdownNow();
+				evictionExecutor = null;
+			}
+			exc = closeException;
+			closeException = null;
+		}
+		IOUtils.throwExc(IOUtils.addExc(exc, closeStorages(closestorages)));
+	}
+
+	private void evictIdleEntries() {
+		List<ConfiguredRepositoryStorage> closestorages = new ArrayList<>();
+		synchronized (this) {
+			collectExpiredIdleEntriesLocked(closestorages);
+		}
+		closeStoragesRecordException(closestorages);
+	}
+
+	private void closeStoragesRecordException(List<ConfiguredRepositoryStorage> storages) {
+		IOException exc = closeStorages(storages);
+		if (exc != null) {
+			//report it to the caller of the next release or close
+			synchronized (this) {
+				closeException = IOUtils.addExc(closeException, exc);
+			}
+		}
+	}
+
+	private void collectExpiredIdleEntriesLocked(List<ConfiguredRepositoryStorage> closestorages) {
+		long now = System.nanoTime();
+		for (Iterator<CacheEntry> it = entries.values().iterator(); it.hasNext();) {
+			CacheEntry entry = it.next();
+			if (entry.inUse) {
+				continue;
+			}
+			if (now - entry.idleSinceNanos >= TimeUnit.MILLISECONDS.toNanos(entry.idleEvictionMillis)) {
+				closestorages.add(entry.storage);
+				it.remove();
+				if (TestFlag.ENABLED) {
+					TestFlag.metric().configuredStorageCacheEvicted(entry.storage);
+				}
+			}
+		}
+	}
+
+	private void collectExcessIdleEntriesLocked(List<ConfiguredRepositoryStorage> closestorages) {
+		while (true) {
+			int idlecount = 0;
+			CacheKey oldestkey = null;
+			CacheEntry oldest = null;
+			for (Entry<CacheKey, CacheEntry> mapentry : entries.entrySet()) {
+				CacheEntry entry = mapentry.getValue();
+				if (entry.inUse) {
+					continue;
+				}
+				++idlecount;
+				if (oldest == null || entry.idleSinceNanos - oldest.idleSinceNanos < 0) {
+					oldest = entry;
+					oldestkey = mapentry.getKey();
+				}
+			}
+			if (idlecount <= MAX_IDLE_ENTRY_COUNT) {
+				return;
+			}
+			entries.remove(oldestkey);
+			closestorages.add(oldest.storage);
+			if (TestFlag.ENABLED) {
+				TestFlag.metric().configuredStorageCacheEvicted(oldest.storage);
+			}
+		}
+	}
+
+	private void scheduleEvictionLocked(long idleevictionmillis) {
+		ScheduledThreadPoolExecutor executor = evictionExecutor;
+		if (executor == null) {
+			executor = new ScheduledThreadPoolExecutor(1, r -> {
+				Thread result = new Thread(r, "Nest configured storage evictor");
+				result.setDaemon(true);
+				return result;
+			});
+			executor.setKeepAliveTime(5, TimeUnit.SECONDS);
+			executor.allowCoreThreadTimeOut(true);
+			evictionExecutor = executor;
+		}
+		executor.schedule(this::evictIdleEntries, idleevictionmillis, TimeUnit.MILLISECONDS);
+	}
+
+	private static boolean validate(ConfiguredRepositoryStorage storage, RepositoryBuildEnvironment environment) {
+		storage.rebindBuildEnvironment(environment);
+		ExecutionPathConfiguration pathconfig = environment.getPathConfiguration();
+		try {
+			Object detectedchanges = storage.detectChanges(pathconfig);
+			if (detectedchanges != null) {
+				storage.handleChanges(pathconfig, detectedchanges);
+			}
+			return true;
+		} catch (RuntimeException e) {
+			//failed to update the storage, don't reuse it
+			return false;
+		}
+	}
+
+	private static IOException closeStorages(List<ConfiguredRepositoryStorage> storages) {
+		IOException exc = null;
+		for (ConfiguredRepositoryStorage storage : storages) {
+			exc = IOUtils.closeExc(exc, storage);
+		}
+		return exc;
+	}
+
+	private static long getIdleEvictionMillis() {
+		if (TestFlag.ENABLED) {
+			return TestFlag.metric().overrideConfiguredStorageCacheIdleEvictionMillis(IDLE_EVICTION_MILLIS);
+		}
+		return IDLE_EVICTION_MILLIS;
+	}
+
+	private static boolean isCachingEnabled(RepositoryBuildEnvironment environment) {
+		String param = environment.getUserParameters().get(environment.getIdentifier() + "."
+				+ NestBundleStorageConfiguration.PARAMETER_NEST_REPOSITORY_CONFIGURED_STORAGE_CACHE);
+		return !"false".equalsIgnoreCase(param);
+	}
+
+	private static boolean isRemoteCluster(RepositoryBuildEnvironment environment) {
+		if (saker.build.meta.Versions.VERSION_FULL_COMPOUND >= 8_015) {
+			return environment.isRemoteCluster();
+		}
+		return false;
+	}
+
+	private static final class CacheEntry {
+		protected final ConfiguredRepositoryStorage storage;
+		protected boolean inUse;
+		protected long idleSinceNanos;
+		protected long idleEvictionMillis;
+
+		public CacheEntry(ConfiguredRepositoryStorage storage) {
+			this.storage = storage;
+		}
+	}
+
+	private static final class CacheKey {
+		private final String repositoryIdentifier;
+		private final ExecutionPathConfiguration pathConfiguration;
+		private final NavigableMap<String, String> userParameters;
+		private final SakerFileProvider localFileProvider;
+
+		public CacheKey(String repositoryIdentifier, ExecutionPathConfiguration pathConfiguration,
+				NavigableMap<String, String> userParameters, SakerFileProvider localFileProvider) {
+			this.repositoryIdentifier = repositoryIdentifier;
+			this.pathConfiguration = pathConfiguration;
+			this.userParameters = userParameters;
+			this.localFileProvider = localFileProvider;
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + ((repositoryIdentifier == null) ? 0 : repositoryIdentifier.hashCode());
+			result = prime * result + ((pathConfiguration == null) ? 0 : pathConfiguration.hashCode());
+			result = prime * result + ((userParameters == null) ? 0 : userParameters.hashCode());
+			result = prime * result + ((localFileProvider == null) ? 0 : localFileProvider.hashCode());
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			CacheKey other = (CacheKey) obj;
+			if (repositoryIdentifier == null) {
+				if (other.repositoryIdentifier != null)
+					return false;
+			} else if (!repositoryIdentifier.equals(other.repositoryIdentifier))
+				return false;
+			if (pathConfiguration == null) {
+				if (other.pathConfiguration != null)
+					return false;
+			} else if (!pathConfiguration.equals(other.pathConfiguration))
+				return false;
+			if (userParameters == null) {
+				if (other.userParameters != null)
+					return false;
+			} else if (!userParameters.equals(other.userParameters))
+				return false;
+			if (localFileProvider == null) {
+				if (other.localFileProvider != null)
+					return false;
+			} else if (!localFileProvider.equals(other.localFileProvider))
+				return false;
+			return true;
+		}
+	}
+}
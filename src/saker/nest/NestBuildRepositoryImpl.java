@@ -179,8 +179,12 @@ public class NestBuildRepositoryImpl implements BuildRepository {
 			if (cached != null) {
 				return cached;
 			}
+			if (!TestFlag.metric().isConfiguredStorageCacheEnabled()) {
+				//not recorded by the cache, closed when released
+				return ConfiguredRepositoryStorage.forBuildRepository(nestRepository, environment);
+			}
 		}
-		return ConfiguredRepositoryStorage.forBuildRepository(nestRepository, environment);
+		return nestRepository.getConfiguredStorageCache().checkout(environment);
 	}
 
 	public RepositoryBuildEnvironment getBuildEnvironment() {
@@ -248,7 +252,7 @@ public class NestBuildRepositoryImpl implements BuildRepository {
 				return;
 			}
 		}
-		configuredStorage.close();
+		configuredStorage.getRepository().getConfiguredStorageCache().release(configuredStorage);
 	}
 
 	@Override
@@ -15,16 +15,21 @@
  */
 package saker.nest;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.URI;
-import java.nio.channels.Channels;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
@@ -41,6 +46,8 @@ import java.util.UUID;
 import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import saker.build.file.path.SakerPath;
 import saker.build.file.path.WildcardPath;
@@ -60,17 +67,19 @@ import saker.build.thirdparty.saker.util.io.SerialUtils;
 import saker.build.thirdparty.saker.util.io.StreamUtils;
 import saker.build.thirdparty.saker.util.io.function.IOBiFunction;
 import saker.build.thirdparty.saker.util.io.function.IOSupplier;
-import saker.build.thirdparty.saker.util.thread.ParallelExecutionException;
-import saker.build.thirdparty.saker.util.thread.ThreadUtils;
-import saker.build.thirdparty.saker.util.thread.ThreadUtils.ThreadWorkPool;
+import saker.nest.RepositoryIOExecutor.TaskGroup;
 import saker.nest.bundle.AbstractExternalArchive;
+import saker.nest.bundle.ArchiveEntryBytesCache;
+import saker.nest.bundle.ArchiveHasher;
 import saker.nest.bundle.BundleUtils;
+import saker.nest.bundle.ExternalArchiveFetchCoordinator;
 import saker.nest.bundle.ExternalAttachmentInformation;
 import saker.nest.bundle.ExternalDependency;
 import saker.nest.bundle.ExternalDependencyInformation;
 import saker.nest.bundle.ExternalDependencyList;
 import saker.nest.bundle.Hashes;
 import saker.nest.bundle.JarExternalArchiveImpl;
+import saker.nest.bundle.NestedJarExternalArchiveImpl;
 import saker.nest.bundle.SimpleExternalArchiveKey;
 import saker.nest.bundle.storage.AbstractBundleStorage;
 import saker.nest.bundle.storage.AbstractBundleStorageView;
@@ -86,6 +95,8 @@ public final class NestRepositoryImpl implements SakerRepository, NestRepository
 
 	private static final String STORAGE_DIRECTORY_NAME_EXTERNAL_ARCHIVES = "external";
 	private static final String EXTERNAL_ARCHIVES_SUBDIRECTORY_ENTRIES = "entries";
+	private static final String EXTERNAL_ARCHIVE_HASHES_FILE_EXTENSION = ".hashes";
+	private static final int EXTERNAL_ARCHIVE_HASHES_FORMAT_VERSION = 1;
 
 	private volatile boolean closed = false;
 
@@ -99,6 +110,12 @@ public final class NestRepositoryImpl implements SakerRepository, NestRepository
 	final ConcurrentSkipListMap<Path, Object> externalArchiveLoadLocks = new ConcurrentSkipListMap<>();
 	final ConcurrentSkipListMap<Path, ExternalArchiveReference> externalArchives = new ConcurrentSkipListMap<>();
 
+	private final ArchiveEntryBytesCache entryBytesCache = new ArchiveEntryBytesCache(
+			ArchiveEntryBytesCache.DEFAULT_MAX_SIZE);
+	private final ExternalArchiveFetchCoordinator externalArchiveFetchCoordinator = new ExternalArchiveFetchCoordinator();
+	private final RepositoryIOExecutor ioExecutor = RepositoryIOExecutor.createFromSystemProperties();
+	private final ConfiguredRepositoryStorageCache configuredStorageCache = new ConfiguredRepositoryStorageCache(this);
+
 	public NestRepositoryImpl(RepositoryEnvironment environment) {
 		this.repositoryEnvironment = environment;
 		this.classPathPath = environment.getRepositoryClassPath();
@@ -183,6 +200,9 @@ public final class NestRepositoryImpl implements SakerRepository, NestRepository
 		closed = true;
 		IOException exc = null;
 
+		//close the cached configurations before the storages they use
+		exc = IOUtils.closeExc(exc, configuredStorageCache);
+
 		//synchronize on a synchronized map
 		synchronized (storageLoadLocks) {
 			for (Entry<AbstractStorageKey, Object> lockentry : storageLoadLocks.entrySet()) {
@@ -204,9 +224,67 @@ public final class NestRepositoryImpl implements SakerRepository, NestRepository
 			}
 		}
 
+		if (TestFlag.ENABLED) {
+			TestFlag.metric().archiveEntryBytesCacheClosed(entryBytesCache.getHitCount(),
+					entryBytesCache.getMissCount());
+			ExternalArchiveFetchCoordinator fetchcoordinator = getExternalArchiveFetchCoordinator();
+			TestFlag.metric().externalArchiveFetchesClosed(fetchcoordinator.getFetchCount(),
+					fetchcoordinator.getFetchedByteCount(), fetchcoordinator.getSharedFetchCount());
+		}
+		entryBytesCache.clear();
+		ioExecutor.close();
+
 		IOUtils.throwExc(exc);
 	}
 
+	/**
+	 * Gets the archive entry contents cache that is shared by the class loaders of the repository.
+	 * 
+	 * @return The cache.
+	 */
+	public ArchiveEntryBytesCache getEntryBytesCache() {
+		return entryBytesCache;
+	}
+
+	/**
+	 * Gets the coordinator that is used to fetch the external archives of the repository.
+	 * <p>
+	 * The coordinator can be used to query the statistics of the external archive loading.
+	 * 
+	 * @return The fetch coordinator.
+	 */
+	public ExternalArchiveFetchCoordinator getExternalArchiveFetchCoordinator() {
+		return externalArchiveFetchCoordinator;
+	}
+
+	/**
+	 * Starts the argument background I/O task asynchronously on the executor of the repository.
+	 * <p>
+	 * The number of concurrently running and queued tasks is limited. If the limit is reached, the task is not
+	 * executed. The task shouldn't wait for other tasks executed by this method.
+	 * 
+	 * @param task
+	 *            The task to execute.
+	 * @return <code>true</code> if the task was started, <code>false</code> if the repository is closed or the task
+	 *             was rejected.
+	 */
+	public boolean executeIOAsync(Runnable task) {
+		return ioExecutor.executeAsync(task);
+	}
+
+	/**
+	 * Gets the executor that runs the background and concurrent I/O operations of the repository.
+	 * 
+	 * @return The executor.
+	 */
+	public RepositoryIOExecutor getIOExecutor() {
+		return ioExecutor;
+	}
+
+	ConfiguredRepositoryStorageCache getConfiguredStorageCache() {
+		return configuredStorageCache;
+	}
+
 	protected AbstractBundleStorage loadStorage(AbstractStorageKey key) {
 		synchronized (storageLoadLocks.computeIfAbsent(key, Functionals.objectComputer())) {
 			if (closed) {
@@ -304,18 +382,57 @@ public final class NestRepositoryImpl implements SakerRepository, NestRepository
 	public Map<SimpleExternalArchiveKey, ? extends AbstractExternalArchive> loadExternalArchives(
 			ExternalDependencyInformation depinfo, AbstractBundleStorageView domainbundlestorage)
 			throws NullPointerException, IllegalArgumentException, ExternalArchiveLoadingFailedException {
+		return loadExternalArchives(depinfo, domainbundlestorage, false);
+	}
+
+	/**
+	 * Loads the external archives of the given dependency information.
+	 * <p>
+	 * If mapped nested archives are enabled, the JAR entries of the external dependencies that are stored without
+	 * compression are served directly from the memory mapped containing archive instead of extracting them. See
+	 * {@link NestedJarExternalArchiveImpl}. Compressed entries are always extracted.
+	 * <p>
+	 * The archives are shared by the callers. If an entry archive was already loaded, it is returned regardless of the
+	 * argument mode.
+	 * 
+	 * @param depinfo
+	 *            The dependency information.
+	 * @param domainbundlestorage
+	 *            The bundle storage view to load the archives from.
+	 * @param mappednestedarchives
+	 *            Whether or not nested archives should be used for the JAR entries.
+	 * @return The loaded archives mapped to their keys.
+	 * @throws NullPointerException
+	 *             If an argument is <code>null</code>.
+	 * @throws IllegalArgumentException
+	 *             If the dependency information is invalid.
+	 * @throws ExternalArchiveLoadingFailedException
+	 *             If the loading failed.
+	 * @since saker.nest 0.8.10
+	 */
+	public Map<SimpleExternalArchiveKey, ? extends AbstractExternalArchive> loadExternalArchives(
+			ExternalDependencyInformation depinfo, AbstractBundleStorageView domainbundlestorage,
+			boolean mappednestedarchives)
+			throws NullPointerException, IllegalArgumentException, ExternalArchiveLoadingFailedException {
 		IOBiFunction<URI, Hashes, InputStream> inputsupplier = domainbundlestorage::openExternalDependencyURI;
 
-		return loadExternalArchives(depinfo, inputsupplier);
+		return loadExternalArchives(depinfo, inputsupplier, mappednestedarchives);
 	}
 
 	public Map<SimpleExternalArchiveKey, ? extends AbstractExternalArchive> loadExternalArchives(
 			ExternalDependencyInformation depinfo,
 			IOBiFunction<? super URI, ? super Hashes, ? extends InputStream> inputsupplier)
 			throws ExternalArchiveLoadingFailedException {
+		return loadExternalArchives(depinfo, inputsupplier, false);
+	}
+
+	public Map<SimpleExternalArchiveKey, ? extends AbstractExternalArchive> loadExternalArchives(
+			ExternalDependencyInformation depinfo,
+			IOBiFunction<? super URI, ? super Hashes, ? extends InputStream> inputsupplier,
+			boolean mappednestedarchives) throws ExternalArchiveLoadingFailedException {
 		Objects.requireNonNull(depinfo, "dependency info");
 		Map<SimpleExternalArchiveKey, ExternalArchiveReference> archiverefs = loadExternalArchivesImpl(depinfo,
-				inputsupplier);
+				inputsupplier, mappednestedarchives);
 		LinkedHashMap<SimpleExternalArchiveKey, AbstractExternalArchive> result = new LinkedHashMap<>();
 		for (Entry<SimpleExternalArchiveKey, ExternalArchiveReference> entry : archiverefs.entrySet()) {
 			result.put(entry.getKey(), entry.getValue().archive);
@@ -416,8 +533,8 @@ public final class NestRepositoryImpl implements SakerRepository, NestRepository
 
 	private Map<SimpleExternalArchiveKey, ExternalArchiveReference> loadExternalArchivesImpl(
 			ExternalDependencyInformation extdependencies,
-			IOBiFunction<? super URI, ? super Hashes, ? extends InputStream> inputsupplier)
-			throws ExternalArchiveLoadingFailedException {
+			IOBiFunction<? super URI, ? super Hashes, ? extends InputStream> inputsupplier,
+			boolean mappednestedarchives) throws ExternalArchiveLoadingFailedException {
 		if (extdependencies.isEmpty()) {
 			return Collections.emptyMap();
 		}
@@ -441,7 +558,7 @@ public final class NestRepositoryImpl implements SakerRepository, NestRepository
 			return Collections.emptyMap();
 		}
 
-		try (ThreadWorkPool loaderpool = ThreadUtils.newDynamicWorkPool(null, "ext-dep-loader-", null, true)) {
+		try (TaskGroup loaderpool = ioExecutor.newTaskGroup(ioExecutor.getParallelism())) {
 			for (Entry<URI, ExternalDependencyList> entry : loaddependencies) {
 				ExternalDependencyList deplist = entry.getValue();
 
@@ -492,7 +609,7 @@ public final class NestRepositoryImpl implements SakerRepository, NestRepository
 							for (String ename : includedentrynames) {
 								int idx = i++;
 								loadEmbeddedArchive(loaderpool, extarchive, ename, archivepath, uri,
-										(embeddedarchive, ee) -> {
+										mappednestedarchives, (embeddedarchive, ee) -> {
 											if (ee != null) {
 												throw new ExternalArchiveLoadingFailedException(
 														"Failed to load external dependency entry: " + ename + " in "
@@ -514,7 +631,7 @@ public final class NestRepositoryImpl implements SakerRepository, NestRepository
 					loadExternalAttachmentsImpl(loaderpool, attachcollector, attachments, urihashes, inputsupplier);
 				}
 			}
-		} catch (ParallelExecutionException e) {
+		} catch (ExecutionException e) {
 			throw new ExternalArchiveLoadingFailedException(e);
 		}
 		Map<SimpleExternalArchiveKey, ExternalArchiveReference> result = new LinkedHashMap<>();
@@ -529,7 +646,7 @@ public final class NestRepositoryImpl implements SakerRepository, NestRepository
 		return result;
 	}
 
-	private void loadExternalAttachmentsImpl(ThreadWorkPool loaderpool, ArchiveCollector attachcollector,
+	private void loadExternalAttachmentsImpl(TaskGroup loaderpool, ArchiveCollector attachcollector,
 			Map<URI, ExternalAttachmentInformation> attachments, Map<URI, Hashes> urihashes,
 			IOBiFunction<? super URI, ? super Hashes, ? extends InputStream> inputsupplier)
 			throws ExternalArchiveLoadingFailedException {
@@ -571,7 +688,7 @@ public final class NestRepositoryImpl implements SakerRepository, NestRepository
 							for (String ename : includedentrynames) {
 								int idx = i++;
 								loadEmbeddedArchive(loaderpool, extarchive, ename, attachmentarchivepath, attachmenturi,
-										(embeddedarchive, ee) -> {
+										false, (embeddedarchive, ee) -> {
 											if (ee != null) {
 												throw new ExternalArchiveLoadingFailedException(
 														"Failed to load external dependency attachment: " + ename
@@ -594,9 +711,9 @@ public final class NestRepositoryImpl implements SakerRepository, NestRepository
 				throws ExternalArchiveLoadingFailedException;
 	}
 
-	private void loadEmbeddedArchive(ThreadWorkPool loaderpool, ExternalArchiveReference containingarchive,
-			String ename, Path archivepath, URI archiveuri, ExternalArchiveLoadConsumer resultconsumer)
-			throws ExternalArchiveLoadingFailedException {
+	private void loadEmbeddedArchive(TaskGroup loaderpool, ExternalArchiveReference containingarchive,
+			String ename, Path archivepath, URI archiveuri, boolean mappednestedarchives,
+			ExternalArchiveLoadConsumer resultconsumer) throws ExternalArchiveLoadingFailedException {
 		Path entrypath = archivepath.resolveSibling(EXTERNAL_ARCHIVES_SUBDIRECTORY_ENTRIES).resolve(ename);
 		ExternalArchiveReference extarchive = externalArchives.get(entrypath);
 		if (extarchive != null) {
@@ -605,7 +722,13 @@ public final class NestRepositoryImpl implements SakerRepository, NestRepository
 		}
 		loaderpool.offer(() -> {
 			try {
-				ExternalArchiveReference archive = loadEmbeddedArchive(containingarchive, ename, entrypath, archiveuri);
+				ExternalArchiveReference archive = null;
+				if (mappednestedarchives) {
+					archive = loadNestedArchive(containingarchive, ename, entrypath);
+				}
+				if (archive == null) {
+					archive = loadEmbeddedArchive(containingarchive, ename, entrypath, archiveuri);
+				}
 				resultconsumer.accept(archive, null);
 			} catch (Exception e) {
 				resultconsumer.accept(null, e);
@@ -613,7 +736,7 @@ public final class NestRepositoryImpl implements SakerRepository, NestRepository
 		});
 	}
 
-	private void loadExternalArchive(ThreadWorkPool loaderpool, URI uri, Path archivepath, Hashes expectedhashes,
+	private void loadExternalArchive(TaskGroup loaderpool, URI uri, Path archivepath, Hashes expectedhashes,
 			IOBiFunction<? super URI, ? super Hashes, ? extends InputStream> inputsupplier,
 			ExternalArchiveLoadConsumer resultconsumer) throws ExternalArchiveLoadingFailedException {
 		ExternalArchiveReference extarchive = externalArchives.get(archivepath);
@@ -643,6 +766,44 @@ public final class NestRepositoryImpl implements SakerRepository, NestRepository
 		}
 	}
 
+	/**
+	 * Loads the entry of the containing archive as a nested archive that is read from the containing archive
+	 * directly.
+	 * <p>
+	 * Returns <code>null</code> if the entry cannot be loaded this way, in which case it should be extracted.
+	 */
+	private ExternalArchiveReference loadNestedArchive(ExternalArchiveReference containingarchive, String ename,
+			Path entrypath) {
+		if (!(containingarchive.archive instanceof JarExternalArchiveImpl)) {
+			return null;
+		}
+		synchronized (externalArchiveLoadLocks.computeIfAbsent(entrypath, Functionals.objectComputer())) {
+			ExternalArchiveReference extarchive = externalArchives.get(entrypath);
+			if (extarchive != null) {
+				return extarchive;
+			}
+			SimpleExternalArchiveKey archivekey = new SimpleExternalArchiveKey(
+					containingarchive.archive.getArchiveKey().getUri(), ename);
+			NestedJarExternalArchiveImpl nestedarchive;
+			try {
+				nestedarchive = NestedJarExternalArchiveImpl.create(archivekey,
+						(JarExternalArchiveImpl) containingarchive.archive, ename, entrypath);
+			} catch (IOException | IllegalArgumentException e) {
+				//the archive format is not supported by the mapped reader, or the nested JAR is invalid
+				//    fall back to extracting it, which reports the errors appropriately
+				return null;
+			}
+			if (nestedarchive == null) {
+				//the entry is compressed
+				return null;
+			}
+			//the nested archive is verified as part of the containing archive, the hashes are not needed
+			extarchive = new ExternalArchiveReference(nestedarchive, null);
+			externalArchives.put(entrypath, extarchive);
+			return extarchive;
+		}
+	}
+
 	private ExternalArchiveReference loadEmbeddedArchive(ExternalArchiveReference containingarchive, String ename,
 			Path entrypath, URI archiveuri) throws IOException, ExternalArchiveLoadingFailedException {
 
@@ -677,7 +838,8 @@ public final class NestRepositoryImpl implements SakerRepository, NestRepository
 		} else {
 			entryhash = containingarchive.getEntryHash(ename);
 		}
-		if (!entryhash.equals(result.hashes)) {
+		//the hashes of mapped nested archives are not computed, they are verified with their containing archive
+		if (result.hashes != null && !entryhash.equals(result.hashes)) {
 			throw new ExternalArchiveLoadingFailedException(
 					"External archive entry hash mismatch: " + ename + " in " + archiveuri);
 		}
@@ -697,7 +859,7 @@ public final class NestRepositoryImpl implements SakerRepository, NestRepository
 			Hashes[] loadhashes = { null };
 			loadhashes[0] = loadExternalArchiveFromInputImpl(archivepath, archiveinputsupplier);
 			jararchive = JarExternalArchiveImpl.create(archivekey, archivepath, channel -> {
-				Hashes verifyhashes = getHashesFromChannel(channel);
+				Hashes verifyhashes = getArchiveHashes(archivepath, channel);
 				if (loadhashes[0] != null && !loadhashes[0].equals(verifyhashes)) {
 					throw new NestSignatureVerificationException(
 							"External archive signature mismatch between loading and opening: " + archivepath);
@@ -725,64 +887,130 @@ public final class NestRepositoryImpl implements SakerRepository, NestRepository
 		return extarchive;
 	}
 
-	private static Hashes getHashesFromChannel(SeekableByteChannel channel) throws AssertionError, IOException {
-		MessageDigest sha1;
-		MessageDigest sha256;
-		MessageDigest md5;
+	/**
+	 * Gets the hashes of the archive at the given path.
+	 * <p>
+	 * The hashes are stored in a file next to the archive, along with the size, modification time, and file key of
+	 * the archive. If the archive wasn't modified since the hashes were stored, the archive contents are not hashed
+	 * again.
+	 */
+	private static Hashes getArchiveHashes(Path archivepath, SeekableByteChannel channel) throws IOException {
+		BasicFileAttributes attrs = Files.readAttributes(archivepath, BasicFileAttributes.class);
+		Hashes result = readArchiveHashesFile(archivepath, attrs);
+		if (result != null) {
+			return result;
+		}
+		result = ArchiveHasher.hash(channel, attrs.size());
+		try {
+			writeArchiveHashesFile(archivepath, attrs, result);
+		} catch (IOException e) {
+			//failed to write, the archive will be hashed next time
+		}
+		return result;
+	}
+
+	private static Path getArchiveHashesFilePath(Path archivepath) {
+		return archivepath.resolveSibling(archivepath.getFileName() + EXTERNAL_ARCHIVE_HASHES_FILE_EXTENSION);
+	}
+
+	private static String getFileKeyString(BasicFileAttributes attrs) {
+		return Objects.toString(attrs.fileKey(), "");
+	}
+
+	private static Hashes readArchiveHashesFile(Path archivepath, BasicFileAttributes attrs) {
+		byte[] bytes;
 		try {
-			md5 = MessageDigest.getInstance("MD5");
-			sha256 = MessageDigest.getInstance("SHA-256");
-			sha1 = MessageDigest.getInstance("SHA-1");
-		} catch (NoSuchAlgorithmException e) {
-			throw new AssertionError("Failed to retrieve hashing algorithm.", e);
+			bytes = Files.readAllBytes(getArchiveHashesFilePath(archivepath));
+		} catch (IOException e) {
+			//the file doesn't exist, or failed to read
+			return null;
 		}
-		InputStream in = Channels.newInputStream(channel);
-		byte[] buffer = new byte[StreamUtils.DEFAULT_BUFFER_SIZE];
-		for (int read; (read = in.read(buffer)) > 0;) {
-			sha256.update(buffer, 0, read);
-			sha1.update(buffer, 0, read);
-			md5.update(buffer, 0, read);
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+			if (in.readInt() != EXTERNAL_ARCHIVE_HASHES_FORMAT_VERSION) {
+				return null;
+			}
+			if (in.readLong() != attrs.size()) {
+				return null;
+			}
+			if (in.readLong() != attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS)) {
+				return null;
+			}
+			if (!getFileKeyString(attrs).equals(in.readUTF())) {
+				return null;
+			}
+			return new Hashes(in.readUTF(), in.readUTF(), in.readUTF());
+		} catch (IOException e) {
+			//malformed file
+			return null;
 		}
-		Hashes verifyhashes = new Hashes(StringUtils.toHexString(sha256.digest()),
-				StringUtils.toHexString(sha1.digest()), StringUtils.toHexString(md5.digest()));
-		return verifyhashes;
 	}
 
-	private static Hashes loadExternalArchiveFromInputImpl(Path archivepath,
-			IOSupplier<? extends InputStream> archiveinputsupplier) throws IOException {
-		Hashes loadhashes = null;
-		Path tempfile = archivepath.resolveSibling(UUID.randomUUID() + ".temp");
+	private static void writeArchiveHashesFile(Path archivepath, BasicFileAttributes attrs, Hashes hashes)
+			throws IOException {
+		if (hashes.sha256 == null || hashes.sha1 == null || hashes.md5 == null) {
+			return;
+		}
+		Path hashespath = getArchiveHashesFilePath(archivepath);
+		Path tempsibling = hashespath.resolveSibling(UUID.randomUUID() + ".temp");
 		try {
-			synchronized (("nest-external-dep-load:" + archivepath).intern()) {
-				if (!Files.isRegularFile(archivepath)) {
-					Files.createDirectories(archivepath.getParent());
-					try (InputStream is = archiveinputsupplier.get()) {
-						try (OutputStream out = Files.newOutputStream(tempfile)) {
-							if (is instanceof HashingInputStream) {
-								StreamUtils.copyStream(is, out);
-								loadhashes = ((HashingInputStream) is).getHashes();
-							} else {
-								try (HashingOutputStream hasher = new HashingOutputStream(out)) {
-									StreamUtils.copyStream(is, hasher);
-									loadhashes = hasher.getHashes();
-								}
+			try (DataOutputStream out = new DataOutputStream(
+					Files.newOutputStream(tempsibling, StandardOpenOption.CREATE_NEW))) {
+				out.writeInt(EXTERNAL_ARCHIVE_HASHES_FORMAT_VERSION);
+				out.writeLong(attrs.size());
+				out.writeLong(attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS));
+				out.writeUTF(getFileKeyString(attrs));
+				out.writeUTF(hashes.sha256);
+				out.writeUTF(hashes.sha1);
+				out.writeUTF(hashes.md5);
+			}
+			Files.move(tempsibling, hashespath, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(tempsibling);
+		}
+	}
+
+	private Hashes loadExternalArchiveFromInputImpl(Path archivepath,
+			IOSupplier<? extends InputStream> archiveinputsupplier) throws IOException {
+		return externalArchiveFetchCoordinator.fetch(archivepath, () -> {
+			Hashes loadhashes = null;
+			Path tempfile = archivepath.resolveSibling(UUID.randomUUID() + ".temp");
+			try {
+				try (InputStream is = archiveinputsupplier.get()) {
+					try (OutputStream out = Files.newOutputStream(tempfile)) {
+						if (is instanceof HashingInputStream) {
+							StreamUtils.copyStream(is, out);
+							loadhashes = ((HashingInputStream) is).getHashes();
+						} else {
+							try (HashingOutputStream hasher = new HashingOutputStream(out)) {
+								StreamUtils.copyStream(is, hasher);
+								loadhashes = hasher.getHashes();
 							}
 						}
 					}
+				}
+				try {
+					Files.move(tempfile, archivepath);
+				} catch (IOException e) {
+					if (!Files.isRegularFile(archivepath)) {
+						throw e;
+					}
+					//continue, somebody loaded concurrently without coordination
+					return loadhashes;
+				}
+				if (loadhashes != null) {
+					//store the hashes so the archive doesn't need to be hashed again when it is opened
 					try {
-						Files.move(tempfile, archivepath);
+						writeArchiveHashesFile(archivepath,
+								Files.readAttributes(archivepath, BasicFileAttributes.class), loadhashes);
 					} catch (IOException e) {
-						if (!Files.isRegularFile(archivepath)) {
-							throw e;
-						}
-						//continue, somebody loaded concurrently in other jvm?
+						//failed to write, the archive will be hashed when opened
 					}
 				}
+			} finally {
+				Files.deleteIfExists(tempfile);
 			}
-		} finally {
-			Files.deleteIfExists(tempfile);
-		}
-		return loadhashes;
+			return loadhashes;
+		});
 	}
 
 	private static void checkHashes(Hashes loadhashes, Hashes expectedhashes)
@@ -0,0 +1,448 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.nest;
+
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded executor for the background I/O operations of the repository.
+ * <p>
+ * The executor limits the number of concurrently running tasks and the number of tasks that are waiting for
+ * execution. If the queue is full, the submitted tasks are rejected rather than blocking the caller or starting new
+ * threads. The tasks are run on virtual threads if the current JVM supports them, and on daemon platform threads
+ * otherwise.
+ * <p>
+ * The executor is configured using the following system properties:
+ * <ul>
+ * <li><code>saker.nest.repository.io.parallelism</code>: The maximum number of concurrently running tasks.</li>
+ * <li><code>saker.nest.repository.io.queue.depth</code>: The maximum number of waiting tasks.</li>
+ * <li><code>saker.nest.repository.io.virtual.threads</code>: Set to <code>false</code> to disable the use of virtual
+ * threads.</li>
+ * </ul>
+ * Invalid property values cause the repository to fail to load.
+ * <p>
+ * The components of the repository that execute tasks concurrently use {@linkplain TaskGroup task groups} of the
+ * executor instead of creating their own threads.
+ */
+public final class RepositoryIOExecutor {
+	public static final String PROPERTY_PARALLELISM = "saker.nest.repository.io.parallelism";
+	public static final String PROPERTY_QUEUE_DEPTH = "saker.nest.repository.io.queue.depth";
+	public static final String PROPERTY_VIRTUAL_THREADS = "saker.nest.repository.io.virtual.threads";
+
+	private static final int DEFAULT_MIN_PARALLELISM = 4;
+	private static final int DEFAULT_QUEUE_DEPTH = 256;
+
+	private static final String THREAD_NAME_PREFIX = "Nest repository I/O-";
+
+	private final int parallelism;
+	private final int queueDepth;
+	private final boolean virtualThreadsAllowed;
+
+	private final Object executorLock = new Object();
+	private ThreadPoolExecutor executor;
+	private boolean closed;
+
+	public RepositoryIOExecutor(int parallelism, int queueDepth, boolean virtualThreadsAllowed) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Invalid parallelism: " + parallelism);
+		}
+		if (queueDepth < 0) {
+			throw new IllegalArgumentException("Invalid queue depth: " + queueDepth);
+		}
+		this.parallelism = parallelism;
+		this.queueDepth = queueDepth;
+		this.virtualThreadsAllowed = virtualThreadsAllowed;
+	}
+
+	/**
+	 * Creates a new executor based on the configuration in the system properties.
+	 * 
+	 * @return The created executor.
+	 * @throws IllegalArgumentException
+	 *             If a property has an invalid value.
+	 */
+	public static RepositoryIOExecutor createFromSystemProperties() throws IllegalArgumentException {
+		int parallelism = getIntProperty(PROPERTY_PARALLELISM,
+				Math.max(DEFAULT_MIN_PARALLELISM, Runtime.getRuntime().availableProcessors()), 1);
+		int queuedepth = getIntProperty(PROPERTY_QUEUE_DEPTH, DEFAULT_QUEUE_DEPTH, 0);
+		boolean virtualthreads = !"false".equalsIgnoreCase(System.getProperty(PROPERTY_VIRTUAL_THREADS));
+		return new RepositoryIOExecutor(parallelism, queuedepth, virtualthreads);
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public int getQueueDepth() {
+		return queueDepth;
+	}
+
+	/**
+	 * Creates a new task group that executes its tasks on this executor.
+	 * 
+	 * @param maxparallelism
+	 *            The maximum number of tasks of the group that may run concurrently on the executor.
+	 * @return The new task group.
+	 * @throws IllegalArgumentException
+	 *             If the parallelism is less than 1.
+	 */
+	public TaskGroup newTaskGroup(int maxparallelism) throws IllegalArgumentException {
+		if (maxparallelism < 1) {
+			throw new IllegalArgumentException("Invalid parallelism: " + maxparallelism);
+		}
+		return new TaskGroup(this, maxparallelism);
+	}
+
+	/**
+	 * Submits the argument task for asynchronous execution.
+	 * 
+	 * @param task
+	 *            The task.
+	 * @return <code>true</code> if the task was submitted, <code>false</code> if the executor is closed or the queue
+	 *             is full.
+	 */
+	public boolean executeAsync(Runnable task) {
+		ThreadPoolExecutor executor;
+		synchronized (executorLock) {
+			if (closed) {
+				return false;
+			}
+			executor = this.executor;
+			if (executor == null) {
+				BlockingQueue<Runnable> queue;
+				if (queueDepth == 0) {
+					queue = new SynchronousQueue<>();
+				} else {
+					queue = new ArrayBlockingQueue<>(queueDepth);
+				}
+				executor = new ThreadPoolExecutor(parallelism, parallelism, 5, TimeUnit.SECONDS, queue,
+						createThreadFactory());
+				executor.allowCoreThreadTimeOut(true);
+				this.executor = executor;
+			}
+		}
+		try {
+			executor.execute(task);
+		} catch (RejectedExecutionException e) {
+			//the queue is full or closed concurrently
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Closes the executor.
+	 * <p>
+	 * The queued tasks are discarded, and the running tasks are interrupted. The method doesn't wait for the running
+	 * tasks to finish.
+	 */
+	public void close() {
+		synchronized (executorLock) {
+			closed = true;
+			if (executor != null) {
+				executor.shutdownNow();
+				executor = null;
+			}
+		}
+	}
+
+	private ThreadFactory createThreadFactory() {
+		if (virtualThreadsAllowed) {
+			ThreadFactory virtualfactory = VirtualThreadFactoryHolder.createFactory(THREAD_NAME_PREFIX);
+			if (virtualfactory != null) {
+				return virtualfactory;
+			}
+		}
+		return r -> {
+			Thread result = new Thread(r, THREAD_NAME_PREFIX + "worker");
+			result.setDaemon(true);
+			return result;
+		};
+	}
+
+	private static int getIntProperty(String name, int defaultvalue, int minvalue) throws IllegalArgumentException {
+		String prop = System.getProperty(name);
+		if (prop == null) {
+			return defaultvalue;
+		}
+		int val;
+		try {
+			val = Integer.parseInt(prop.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Failed to parse system property: " + name + " : " + prop, e);
+		}
+		if (val < minvalue) {
+			throw new IllegalArgumentException("Invalid value for system property: " + name + " : " + prop);
+		}
+		return val;
+	}
+
+	/**
+	 * A group of tasks that are executed on the I/O executor with limited parallelism.
+	 * <p>
+	 * The tasks offered to the group are queued in the group, and executed by at most the configured number of
+	 * runners on the executor. If the executor doesn't accept new runners, the tasks remain in the queue of the group
+	 * until an existing runner, or the thread that {@linkplain #close() closes} the group executes them.
+	 * <p>
+	 * Closing the group waits for all of the tasks to finish. The closing thread executes the queued tasks itself
+	 * while waiting, so it doesn't deadlock even if the executor is saturated or the group is closed by a task running
+	 * on the executor.
+	 * <p>
+	 * The group can be used as an {@link Executor}, in which case the tasks are only accepted if they are going to be
+	 * executed by a runner on the executor.
+	 */
+	public static final class TaskGroup implements Executor, AutoCloseable {
+		/**
+		 * A task that is executed by a task group.
+		 */
+		@FunctionalInterface
+		public interface Task {
+			public void run() throws Exception;
+		}
+
+		private final RepositoryIOExecutor executor;
+		private final int maxParallelism;
+
+		private final Object lock = new Object();
+		private final ArrayDeque<Task> queue = new ArrayDeque<>();
+		private int runnerCount;
+		private int runningCount;
+		private List<Throwable> exceptions;
+		private boolean aborted;
+
+		TaskGroup(RepositoryIOExecutor executor, int maxParallelism) {
+			this.executor = executor;
+			this.maxParallelism = maxParallelism;
+		}
+
+		/**
+		 * Offers a task for execution.
+		 * <p>
+		 * The task is executed at the latest when the group is closed. The exceptions thrown by the task are reported
+		 * when the group is closed.
+		 * 
+		 * @param task
+		 *            The task.
+		 */
+		public void offer(Task task) {
+			synchronized (lock) {
+				if (aborted) {
+					return;
+				}
+				queue.add(task);
+				//notify the closing threads so they can help
+				lock.notifyAll();
+			}
+			startRunner();
+		}
+
+		/**
+		 * Executes the argument task on the executor.
+		 * <p>
+		 * The exceptions thrown by the task are ignored, the task should handle them itself.
+		 * 
+		 * @throws RejectedExecutionException
+		 *             If the task cannot be executed, because the executor is saturated or closed, or the group is
+		 *             aborted.
+		 */
+		@Override
+		public void execute(Runnable command) throws RejectedExecutionException {
+			Task task = () -> {
+				try {
+					command.run();
+				} catch (RuntimeException e) {
+					//the task is responsible for handling its exceptions
+				}
+			};
+			synchronized (lock) {
+				if (aborted) {
+					throw new RejectedExecutionException("Task group aborted.");
+				}
+				queue.add(task);
+			}
+			if (startRunner()) {
+				return;
+			}
+			synchronized (lock) {
+				if (runnerCount > 0 || !queue.removeLastOccurrence(task)) {
+					//a runner is going to execute it, or already executing it
+					return;
+				}
+			}
+			throw new RejectedExecutionException("I/O executor saturated.");
+		}
+
+		/**
+		 * Discards the queued tasks of the group, and rejects any further tasks.
+		 * <p>
+		 * The currently running tasks are not waited for.
+		 */
+		public void abort() {
+			synchronized (lock) {
+				aborted = true;
+				queue.clear();
+				exceptions = null;
+				lock.notifyAll();
+			}
+		}
+
+		/**
+		 * Waits for all of the tasks of the group to finish, executing the queued tasks on the caller thread.
+		 * <p>
+		 * The group can be reused after closing.
+		 * 
+		 * @throws ExecutionException
+		 *             If any of the tasks threw an exception. The first exception is the cause, the others are added
+		 *             as suppressed exceptions.
+		 */
+		@Override
+		public void close() throws ExecutionException {
+			boolean interrupted = false;
+			List<Throwable> excs;
+			while (true) {
+				Task task;
+				synchronized (lock) {
+					task = queue.poll();
+					if (task == null) {
+						if (runningCount == 0) {
+							excs = exceptions;
+							exceptions = null;
+							break;
+						}
+						try {
+							lock.wait();
+						} catch (InterruptedException e) {
+							//finish waiting for the tasks, and reinterrupt afterwards
+							interrupted = true;
+						}
+						continue;
+					}
+					++runningCount;
+				}
+				runTask(task);
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			if (excs != null) {
+				ExecutionException exc = new ExecutionException("Failed to execute task.", excs.get(0));
+				for (int i = 1; i < excs.size(); i++) {
+					exc.addSuppressed(excs.get(i));
+				}
+				throw exc;
+			}
+		}
+
+		private boolean startRunner() {
+			synchronized (lock) {
+				if (runnerCount >= maxParallelism || runnerCount >= queue.size()) {
+					return runnerCount > 0;
+				}
+				++runnerCount;
+			}
+			if (executor.executeAsync(this::runTasks)) {
+				return true;
+			}
+			synchronized (lock) {
+				--runnerCount;
+				lock.notifyAll();
+			}
+			return false;
+		}
+
+		private void runTasks() {
+			while (true) {
+				Task task;
+				synchronized (lock) {
+					task = queue.poll();
+					if (task == null) {
+						--runnerCount;
+						return;
+					}
+					++runningCount;
+				}
+				runTask(task);
+			}
+		}
+
+		private void runTask(Task task) {
+			try {
+				task.run();
+			} catch (Throwable e) {
+				synchronized (lock) {
+					if (exceptions == null) {
+						exceptions = new ArrayList<>();
+					}
+					exceptions.add(e);
+				}
+			} finally {
+				synchronized (lock) {
+					--runningCount;
+					lock.notifyAll();
+				}
+			}
+		}
+	}
+
+	private static final class VirtualThreadFactoryHolder {
+		private static final Method ofVirtualMethod;
+		private static final Method builderNameMethod;
+		private static final Method builderFactoryMethod;
+		static {
+			Method ofvirtual = null;
+			Method name = null;
+			Method factory = null;
+			try {
+				//virtual threads are available since Java 21, access them reflectively as we're compiled for Java 8
+				Class<?> builderclass = Class.forName("java.lang.Thread$Builder", false, null);
+				ofvirtual = Thread.class.getMethod("ofVirtual");
+				name = builderclass.getMethod("name", String.class, long.class);
+				factory = builderclass.getMethod("factory");
+			} catch (ClassNotFoundException | NoSuchMethodException | SecurityException e) {
+				ofvirtual = null;
+			}
+			ofVirtualMethod = ofvirtual;
+			builderNameMethod = name;
+			builderFactoryMethod = factory;
+		}
+
+		public static ThreadFactory createFactory(String nameprefix) {
+			if (ofVirtualMethod == null) {
+				return null;
+			}
+			try {
+				Object builder = ofVirtualMethod.invoke(null);
+				builder = builderNameMethod.invoke(builder, nameprefix, 0L);
+				return (ThreadFactory) builderFactoryMethod.invoke(builder);
+			} catch (Exception | LinkageError e) {
+				//the virtual threads may be a disabled preview feature on the current JVM, or otherwise unavailable
+				return null;
+			}
+		}
+	}
+}
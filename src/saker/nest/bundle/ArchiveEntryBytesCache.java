@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.nest.bundle;
+
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import saker.build.thirdparty.saker.util.io.ByteArrayRegion;
+import saker.build.thirdparty.saker.util.io.function.IOSupplier;
+
+/**
+ * Size bounded cache for the contents of archive entries that is shared by the class loaders of the repository.
+ * <p>
+ * The entries are keyed by the hash of the archive and the name of the entry. This allows the entry contents to be
+ * reused by different class loaders that load classes from the same archive, without inflating them again.
+ * <p>
+ * The cached contents are softly referenced, so they can be reclaimed by the garbage collector in low memory
+ * conditions. The least recently used entries are evicted when the total size of the cached contents exceeds the
+ * maximum size.
+ * <p>
+ * The returned byte regions are shared, callers must not modify them.
+ */
+public final class ArchiveEntryBytesCache {
+	/**
+	 * The default maximum size of the cached entry contents in bytes.
+	 */
+	public static final long DEFAULT_MAX_SIZE = 64 * 1024 * 1024;
+
+	private final long maxSize;
+	private final long maxEntrySize;
+
+	/**
+	 * Access ordered map of the entries. Synchronized on itself.
+	 */
+	private final LinkedHashMap<EntryKey, EntryReference> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private final ReferenceQueue<ByteArrayRegion> referenceQueue = new ReferenceQueue<>();
+	/**
+	 * The total size of the entries in the cache. Synchronized on {@link #entries}.
+	 */
+	private long size;
+
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+
+	public ArchiveEntryBytesCache(long maxSize) {
+		if (maxSize < 0) {
+			throw new IllegalArgumentException("Negative maximum size: " + maxSize);
+		}
+		this.maxSize = maxSize;
+		//don't let a single entry take up a large part of the cache
+		this.maxEntrySize = maxSize / 8;
+	}
+
+	public ByteArrayRegion getEntryBytes(NestRepositoryBundle bundle, String name) throws IOException {
+		return getEntryBytes(bundle.getHash(), name, () -> bundle.getEntryBytes(name));
+	}
+
+	public ByteArrayRegion getEntryBytes(ExternalArchive archive, String name) throws IOException {
+		return getEntryBytes(archive.getHash(), name, () -> archive.getEntryBytes(name));
+	}
+
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+			size = 0;
+			expungeStaleEntriesLocked();
+		}
+	}
+
+	private ByteArrayRegion getEntryBytes(byte[] archivehash, String name, IOSupplier<ByteArrayRegion> loader)
+			throws IOException {
+		EntryKey key = new EntryKey(archivehash, name);
+		synchronized (entries) {
+			expungeStaleEntriesLocked();
+			EntryReference ref = entries.get(key);
+			if (ref != null) {
+				ByteArrayRegion result = ref.get();
+				if (result != null) {
+					hitCount.incrementAndGet();
+					return result;
+				}
+				removeLocked(ref);
+			}
+		}
+		missCount.incrementAndGet();
+		//load outside of the lock, the entries may be loaded concurrently
+		ByteArrayRegion result = loader.get();
+		int len = result.getLength();
+		if (len > maxEntrySize) {
+			return result;
+		}
+		synchronized (entries) {
+			EntryReference prev = entries.put(key, new EntryReference(key, result, len, referenceQueue));
+			if (prev != null) {
+				size -= prev.size;
+			}
+			size += len;
+			if (size > maxSize) {
+				for (Iterator<EntryReference> it = entries.values().iterator(); it.hasNext() && size > maxSize;) {
+					EntryReference eldest = it.next();
+					it.remove();
+					size -= eldest.size;
+				}
+			}
+		}
+		return result;
+	}
+
+	private void removeLocked(EntryReference ref) {
+		//only remove if the entry still maps to the reference
+		if (entries.remove(ref.key, ref)) {
+			size -= ref.size;
+		}
+	}
+
+	private void expungeStaleEntriesLocked() {
+		for (Object ref; (ref = referenceQueue.poll()) != null;) {
+			removeLocked((EntryReference) ref);
+		}
+	}
+
+	private static final class EntryReference extends SoftReference<ByteArrayRegion> {
+		protected final EntryKey key;
+		protected final int size;
+
+		public EntryReference(EntryKey key, ByteArrayRegion referent, int size,
+				ReferenceQueue<? super ByteArrayRegion> q) {
+			super(referent, q);
+			this.key = key;
+			this.size = size;
+		}
+	}
+
+	private static final class EntryKey {
+		private final byte[] archiveHash;
+		private final String name;
+		private final int hashCode;
+
+		public EntryKey(byte[] archiveHash, String name) {
+			this.archiveHash = archiveHash;
+			this.name = name;
+			this.hashCode = Arrays.hashCode(archiveHash) * 31 + name.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			EntryKey other = (EntryKey) obj;
+			if (hashCode != other.hashCode)
+				return false;
+			if (!name.equals(other.name))
+				return false;
+			if (!Arrays.equals(archiveHash, other.archiveHash))
+				return false;
+			return true;
+		}
+
+		@Override
+		public String toString() {
+			return "EntryKey[name=" + name + "]";
+		}
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.nest.bundle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+import saker.build.thirdparty.saker.util.StringUtils;
+
+/**
+ * Computes the SHA-256, SHA-1, and MD5 hashes of archive contents in a single pass.
+ * <p>
+ * The contents are read in large chunks. For larger inputs, the digests of a chunk are updated concurrently in the
+ * common pool while the next chunk is being read.
+ * <p>
+ * Heap buffers are used, as the message digests operate on arrays, and direct buffers would be copied to temporary
+ * arrays by each digest.
+ */
+public final class ArchiveHasher {
+	private static final int BUFFER_SIZE = 1024 * 1024;
+	private static final int MIN_BUFFER_SIZE = 8 * 1024;
+	/**
+	 * The input size from which the digests are updated concurrently.
+	 */
+	private static final long PARALLEL_THRESHOLD = 4 * BUFFER_SIZE;
+
+	private ArchiveHasher() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Computes the hashes of the remaining contents of the argument channel.
+	 * 
+	 * @param channel
+	 *            The channel to read.
+	 * @param sizehint
+	 *            The expected number of bytes to read, or negative if unknown.
+	 * @return The computed hashes.
+	 * @throws IOException
+	 *             In case of I/O error.
+	 */
+	public static Hashes hash(ReadableByteChannel channel, long sizehint) throws IOException {
+		MessageDigest sha256;
+		MessageDigest sha1;
+		MessageDigest md5;
+		try {
+			md5 = MessageDigest.getInstance("MD5");
+			sha256 = MessageDigest.getInstance("SHA-256");
+			sha1 = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError("Failed to retrieve hashing algorithm.", e);
+		}
+		if ((sizehint >= 0 && sizehint < PARALLEL_THRESHOLD) || ForkJoinPool.getCommonPoolParallelism() < 2) {
+			int buffersize = sizehint < 0 ? BUFFER_SIZE
+					: (int) Math.max(MIN_BUFFER_SIZE, Math.min(BUFFER_SIZE, sizehint));
+			byte[] buf = new byte[buffersize];
+			for (int len; (len = readFully(channel, buf)) > 0;) {
+				sha256.update(buf, 0, len);
+				sha1.update(buf, 0, len);
+				md5.update(buf, 0, len);
+			}
+		} else {
+			//two buffers are used, one is being read while the other is being digested
+			byte[][] buffers = { new byte[BUFFER_SIZE], new byte[BUFFER_SIZE] };
+			CompletableFuture<?> pending = null;
+			try {
+				for (int idx = 0;; idx ^= 1) {
+					byte[] buf = buffers[idx];
+					int len = readFully(channel, buf);
+					if (pending != null) {
+						//wait for the previous chunk, so the digests are updated in order
+						//    this also ensures that the buffer is no longer used when it is read into the next time
+						pending.join();
+						pending = null;
+					}
+					if (len <= 0) {
+						break;
+					}
+					pending = CompletableFuture.allOf(CompletableFuture.runAsync(() -> sha256.update(buf, 0, len)),
+							CompletableFuture.runAsync(() -> sha1.update(buf, 0, len)),
+							CompletableFuture.runAsync(() -> md5.update(buf, 0, len)));
+				}
+			} finally {
+				if (pending != null) {
+					//don't leave the digesting running if the reading failed
+					pending.join();
+				}
+			}
+		}
+		return new Hashes(StringUtils.toHexString(sha256.digest()), StringUtils.toHexString(sha1.digest()),
+				StringUtils.toHexString(md5.digest()));
+	}
+
+	private static int readFully(ReadableByteChannel channel, byte[] buf) throws IOException {
+		ByteBuffer bb = ByteBuffer.wrap(buf);
+		while (bb.hasRemaining()) {
+			if (channel.read(bb) < 0) {
+				break;
+			}
+		}
+		return bb.position();
+	}
+}
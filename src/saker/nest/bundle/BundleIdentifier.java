@@ -97,6 +97,9 @@ public final class BundleIdentifier implements Comparable<BundleIdentifier>, Ext
 	private NavigableSet<String> qualifiers;
 	private NavigableSet<String> metaQualifiers;
 
+	//cached as the bundle identifiers are frequently used as hash keys during dependency resolution
+	private transient int hashCode;
+
 	/**
 	 * For {@link Externalizable}.
 	 */
@@ -366,11 +369,15 @@ public final class BundleIdentifier implements Comparable<BundleIdentifier>, Ext
 
 	@Override
 	public int hashCode() {
-		final int prime = 31;
-		int result = 1;
-		result = prime * result + name.hashCode();
-		result = prime * result + qualifiers.hashCode();
-		result = prime * result + metaQualifiers.hashCode();
+		int result = this.hashCode;
+		if (result == 0) {
+			final int prime = 31;
+			result = 1;
+			result = prime * result + name.hashCode();
+			result = prime * result + qualifiers.hashCode();
+			result = prime * result + metaQualifiers.hashCode();
+			this.hashCode = result;
+		}
 		return result;
 	}
 
@@ -33,15 +33,16 @@ import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.NavigableMap;
 import java.util.NavigableSet;
 import java.util.Objects;
 import java.util.Set;
 import java.util.TreeMap;
-import java.util.TreeSet;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
@@ -171,7 +172,7 @@ public class BundleUtils {
 	}
 
 	public static NavigableSet<String> getJarEntryNames(JarFile jar) {
-		NavigableSet<String> result = new TreeSet<>();
+		List<String> result = new ArrayList<>();
 		Enumeration<JarEntry> entries = jar.entries();
 		while (entries.hasMoreElements()) {
 			JarEntry jarentry = entries.nextElement();
@@ -179,7 +180,7 @@ public class BundleUtils {
 				result.add(jarentry.getName());
 			}
 		}
-		return ImmutableUtils.makeImmutableNavigableSet(result);
+		return CompactStringSet.create(result);
 	}
 
 	public static ByteArrayRegion getJarEntryBytes(JarFile jarfile, String name)
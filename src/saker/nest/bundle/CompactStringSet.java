@@ -0,0 +1,370 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.nest.bundle;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Immutable sorted set of strings that stores its elements in a compact representation.
+ * <p>
+ * The characters of all strings are stored in a single array, and the start offsets of the strings in another. The
+ * strings are ordered by their natural order. Lookups are performed using binary search, and don't allocate new
+ * objects. The string objects are only created when the elements are iterated or retrieved.
+ * <p>
+ * The class is used to hold the entry names of archives, as there may be many of them loaded in the same JVM, and
+ * the element and node objects of a {@link TreeSet} take up significantly more memory.
+ * <p>
+ * The subset views of the set share the underlying arrays.
+ */
+public final class CompactStringSet extends AbstractSet<String> implements NavigableSet<String> {
+	private static final CompactStringSet EMPTY = new CompactStringSet(new char[0], new int[] { 0 }, 0, 0);
+
+	private final char[] chars;
+	/**
+	 * The start offsets of the strings in {@link #chars}. Contains an additional element for the end of the last
+	 * string.
+	 */
+	private final int[] offsets;
+	private final int fromIndex;
+	private final int toIndex;
+
+	private CompactStringSet(char[] chars, int[] offsets, int fromIndex, int toIndex) {
+		this.chars = chars;
+		this.offsets = offsets;
+		this.fromIndex = fromIndex;
+		this.toIndex = toIndex;
+	}
+
+	/**
+	 * Creates a new set that contains the argument strings.
+	 * 
+	 * @param strings
+	 *            The strings.
+	 * @return The created set.
+	 * @throws NullPointerException
+	 *             If the argument or any of the elements are <code>null</code>.
+	 */
+	public static CompactStringSet create(Collection<String> strings) throws NullPointerException {
+		return create(strings.toArray(new String[strings.size()]));
+	}
+
+	/**
+	 * Creates a new set that contains the argument strings.
+	 * <p>
+	 * The argument array may be modified by this method.
+	 * <p>
+	 * If the argument array is already sorted and contains no duplicates, the indices of the elements in the created
+	 * set are the same as in the array.
+	 * 
+	 * @param strings
+	 *            The strings.
+	 * @return The created set.
+	 * @throws NullPointerException
+	 *             If the argument or any of the elements are <code>null</code>.
+	 */
+	public static CompactStringSet create(String[] strings) throws NullPointerException {
+		if (strings.length == 0) {
+			return EMPTY;
+		}
+		Arrays.sort(strings);
+		int count = 0;
+		int charcount = 0;
+		for (int i = 0; i < strings.length; i++) {
+			String s = strings[i];
+			if (count > 0 && strings[count - 1].equals(s)) {
+				continue;
+			}
+			strings[count++] = s;
+			charcount += s.length();
+		}
+		char[] chars = new char[charcount];
+		int[] offsets = new int[count + 1];
+		int offset = 0;
+		for (int i = 0; i < count; i++) {
+			String s = strings[i];
+			offsets[i] = offset;
+			s.getChars(0, s.length(), chars, offset);
+			offset += s.length();
+		}
+		offsets[count] = offset;
+		return new CompactStringSet(chars, offsets, 0, count);
+	}
+
+	@Override
+	public int size() {
+		return toIndex - fromIndex;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return toIndex == fromIndex;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		if (!(o instanceof String)) {
+			return false;
+		}
+		return search((String) o) >= 0;
+	}
+
+	/**
+	 * Gets the index of the argument string in the backing storage.
+	 * 
+	 * @param s
+	 *            The string.
+	 * @return The index of the string, or a negative value if not found.
+	 */
+	int indexOf(String s) {
+		int idx = search(s);
+		return idx < 0 ? -1 : idx;
+	}
+
+	/**
+	 * Gets the string at the given index of the backing storage.
+	 */
+	String get(int idx) {
+		int start = offsets[idx];
+		return new String(chars, start, offsets[idx + 1] - start);
+	}
+
+	@Override
+	public Iterator<String> iterator() {
+		return new Iterator<String>() {
+			private int idx = fromIndex;
+
+			@Override
+			public boolean hasNext() {
+				return idx < toIndex;
+			}
+
+			@Override
+			public String next() {
+				if (idx >= toIndex) {
+					throw new NoSuchElementException();
+				}
+				return get(idx++);
+			}
+		};
+	}
+
+	@Override
+	public Iterator<String> descendingIterator() {
+		return new Iterator<String>() {
+			private int idx = toIndex - 1;
+
+			@Override
+			public boolean hasNext() {
+				return idx >= fromIndex;
+			}
+
+			@Override
+			public String next() {
+				if (idx < fromIndex) {
+					throw new NoSuchElementException();
+				}
+				return get(idx--);
+			}
+		};
+	}
+
+	@Override
+	public NavigableSet<String> descendingSet() {
+		//rarely used, no need for a specialized view
+		return Collections.unmodifiableNavigableSet(new TreeSet<>(this)).descendingSet();
+	}
+
+	@Override
+	public Comparator<? super String> comparator() {
+		return null;
+	}
+
+	@Override
+	public String first() {
+		if (isEmpty()) {
+			throw new NoSuchElementException();
+		}
+		return get(fromIndex);
+	}
+
+	@Override
+	public String last() {
+		if (isEmpty()) {
+			throw new NoSuchElementException();
+		}
+		return get(toIndex - 1);
+	}
+
+	@Override
+	public String lower(String e) {
+		return getOrNull(lowerIndex(e));
+	}
+
+	@Override
+	public String floor(String e) {
+		return getOrNull(floorIndex(e));
+	}
+
+	@Override
+	public String ceiling(String e) {
+		return getOrNull(ceilingIndex(e));
+	}
+
+	@Override
+	public String higher(String e) {
+		return getOrNull(higherIndex(e));
+	}
+
+	@Override
+	public String pollFirst() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String pollLast() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public NavigableSet<String> subSet(String fromElement, boolean fromInclusive, String toElement,
+			boolean toInclusive) {
+		if (fromElement.compareTo(toElement) > 0) {
+			throw new IllegalArgumentException("Invalid range: " + fromElement + " - " + toElement);
+		}
+		int start = fromInclusive ? ceilingIndex(fromElement) : higherIndex(fromElement);
+		int end = (toInclusive ? floorIndex(toElement) : lowerIndex(toElement)) + 1;
+		return subSetImpl(start, end);
+	}
+
+	@Override
+	public NavigableSet<String> headSet(String toElement, boolean inclusive) {
+		int end = (inclusive ? floorIndex(toElement) : lowerIndex(toElement)) + 1;
+		return subSetImpl(fromIndex, end);
+	}
+
+	@Override
+	public NavigableSet<String> tailSet(String fromElement, boolean inclusive) {
+		int start = inclusive ? ceilingIndex(fromElement) : higherIndex(fromElement);
+		return subSetImpl(start, toIndex);
+	}
+
+	@Override
+	public SortedSet<String> subSet(String fromElement, String toElement) {
+		return subSet(fromElement, true, toElement, false);
+	}
+
+	@Override
+	public SortedSet<String> headSet(String toElement) {
+		return headSet(toElement, false);
+	}
+
+	@Override
+	public SortedSet<String> tailSet(String fromElement) {
+		return tailSet(fromElement, true);
+	}
+
+	private NavigableSet<String> subSetImpl(int start, int end) {
+		if (end < start) {
+			end = start;
+		}
+		if (start == fromIndex && end == toIndex) {
+			return this;
+		}
+		return new CompactStringSet(chars, offsets, start, end);
+	}
+
+	private String getOrNull(int idx) {
+		if (idx < fromIndex || idx >= toIndex) {
+			return null;
+		}
+		return get(idx);
+	}
+
+	/**
+	 * Index of the greatest element less than the argument, or <code>fromIndex - 1</code> if none.
+	 */
+	private int lowerIndex(String e) {
+		int idx = search(e);
+		return idx >= 0 ? idx - 1 : -idx - 2;
+	}
+
+	private int floorIndex(String e) {
+		int idx = search(e);
+		return idx >= 0 ? idx : -idx - 2;
+	}
+
+	/**
+	 * Index of the least element greater or equal to the argument, or <code>toIndex</code> if none.
+	 */
+	private int ceilingIndex(String e) {
+		int idx = search(e);
+		return idx >= 0 ? idx : -idx - 1;
+	}
+
+	private int higherIndex(String e) {
+		int idx = search(e);
+		return idx >= 0 ? idx + 1 : -idx - 1;
+	}
+
+	/**
+	 * Binary search in the range of this set.
+	 * 
+	 * @return The index of the element, or <code>(-(insertion point) - 1)</code> if not found.
+	 */
+	private int search(String s) {
+		int low = fromIndex;
+		int high = toIndex - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = compareAt(mid, s);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * Compares the element at the given index to the argument the same way as {@link String#compareTo(String)}.
+	 */
+	private int compareAt(int idx, String s) {
+		int start = offsets[idx];
+		int len = offsets[idx + 1] - start;
+		int slen = s.length();
+		int lim = Math.min(len, slen);
+		for (int i = 0; i < lim; i++) {
+			char c1 = chars[start + i];
+			char c2 = s.charAt(i);
+			if (c1 != c2) {
+				return c1 - c2;
+			}
+		}
+		return len - slen;
+	}
+}
@@ -24,11 +24,17 @@ import saker.build.thirdparty.saker.util.io.ByteSource;
 
 public class ExternalArchiveClassLoaderDataFinder implements ClassLoaderDataFinder {
 	private ExternalArchive archive;
+	private ArchiveEntryBytesCache entryBytesCache;
 
 	public ExternalArchiveClassLoaderDataFinder(ExternalArchive archive) {
 		this.archive = archive;
 	}
 
+	public ExternalArchiveClassLoaderDataFinder(ExternalArchive archive, ArchiveEntryBytesCache entryBytesCache) {
+		this.archive = archive;
+		this.entryBytesCache = entryBytesCache;
+	}
+
 	@Override
 	public Supplier<? extends ByteSource> getResource(String name) {
 		if (!archive.hasEntry(name)) {
@@ -46,6 +52,9 @@ public class ExternalArchiveClassLoaderDataFinder implements ClassLoaderDataFind
 	@Override
 	public ByteArrayRegion getResourceBytes(String name) {
 		try {
+			if (entryBytesCache != null) {
+				return entryBytesCache.getEntryBytes(archive, name);
+			}
 			return archive.getEntryBytes(name);
 		} catch (IOException e) {
 			return null;
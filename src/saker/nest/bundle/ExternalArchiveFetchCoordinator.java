@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.nest.bundle;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import saker.build.thirdparty.saker.util.io.function.IOSupplier;
+
+/**
+ * Coordinates the fetching of external archives to their storage location so the same archive is only loaded once,
+ * even if it is requested concurrently.
+ * <p>
+ * The archives are identified by their storage path, which is determined by the URI and the expected hash of the
+ * archive. The fetching is deduplicated on multiple levels:
+ * <ul>
+ * <li>The fetch requests in the current class loader wait for the in-flight fetch of the same archive.</li>
+ * <li>The fetch requests of other class loaders in the same JVM are serialized by synchronizing on an interned
+ * string.</li>
+ * <li>Other processes are coordinated by exclusively locking a lock file next to the archive. Processes that wait for
+ * the lock will find the archive already present when they acquire it.</li>
+ * </ul>
+ * If the lock file cannot be locked, the archive is loaded without cross-process coordination. The loaders still need
+ * to write the archive atomically in this case. The lock file is deleted after the archive is loaded.
+ * <p>
+ * The coordinator collects statistics about the archives fetched by it, including the number of loaded bytes and the
+ * time spent with loading them.
+ */
+public final class ExternalArchiveFetchCoordinator {
+	/**
+	 * The in-flight fetches mapped to the archive paths. Shared by all coordinators so the concurrent fetches of
+	 * different repositories are also deduplicated.
+	 */
+	private static final ConcurrentMap<Path, CompletableFuture<Hashes>> inFlightFetches = new ConcurrentHashMap<>();
+
+	private final AtomicLong fetchCount = new AtomicLong();
+	private final AtomicLong fetchedByteCount = new AtomicLong();
+	private final AtomicLong fetchNanos = new AtomicLong();
+	private final AtomicLong sharedFetchCount = new AtomicLong();
+
+	public ExternalArchiveFetchCoordinator() {
+	}
+
+	/**
+	 * Ensures that the archive at the given path is present, loading it if necessary.
+	 * <p>
+	 * The argument loader is called when the archive needs to be loaded. It should write the archive to the specified
+	 * path atomically, and return the hashes of the loaded contents if available. It is called at most once.
+	 * 
+	 * @param archivepath
+	 *            The storage path of the archive.
+	 * @param loader
+	 *            The archive loader.
+	 * @return The hashes returned by the loader, or <code>null</code> if the archive was already present, or was
+	 *             loaded by another agent.
+	 * @throws IOException
+	 *             If the loading failed.
+	 */
+	public Hashes fetch(Path archivepath, IOSupplier<Hashes> loader) throws IOException {
+		boolean waited = false;
+		while (true) {
+			if (Files.isRegularFile(archivepath)) {
+				if (waited) {
+					sharedFetchCount.incrementAndGet();
+				}
+				return null;
+			}
+			CompletableFuture<Hashes> future = new CompletableFuture<>();
+			CompletableFuture<Hashes> prev = inFlightFetches.putIfAbsent(archivepath, future);
+			if (prev != null) {
+				waited = true;
+				try {
+					prev.join();
+				} catch (CompletionException | CancellationException e) {
+					//the other fetch failed, try again ourselves
+				}
+				continue;
+			}
+			try {
+				Hashes result = fetchLocked(archivepath, loader);
+				future.complete(result);
+				return result;
+			} catch (Throwable e) {
+				future.completeExceptionally(e);
+				throw e;
+			} finally {
+				inFlightFetches.remove(archivepath, future);
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of archives that were loaded by this coordinator.
+	 * 
+	 * @return The fetch count.
+	 */
+	public long getFetchCount() {
+		return fetchCount.get();
+	}
+
+	/**
+	 * Gets the total number of bytes of the archives that were loaded by this coordinator.
+	 * 
+	 * @return The number of bytes.
+	 */
+	public long getFetchedByteCount() {
+		return fetchedByteCount.get();
+	}
+
+	/**
+	 * Gets the total time spent with loading the archives by this coordinator.
+	 * 
+	 * @param unit
+	 *            The time unit to return the time in.
+	 * @return The elapsed time.
+	 */
+	public long getFetchTime(TimeUnit unit) {
+		return unit.convert(fetchNanos.get(), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Gets the number of fetch requests that were satisfied by a concurrent fetch of the same archive in this or
+	 * another process.
+	 * 
+	 * @return The shared fetch count.
+	 */
+	public long getSharedFetchCount() {
+		return sharedFetchCount.get();
+	}
+
+	/**
+	 * Gets the average throughput of the archive loading in bytes per second.
+	 * 
+	 * @return The throughput, or 0 if no archives were loaded yet.
+	 */
+	public long getAverageBytesPerSecond() {
+		long nanos = fetchNanos.get();
+		if (nanos <= 0) {
+			return 0;
+		}
+		return (long) (fetchedByteCount.get() * (double) TimeUnit.SECONDS.toNanos(1) / nanos);
+	}
+
+	@SuppressWarnings("try")
+	private Hashes fetchLocked(Path archivepath, IOSupplier<Hashes> loader) throws IOException {
+		//cross-classloader synchronize on an interned string, as file locks are held by the whole JVM
+		synchronized (("nest-external-dep-load:" + archivepath).intern()) {
+			if (Files.isRegularFile(archivepath)) {
+				sharedFetchCount.incrementAndGet();
+				return null;
+			}
+			Files.createDirectories(archivepath.getParent());
+			Path lockfilepath = archivepath.resolveSibling(archivepath.getFileName() + ".lock");
+			FileChannel lockchannel;
+			try {
+				lockchannel = FileChannel.open(lockfilepath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			} catch (IOException | UnsupportedOperationException e) {
+				//failed to open the lock file, load without cross-process coordination
+				return load(archivepath, loader);
+			}
+			try (FileChannel lc = lockchannel) {
+				FileLock lock;
+				try {
+					//non shared lock on the whole file, waits for the other processes that load the archive
+					lock = lc.lock();
+				} catch (IOException | OverlappingFileLockException | UnsupportedOperationException e) {
+					return load(archivepath, loader);
+				}
+				try (FileLock l = lock) {
+					try {
+						if (Files.isRegularFile(archivepath)) {
+							//loaded by another process while we were waiting for the lock
+							sharedFetchCount.incrementAndGet();
+							return null;
+						}
+						return load(archivepath, loader);
+					} finally {
+						deleteLockFile(archivepath, lockfilepath);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Deletes the lock file while it is still locked, if the archive is present.
+	 * <p>
+	 * The agents that already wait for the lock will see the present archive after acquiring it. The ones that arrive
+	 * later don't open the lock file, as they see that the archive is present. If the archive failed to load, the lock
+	 * file is kept, so the waiting agents and the newly arriving ones still use the same lock file.
+	 */
+	private static void deleteLockFile(Path archivepath, Path lockfilepath) {
+		if (!Files.isRegularFile(archivepath)) {
+			return;
+		}
+		try {
+			Files.deleteIfExists(lockfilepath);
+		} catch (IOException e) {
+			//may fail if the file is open by others on some platforms. it will be deleted by a later fetch
+		}
+	}
+
+	private Hashes load(Path archivepath, IOSupplier<Hashes> loader) throws IOException {
+		long start = System.nanoTime();
+		Hashes result = loader.get();
+		long elapsed = System.nanoTime() - start;
+		long size;
+		try {
+			size = Files.size(archivepath);
+		} catch (IOException e) {
+			//the archive was removed concurrently. the loaded byte count is unknown
+			size = 0;
+		}
+		fetchCount.incrementAndGet();
+		fetchedByteCount.addAndGet(size);
+		fetchNanos.addAndGet(elapsed);
+		return result;
+	}
+}
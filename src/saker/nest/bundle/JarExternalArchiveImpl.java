@@ -21,9 +21,11 @@ import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.NavigableSet;
-import java.util.TreeSet;
 import java.util.UUID;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
@@ -45,6 +47,12 @@ public class JarExternalArchiveImpl extends AbstractExternalArchive implements J
 
 	private final LazySupplier<byte[]> jarHash = LazySupplier.of(this::computeJarHash);
 
+	/**
+	 * Reader for the nested archives that are served directly from this archive. Lazily opened, synchronized on
+	 * <code>this</code>.
+	 */
+	private MappedJarReader mappedReader;
+
 	private JarExternalArchiveImpl(SimpleExternalArchiveKey archiveKey, SeekableByteChannel channel, JarFile jar) {
 		this.archiveKey = archiveKey;
 		this.channel = channel;
@@ -121,9 +129,31 @@ public class JarExternalArchiveImpl extends AbstractExternalArchive implements J
 		return jarHash.get();
 	}
 
+	/**
+	 * Gets a memory mapped reader for this archive.
+	 * <p>
+	 * The reader is opened on the first call, and is closed when this archive is closed.
+	 * 
+	 * @return The reader.
+	 * @throws IOException
+	 *             If the reader failed to open, or the archive format is not supported by it.
+	 */
+	public synchronized MappedJarReader getMappedReader() throws IOException {
+		MappedJarReader reader = mappedReader;
+		if (reader == null) {
+			reader = MappedJarReader.open(getJarPath());
+			mappedReader = reader;
+		}
+		return reader;
+	}
+
 	@Override
 	public void close() throws IOException {
-		IOUtils.close(jar, channel);
+		MappedJarReader reader;
+		synchronized (this) {
+			reader = mappedReader;
+		}
+		IOUtils.close(reader, jar, channel);
 	}
 
 	@Override
@@ -157,7 +187,7 @@ public class JarExternalArchiveImpl extends AbstractExternalArchive implements J
 	}
 
 	private static NavigableSet<String> getEntryNamesValidate(JarFile jar) {
-		NavigableSet<String> entrynames = new TreeSet<>(String::compareToIgnoreCase);
+		List<String> entrynames = new ArrayList<>();
 		Enumeration<JarEntry> entries = jar.entries();
 		while (entries.hasMoreElements()) {
 			JarEntry jarentry = entries.nextElement();
@@ -166,10 +196,29 @@ public class JarExternalArchiveImpl extends AbstractExternalArchive implements J
 			}
 			String entryname = jarentry.getName();
 			BundleUtils.checkArchiveEntryName(entryname);
-			if (!entrynames.add(entryname)) {
-				throw new IllegalArchiveEntryNameException(entryname);
+			entrynames.add(entryname);
+		}
+		String[] names = entrynames.toArray(new String[entrynames.size()]);
+		checkCaseInsensitiveDuplicateEntryNames(names);
+		return CompactStringSet.create(names);
+	}
+
+	/**
+	 * Checks that there are no entries that only differ by case.
+	 * <p>
+	 * The argument array is sorted in case insensitive order.
+	 * 
+	 * @param names
+	 *            The entry names.
+	 * @throws IllegalArchiveEntryNameException
+	 *             If there are entries that only differ by case.
+	 */
+	static void checkCaseInsensitiveDuplicateEntryNames(String[] names) throws IllegalArchiveEntryNameException {
+		Arrays.sort(names, String::compareToIgnoreCase);
+		for (int i = 1; i < names.length; i++) {
+			if (names[i - 1].equalsIgnoreCase(names[i])) {
+				throw new IllegalArchiveEntryNameException(names[i]);
 			}
 		}
-		return entrynames;
 	}
 }
@@ -39,11 +39,15 @@ public class JarNestRepositoryBundleImpl extends AbstractNestRepositoryBundle im
 
 	private final SeekableByteChannel channel;
 	private final JarFile jar;
+	/**
+	 * The mapped reader for the entries or <code>null</code> if the entries are read using the {@link JarFile}.
+	 */
+	private final MappedJarReader mappedReader;
 	private final BundleInformation information;
 	private final AbstractBundleStorage storage;
 
 	private final LazySupplier<NavigableSet<String>> entryNames;
-	private final LazySupplier<byte[]> jarHash = LazySupplier.of(this::computeJarHash);
+	private final LazySupplier<byte[]> jarHash;
 
 	public static JarNestRepositoryBundleImpl create(AbstractBundleStorage storage, Path bundlejar) throws IOException {
 		try {
@@ -56,16 +60,49 @@ public class JarNestRepositoryBundleImpl extends AbstractNestRepositoryBundle im
 
 	public static JarNestRepositoryBundleImpl create(AbstractBundleStorage storage, Path bundlejar,
 			ContentVerifier verifier) throws IOException, NestSignatureVerificationException {
+		return create(storage, bundlejar, verifier, null);
+	}
+
+	/**
+	 * Creates a new bundle for the given JAR path.
+	 * <p>
+	 * The bundle hash can be specified if it is already known by the caller. E.g. if it was computed when the bundle
+	 * was downloaded. In that case it is not computed again when {@linkplain #getHash() requested}.
+	 * 
+	 * @param storage
+	 *            The storage that the bundle is loaded by.
+	 * @param bundlejar
+	 *            The path to the bundle JAR.
+	 * @param verifier
+	 *            The content verifier or <code>null</code>.
+	 * @param bundlehash
+	 *            The {@value #BUNDLE_HASH_ALGORITHM} hash of the JAR or <code>null</code> if not known.
+	 * @return The created bundle.
+	 * @throws IOException
+	 *             In case of I/O error.
+	 * @throws NestSignatureVerificationException
+	 *             If the verification failed.
+	 */
+	public static JarNestRepositoryBundleImpl create(AbstractBundleStorage storage, Path bundlejar,
+			ContentVerifier verifier, byte[] bundlehash) throws IOException, NestSignatureVerificationException {
 		SeekableByteChannel channel = BundleUtils.openExclusiveChannelForJar(bundlejar);
 		try {
 			if (verifier != null) {
 				verifier.verify(channel);
 			}
 			JarFile jarfile = JarFileUtils.createMultiReleaseJarFile(bundlejar);
+			MappedJarReader mappedreader = null;
 			try {
-				return new JarNestRepositoryBundleImpl(storage, jarfile, channel);
+				if (storage != null && storage.getStorageKey().isMappedJarReader()) {
+					try {
+						mappedreader = MappedJarReader.open(bundlejar);
+					} catch (IOException e) {
+						//the archive format is not supported by the reader, use the JAR file
+					}
+				}
+				return new JarNestRepositoryBundleImpl(storage, jarfile, mappedreader, channel, bundlehash);
 			} catch (Throwable e) {
-				IOUtils.addExc(e, IOUtils.closeExc(jarfile));
+				IOUtils.addExc(e, IOUtils.closeExc(mappedreader, jarfile));
 				throw e;
 			}
 		} catch (Throwable e) {
@@ -74,18 +111,30 @@ public class JarNestRepositoryBundleImpl extends AbstractNestRepositoryBundle im
 		}
 	}
 
-	private JarNestRepositoryBundleImpl(AbstractBundleStorage storage, JarFile jar, SeekableByteChannel channel,
-			BundleInformation bundleinfo) {
+	private JarNestRepositoryBundleImpl(AbstractBundleStorage storage, JarFile jar, MappedJarReader mappedReader,
+			SeekableByteChannel channel, BundleInformation bundleinfo, byte[] bundlehash) {
 		this.channel = channel;
 		this.storage = storage;
 		this.jar = jar;
+		this.mappedReader = mappedReader;
 		this.information = bundleinfo;
-		this.entryNames = LazySupplier.of(() -> BundleUtils.getJarEntryNames(jar));
+		if (mappedReader != null) {
+			this.entryNames = LazySupplier.of(mappedReader::getEntryNames);
+		} else {
+			this.entryNames = LazySupplier.of(() -> BundleUtils.getJarEntryNames(jar));
+		}
+		if (bundlehash == null) {
+			this.jarHash = LazySupplier.of(this::computeJarHash);
+		} else {
+			this.jarHash = LazySupplier.of(() -> bundlehash);
+			//compute right away, so it is available through getSharedHashIfComputed()
+			this.jarHash.get();
+		}
 	}
 
-	private JarNestRepositoryBundleImpl(AbstractBundleStorage storage, JarFile jar, SeekableByteChannel channel)
-			throws IOException {
-		this(storage, jar, channel, new BundleInformation(jar));
+	private JarNestRepositoryBundleImpl(AbstractBundleStorage storage, JarFile jar, MappedJarReader mappedReader,
+			SeekableByteChannel channel, byte[] bundlehash) throws IOException {
+		this(storage, jar, mappedReader, channel, new BundleInformation(jar), bundlehash);
 	}
 
 	/**
@@ -111,19 +160,29 @@ public class JarNestRepositoryBundleImpl extends AbstractNestRepositoryBundle im
 			return false;
 		}
 		NavigableSet<String> entries = entryNames.getIfComputed();
-		if (entries != null) {
-			return entries.contains(name);
+		if (entries != null && entries.contains(name)) {
+			return true;
+		}
+		//the entry may still be present in a versioned directory of a multi-release JAR
+		if (mappedReader != null) {
+			return mappedReader.hasEntry(name);
 		}
 		return jar.getEntry(name) != null;
 	}
 
 	@Override
 	public InputStream openEntry(String name) throws IOException {
+		if (mappedReader != null) {
+			return mappedReader.openEntry(name);
+		}
 		return BundleUtils.openJarEntry(jar, name);
 	}
 
 	@Override
 	public ByteArrayRegion getEntryBytes(String name) throws IOException {
+		if (mappedReader != null) {
+			return mappedReader.getEntryBytes(name);
+		}
 		return BundleUtils.getJarEntryBytes(jar, name);
 	}
 
@@ -144,7 +203,7 @@ public class JarNestRepositoryBundleImpl extends AbstractNestRepositoryBundle im
 
 	@Override
 	public void close() throws IOException {
-		IOUtils.close(jar, channel);
+		IOUtils.close(mappedReader, jar, channel);
 	}
 
 	@Override
@@ -167,6 +226,15 @@ public class JarNestRepositoryBundleImpl extends AbstractNestRepositoryBundle im
 		return jarHash.get();
 	}
 
+	/**
+	 * Gets the hash of the bundle if it was already computed, or was known when the bundle was opened.
+	 * 
+	 * @return The hash, or <code>null</code> if it is not yet computed.
+	 */
+	public byte[] getSharedHashIfComputed() {
+		return jarHash.getIfComputed();
+	}
+
 	@Override
 	public String toString() {
 		return getClass().getSimpleName() + "[" + getBundleIdentifier() + " : " + jar.getName() + "]";
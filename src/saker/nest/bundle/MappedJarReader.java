@@ -0,0 +1,731 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.nest.bundle;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import saker.build.thirdparty.saker.util.io.ByteArrayRegion;
+import saker.build.util.java.JavaTools;
+
+/**
+ * JAR archive reader that memory maps the archive file.
+ * <p>
+ * The central directory of the archive is parsed when the reader is opened, and stored in a sorted index of the entry
+ * names. The entries are read directly from the mapped file without any further system calls or locking. Stored
+ * entries are returned as slices of the mapped file, while deflated entries are inflated from the mapped region.
+ * <p>
+ * Multi-release JARs are supported the same way as {@link JarFile} with runtime versioning. ZIP64 archives are not
+ * supported, opening them will fail with an {@link IOException}.
+ * <p>
+ * The mapped region is reference counted. It is shared by the reader, the readers of the
+ * {@linkplain #openStoredEntryReader(String) nested archives}, and the opened entry streams. The file is unmapped
+ * when the last of them is closed. If unmapping is not supported by the runtime, the mapped region is released when
+ * it is garbage collected. Until then, the file may not be modified or deleted on some platforms.
+ */
+public final class MappedJarReader implements Closeable {
+	private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+	private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+	private static final int END_HEADER_SIGNATURE = 0x06054b50;
+
+	private static final int LOCAL_HEADER_SIZE = 30;
+	private static final int CENTRAL_HEADER_SIZE = 46;
+	private static final int END_HEADER_SIZE = 22;
+	private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+
+	private static final int METHOD_STORED = 0;
+	private static final int METHOD_DEFLATED = 8;
+
+	private static final int FLAG_ENCRYPTED = 1;
+
+	/**
+	 * The maximum size of the buffer that is initially allocated for inflating an entry.
+	 * <p>
+	 * The buffer is grown as the entry is inflated, so corrupt uncompressed sizes in the central directory don't cause
+	 * large allocations.
+	 */
+	private static final int MAX_INITIAL_INFLATE_BUFFER_SIZE = 64 * 1024;
+
+	private static final Consumer<ByteBuffer> UNMAPPER = createUnmapper();
+
+	private static final String MULTI_RELEASE_VERSIONS_PREFIX = "META-INF/versions/";
+	private static final int MULTI_RELEASE_BASE_VERSION = 8;
+
+	private final Path path;
+	private final MappedRegion region;
+	/**
+	 * The contents of the archive. Either the mapped buffer of the region, or a slice of it for nested archives.
+	 */
+	private final ByteBuffer buffer;
+
+	/**
+	 * The entry names. The indices of the names correspond to the indices of the entry properties in the arrays.
+	 */
+	private final CompactStringSet names;
+	private final int[] localHeaderOffsets;
+	private final int[] methods;
+	private final int[] compressedSizes;
+	private final int[] uncompressedSizes;
+
+	/**
+	 * The multi-release versions in descending order that should be searched for entries.
+	 */
+	private final int[] releaseVersions;
+
+	private final AtomicBoolean closed = new AtomicBoolean();
+
+	/**
+	 * Creates a new reader. The reader takes ownership of a reference to the region, the caller should release it if
+	 * the constructor throws.
+	 */
+	private MappedJarReader(Path path, MappedRegion region, ByteBuffer buffer) throws IOException {
+		this.path = path;
+		this.region = region;
+		this.buffer = buffer;
+
+		int endpos = findEndHeader(buffer);
+		if (endpos < 0) {
+			throw new IOException("End of central directory not found in: " + path);
+		}
+		int entrycount = getUnsignedShort(buffer, endpos + 10);
+		long cdsize = getUnsignedInt(buffer, endpos + 12);
+		long cdoffset = getUnsignedInt(buffer, endpos + 16);
+		if (entrycount == 0xFFFF || cdsize == 0xFFFFFFFFL || cdoffset == 0xFFFFFFFFL) {
+			throw new IOException("ZIP64 archives are not supported: " + path);
+		}
+		//the entry count is validated against the size, so the arrays allocated based on it are bounded
+		if (cdoffset + cdsize > endpos || (long) entrycount * CENTRAL_HEADER_SIZE > cdsize) {
+			throw new IOException("Invalid central directory in: " + path);
+		}
+
+		String[] cdnames = new String[entrycount];
+		int[] cdentrypositions = new int[entrycount];
+		int count = 0;
+		int pos = (int) cdoffset;
+		for (int i = 0; i < entrycount; i++) {
+			if (pos + CENTRAL_HEADER_SIZE > endpos || buffer.getInt(pos) != CENTRAL_HEADER_SIGNATURE) {
+				throw new IOException("Invalid central directory entry in: " + path);
+			}
+			int namelen = getUnsignedShort(buffer, pos + 28);
+			int extralen = getUnsignedShort(buffer, pos + 30);
+			int commentlen = getUnsignedShort(buffer, pos + 32);
+			if (pos + CENTRAL_HEADER_SIZE + namelen > endpos) {
+				throw new IOException("Invalid central directory entry in: " + path);
+			}
+			String name = getString(buffer, pos + CENTRAL_HEADER_SIZE, namelen);
+			if (!name.endsWith("/")) {
+				cdnames[count] = name;
+				cdentrypositions[count] = pos;
+				++count;
+			}
+			pos += CENTRAL_HEADER_SIZE + namelen + extralen + commentlen;
+		}
+
+		Integer[] order = new Integer[count];
+		for (int i = 0; i < count; i++) {
+			order[i] = i;
+		}
+		//stable sort, so the first entry is kept in case of duplicates
+		Arrays.sort(order, (l, r) -> cdnames[l].compareTo(cdnames[r]));
+
+		String[] sortednames = new String[count];
+		int[] localheaderoffsets = new int[count];
+		int[] methods = new int[count];
+		int[] compressedsizes = new int[count];
+		int[] uncompressedsizes = new int[count];
+		int c = 0;
+		for (int i = 0; i < count; i++) {
+			int idx = order[i];
+			String name = cdnames[idx];
+			if (c > 0 && sortednames[c - 1].equals(name)) {
+				//duplicate entry
+				continue;
+			}
+			int cdpos = cdentrypositions[idx];
+			int flags = getUnsignedShort(buffer, cdpos + 8);
+			int method = getUnsignedShort(buffer, cdpos + 10);
+			long compressedsize = getUnsignedInt(buffer, cdpos + 20);
+			long uncompressedsize = getUnsignedInt(buffer, cdpos + 24);
+			long localheaderoffset = getUnsignedInt(buffer, cdpos + 42);
+			if (compressedsize == 0xFFFFFFFFL || uncompressedsize == 0xFFFFFFFFL
+					|| localheaderoffset == 0xFFFFFFFFL) {
+				throw new IOException("ZIP64 archives are not supported: " + path);
+			}
+			if (compressedsize > Integer.MAX_VALUE || uncompressedsize > Integer.MAX_VALUE
+					|| localheaderoffset > Integer.MAX_VALUE) {
+				throw new IOException("Entry too large: " + name + " in " + path);
+			}
+			if (((flags & FLAG_ENCRYPTED) != 0) || (method != METHOD_STORED && method != METHOD_DEFLATED)) {
+				throw new IOException("Unsupported entry format: " + name + " in " + path);
+			}
+			if (localheaderoffset + compressedsize > endpos
+					|| (method == METHOD_STORED && compressedsize != uncompressedsize)) {
+				throw new IOException("Invalid entry size: " + name + " in " + path);
+			}
+			sortednames[c] = name;
+			localheaderoffsets[c] = (int) localheaderoffset;
+			methods[c] = method;
+			compressedsizes[c] = (int) compressedsize;
+			uncompressedsizes[c] = (int) uncompressedsize;
+			++c;
+		}
+		//the names are already sorted and unique, so the indices stay the same
+		this.names = CompactStringSet.create(Arrays.copyOf(sortednames, c));
+		this.localHeaderOffsets = Arrays.copyOf(localheaderoffsets, c);
+		this.methods = Arrays.copyOf(methods, c);
+		this.compressedSizes = Arrays.copyOf(compressedsizes, c);
+		this.uncompressedSizes = Arrays.copyOf(uncompressedsizes, c);
+
+		this.releaseVersions = getReleaseVersions();
+	}
+
+	/**
+	 * Opens a reader for the JAR at the given path.
+	 * 
+	 * @param path
+	 *            The path of the JAR.
+	 * @return The opened reader.
+	 * @throws IOException
+	 *             In case of I/O error, or if the archive format is not supported.
+	 */
+	public static MappedJarReader open(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("Archive too large to map: " + path);
+			}
+			//the mapping stays valid after the channel is closed
+			ByteBuffer mapped = channel.map(MapMode.READ_ONLY, 0, size);
+			mapped.order(ByteOrder.LITTLE_ENDIAN);
+			MappedRegion region = new MappedRegion(mapped);
+			try {
+				return new MappedJarReader(path, region, mapped);
+			} catch (Throwable e) {
+				region.release();
+				throw e;
+			}
+		}
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	/**
+	 * Gets the names of the entries in the archive.
+	 * <p>
+	 * The directory entries are not included.
+	 * 
+	 * @return An immutable set of entry names.
+	 */
+	public NavigableSet<String> getEntryNames() {
+		return names;
+	}
+
+	public boolean hasEntry(String name) {
+		return name != null && findEntry(name) >= 0;
+	}
+
+	/**
+	 * Gets the size of the raw archive contents.
+	 * 
+	 * @return The size in bytes.
+	 */
+	public int getArchiveSize() {
+		return buffer.limit();
+	}
+
+	/**
+	 * Updates the argument digest with the raw contents of the archive.
+	 * 
+	 * @param digest
+	 *            The digest.
+	 * @throws IOException
+	 *             If the reader is closed.
+	 */
+	public void updateDigest(MessageDigest digest) throws IOException {
+		acquire();
+		try {
+			digest.update(buffer.duplicate());
+		} finally {
+			region.release();
+		}
+	}
+
+	/**
+	 * Writes the raw contents of the archive to the given channel.
+	 * 
+	 * @param channel
+	 *            The channel.
+	 * @throws IOException
+	 *             If the reader is closed, or in case of I/O error.
+	 */
+	public void writeTo(WritableByteChannel channel) throws IOException {
+		acquire();
+		try {
+			ByteBuffer buf = buffer.duplicate();
+			while (buf.hasRemaining()) {
+				channel.write(buf);
+			}
+		} finally {
+			region.release();
+		}
+	}
+
+	public ByteArrayRegion getEntryBytes(String name) throws IOException {
+		int idx = getEntryIndex(name);
+		acquire();
+		try {
+			if (methods[idx] == METHOD_STORED) {
+				ByteBuffer data = getCompressedData(idx);
+				byte[] result = new byte[data.remaining()];
+				data.get(result);
+				return ByteArrayRegion.wrap(result);
+			}
+			return ByteArrayRegion.wrap(inflate(idx));
+		} finally {
+			region.release();
+		}
+	}
+
+	/**
+	 * Opens an input stream to the contents of the given entry.
+	 * <p>
+	 * The stream keeps the mapped region alive, it must be closed by the caller.
+	 * 
+	 * @param name
+	 *            The name of the entry.
+	 * @return The opened stream.
+	 * @throws IOException
+	 *             If the entry is not found or cannot be read.
+	 */
+	public InputStream openEntry(String name) throws IOException {
+		int idx = getEntryIndex(name);
+		acquire();
+		return openEntry(idx);
+	}
+
+	/**
+	 * Opens a reader for a JAR that is an entry of this archive.
+	 * <p>
+	 * Only entries that are stored without compression can be opened this way. The returned reader uses the region of
+	 * the entry in the mapped file, the contents of the entry are not copied. The file stays mapped until the returned
+	 * reader is closed as well.
+	 * 
+	 * @param name
+	 *            The name of the entry.
+	 * @return The reader for the nested JAR, or <code>null</code> if the entry is compressed.
+	 * @throws IOException
+	 *             If the entry is not found, or the format of the nested JAR is not supported.
+	 */
+	public MappedJarReader openStoredEntryReader(String name) throws IOException {
+		int idx = getEntryIndex(name);
+		if (methods[idx] != METHOD_STORED) {
+			return null;
+		}
+		//the reference is owned by the nested reader
+		acquire();
+		try {
+			ByteBuffer data = getCompressedData(idx);
+			//the byte order is not inherited by slices
+			data.order(ByteOrder.LITTLE_ENDIAN);
+			return new MappedJarReader(path.resolve(name), region, data);
+		} catch (Throwable e) {
+			region.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Closes the reader.
+	 * <p>
+	 * The file is unmapped if there are no more nested readers or entry streams that use it.
+	 */
+	@Override
+	public void close() {
+		if (closed.compareAndSet(false, true)) {
+			region.release();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[" + path + "]";
+	}
+
+	/**
+	 * Opens the stream for the entry. The caller must hold a reference to the region, that is owned by the returned
+	 * stream, or released if the opening fails.
+	 */
+	private InputStream openEntry(int idx) throws IOException {
+		ByteBuffer data;
+		try {
+			data = getCompressedData(idx);
+		} catch (Throwable e) {
+			region.release();
+			throw e;
+		}
+		InputStream in = new ByteBufferInputStream(data, region);
+		if (methods[idx] == METHOD_STORED) {
+			return in;
+		}
+		//the inflater requires an extra dummy byte at the end of the input when no ZLIB header is used
+		in = new SequenceInputStream(in, new ByteArrayInputStream(new byte[1]));
+		return new InflaterInputStream(in, new Inflater(true)) {
+			private boolean ended;
+
+			@Override
+			public void close() throws IOException {
+				if (ended) {
+					return;
+				}
+				ended = true;
+				inf.end();
+				super.close();
+			}
+		};
+	}
+
+	private void acquire() throws IOException {
+		//the region can't be released while this reader is not closed
+		if (closed.get() || !region.acquire()) {
+			throw new IOException("Reader closed: " + path);
+		}
+	}
+
+	private int getEntryIndex(String name) throws IOException {
+		if (closed.get()) {
+			throw new IOException("Reader closed: " + path);
+		}
+		int idx = findEntry(name);
+		if (idx < 0) {
+			throw new NoSuchFileException(name, null, "Archive entry not found in: " + path);
+		}
+		return idx;
+	}
+
+	private int findEntry(String name) {
+		if (releaseVersions.length > 0 && !name.startsWith("META-INF/")) {
+			for (int version : releaseVersions) {
+				int idx = names.indexOf(MULTI_RELEASE_VERSIONS_PREFIX + version + "/" + name);
+				if (idx >= 0) {
+					return idx;
+				}
+			}
+		}
+		return names.indexOf(name);
+	}
+
+	private ByteBuffer getCompressedData(int idx) throws IOException {
+		int lhpos = localHeaderOffsets[idx];
+		ByteBuffer buf = buffer;
+		if (lhpos + LOCAL_HEADER_SIZE > buf.limit() || buf.getInt(lhpos) != LOCAL_HEADER_SIGNATURE) {
+			throw new IOException("Invalid local header for entry: " + names.get(idx) + " in " + path);
+		}
+		int datapos = lhpos + LOCAL_HEADER_SIZE + getUnsignedShort(buf, lhpos + 26)
+				+ getUnsignedShort(buf, lhpos + 28);
+		int dataend = datapos + compressedSizes[idx];
+		if (dataend < 0 || dataend > buf.limit()) {
+			throw new IOException("Invalid entry size: " + names.get(idx) + " in " + path);
+		}
+		//duplicate the buffer as the position and limit is modified
+		ByteBuffer dup = buf.duplicate();
+		dup.position(datapos);
+		dup.limit(dataend);
+		return dup.slice();
+	}
+
+	private byte[] inflate(int idx) throws IOException {
+		ByteBuffer data = getCompressedData(idx);
+		//the inflater can't use byte buffers as input on Java 8
+		//    allocate an extra dummy byte at the end, as required by the inflater when no ZLIB header is used
+		byte[] input = new byte[data.remaining() + 1];
+		data.get(input, 0, input.length - 1);
+		int size = uncompressedSizes[idx];
+		//don't trust the uncompressed size for the allocation, the buffer is grown as the data is inflated
+		byte[] result = new byte[Math.min(size, MAX_INITIAL_INFLATE_BUFFER_SIZE)];
+		Inflater inflater = new Inflater(true);
+		try {
+			inflater.setInput(input);
+			int len = 0;
+			while (len < size) {
+				if (len == result.length) {
+					result = Arrays.copyOf(result, (int) Math.min(size, result.length * 2L));
+				}
+				int n = inflater.inflate(result, len, result.length - len);
+				if (n == 0) {
+					if (inflater.finished() || inflater.needsDictionary() || inflater.needsInput()) {
+						break;
+					}
+				}
+				len += n;
+			}
+			if (len != size) {
+				throw new IOException("Invalid entry size: " + names.get(idx) + " in " + path);
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Failed to inflate entry: " + names.get(idx) + " in " + path, e);
+		} finally {
+			inflater.end();
+		}
+		return result;
+	}
+
+	private int[] getReleaseVersions() throws IOException {
+		int idx = names.indexOf(JarFile.MANIFEST_NAME);
+		if (idx < 0) {
+			return new int[0];
+		}
+		Manifest manifest;
+		//the stream owns a reference to the region
+		if (!region.acquire()) {
+			throw new IOException("Reader closed: " + path);
+		}
+		try (InputStream in = openEntry(idx)) {
+			manifest = new Manifest(in);
+		}
+		if (!Boolean.parseBoolean(manifest.getMainAttributes().getValue(Attributes.Name.MULTI_RELEASE))) {
+			return new int[0];
+		}
+		int runtimeversion = JavaTools.getCurrentJavaMajorVersion();
+		NavigableSet<Integer> versions = new TreeSet<>();
+		for (String name : names.tailSet(MULTI_RELEASE_VERSIONS_PREFIX, true)) {
+			if (!name.startsWith(MULTI_RELEASE_VERSIONS_PREFIX)) {
+				break;
+			}
+			int slash = name.indexOf('/', MULTI_RELEASE_VERSIONS_PREFIX.length());
+			if (slash < 0) {
+				continue;
+			}
+			try {
+				int version = Integer.parseInt(name.substring(MULTI_RELEASE_VERSIONS_PREFIX.length(), slash));
+				if (version > MULTI_RELEASE_BASE_VERSION && version <= runtimeversion) {
+					versions.add(version);
+				}
+			} catch (NumberFormatException e) {
+				//not a version directory
+				continue;
+			}
+		}
+		int[] result = new int[versions.size()];
+		int i = 0;
+		for (Integer v : versions.descendingSet()) {
+			result[i++] = v;
+		}
+		return result;
+	}
+
+	private static int findEndHeader(ByteBuffer buffer) {
+		int limit = buffer.limit();
+		int minpos = Math.max(0, limit - END_HEADER_SIZE - MAX_COMMENT_LENGTH);
+		for (int pos = limit - END_HEADER_SIZE; pos >= minpos; --pos) {
+			if (buffer.getInt(pos) == END_HEADER_SIGNATURE
+					&& pos + END_HEADER_SIZE + getUnsignedShort(buffer, pos + 20) == limit) {
+				return pos;
+			}
+		}
+		return -1;
+	}
+
+	private static Consumer<ByteBuffer> createUnmapper() {
+		try {
+			//Java 9+
+			Class<?> unsafeclass = Class.forName("sun.misc.Unsafe");
+			Method invokecleaner = unsafeclass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field unsafefield = unsafeclass.getDeclaredField("theUnsafe");
+			unsafefield.setAccessible(true);
+			Object unsafe = unsafefield.get(null);
+			return buf -> {
+				try {
+					invokecleaner.invoke(unsafe, buf);
+				} catch (Exception e) {
+					//failed to unmap, the garbage collector will release it
+				}
+			};
+		} catch (NoSuchMethodException e) {
+			//not Java 9+, try the Java 8 way
+		} catch (Exception | LinkageError e) {
+			return null;
+		}
+		try {
+			Method cleanermethod = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+			Method cleanmethod = Class.forName("sun.misc.Cleaner").getMethod("clean");
+			return buf -> {
+				try {
+					Object cleaner = cleanermethod.invoke(buf);
+					if (cleaner != null) {
+						cleanmethod.invoke(cleaner);
+					}
+				} catch (Exception e) {
+					//failed to unmap, the garbage collector will release it
+				}
+			};
+		} catch (Exception | LinkageError e) {
+			return null;
+		}
+	}
+
+	private static int getUnsignedShort(ByteBuffer buffer, int pos) {
+		return buffer.getShort(pos) & 0xFFFF;
+	}
+
+	private static long getUnsignedInt(ByteBuffer buffer, int pos) {
+		return buffer.getInt(pos) & 0xFFFFFFFFL;
+	}
+
+	private static String getString(ByteBuffer buffer, int pos, int len) {
+		byte[] bytes = new byte[len];
+		ByteBuffer dup = buffer.duplicate();
+		dup.position(pos);
+		dup.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Reference counted mapped file region.
+	 * <p>
+	 * The file is unmapped when the reference count reaches zero. The buffer must only be accessed while holding a
+	 * reference.
+	 */
+	private static final class MappedRegion {
+		private final ByteBuffer mapped;
+		private final AtomicInteger references = new AtomicInteger(1);
+
+		public MappedRegion(ByteBuffer mapped) {
+			this.mapped = mapped;
+		}
+
+		public boolean acquire() {
+			while (true) {
+				int c = references.get();
+				if (c <= 0) {
+					return false;
+				}
+				if (references.compareAndSet(c, c + 1)) {
+					return true;
+				}
+			}
+		}
+
+		public void release() {
+			if (references.decrementAndGet() == 0 && UNMAPPER != null) {
+				UNMAPPER.accept(mapped);
+			}
+		}
+	}
+
+	/**
+	 * Stream of a mapped buffer that owns a reference to the region.
+	 * <p>
+	 * The methods are synchronized, so the region is not released (and the file unmapped) by a concurrent
+	 * {@link #close()} call while the buffer is being read.
+	 */
+	private static final class ByteBufferInputStream extends InputStream {
+		private final ByteBuffer buffer;
+		private MappedRegion region;
+
+		/**
+		 * Creates a new stream that owns the argument region reference.
+		 */
+		public ByteBufferInputStream(ByteBuffer buffer, MappedRegion region) {
+			this.buffer = buffer;
+			this.region = region;
+		}
+
+		@Override
+		public synchronized int read() throws IOException {
+			ensureOpen();
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			return buffer.get() & 0xFF;
+		}
+
+		@Override
+		public synchronized int read(byte[] b, int off, int len) throws IOException {
+			ensureOpen();
+			if (len == 0) {
+				return 0;
+			}
+			int rem = buffer.remaining();
+			if (rem == 0) {
+				return -1;
+			}
+			int n = Math.min(rem, len);
+			buffer.get(b, off, n);
+			return n;
+		}
+
+		@Override
+		public synchronized long skip(long n) throws IOException {
+			ensureOpen();
+			if (n <= 0) {
+				return 0;
+			}
+			int skipped = (int) Math.min(buffer.remaining(), n);
+			buffer.position(buffer.position() + skipped);
+			return skipped;
+		}
+
+		@Override
+		public synchronized int available() throws IOException {
+			ensureOpen();
+			return buffer.remaining();
+		}
+
+		@Override
+		public synchronized void close() throws IOException {
+			MappedRegion r = region;
+			if (r != null) {
+				region = null;
+				r.release();
+			}
+		}
+
+		private void ensureOpen() throws IOException {
+			if (region == null) {
+				throw new IOException("Stream closed.");
+			}
+		}
+	}
+}
@@ -24,11 +24,17 @@ import saker.build.thirdparty.saker.util.io.ByteSource;
 
 public class NestBundleClassLoaderDataFinder implements ClassLoaderDataFinder {
 	private NestRepositoryBundle bundle;
+	private ArchiveEntryBytesCache entryBytesCache;
 
 	public NestBundleClassLoaderDataFinder(NestRepositoryBundle bundle) {
 		this.bundle = bundle;
 	}
 
+	public NestBundleClassLoaderDataFinder(NestRepositoryBundle bundle, ArchiveEntryBytesCache entryBytesCache) {
+		this.bundle = bundle;
+		this.entryBytesCache = entryBytesCache;
+	}
+
 	@Override
 	public Supplier<? extends ByteSource> getResource(String name) {
 		if (!bundle.hasEntry(name)) {
@@ -46,6 +52,9 @@ public class NestBundleClassLoaderDataFinder implements ClassLoaderDataFinder {
 	@Override
 	public ByteArrayRegion getResourceBytes(String name) {
 		try {
+			if (entryBytesCache != null) {
+				return entryBytesCache.getEntryBytes(bundle, name);
+			}
 			return bundle.getEntryBytes(name);
 		} catch (IOException e) {
 			return null;
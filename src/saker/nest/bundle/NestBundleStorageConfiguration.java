@@ -312,6 +312,155 @@ public interface NestBundleStorageConfiguration {
 	 * will be searched for.
 	 */
 	public static final String PARAMETER_NEST_REPOSITORY_PIN_TASK_VERSION = "repository.pin.task.version";
+	/**
+	 * Parameter for specifying the number of threads that are used to prefetch bundles during dependency resolution.
+	 * <p>
+	 * The parameter must be prefixed by the repository identifier in the following format:
+	 * 
+	 * <pre>
+	 * &lt;{@link RepositoryBuildEnvironment#getIdentifier() repo-id}&gt;.&lt;param&gt;
+	 * </pre>
+	 * 
+	 * When the repository resolves the dependencies of a bundle to create its class loader, it may start loading the
+	 * bundles that are likely to be part of the resolution result in the background. This can significantly reduce
+	 * the time required for the resolution if the bundles need to be downloaded over the network, as the downloads can
+	 * run concurrently instead of one after the other.
+	 * <p>
+	 * The prefetching doesn't affect the result of the dependency resolution, it only loads the bundles earlier.
+	 * <p>
+	 * The value of the parameter must be a non-negative integer. Set it to <code>0</code> to disable prefetching.
+	 * 
+	 * @since saker.nest 0.8.10
+	 */
+	public static final String PARAMETER_NEST_REPOSITORY_BUNDLE_PREFETCH_THREADS = "repository.bundle.prefetch.threads";
+	/**
+	 * Parameter for specifying whether the class loaders should share the loaded archive entry contents.
+	 * <p>
+	 * The parameter must be prefixed by the repository identifier in the following format:
+	 * 
+	 * <pre>
+	 * &lt;{@link RepositoryBuildEnvironment#getIdentifier() repo-id}&gt;.&lt;param&gt;
+	 * </pre>
+	 * 
+	 * The class loaders of the repository cache the contents of the loaded class files in a memory bounded cache
+	 * that is shared by all class loaders in the repository. If multiple class loaders load classes from the same
+	 * bundles or external archives, the contents of the entries don't need to be read again.
+	 * <p>
+	 * If the value of this parameter equals to <code>"false"</code> in a case-insensitive manner, the shared cache
+	 * will not be used.
+	 * 
+	 * @since saker.nest 0.8.10
+	 */
+	public static final String PARAMETER_NEST_REPOSITORY_CLASSLOADER_ENTRY_CACHE = "repository.classloader.entry.cache";
+	/**
+	 * Parameter for specifying the implementation that is used to read the contents of the bundles.
+	 * <p>
+	 * The parameter must be prefixed by the repository identifier in the following format:
+	 * 
+	 * <pre>
+	 * &lt;{@link RepositoryBuildEnvironment#getIdentifier() repo-id}&gt;.&lt;param&gt;
+	 * </pre>
+	 * 
+	 * If the value of this parameter equals to <code>"mapped"</code> in a case-insensitive manner, the bundles are
+	 * read by memory mapping the bundle JARs. This avoids the system calls and locking when the entries are read,
+	 * which can be beneficial when many threads load classes from the same bundle. The mapped files are unmapped
+	 * when the bundles are closed.
+	 * <p>
+	 * By default, the bundles are read using {@link java.util.jar.JarFile}.
+	 * <p>
+	 * The reader implementation is part of the storage configuration. Build configurations that use different readers
+	 * for the same storage will load the bundles separately.
+	 * 
+	 * @since saker.nest 0.8.10
+	 */
+	public static final String PARAMETER_NEST_REPOSITORY_JAR_READER = "repository.jar.reader";
+	/**
+	 * Parameter for specifying whether the results of the class path dependency resolutions should be cached between
+	 * builds.
+	 * <p>
+	 * The parameter must be prefixed by the repository identifier in the following format:
+	 * 
+	 * <pre>
+	 * &lt;{@link RepositoryBuildEnvironment#getIdentifier() repo-id}&gt;.&lt;param&gt;
+	 * </pre>
+	 * 
+	 * When the repository resolves the dependencies of a bundle to create its class loader, it stores the result in
+	 * the repository storage directory. The next time the class loader is requested for the same bundle with the same
+	 * configuration and unchanged bundle storage indexes, the repository checks that the bundle versions that the
+	 * resolution examined are still the same, and uses the stored result instead of resolving the dependencies again.
+	 * The bundles are not loaded for the validation. The least recently used results are removed if too many are
+	 * stored.
+	 * <p>
+	 * If the value of this parameter equals to <code>"false"</code> in a case-insensitive manner, the results of the
+	 * resolutions will not be cached.
+	 * 
+	 * @since saker.nest 0.8.10
+	 */
+	public static final String PARAMETER_NEST_REPOSITORY_DEPENDENCY_RESOLUTION_CACHE = "repository.dependency.resolution.cache";
+	/**
+	 * Parameter for specifying the number of threads that are used to resolve the independent dependencies of a
+	 * bundle concurrently.
+	 * <p>
+	 * The parameter must be prefixed by the repository identifier in the following format:
+	 * 
+	 * <pre>
+	 * &lt;{@link RepositoryBuildEnvironment#getIdentifier() repo-id}&gt;.&lt;param&gt;
+	 * </pre>
+	 * 
+	 * When the repository resolves the dependencies of a bundle to create its class loader, it may resolve the direct
+	 * dependencies of the bundle concurrently. If the resolutions of the direct dependencies don't share any bundles,
+	 * their results are used, otherwise the dependencies are resolved one after the other. The concurrent resolution
+	 * allows the loading of the dependency information of the bundles to overlap.
+	 * <p>
+	 * The concurrent resolution doesn't affect the result of the dependency resolution.
+	 * <p>
+	 * The value of the parameter must be a non-negative integer. The default value is <code>0</code>, meaning that the
+	 * dependencies are resolved sequentially.
+	 * 
+	 * @since saker.nest 0.8.10
+	 */
+	public static final String PARAMETER_NEST_REPOSITORY_DEPENDENCY_RESOLUTION_THREADS = "repository.dependency.resolution.threads";
+	/**
+	 * Parameter for specifying how the JAR entries of external dependencies should be loaded.
+	 * <p>
+	 * The parameter must be prefixed by the repository identifier in the following format:
+	 * 
+	 * <pre>
+	 * &lt;{@link RepositoryBuildEnvironment#getIdentifier() repo-id}&gt;.&lt;param&gt;
+	 * </pre>
+	 * 
+	 * If the value of this parameter equals to <code>"mapped"</code> in a case-insensitive manner, the JAR entries
+	 * that are stored without compression in an external archive are read directly from the memory mapped containing
+	 * archive. They are only extracted to the file system if the path of the archive is requested. Compressed entries
+	 * are always extracted.
+	 * <p>
+	 * This can reduce the number of written files and open file handles when archives with many nested JARs are used.
+	 * <p>
+	 * By default, all JAR entries are extracted to the file system and opened separately.
+	 * 
+	 * @since saker.nest 0.8.10
+	 */
+	public static final String PARAMETER_NEST_REPOSITORY_EXTERNAL_NESTED_ARCHIVES = "repository.external.nested.archives";
+	/**
+	 * Parameter for specifying whether the configured repository storage should be kept and reused by the next build
+	 * with the same configuration.
+	 * <p>
+	 * The parameter must be prefixed by the repository identifier in the following format:
+	 * 
+	 * <pre>
+	 * &lt;{@link RepositoryBuildEnvironment#getIdentifier() repo-id}&gt;.&lt;param&gt;
+	 * </pre>
+	 * 
+	 * When a build finishes, the repository keeps the loaded storages, bundles, class loaders and tasks. The next
+	 * build that has the same path configuration, user parameters and local file provider reuses them after detecting
+	 * the changes of the storages. The unused storages are closed after a timeout.
+	 * <p>
+	 * If the value of this parameter equals to <code>"false"</code> in a case-insensitive manner, the configured
+	 * storage is closed at the end of the build, and the next build loads everything again.
+	 * 
+	 * @since saker.nest 0.8.10
+	 */
+	public static final String PARAMETER_NEST_REPOSITORY_CONFIGURED_STORAGE_CACHE = "repository.configured.storage.cache";
 
 	/**
 	 * Storage type corresponding to the {@linkplain ParameterBundleStorageView parameter storage}.
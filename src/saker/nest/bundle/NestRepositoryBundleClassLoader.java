@@ -27,12 +27,18 @@ import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Predicate;
 
 import saker.build.thirdparty.saker.util.ConcurrentPrependAccumulator;
 import saker.build.thirdparty.saker.util.ImmutableUtils;
@@ -43,6 +49,7 @@ import saker.build.thirdparty.saker.util.function.LazySupplier;
 import saker.build.thirdparty.saker.util.io.ByteArrayRegion;
 import saker.build.thirdparty.saker.util.io.FileUtils;
 import saker.build.thirdparty.saker.util.io.IOUtils;
+import saker.build.util.java.JavaTools;
 import saker.nest.ConfiguredRepositoryStorage;
 import saker.nest.NestRepositoryImpl;
 import saker.nest.bundle.lookup.BundleLookup;
@@ -99,6 +106,12 @@ public final class NestRepositoryBundleClassLoader extends MultiDataClassLoader
 		registerAsParallelCapable();
 	}
 
+	private static final int NOT_FOUND_CLASS_NAMES_MAX_SIZE = 4096;
+
+	private static final String MULTI_RELEASE_VERSIONS_PREFIX = "META-INF/versions/";
+	private static final int MULTI_RELEASE_BASE_VERSION = 8;
+	private static final int RUNTIME_JAVA_MAJOR_VERSION = JavaTools.getCurrentJavaMajorVersion();
+
 	private final ConfiguredRepositoryStorage configuredStorage;
 	private final BundleKey bundleKey;
 	private final AbstractNestRepositoryBundle bundle;
@@ -110,9 +123,25 @@ public final class NestRepositoryBundleClassLoader extends MultiDataClassLoader
 	private final BundleLookup relativeBundleLookup;
 
 	private final ConcurrentSkipListMap<String, Class<?>> bundleLoadedClasses = new ConcurrentSkipListMap<>();
+	/**
+	 * The names of the classes that were looked up, but not found by this class loader, mapped to the exception
+	 * message that contains the lookup failures of the class loaders.
+	 * <p>
+	 * Only the messages are stored, as the exceptions retain their stack traces and the class loaders that threw them.
+	 * <p>
+	 * The map is bounded, it is cleared when it grows over {@link #NOT_FOUND_CLASS_NAMES_MAX_SIZE}.
+	 */
+	private final Map<String, String> notFoundClassNames = new ConcurrentHashMap<>();
 
 	private final LazySupplier<byte[]> hashWithClassPathDependencies = LazySupplier
 			.of(this::computeHashWithClassPathDependencies);
+	private final LazySupplier<Set<String>> bundleClassPackageNames = LazySupplier
+			.of(() -> getClassPackageNames(getBundle().getEntryNames()));
+	/**
+	 * The index is created lazily, as the dependency class loaders are set after the construction of the class
+	 * loader.
+	 */
+	private final LazySupplier<ClassLookupIndex> classLookupIndex = LazySupplier.of(this::createClassLookupIndex);
 
 	/**
 	 * Holds references to the opened lock files for the native libraries that are loaded.
@@ -128,7 +157,7 @@ public final class NestRepositoryBundleClassLoader extends MultiDataClassLoader
 			Map<BundleKey, ? extends DependentClassLoader<? extends NestRepositoryBundleClassLoader>> dependencyClassLoaders,
 			BundleLookup relativeBundleLookup,
 			Map<SimpleExternalArchiveKey, DependentClassLoader<? extends NestRepositoryExternalArchiveClassLoader>> externalDependencyClassLoaders) {
-		super(parent, new NestBundleClassLoaderDataFinder(bundle));
+		super(parent, new NestBundleClassLoaderDataFinder(bundle, configuredStorage.getEntryBytesCache()));
 		this.configuredStorage = configuredStorage;
 		this.bundleKey = bundlekey;
 		this.bundle = bundle;
@@ -141,6 +170,10 @@ public final class NestRepositoryBundleClassLoader extends MultiDataClassLoader
 		return externalDependencyClassLoaders;
 	}
 
+	ArchiveEntryBytesCache getEntryBytesCache() {
+		return configuredStorage.getEntryBytesCache();
+	}
+
 	@Override
 	public BundleLookup getRelativeBundleLookup() {
 		return relativeBundleLookup;
@@ -239,8 +272,22 @@ public final class NestRepositoryBundleClassLoader extends MultiDataClassLoader
 		return result;
 	}
 
+	/**
+	 * Clears the names of the classes which were not found by this class loader.
+	 * <p>
+	 * Subsequent lookups of the classes will search the class loaders again.
+	 */
+	public void clearNotFoundClassNames() {
+		notFoundClassNames.clear();
+	}
+
 	@Override
 	protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+		String notfoundmessage = notFoundClassNames.get(name);
+		if (notfoundmessage != null) {
+			//the lookup failed previously, the class loaders in the domain don't change
+			throw new CachedClassNotFoundException(notfoundmessage);
+		}
 		ClassNotFoundException e = null;
 		Class<?> c;
 		synchronized (getClassLoadingLock(name)) {
@@ -258,15 +305,10 @@ public final class NestRepositoryBundleClassLoader extends MultiDataClassLoader
 				}
 			}
 		}
+		ClassLookupIndex lookupindex = null;
 		if (c == null) {
-			Set<NestBundleClassLoader> triedcls = new HashSet<>();
-			triedcls.add(this);
-			c = findClassRecursively(triedcls, name, e, true);
-			if (c == null) {
-				triedcls.clear();
-				triedcls.add(this);
-				c = findExternalClassRecursively(triedcls, name, e, true);
-			}
+			lookupindex = classLookupIndex.get();
+			c = lookupindex.findClass(name, e);
 		}
 		if (c != null) {
 			if (resolve) {
@@ -274,6 +316,15 @@ public final class NestRepositoryBundleClassLoader extends MultiDataClassLoader
 			}
 			return c;
 		}
+		String classentryname = name.replace('.', '/') + ".class";
+		if (!hasClassEntry(bundle::hasEntry, classentryname) && !lookupindex.hasClassEntry(name, classentryname)) {
+			//only remember the failure if none of the class loaders contain the class file
+			//    if any of them does, the class loading may've failed for some other reason
+			if (notFoundClassNames.size() >= NOT_FOUND_CLASS_NAMES_MAX_SIZE) {
+				notFoundClassNames.clear();
+			}
+			notFoundClassNames.put(name, CachedClassNotFoundException.createMessage(name, e.getSuppressed()));
+		}
 		throw e;
 	}
 
@@ -310,61 +361,90 @@ public final class NestRepositoryBundleClassLoader extends MultiDataClassLoader
 		return null;
 	}
 
-	private Class<?> loadClassRecursively(Set<NestBundleClassLoader> triedcls, String name, ClassNotFoundException e) {
+	/**
+	 * Loads the class using the parent class loader and/or the bundle of this class loader for the
+	 * {@linkplain ClassLookupIndex class lookup index}.
+	 * <p>
+	 * The lookups are performed in the same order as {@link #loadClass(String, boolean)} would. Any lookup failures
+	 * are added as suppressed exceptions to the argument.
+	 */
+	private Class<?> loadClassForLookupIndex(String name, ClassNotFoundException e, boolean tryparent,
+			boolean trybundle) {
 		synchronized (getClassLoadingLock(name)) {
-			Class<?> c = getAlreadyLoadedClassByThisBundle(name);
-			if (c != null) {
-				return c;
+			if (trybundle) {
+				Class<?> c = getAlreadyLoadedClassByThisBundle(name);
+				if (c != null) {
+					return c;
+				}
 			}
-			try {
-				return Class.forName(name, false, getParent());
-			} catch (ClassNotFoundException e2) {
-				e.addSuppressed(e2);
+			if (tryparent) {
+				try {
+					return Class.forName(name, false, getParent());
+				} catch (ClassNotFoundException e2) {
+					e.addSuppressed(e2);
+				}
 			}
-
-			try {
-				return loadDefineClassFromBundle(name);
-			} catch (ClassNotFoundException e2) {
-				e.addSuppressed(e2);
+			if (trybundle) {
+				try {
+					return loadDefineClassFromBundle(name);
+				} catch (ClassNotFoundException e2) {
+					e.addSuppressed(e2);
+				}
 			}
 		}
-		return findClassRecursively(triedcls, name, e, false);
+		return null;
 	}
 
-	private Class<?> findClassRecursively(Set<NestBundleClassLoader> triedcls, String name, ClassNotFoundException e,
-			boolean allowprivate) {
+	private ClassLookupIndex createClassLookupIndex() {
+		Set<NestRepositoryBundleClassLoader> visited = new HashSet<>();
+		List<NestRepositoryBundleClassLoader> bundlecls = new ArrayList<>();
+		visited.add(this);
+		collectDependencyClassLoaders(visited, bundlecls, true);
+
+		List<NestRepositoryExternalArchiveClassLoader> externalcls = new ArrayList<>();
+		visited.clear();
+		visited.add(this);
+		collectExternalDependencyClassLoaders(visited, externalcls, true);
+		return new ClassLookupIndex(getParent(), bundlecls, externalcls);
+	}
+
+	/**
+	 * Collects the dependency class loaders in the order they should be searched for classes.
+	 * <p>
+	 * The order is depth-first, with the private dependencies of the transitive dependencies excluded.
+	 */
+	private void collectDependencyClassLoaders(Set<NestRepositoryBundleClassLoader> visited,
+			List<NestRepositoryBundleClassLoader> result, boolean allowprivate) {
 		if (dependencyClassLoaders.isEmpty()) {
-			return null;
+			return;
 		}
 		for (DependentClassLoader<? extends NestRepositoryBundleClassLoader> depcl : dependencyClassLoaders.values()) {
 			if (depcl.privateScope && !allowprivate) {
 				continue;
 			}
 			NestRepositoryBundleClassLoader cl = depcl.classLoader;
-			if (!triedcls.add(cl)) {
+			if (!visited.add(cl)) {
 				continue;
 			}
-			Class<?> found = cl.loadClassRecursively(triedcls, name, e);
-			if (found != null) {
-				return found;
-			}
+			result.add(cl);
+			cl.collectDependencyClassLoaders(visited, result, false);
 		}
-		return null;
 	}
 
-	private Class<?> findExternalClassRecursively(Set<NestBundleClassLoader> triedcls, String name,
-			ClassNotFoundException e, boolean allowprivate) {
+	/**
+	 * Collects the external dependency class loaders in the order they should be searched for classes.
+	 * <p>
+	 * The external class loaders of a bundle precede the external class loaders of its dependencies.
+	 */
+	private void collectExternalDependencyClassLoaders(Set<NestRepositoryBundleClassLoader> visited,
+			List<NestRepositoryExternalArchiveClassLoader> result, boolean allowprivate) {
 		if (!externalDependencyClassLoaders.isEmpty()) {
 			for (DependentClassLoader<? extends NestRepositoryExternalArchiveClassLoader> depcl : externalDependencyClassLoaders
 					.values()) {
 				if (depcl.privateScope && !allowprivate) {
 					continue;
 				}
-				try {
-					return depcl.classLoader.loadClassFromArchive(name);
-				} catch (ClassNotFoundException e1) {
-					e.addSuppressed(e1);
-				}
+				result.add(depcl.classLoader);
 			}
 		}
 		if (!dependencyClassLoaders.isEmpty()) {
@@ -374,16 +454,86 @@ public final class NestRepositoryBundleClassLoader extends MultiDataClassLoader
 					continue;
 				}
 				NestRepositoryBundleClassLoader cl = depcl.classLoader;
-				if (!triedcls.add(cl)) {
+				if (!visited.add(cl)) {
 					continue;
 				}
-				Class<?> found = cl.findExternalClassRecursively(triedcls, name, e, false);
-				if (found != null) {
-					return found;
-				}
+				cl.collectExternalDependencyClassLoaders(visited, result, false);
 			}
 		}
-		return null;
+	}
+
+	Set<String> getBundleClassPackageNames() {
+		return bundleClassPackageNames.get();
+	}
+
+	/**
+	 * Gets the names of the packages that contain class files in the argument entry names.
+	 * <p>
+	 * The class files in the versioned directories of multi-release JARs are considered to be in the package without
+	 * the versioned directory prefix, if the version applies to the current Java runtime.
+	 */
+	static Set<String> getClassPackageNames(Set<String> entrynames) {
+		Set<String> result = new HashSet<>();
+		for (String ename : entrynames) {
+			if (!ename.endsWith(".class")) {
+				continue;
+			}
+			String classentryname = getMultiReleaseBaseEntryName(ename);
+			if (classentryname == null) {
+				continue;
+			}
+			int idx = classentryname.lastIndexOf('/');
+			result.add(idx < 0 ? "" : classentryname.substring(0, idx).replace('/', '.'));
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the entry name without the versioned directory prefix of multi-release JARs.
+	 * 
+	 * @return The argument if it is not in a versioned directory, the name without the prefix, or <code>null</code>
+	 *             if the version doesn't apply to the current Java runtime.
+	 */
+	static String getMultiReleaseBaseEntryName(String entryname) {
+		if (!entryname.startsWith(MULTI_RELEASE_VERSIONS_PREFIX)) {
+			return entryname;
+		}
+		int slash = entryname.indexOf('/', MULTI_RELEASE_VERSIONS_PREFIX.length());
+		if (slash < 0) {
+			return null;
+		}
+		int version;
+		try {
+			version = Integer.parseInt(entryname.substring(MULTI_RELEASE_VERSIONS_PREFIX.length(), slash));
+		} catch (NumberFormatException e) {
+			//not a version directory
+			return null;
+		}
+		if (version <= MULTI_RELEASE_BASE_VERSION || version > RUNTIME_JAVA_MAJOR_VERSION) {
+			return null;
+		}
+		return entryname.substring(slash + 1);
+	}
+
+	/**
+	 * Checks if the class file is present either in the root or in an applicable versioned directory of a
+	 * multi-release JAR.
+	 */
+	static boolean hasClassEntry(Predicate<? super String> entrychecker, String classentryname) {
+		if (entrychecker.test(classentryname)) {
+			return true;
+		}
+		for (int v = RUNTIME_JAVA_MAJOR_VERSION; v > MULTI_RELEASE_BASE_VERSION; --v) {
+			if (entrychecker.test(MULTI_RELEASE_VERSIONS_PREFIX + v + "/" + classentryname)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String getClassPackageName(String classname) {
+		int idx = classname.lastIndexOf('.');
+		return idx < 0 ? "" : classname.substring(0, idx);
 	}
 
 	private String exportLib(String libentrynamename) {
@@ -521,6 +671,177 @@ public final class NestRepositoryBundleClassLoader extends MultiDataClassLoader
 		}
 	}
 
+	/**
+	 * Immutable index of the dependency class loaders of a class loader domain.
+	 * <p>
+	 * The index maps the package names to the class loaders which contain classes in the given package. When a class
+	 * is looked up, only the class loaders which may contain the class are searched, instead of traversing the whole
+	 * dependency graph. The class loaders are searched in the same order as they would be in a depth-first traversal
+	 * of the dependencies, and the private scoped dependencies are respected the same way.
+	 * <p>
+	 * The parent class loaders of the dependency bundles are searched as well, but only if they differ from the parent
+	 * class loaders that were already searched.
+	 */
+	private static final class ClassLookupIndex {
+		private static final int[] EMPTY_INT_ARRAY = {};
+
+		private final NestRepositoryBundleClassLoader[] bundleClassLoaders;
+		/**
+		 * The sorted indices of the bundle class loaders which have a parent class loader that need to be searched.
+		 */
+		private final int[] parentLookupIndices;
+		private final Map<String, int[]> packageBundleClassLoaderIndices;
+
+		private final NestRepositoryExternalArchiveClassLoader[] externalClassLoaders;
+		private final Map<String, int[]> packageExternalClassLoaderIndices;
+
+		public ClassLookupIndex(ClassLoader parent, List<NestRepositoryBundleClassLoader> bundlecls,
+				List<NestRepositoryExternalArchiveClassLoader> externalcls) {
+			this.bundleClassLoaders = bundlecls.toArray(new NestRepositoryBundleClassLoader[bundlecls.size()]);
+			this.externalClassLoaders = externalcls
+					.toArray(new NestRepositoryExternalArchiveClassLoader[externalcls.size()]);
+
+			Set<ClassLoader> searchedparents = new HashSet<>();
+			searchedparents.add(parent);
+			int[] parentindices = new int[bundleClassLoaders.length];
+			int parentcount = 0;
+			List<Set<String>> bundlepackages = new ArrayList<>(bundleClassLoaders.length);
+			for (int i = 0; i < bundleClassLoaders.length; i++) {
+				NestRepositoryBundleClassLoader cl = bundleClassLoaders[i];
+				if (searchedparents.add(cl.getParent())) {
+					parentindices[parentcount++] = i;
+				}
+				bundlepackages.add(cl.getBundleClassPackageNames());
+			}
+			this.parentLookupIndices = Arrays.copyOf(parentindices, parentcount);
+			this.packageBundleClassLoaderIndices = createPackageIndex(bundlepackages);
+
+			List<Set<String>> externalpackages = new ArrayList<>(externalClassLoaders.length);
+			for (NestRepositoryExternalArchiveClassLoader cl : externalClassLoaders) {
+				externalpackages.add(cl.getArchiveClassPackageNames());
+			}
+			this.packageExternalClassLoaderIndices = createPackageIndex(externalpackages);
+		}
+
+		/**
+		 * Finds the class in the indexed class loaders.
+		 * 
+		 * @param name
+		 *            The name of the class.
+		 * @param e
+		 *            The exception to add the lookup failures to as suppressed exceptions.
+		 * @return The found class or <code>null</code> if not found.
+		 */
+		public Class<?> findClass(String name, ClassNotFoundException e) {
+			String packname = getClassPackageName(name);
+			int[] bundleindices = packageBundleClassLoaderIndices.getOrDefault(packname, EMPTY_INT_ARRAY);
+			int[] parentindices = parentLookupIndices;
+			//merge the sorted indices to search the class loaders in the order of the dependency traversal
+			int bi = 0;
+			int pi = 0;
+			while (bi < bundleindices.length || pi < parentindices.length) {
+				int bidx = bi < bundleindices.length ? bundleindices[bi] : Integer.MAX_VALUE;
+				int pidx = pi < parentindices.length ? parentindices[pi] : Integer.MAX_VALUE;
+				int idx = Math.min(bidx, pidx);
+				boolean trybundle = bidx == idx;
+				boolean tryparent = pidx == idx;
+				if (trybundle) {
+					++bi;
+				}
+				if (tryparent) {
+					++pi;
+				}
+				Class<?> c = bundleClassLoaders[idx].loadClassForLookupIndex(name, e, tryparent, trybundle);
+				if (c != null) {
+					return c;
+				}
+			}
+			for (int idx : packageExternalClassLoaderIndices.getOrDefault(packname, EMPTY_INT_ARRAY)) {
+				try {
+					return externalClassLoaders[idx].loadClassFromArchive(name);
+				} catch (ClassNotFoundException e1) {
+					e.addSuppressed(e1);
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Checks if any of the indexed class loaders contain the class file of the given class.
+		 */
+		public boolean hasClassEntry(String name, String classentryname) {
+			String packname = getClassPackageName(name);
+			for (int idx : packageBundleClassLoaderIndices.getOrDefault(packname, EMPTY_INT_ARRAY)) {
+				//qualified, as the method is shadowed by the one in this class
+				if (NestRepositoryBundleClassLoader.hasClassEntry(bundleClassLoaders[idx].getBundle()::hasEntry,
+						classentryname)) {
+					return true;
+				}
+			}
+			for (int idx : packageExternalClassLoaderIndices.getOrDefault(packname, EMPTY_INT_ARRAY)) {
+				if (NestRepositoryBundleClassLoader
+						.hasClassEntry(externalClassLoaders[idx].getExternalArchive()::hasEntry, classentryname)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private static Map<String, int[]> createPackageIndex(List<Set<String>> packages) {
+			Map<String, int[]> result = new HashMap<>();
+			for (int i = 0; i < packages.size(); i++) {
+				for (String pack : packages.get(i)) {
+					int[] indices = result.get(pack);
+					if (indices == null) {
+						indices = new int[] { i };
+					} else {
+						//split packages are rare, no need for a growable array
+						indices = Arrays.copyOf(indices, indices.length + 1);
+						indices[indices.length - 1] = i;
+					}
+					result.put(pack, indices);
+				}
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Exception thrown for classes which were not found previously.
+	 * <p>
+	 * The exception doesn't have a stack trace, as creating it is expensive and not useful for the callers that probe
+	 * the availability of classes. The lookup failures of the class loaders from the original lookup are included in
+	 * the message.
+	 */
+	private static final class CachedClassNotFoundException extends ClassNotFoundException {
+		private static final long serialVersionUID = 1L;
+
+		public CachedClassNotFoundException(String message) {
+			super(message);
+		}
+
+		public static String createMessage(String name, Throwable[] causes) {
+			if (causes.length == 0) {
+				return name;
+			}
+			StringBuilder sb = new StringBuilder(name);
+			sb.append(" (Previous lookup failures: ");
+			for (int i = 0; i < causes.length; i++) {
+				if (i > 0) {
+					sb.append(", ");
+				}
+				sb.append(causes[i]);
+			}
+			sb.append(')');
+			return sb.toString();
+		}
+
+		@Override
+		public synchronized Throwable fillInStackTrace() {
+			return this;
+		}
+	}
+
 	@SuppressWarnings("unused")
 	//suppress unused warnings as the fields are just strong references to the objects
 	private static class LoadedLibraryFileLockReference {
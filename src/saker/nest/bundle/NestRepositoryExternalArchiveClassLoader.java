@@ -19,6 +19,7 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentSkipListMap;
 
 import saker.build.thirdparty.saker.util.classloader.MultiDataClassLoader;
+import saker.build.thirdparty.saker.util.function.LazySupplier;
 import saker.build.thirdparty.saker.util.io.IOUtils;
 
 public final class NestRepositoryExternalArchiveClassLoader extends MultiDataClassLoader
@@ -33,10 +34,12 @@ public final class NestRepositoryExternalArchiveClassLoader extends MultiDataCla
 	private final Set<NestRepositoryExternalArchiveClassLoader> externalClassLoaderDomain;
 
 	private final ConcurrentSkipListMap<String, Class<?>> archiveLoadedClasses = new ConcurrentSkipListMap<>();
+	private final LazySupplier<Set<String>> archiveClassPackageNames = LazySupplier
+			.of(() -> NestRepositoryBundleClassLoader.getClassPackageNames(getExternalArchive().getEntryNames()));
 
 	public NestRepositoryExternalArchiveClassLoader(NestRepositoryBundleClassLoader owner, ClassLoader parent,
 			AbstractExternalArchive archive, Set<NestRepositoryExternalArchiveClassLoader> externalClassLoaderDomain) {
-		super(parent, new ExternalArchiveClassLoaderDataFinder(archive));
+		super(parent, new ExternalArchiveClassLoaderDataFinder(archive, owner.getEntryBytesCache()));
 		this.owner = owner;
 		this.archive = archive;
 		this.externalClassLoaderDomain = externalClassLoaderDomain;
@@ -51,6 +54,10 @@ public final class NestRepositoryExternalArchiveClassLoader extends MultiDataCla
 		return archive;
 	}
 
+	Set<String> getArchiveClassPackageNames() {
+		return archiveClassPackageNames.get();
+	}
+
 	/**
 	 * Must be locked on {@link #getClassLoadingLock(String)}.
 	 * <p>
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.nest.bundle;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.NavigableSet;
+import java.util.UUID;
+
+import saker.build.file.provider.LocalFileProvider;
+import saker.build.thirdparty.saker.util.function.LazySupplier;
+import saker.build.thirdparty.saker.util.io.ByteArrayRegion;
+import saker.build.thirdparty.saker.util.io.IOUtils;
+import saker.build.thirdparty.saker.util.io.SerialUtils;
+import saker.nest.exc.IllegalArchiveEntryNameException;
+
+/**
+ * External archive for a JAR that is an entry of another JAR archive, and is stored without compression.
+ * <p>
+ * The contents of the nested JAR are read directly from the memory mapped containing archive, therefore it doesn't
+ * need to be extracted to the file system. The nested JAR is only extracted if its {@linkplain #getJarPath() path} is
+ * requested.
+ * <p>
+ * The hash of the archive is computed the same way as for {@link JarExternalArchiveImpl}, so it equals to the hash
+ * of the archive if it was extracted.
+ */
+public class NestedJarExternalArchiveImpl extends AbstractExternalArchive implements JarExternalArchive {
+	private final SimpleExternalArchiveKey archiveKey;
+	private final MappedJarReader reader;
+	private final Path extractPath;
+
+	private final LazySupplier<byte[]> jarHash = LazySupplier.of(this::computeJarHash);
+	/**
+	 * Set to <code>true</code> after the nested JAR was successfully extracted. Accessed while locked on
+	 * <code>this</code>.
+	 */
+	private boolean extracted;
+
+	private NestedJarExternalArchiveImpl(SimpleExternalArchiveKey archiveKey, MappedJarReader reader,
+			Path extractPath) {
+		this.archiveKey = archiveKey;
+		this.reader = reader;
+		this.extractPath = extractPath;
+	}
+
+	/**
+	 * Creates a nested archive for the given entry of the containing archive.
+	 * 
+	 * @param archiveKey
+	 *            The archive key of the nested archive.
+	 * @param containingarchive
+	 *            The archive that contains the nested JAR.
+	 * @param entryname
+	 *            The name of the nested JAR entry.
+	 * @param extractpath
+	 *            The path where the nested JAR is extracted if its path is requested.
+	 * @return The created archive, or <code>null</code> if the entry is compressed in the containing archive.
+	 * @throws IOException
+	 *             In case of I/O error, or if the format of the archives is not supported.
+	 * @throws IllegalArchiveEntryNameException
+	 *             If the nested JAR contains an entry with an invalid name, or entries that only differ by case.
+	 */
+	public static NestedJarExternalArchiveImpl create(SimpleExternalArchiveKey archiveKey,
+			JarExternalArchiveImpl containingarchive, String entryname, Path extractpath)
+			throws IOException, IllegalArchiveEntryNameException {
+		MappedJarReader containingreader = containingarchive.getMappedReader();
+		MappedJarReader reader = containingreader.openStoredEntryReader(entryname);
+		if (reader == null) {
+			return null;
+		}
+		try {
+			NavigableSet<String> entrynames = reader.getEntryNames();
+			for (String ename : entrynames) {
+				BundleUtils.checkArchiveEntryName(ename);
+			}
+			//same validation as for the extracted archives
+			JarExternalArchiveImpl
+					.checkCaseInsensitiveDuplicateEntryNames(entrynames.toArray(new String[entrynames.size()]));
+			return new NestedJarExternalArchiveImpl(archiveKey, reader, extractpath);
+		} catch (Throwable e) {
+			IOUtils.addExc(e, IOUtils.closeExc(reader));
+			throw e;
+		}
+	}
+
+	@Override
+	public SimpleExternalArchiveKey getArchiveKey() {
+		return archiveKey;
+	}
+
+	@Override
+	public NavigableSet<String> getEntryNames() {
+		return reader.getEntryNames();
+	}
+
+	@Override
+	public boolean hasEntry(String name) {
+		return reader.hasEntry(name);
+	}
+
+	@Override
+	public InputStream openEntry(String name) throws IOException {
+		return reader.openEntry(name);
+	}
+
+	@Override
+	public ByteArrayRegion getEntryBytes(String name) throws IOException {
+		return reader.getEntryBytes(name);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The nested JAR is extracted to the file system when this method is called the first time. If the extraction
+	 * fails, the error is printed, and the path is still returned. In that case the file at the path doesn't exist,
+	 * so the callers will encounter the failure when they access it, and the extraction is attempted again on the
+	 * next call.
+	 */
+	@Override
+	public synchronized Path getJarPath() {
+		if (!extracted) {
+			try {
+				extract();
+				extracted = true;
+			} catch (IOException e) {
+				System.err.println("Failed to extract nested archive: " + reader.getPath() + " : " + e);
+			}
+		}
+		return extractPath;
+	}
+
+	@Override
+	public byte[] getHash() {
+		return getSharedHash().clone();
+	}
+
+	@Override
+	public byte[] getSharedHash() {
+		return jarHash.get();
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[" + reader.getPath() + "]";
+	}
+
+	private byte[] computeJarHash() {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(JarNestRepositoryBundleImpl.BUNDLE_HASH_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError("Hash algorithm not found: " + JarNestRepositoryBundleImpl.BUNDLE_HASH_ALGORITHM,
+					e);
+		}
+		try {
+			reader.updateDigest(digest);
+		} catch (IOException e) {
+			System.err.println("Failed to hash archive: " + reader.getPath() + " : " + e);
+			//generate a random hash to detect any differences next time
+			byte[] hash = new byte[Long.BYTES * 2];
+			UUID uuid = UUID.randomUUID();
+			SerialUtils.writeLongToBuffer(uuid.getMostSignificantBits(), hash, 0);
+			SerialUtils.writeLongToBuffer(uuid.getLeastSignificantBits(), hash, Long.BYTES);
+			return hash;
+		}
+		return digest.digest();
+	}
+
+	private void extract() throws IOException {
+		if (isExtractedFilePresent()) {
+			//already extracted, possibly by a configuration that doesn't use nested archives
+			return;
+		}
+		Files.createDirectories(extractPath.getParent());
+		Path tempfile = extractPath.resolveSibling(UUID.randomUUID() + ".temp");
+		try {
+			try (FileChannel channel = FileChannel.open(tempfile, StandardOpenOption.CREATE_NEW,
+					StandardOpenOption.WRITE)) {
+				reader.writeTo(channel);
+			}
+			Files.move(tempfile, extractPath, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			//don't leave a file with different contents at the path
+			try {
+				if (!isExtractedFilePresent()) {
+					Files.deleteIfExists(extractPath);
+				}
+			} catch (IOException e2) {
+				e.addSuppressed(e2);
+			}
+			throw e;
+		} finally {
+			Files.deleteIfExists(tempfile);
+		}
+	}
+
+	private boolean isExtractedFilePresent() throws IOException {
+		if (!Files.isRegularFile(extractPath) || Files.size(extractPath) != reader.getArchiveSize()) {
+			return false;
+		}
+		byte[] filehash;
+		try {
+			filehash = LocalFileProvider.getInstance()
+					.hash(extractPath, JarNestRepositoryBundleImpl.BUNDLE_HASH_ALGORITHM).getHash();
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError("Hash algorithm not found: " + JarNestRepositoryBundleImpl.BUNDLE_HASH_ALGORITHM,
+					e);
+		}
+		return Arrays.equals(filehash, getSharedHash());
+	}
+}
@@ -61,6 +61,29 @@ public abstract class AbstractBundleStorageView implements BundleStorageView {
 
 	public abstract void updateStorageViewHash(MessageDigest digest);
 
+	/**
+	 * Gets the identity of the current state of the bundle index of this storage view.
+	 * <p>
+	 * The identity changes if the bundle lookups in the storage view may produce different results, or the contents
+	 * of the bundles may change. It is determined without loading any bundles.
+	 * 
+	 * @return The identity, or <code>null</code> if not available.
+	 */
+	public String getBundleIndexIdentity() {
+		return null;
+	}
+
+	/**
+	 * Gets the hash of the given bundle if it is known without loading or hashing the bundle.
+	 * 
+	 * @param bundleid
+	 *            The bundle identifier.
+	 * @return The hash, or <code>null</code> if not known. The returned array shouldn't be modified.
+	 */
+	public byte[] getKnownBundleHash(BundleIdentifier bundleid) {
+		return null;
+	}
+
 	public NestRepositoryBundle lookupTaskBundleForInformationProvider(TaskName taskname) {
 		try {
 			return lookupTaskBundle(taskname);
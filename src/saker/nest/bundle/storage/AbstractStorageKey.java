@@ -16,7 +16,21 @@
 package saker.nest.bundle.storage;
 
 import saker.nest.NestRepositoryImpl;
+import saker.nest.bundle.MappedJarReader;
 
 public abstract class AbstractStorageKey implements StorageKey {
+	/**
+	 * Specifies if the bundles of the storage should be read using {@link MappedJarReader}.
+	 * <p>
+	 * The field is part of the identity of the key, and should be taken into account by the subclasses in their
+	 * {@link #equals(Object)}, {@link #hashCode()} implementations, and when serializing the key. Configurations that
+	 * use different readers for the same storage will use different storage instances.
+	 */
+	protected boolean mappedJarReader;
+
 	public abstract AbstractBundleStorage getStorage(NestRepositoryImpl repository);
+
+	public boolean isMappedJarReader() {
+		return mappedJarReader;
+	}
 }
@@ -0,0 +1,597 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.nest.bundle.storage;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import saker.apiextract.api.PublicApi;
+import saker.build.thirdparty.saker.util.ImmutableUtils;
+import saker.nest.bundle.BundleIdentifier;
+
+/**
+ * Immutable map of string keys to bundle identifier sets that is backed by a compact binary representation.
+ * <p>
+ * The binary format consists of a sorted table of the keys and a table of the bundle identifiers, both of them
+ * represented as an offset array and the concatenated UTF-8 bytes of the strings. The key entries are looked up using
+ * binary search on their encoded bytes, and are only decoded when they are accessed. The bundle identifiers are
+ * decoded and validated once when the table is read, and the value sets of the keys are views of the decoded bundle
+ * identifier table. This allows the table to be used directly from a memory mapped file without parsing the keys.
+ * <p>
+ * The keys must be ordered by their UTF-8 encoded bytes when the table is written. This is the same as their natural
+ * order, unless they contain supplementary characters. The bundle identifiers of a key must be in ascending order.
+ * <p>
+ * The table is used by the server storage to cache the contents of the index files.
+ * 
+ * @since saker.nest 0.8.10
+ */
+@PublicApi
+public final class BundleIndexTable extends AbstractMap<String, NavigableSet<BundleIdentifier>> {
+	private final ByteBuffer buffer;
+	private final int keyCount;
+	private final int keyOffsetsPosition;
+	private final int valueStartsPosition;
+	private final int keyBlobPosition;
+	private final BundleIdentifier[] values;
+
+	private BundleIndexTable(ByteBuffer buffer, int keyCount, int keyOffsetsPosition, int valueStartsPosition,
+			int keyBlobPosition, BundleIdentifier[] values) {
+		this.buffer = buffer;
+		this.keyCount = keyCount;
+		this.keyOffsetsPosition = keyOffsetsPosition;
+		this.valueStartsPosition = valueStartsPosition;
+		this.keyBlobPosition = keyBlobPosition;
+		this.values = values;
+	}
+
+	/**
+	 * Writes the argument data in the binary format of the table.
+	 * 
+	 * @param data
+	 *            The data to write. The iteration order must be the natural order of the keys.
+	 * @param out
+	 *            The output to write to.
+	 * @throws IOException
+	 *             In case of I/O error.
+	 * @throws IllegalArgumentException
+	 *             If the keys or the bundle identifiers of a key are not in ascending order.
+	 */
+	public static void write(Map<String, ? extends Collection<? extends BundleIdentifier>> data, DataOutput out)
+			throws IOException, IllegalArgumentException {
+		int keycount = data.size();
+		byte[][] keybytes = new byte[keycount][];
+		int[] valuestarts = new int[keycount + 1];
+		int valuecount = 0;
+		{
+			int i = 0;
+			String prevkey = null;
+			for (Entry<String, ? extends Collection<? extends BundleIdentifier>> entry : data.entrySet()) {
+				String key = entry.getKey();
+				byte[] kb = key.getBytes(StandardCharsets.UTF_8);
+				if (prevkey != null && compareBytes(keybytes[i - 1], kb) >= 0) {
+					throw new IllegalArgumentException("Keys are not in ascending order: " + prevkey + " - " + key);
+				}
+				prevkey = key;
+				keybytes[i++] = kb;
+				valuestarts[i] = valuecount += entry.getValue().size();
+			}
+		}
+		byte[][] valuebytes = new byte[valuecount][];
+		{
+			int i = 0;
+			for (Collection<? extends BundleIdentifier> values : data.values()) {
+				BundleIdentifier prev = null;
+				for (BundleIdentifier bundleid : values) {
+					if (prev != null && prev.compareTo(bundleid) >= 0) {
+						throw new IllegalArgumentException(
+								"Bundle identifiers are not in ascending order: " + prev + " - " + bundleid);
+					}
+					prev = bundleid;
+					valuebytes[i++] = bundleid.toString().getBytes(StandardCharsets.UTF_8);
+				}
+			}
+		}
+
+		out.writeInt(keycount);
+		writeOffsets(keybytes, out);
+		for (int vs : valuestarts) {
+			out.writeInt(vs);
+		}
+		out.writeInt(valuecount);
+		writeOffsets(valuebytes, out);
+		for (byte[] kb : keybytes) {
+			out.write(kb);
+		}
+		for (byte[] vb : valuebytes) {
+			out.write(vb);
+		}
+	}
+
+	/**
+	 * Creates a table view for the binary data in the argument buffer.
+	 * <p>
+	 * The data starts at the current position of the buffer. The argument buffer is not modified.
+	 * <p>
+	 * The table structure and the bundle identifiers are validated. The bundle identifiers are decoded by this method,
+	 * while the keys are decoded when they are accessed.
+	 * 
+	 * @param buffer
+	 *            The buffer.
+	 * @return The table.
+	 * @throws IOException
+	 *             If the table data is malformed, a bundle identifier is invalid, or the bundle identifiers of a key
+	 *             are not in ascending order.
+	 */
+	public static BundleIndexTable read(ByteBuffer buffer) throws IOException {
+		ByteBuffer buf = buffer.slice();
+		int limit = buf.limit();
+		try {
+			int keycount = buf.getInt(0);
+			if (keycount < 0) {
+				throw new IOException("Invalid key count: " + keycount);
+			}
+			int keyoffsetspos = 4;
+			int valuestartspos = keyoffsetspos + (keycount + 1) * 4;
+			int valuecountpos = valuestartspos + (keycount + 1) * 4;
+			int valuecount = buf.getInt(valuecountpos);
+			if (valuecount < 0) {
+				throw new IOException("Invalid value count: " + valuecount);
+			}
+			int valueoffsetspos = valuecountpos + 4;
+			int keyblobpos = valueoffsetspos + (valuecount + 1) * 4;
+			if (keyblobpos < 0 || keyblobpos > limit) {
+				throw new IOException("Invalid table size.");
+			}
+			int keybloblen = checkOffsets(buf, keyoffsetspos, keycount);
+			int valueblobpos = keyblobpos + keybloblen;
+			int valuebloblen = checkOffsets(buf, valueoffsetspos, valuecount);
+			if (valueblobpos < 0 || valueblobpos + valuebloblen < 0 || valueblobpos + valuebloblen > limit) {
+				throw new IOException("Invalid table size.");
+			}
+			if (buf.getInt(valuestartspos) != 0 || buf.getInt(valuestartspos + keycount * 4) != valuecount) {
+				throw new IOException("Invalid value start indices.");
+			}
+			for (int i = 0, prev = 0; i <= keycount; i++) {
+				int vs = buf.getInt(valuestartspos + i * 4);
+				if (vs < prev) {
+					throw new IOException("Invalid value start indices.");
+				}
+				prev = vs;
+			}
+			//decode the bundle identifiers once, so they are not parsed repeatedly by the lookups, and the malformed
+			//ones are detected here instead of when they are accessed
+			BundleIdentifier[] values = new BundleIdentifier[valuecount];
+			for (int i = 0; i < valuecount; i++) {
+				String idstr = getString(buf, valueoffsetspos, valueblobpos, i);
+				try {
+					values[i] = BundleIdentifier.valueOf(idstr);
+				} catch (IllegalArgumentException e) {
+					throw new IOException("Invalid bundle identifier: " + idstr, e);
+				}
+			}
+			for (int i = 0; i < keycount; i++) {
+				int start = buf.getInt(valuestartspos + i * 4);
+				int end = buf.getInt(valuestartspos + (i + 1) * 4);
+				for (int j = start + 1; j < end; j++) {
+					if (values[j - 1].compareTo(values[j]) >= 0) {
+						throw new IOException(
+								"Bundle identifiers are not in ascending order: " + values[j - 1] + " - " + values[j]);
+					}
+				}
+			}
+			return new BundleIndexTable(buf, keycount, keyoffsetspos, valuestartspos, keyblobpos, values);
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException("Invalid table format.", e);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The returned set is an unmodifiable view of the table.
+	 */
+	@Override
+	public NavigableSet<BundleIdentifier> get(Object key) {
+		if (!(key instanceof String)) {
+			return null;
+		}
+		int idx = indexOfKey((String) key);
+		if (idx < 0) {
+			return null;
+		}
+		return getValues(idx);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		if (!(key instanceof String)) {
+			return false;
+		}
+		return indexOfKey((String) key) >= 0;
+	}
+
+	@Override
+	public int size() {
+		return keyCount;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return keyCount == 0;
+	}
+
+	@Override
+	public Set<Entry<String, NavigableSet<BundleIdentifier>>> entrySet() {
+		return new AbstractSet<Entry<String, NavigableSet<BundleIdentifier>>>() {
+			@Override
+			public Iterator<Entry<String, NavigableSet<BundleIdentifier>>> iterator() {
+				return new Iterator<Entry<String, NavigableSet<BundleIdentifier>>>() {
+					private int idx = 0;
+
+					@Override
+					public boolean hasNext() {
+						return idx < keyCount;
+					}
+
+					@Override
+					public Entry<String, NavigableSet<BundleIdentifier>> next() {
+						if (idx >= keyCount) {
+							throw new NoSuchElementException();
+						}
+						int i = idx++;
+						return ImmutableUtils.makeImmutableMapEntry(getKey(i), getValues(i));
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return keyCount;
+			}
+		};
+	}
+
+	private int indexOfKey(String key) {
+		byte[] keybytes = key.getBytes(StandardCharsets.UTF_8);
+		int low = 0;
+		int high = keyCount - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = compareKeyAt(mid, keybytes);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	private String getKey(int idx) {
+		return getString(buffer, keyOffsetsPosition, keyBlobPosition, idx);
+	}
+
+	/**
+	 * Compares the key at the given index to the argument UTF-8 encoded bytes without decoding the key.
+	 */
+	private int compareKeyAt(int idx, byte[] keybytes) {
+		int start = buffer.getInt(keyOffsetsPosition + idx * 4);
+		int len = buffer.getInt(keyOffsetsPosition + (idx + 1) * 4) - start;
+		int pos = keyBlobPosition + start;
+		int lim = Math.min(len, keybytes.length);
+		for (int i = 0; i < lim; i++) {
+			int cmp = Integer.compare(buffer.get(pos + i) & 0xFF, keybytes[i] & 0xFF);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return len - keybytes.length;
+	}
+
+	private NavigableSet<BundleIdentifier> getValues(int keyidx) {
+		int start = buffer.getInt(valueStartsPosition + keyidx * 4);
+		int end = buffer.getInt(valueStartsPosition + (keyidx + 1) * 4);
+		return new ValueSet(start, end);
+	}
+
+	private static String getString(ByteBuffer buffer, int offsetspos, int blobpos, int idx) {
+		int start = buffer.getInt(offsetspos + idx * 4);
+		int end = buffer.getInt(offsetspos + (idx + 1) * 4);
+		byte[] bytes = new byte[end - start];
+		//duplicate the buffer as the position is modified
+		ByteBuffer dup = buffer.duplicate();
+		dup.position(blobpos + start);
+		dup.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static int compareBytes(byte[] first, byte[] second) {
+		int lim = Math.min(first.length, second.length);
+		for (int i = 0; i < lim; i++) {
+			int cmp = Integer.compare(first[i] & 0xFF, second[i] & 0xFF);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return first.length - second.length;
+	}
+
+	private static void writeOffsets(byte[][] strings, DataOutput out) throws IOException {
+		int offset = 0;
+		out.writeInt(0);
+		for (byte[] s : strings) {
+			offset += s.length;
+			out.writeInt(offset);
+		}
+	}
+
+	private static int checkOffsets(ByteBuffer buf, int offsetspos, int count) throws IOException {
+		int prev = buf.getInt(offsetspos);
+		if (prev != 0) {
+			throw new IOException("Invalid string offsets.");
+		}
+		for (int i = 1; i <= count; i++) {
+			int offset = buf.getInt(offsetspos + i * 4);
+			if (offset < prev) {
+				throw new IOException("Invalid string offsets.");
+			}
+			prev = offset;
+		}
+		return prev;
+	}
+
+	/**
+	 * Unmodifiable view of the bundle identifiers in the given range of the value table.
+	 */
+	private final class ValueSet extends AbstractSet<BundleIdentifier> implements NavigableSet<BundleIdentifier> {
+		private final int fromIndex;
+		private final int toIndex;
+
+		public ValueSet(int fromIndex, int toIndex) {
+			this.fromIndex = fromIndex;
+			this.toIndex = toIndex;
+		}
+
+		@Override
+		public int size() {
+			return toIndex - fromIndex;
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return toIndex == fromIndex;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			if (!(o instanceof BundleIdentifier)) {
+				return false;
+			}
+			return search((BundleIdentifier) o) >= 0;
+		}
+
+		@Override
+		public Iterator<BundleIdentifier> iterator() {
+			return new Iterator<BundleIdentifier>() {
+				private int idx = fromIndex;
+
+				@Override
+				public boolean hasNext() {
+					return idx < toIndex;
+				}
+
+				@Override
+				public BundleIdentifier next() {
+					if (idx >= toIndex) {
+						throw new NoSuchElementException();
+					}
+					return values[idx++];
+				}
+			};
+		}
+
+		@Override
+		public Iterator<BundleIdentifier> descendingIterator() {
+			return new Iterator<BundleIdentifier>() {
+				private int idx = toIndex - 1;
+
+				@Override
+				public boolean hasNext() {
+					return idx >= fromIndex;
+				}
+
+				@Override
+				public BundleIdentifier next() {
+					if (idx < fromIndex) {
+						throw new NoSuchElementException();
+					}
+					return values[idx--];
+				}
+			};
+		}
+
+		@Override
+		public NavigableSet<BundleIdentifier> descendingSet() {
+			//rarely used, no need for a specialized view
+			return Collections.unmodifiableNavigableSet(new TreeSet<>(this)).descendingSet();
+		}
+
+		@Override
+		public Comparator<? super BundleIdentifier> comparator() {
+			return null;
+		}
+
+		@Override
+		public BundleIdentifier first() {
+			if (isEmpty()) {
+				throw new NoSuchElementException();
+			}
+			return values[fromIndex];
+		}
+
+		@Override
+		public BundleIdentifier last() {
+			if (isEmpty()) {
+				throw new NoSuchElementException();
+			}
+			return values[toIndex - 1];
+		}
+
+		@Override
+		public BundleIdentifier lower(BundleIdentifier e) {
+			return getOrNull(lowerIndex(e));
+		}
+
+		@Override
+		public BundleIdentifier floor(BundleIdentifier e) {
+			return getOrNull(floorIndex(e));
+		}
+
+		@Override
+		public BundleIdentifier ceiling(BundleIdentifier e) {
+			return getOrNull(ceilingIndex(e));
+		}
+
+		@Override
+		public BundleIdentifier higher(BundleIdentifier e) {
+			return getOrNull(higherIndex(e));
+		}
+
+		@Override
+		public BundleIdentifier pollFirst() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public BundleIdentifier pollLast() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public NavigableSet<BundleIdentifier> subSet(BundleIdentifier fromElement, boolean fromInclusive,
+				BundleIdentifier toElement, boolean toInclusive) {
+			if (fromElement.compareTo(toElement) > 0) {
+				throw new IllegalArgumentException("Invalid range: " + fromElement + " - " + toElement);
+			}
+			int start = fromInclusive ? ceilingIndex(fromElement) : higherIndex(fromElement);
+			int end = (toInclusive ? floorIndex(toElement) : lowerIndex(toElement)) + 1;
+			return subSetImpl(start, end);
+		}
+
+		@Override
+		public NavigableSet<BundleIdentifier> headSet(BundleIdentifier toElement, boolean inclusive) {
+			int end = (inclusive ? floorIndex(toElement) : lowerIndex(toElement)) + 1;
+			return subSetImpl(fromIndex, end);
+		}
+
+		@Override
+		public NavigableSet<BundleIdentifier> tailSet(BundleIdentifier fromElement, boolean inclusive) {
+			int start = inclusive ? ceilingIndex(fromElement) : higherIndex(fromElement);
+			return subSetImpl(start, toIndex);
+		}
+
+		@Override
+		public SortedSet<BundleIdentifier> subSet(BundleIdentifier fromElement, BundleIdentifier toElement) {
+			return subSet(fromElement, true, toElement, false);
+		}
+
+		@Override
+		public SortedSet<BundleIdentifier> headSet(BundleIdentifier toElement) {
+			return headSet(toElement, false);
+		}
+
+		@Override
+		public SortedSet<BundleIdentifier> tailSet(BundleIdentifier fromElement) {
+			return tailSet(fromElement, true);
+		}
+
+		private NavigableSet<BundleIdentifier> subSetImpl(int start, int end) {
+			if (end < start) {
+				end = start;
+			}
+			if (start == fromIndex && end == toIndex) {
+				return this;
+			}
+			return new ValueSet(start, end);
+		}
+
+		private BundleIdentifier getOrNull(int idx) {
+			if (idx < fromIndex || idx >= toIndex) {
+				return null;
+			}
+			return values[idx];
+		}
+
+		private int lowerIndex(BundleIdentifier e) {
+			int idx = search(e);
+			return idx >= 0 ? idx - 1 : -idx - 2;
+		}
+
+		private int floorIndex(BundleIdentifier e) {
+			int idx = search(e);
+			return idx >= 0 ? idx : -idx - 2;
+		}
+
+		private int ceilingIndex(BundleIdentifier e) {
+			int idx = search(e);
+			return idx >= 0 ? idx : -idx - 1;
+		}
+
+		private int higherIndex(BundleIdentifier e) {
+			int idx = search(e);
+			return idx >= 0 ? idx + 1 : -idx - 1;
+		}
+
+		/**
+		 * Binary search in the range of this set.
+		 * 
+		 * @return The index of the element, or <code>(-(insertion point) - 1)</code> if not found.
+		 */
+		private int search(BundleIdentifier e) {
+			int low = fromIndex;
+			int high = toIndex - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				int cmp = values[mid].compareTo(e);
+				if (cmp < 0) {
+					low = mid + 1;
+				} else if (cmp > 0) {
+					high = mid - 1;
+				} else {
+					return mid;
+				}
+			}
+			return -(low + 1);
+		}
+	}
+}
@@ -19,11 +19,10 @@ import java.io.Externalizable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInput;
-import java.io.ObjectInputStream;
 import java.io.ObjectOutput;
-import java.io.ObjectOutputStream;
-import java.io.ObjectStreamClass;
 import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
@@ -38,6 +37,7 @@ import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
@@ -57,14 +57,13 @@ import java.util.TreeSet;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentNavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
 import java.util.jar.JarInputStream;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import saker.build.file.StreamWritable;
-import saker.build.file.content.FileAttributesContentDescriptor;
 import saker.build.file.path.SakerPath;
-import saker.build.file.provider.FileEntry;
 import saker.build.file.provider.LocalFileProvider;
 import saker.build.file.provider.RootFileProviderKey;
 import saker.build.runtime.params.ExecutionPathConfiguration;
@@ -90,11 +89,11 @@ import saker.build.thirdparty.saker.util.io.IOUtils;
 import saker.build.thirdparty.saker.util.io.MultiplexOutputStream;
 import saker.build.thirdparty.saker.util.io.SerialUtils;
 import saker.build.thirdparty.saker.util.io.StreamUtils;
-import saker.build.thirdparty.saker.util.io.UnsyncBufferedInputStream;
-import saker.build.thirdparty.saker.util.io.UnsyncBufferedOutputStream;
 import saker.build.thirdparty.saker.util.rmi.wrap.RMITreeSetSerializeElementWrapper;
 import saker.nest.ConfiguredRepositoryStorage;
 import saker.nest.NestRepositoryImpl;
+import saker.nest.RepositoryIOExecutor;
+import saker.nest.RepositoryIOExecutor.TaskGroup;
 import saker.nest.bundle.AbstractNestRepositoryBundle;
 import saker.nest.bundle.BundleIdentifier;
 import saker.nest.bundle.BundleInformation;
@@ -134,7 +133,8 @@ public class LocalBundleStorage extends AbstractBundleStorage {
 			this.storageDirectory = storageDirectory;
 		}
 
-		public static AbstractStorageKey create(NestRepositoryImpl repository, Map<String, String> userparams) {
+		public static AbstractStorageKey create(NestRepositoryImpl repository, Map<String, String> userparams,
+				boolean mappedjarreader) {
 			String rootparam = userparams.get(LocalBundleStorageView.PARAMETER_ROOT);
 			SakerPath storagedir;
 			if (rootparam == null) {
@@ -147,7 +147,9 @@ public class LocalBundleStorage extends AbstractBundleStorage {
 				}
 				storagedir = SakerPath.valueOf(rootpath);
 			}
-			return new LocalStorageKey(storagedir);
+			LocalStorageKey result = new LocalStorageKey(storagedir);
+			result.mappedJarReader = mappedjarreader;
+			return result;
 		}
 
 		@Override
@@ -159,12 +161,14 @@ public class LocalBundleStorage extends AbstractBundleStorage {
 		public void writeExternal(ObjectOutput out) throws IOException {
 			out.writeObject(fileProviderKey);
 			out.writeObject(storageDirectory);
+			out.writeBoolean(mappedJarReader);
 		}
 
 		@Override
 		public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
 			fileProviderKey = SerialUtils.readExternalObject(in);
 			storageDirectory = SerialUtils.readExternalObject(in);
+			mappedJarReader = in.readBoolean();
 		}
 
 		@Override
@@ -173,6 +177,7 @@ public class LocalBundleStorage extends AbstractBundleStorage {
 			int result = 1;
 			result = prime * result + ((fileProviderKey == null) ? 0 : fileProviderKey.hashCode());
 			result = prime * result + ((storageDirectory == null) ? 0 : storageDirectory.hashCode());
+			result = prime * result + (mappedJarReader ? 1231 : 1237);
 			return result;
 		}
 
@@ -185,6 +190,8 @@ public class LocalBundleStorage extends AbstractBundleStorage {
 			if (getClass() != obj.getClass())
 				return false;
 			LocalStorageKey other = (LocalStorageKey) obj;
+			if (mappedJarReader != other.mappedJarReader)
+				return false;
 			if (fileProviderKey == null) {
 				if (other.fileProviderKey != null)
 					return false;
@@ -211,12 +218,26 @@ public class LocalBundleStorage extends AbstractBundleStorage {
 	private static final String BUNDLE_STORAGE_DIRECTORY_NAME = "bundle_storage";
 	private static final String BUNDLE_LIB_STORAGE_DIRECTORY_NAME = "bundle_lib_storage";
 
-	private static final int INFO_SERIALIZATION_VERSION = 1;
+	private static final int INFO_SERIALIZATION_VERSION = 2;
+	/**
+	 * The size of the info file header. Consists of the serialization version and the length of the data that follows.
+	 */
+	private static final int INFO_HEADER_LENGTH = 8;
+	/**
+	 * The minimum number of bundles in the info file for which the JAR attributes are validated concurrently.
+	 */
+	private static final int INFO_PARALLEL_VALIDATION_THRESHOLD = 16;
 
 	private static final int READLOCK_REGION_LENGTH = 4;
 	private static final int LOCKFILE_STATE_DATA_LENGTH = 1024 * 1024 * 1024;
 	private static final Random LOCK_OFFSET_RANDOMER = new SecureRandom();
 
+	/**
+	 * The time after the last modification of the pending directory after which its last modified time is considered
+	 * to be stable. Modifications in the same timestamp granularity don't change the last modified time.
+	 */
+	private static final long PENDING_DIRECTORY_MODIFICATION_STABLE_MILLIS = 2000;
+
 	private static final Pattern PATTERN_BUNDLE_PENDING_VERSION_FILE_NAME = Pattern
 			.compile("(.*)\\.b([1-9a-fA-F][0-9a-fA-F]*)\\.jar");
 
@@ -418,12 +439,14 @@ public class LocalBundleStorage extends AbstractBundleStorage {
 	}
 
 	private void initializeWithFullLock() {
-		if (!readValidateInfoFile()) {
+		boolean infofileused = readValidateInfoFile();
+		if (!infofileused) {
 			//failed to read the info file data, enumerate the jars in the bundle directory
 			discoverBundlesInBundlesDirectory();
 		}
 		boolean installedany = installPendingBundles(getPendingBundles());
-		if (installedany) {
+		if (installedany || !infofileused) {
+			//also write if the info file was missing or in an older format, so the discovery isn't performed next time
 			writeInfoFileFullLocked();
 		}
 	}
@@ -464,8 +487,7 @@ public class LocalBundleStorage extends AbstractBundleStorage {
 						continue;
 					}
 					BasicFileAttributes jarattrs = Files.readAttributes(filepath, BasicFileAttributes.class);
-					BundleInfoState infostate = new BundleInfoState(new FileEntry(jarattrs),
-							getTaskStringNames(bundleinfo));
+					BundleInfoState infostate = new BundleInfoState(jarattrs, getTaskStringNames(bundleinfo));
 					BundleInfoState prev = bundleInfoStates.putIfAbsent(jarbundleid, infostate);
 					if (prev != null) {
 						//this shouldn't normally happen, but can if the file system is case sensitive and 
@@ -529,85 +551,199 @@ public class LocalBundleStorage extends AbstractBundleStorage {
 	}
 
 	private boolean readValidateInfoFile() {
+		ConcurrentNavigableMap<BundleIdentifier, BundleInfoState> readstates;
 		try {
-			if (infoFileChannel.size() <= 0) {
+			ByteBuffer header = ByteBuffer.allocate(INFO_HEADER_LENGTH);
+			if (!readFully(infoFileChannel, header, 0)) {
 				return false;
 			}
-			infoFileChannel.position(0);
-			try (ObjectInputStream in = new ObjectInputStream(new UnsyncBufferedInputStream(
-					StreamUtils.closeProtectedInputStream(Channels.newInputStream(infoFileChannel)))) {
-				@Override
-				protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
-					try {
-						return super.resolveClass(desc);
-					} catch (ClassNotFoundException e) {
-						return Class.forName(desc.getName(), false, LocalBundleStorage.class.getClassLoader());
-					}
-				}
-			}) {
-				int serialversion = in.readInt();
-				if (serialversion != 1) {
-					return false;
-				}
-				bundleInfoStates = SerialUtils.readExternalMap(new ConcurrentSkipListMap<>(), in,
-						SerialUtils::readExternalObject, i -> {
-							BundleInfoState bis = new BundleInfoState();
-							bis.readExternal(i);
-							return bis;
-						});
+			int serialversion = header.getInt(0);
+			if (serialversion != INFO_SERIALIZATION_VERSION) {
+				//different version, or the file was written by an older version using object serialization
+				return false;
+			}
+			int datalen = header.getInt(4);
+			if (datalen < 0 || datalen != infoFileChannel.size() - INFO_HEADER_LENGTH) {
+				//the file is truncated, or has trailing data, the info is not usable
+				return false;
 			}
-		} catch (IOException | ClassNotFoundException e) {
+			ByteBuffer data = ByteBuffer.allocate(datalen);
+			if (!readFully(infoFileChannel, data, INFO_HEADER_LENGTH)) {
+				return false;
+			}
+			readstates = readInfoStates(data);
+		} catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+			//IllegalArgumentException may be thrown for malformed bundle identifiers
 			return false;
 		}
-		for (Iterator<Entry<BundleIdentifier, BundleInfoState>> it = bundleInfoStates.entrySet().iterator(); it
-				.hasNext();) {
-			Entry<BundleIdentifier, BundleInfoState> entry = it.next();
-			BundleIdentifier bid = entry.getKey();
-			BundleInfoState state = entry.getValue();
-			Path bundlejarpath = getInstalledBundleJarPath(bid);
-			try {
-				BasicFileAttributes attrs = Files.readAttributes(bundlejarpath, BasicFileAttributes.class);
-				if (!FileAttributesContentDescriptor.isChanged(attrs, state.jarAttrs)) {
-					//the jar stayed the same as expected based on the information
-					continue;
+		bundleInfoStates = readstates;
+		if (readstates.size() < INFO_PARALLEL_VALIDATION_THRESHOLD) {
+			for (Entry<BundleIdentifier, BundleInfoState> entry : readstates.entrySet()) {
+				BundleIdentifier bid = entry.getKey();
+				if (!validateBundleInfoState(bid, entry.getValue())) {
+					readstates.remove(bid);
 				}
-				//the bundle JAR was changed meanwhile
-
-				bundle_reloader:
-				try (InputStream bundleis = Files.newInputStream(bundlejarpath);
-						JarInputStream jis = new JarInputStream(bundleis)) {
-					BundleInformation binfo = new BundleInformation(jis);
-					if (!binfo.getBundleIdentifier().equals(bid)) {
-						break bundle_reloader;
-					}
-					state.set(new FileEntry(attrs), getTaskStringNames(binfo));
-					continue;
-				} catch (InvalidNestBundleException e) {
-					break bundle_reloader;
+			}
+		} else {
+			//the validation is mostly I/O bound, so it is performed in parallel to reduce the latency
+			//    the states are only modified by the associated task, and the backing map is concurrent
+			RepositoryIOExecutor ioexecutor = repository.getIOExecutor();
+			try (TaskGroup pool = ioexecutor.newTaskGroup(ioexecutor.getParallelism())) {
+				for (Entry<BundleIdentifier, BundleInfoState> entry : readstates.entrySet()) {
+					BundleIdentifier bid = entry.getKey();
+					BundleInfoState state = entry.getValue();
+					pool.offer(() -> {
+						if (!validateBundleInfoState(bid, state)) {
+							readstates.remove(bid);
+						}
+					});
 				}
-				// in case of IO exception, the enclosing catch { } catches is
-			} catch (IOException e) {
+			} catch (ExecutionException e) {
+				//unexpected validation failure, rebuild the information
+				return false;
 			}
-			it.remove();
-			continue;
 		}
 		return true;
 	}
 
+	private boolean validateBundleInfoState(BundleIdentifier bid, BundleInfoState state) {
+		Path bundlejarpath = getInstalledBundleJarPath(bid);
+		try {
+			BasicFileAttributes attrs = Files.readAttributes(bundlejarpath, BasicFileAttributes.class);
+			if (!state.isChanged(attrs)) {
+				//the jar stayed the same as expected based on the information
+				return true;
+			}
+			//the bundle JAR was changed meanwhile
+
+			try (InputStream bundleis = Files.newInputStream(bundlejarpath);
+					JarInputStream jis = new JarInputStream(bundleis)) {
+				BundleInformation binfo = new BundleInformation(jis);
+				if (!binfo.getBundleIdentifier().equals(bid)) {
+					return false;
+				}
+				state.set(attrs, getTaskStringNames(binfo));
+				return true;
+			} catch (InvalidNestBundleException e) {
+				return false;
+			}
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	private static ConcurrentNavigableMap<BundleIdentifier, BundleInfoState> readInfoStates(ByteBuffer data)
+			throws IOException, BufferUnderflowException, IllegalArgumentException {
+		ConcurrentNavigableMap<BundleIdentifier, BundleInfoState> result = new ConcurrentSkipListMap<>();
+		int count = data.getInt();
+		//bundle id length, size, last modified, task count for each bundle
+		if (count < 0 || count > data.remaining() / (4 + 8 + 8 + 4)) {
+			throw new IOException("Invalid bundle count: " + count);
+		}
+		for (int i = 0; i < count; i++) {
+			BundleIdentifier bid = BundleIdentifier.valueOf(readInfoString(data));
+			long jarsize = data.getLong();
+			long jarlastmodified = data.getLong();
+			int taskcount = data.getInt();
+			if (taskcount < 0) {
+				throw new IOException("Invalid task count: " + taskcount);
+			}
+			NavigableSet<String> tasknames = new TreeSet<>();
+			for (int j = 0; j < taskcount; j++) {
+				tasknames.add(readInfoString(data));
+			}
+			result.put(bid, new BundleInfoState(jarsize, jarlastmodified, tasknames));
+		}
+		if (data.hasRemaining()) {
+			throw new IOException("Unexpected trailing info data: " + data.remaining() + " bytes");
+		}
+		return result;
+	}
+
 	private void writeInfoFileFullLocked() {
+		int count = bundleInfoStates.size();
+		byte[][] bundleidbytes = new byte[count][];
+		byte[][][] tasknamebytes = new byte[count][][];
+		BundleInfoState[] states = new BundleInfoState[count];
+		//count + per bundle: bundle id length, size, last modified, task count
+		long datalen = 4 + count * (4 + 8 + 8 + 4L);
+		int idx = 0;
+		for (Entry<BundleIdentifier, BundleInfoState> entry : bundleInfoStates.entrySet()) {
+			if (idx >= count) {
+				//shouldn't happen as we're locked, but check for safety
+				return;
+			}
+			BundleInfoState state = entry.getValue();
+			byte[] bidbytes = entry.getKey().toString().getBytes(StandardCharsets.UTF_8);
+			NavigableSet<String> tasknames = state.taskNames;
+			byte[][] tnbytes = new byte[tasknames.size()][];
+			int tnidx = 0;
+			for (String tn : tasknames) {
+				byte[] bytes = tn.getBytes(StandardCharsets.UTF_8);
+				tnbytes[tnidx++] = bytes;
+				datalen += 4 + bytes.length;
+			}
+			datalen += bidbytes.length;
+			bundleidbytes[idx] = bidbytes;
+			tasknamebytes[idx] = tnbytes;
+			states[idx] = state;
+			++idx;
+		}
+		if (idx != count || datalen > Integer.MAX_VALUE - INFO_HEADER_LENGTH) {
+			return;
+		}
+		ByteBuffer buf = ByteBuffer.allocate(INFO_HEADER_LENGTH + (int) datalen);
+		buf.putInt(INFO_SERIALIZATION_VERSION);
+		buf.putInt((int) datalen);
+		buf.putInt(count);
+		for (int i = 0; i < count; i++) {
+			BundleInfoState state = states[i];
+			buf.putInt(bundleidbytes[i].length);
+			buf.put(bundleidbytes[i]);
+			buf.putLong(state.jarSize);
+			buf.putLong(state.jarLastModifiedMillis);
+			byte[][] tnbytes = tasknamebytes[i];
+			buf.putInt(tnbytes.length);
+			for (byte[] bytes : tnbytes) {
+				buf.putInt(bytes.length);
+				buf.put(bytes);
+			}
+		}
+		buf.flip();
 		try {
-			infoFileChannel.position(0);
-			try (ObjectOutputStream out = new ObjectOutputStream(new UnsyncBufferedOutputStream(
-					StreamUtils.closeProtectedOutputStream(Channels.newOutputStream(infoFileChannel))))) {
-				out.writeInt(INFO_SERIALIZATION_VERSION);
-				SerialUtils.writeExternalMap(out, bundleInfoStates, ObjectOutput::writeObject,
-						(o1, bis) -> bis.writeExternal(o1));
+			long pos = 0;
+			while (buf.hasRemaining()) {
+				pos += infoFileChannel.write(buf, pos);
 			}
+			infoFileChannel.truncate(pos);
 		} catch (IOException ignored) {
 			//exception is ignored. we can handle the absence of the info file somewhat gracefully
 		}
 	}
 
+	private static String readInfoString(ByteBuffer data) throws IOException, BufferUnderflowException {
+		int len = data.getInt();
+		if (len < 0 || len > data.remaining()) {
+			throw new IOException("Invalid string length: " + len);
+		}
+		String result = new String(data.array(), data.arrayOffset() + data.position(), len, StandardCharsets.UTF_8);
+		data.position(data.position() + len);
+		return result;
+	}
+
+	private static boolean readFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+		long pos = position;
+		while (buf.hasRemaining()) {
+			int read = channel.read(buf, pos);
+			if (read < 0) {
+				return false;
+			}
+			pos += read;
+		}
+		buf.flip();
+		return true;
+	}
+
 	private static long randomReadLockOffset() {
 		while (true) {
 			long offset = LOCK_OFFSET_RANDOMER.nextLong();
@@ -716,7 +852,7 @@ public class LocalBundleStorage extends AbstractBundleStorage {
 			}
 			//overwrite
 			bundleInfoStates.put(entrybundleid,
-					new BundleInfoState(new FileEntry(attrs), getTaskStringNames(bundleinfo)));
+					new BundleInfoState(attrs, getTaskStringNames(bundleinfo)));
 			++installedcount;
 		}
 		return installedcount > 0;
@@ -785,23 +921,26 @@ public class LocalBundleStorage extends AbstractBundleStorage {
 	}
 
 	private NavigableMap<BundleIdentifier, NavigableMap<Integer, Path>> getPendingBundles() {
-		NavigableMap<String, ? extends FileEntry> pendingdirentries;
-		try {
-			pendingdirentries = LocalFileProvider.getInstance().getDirectoryEntries(pendingDirectory);
-		} catch (IOException e1) {
+		//only collect the names, so the attributes of unrelated files aren't read
+		//    sorted, so the conflicting bundle files are handled in alphabetical order
+		NavigableSet<String> pendingfilenames = new TreeSet<>();
+		try (DirectoryStream<Path> ds = Files.newDirectoryStream(pendingDirectory)) {
+			for (Path p : ds) {
+				pendingfilenames.add(p.getFileName().toString());
+			}
+		} catch (IOException | DirectoryIteratorException e) {
 			//failed to enumerate the directory, return empty map
 			return Collections.emptyNavigableMap();
 		}
 		NavigableMap<BundleIdentifier, NavigableMap<Integer, Path>> pendingbundles = new TreeMap<>();
-		for (Entry<String, ? extends FileEntry> entry : pendingdirentries.entrySet()) {
-			if (!entry.getValue().isRegularFile()) {
-				continue;
-			}
-			String fname = entry.getKey();
+		for (String fname : pendingfilenames) {
 			Matcher matcher = PATTERN_BUNDLE_PENDING_VERSION_FILE_NAME.matcher(fname);
 			if (!matcher.matches()) {
 				continue;
 			}
+			if (!Files.isRegularFile(pendingDirectory.resolve(fname))) {
+				continue;
+			}
 			int version = Integer.parseUnsignedInt(matcher.group(2), 16);
 			BundleIdentifier bundleid;
 			try {
@@ -829,6 +968,15 @@ public class LocalBundleStorage extends AbstractBundleStorage {
 		return pendingbundles;
 	}
 
+	private FileTime getPendingDirectoryLastModified() {
+		try {
+			return Files.getLastModifiedTime(pendingDirectory);
+		} catch (IOException e) {
+			//failed to read, the directory may not exist
+			return null;
+		}
+	}
+
 	private Path getInstalledBundleJarPath(BundleIdentifier bundleid) {
 		return BundleUtils.getVersionedBundleJarPath(bundlesDirectory, bundleid);
 	}
@@ -1100,33 +1248,28 @@ public class LocalBundleStorage extends AbstractBundleStorage {
 	}
 
 	private static class BundleInfoState {
-		private FileEntry jarAttrs;
+		private long jarSize;
+		private long jarLastModifiedMillis;
 		private NavigableSet<String> taskNames;
 
-		/**
-		 * For externalization.
-		 */
-		public BundleInfoState() {
+		public BundleInfoState(long jarSize, long jarLastModifiedMillis, NavigableSet<String> taskNames) {
+			this.jarSize = jarSize;
+			this.jarLastModifiedMillis = jarLastModifiedMillis;
+			this.taskNames = taskNames;
 		}
 
-		public BundleInfoState(FileEntry jarAttrs, NavigableSet<String> taskNames) {
-			this.jarAttrs = jarAttrs;
-			this.taskNames = taskNames;
+		public BundleInfoState(BasicFileAttributes jarAttrs, NavigableSet<String> taskNames) {
+			this(jarAttrs.size(), jarAttrs.lastModifiedTime().toMillis(), taskNames);
 		}
 
-		public void set(FileEntry jarAttrs, NavigableSet<String> taskNames) {
-			this.jarAttrs = jarAttrs;
+		public void set(BasicFileAttributes jarAttrs, NavigableSet<String> taskNames) {
+			this.jarSize = jarAttrs.size();
+			this.jarLastModifiedMillis = jarAttrs.lastModifiedTime().toMillis();
 			this.taskNames = taskNames;
 		}
 
-		public void writeExternal(ObjectOutput out) throws IOException {
-			out.writeObject(jarAttrs);
-			SerialUtils.writeExternalCollection(out, taskNames);
-		}
-
-		public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
-			jarAttrs = (FileEntry) in.readObject();
-			taskNames = SerialUtils.readExternalSortedImmutableNavigableSet(in);
+		public boolean isChanged(BasicFileAttributes attrs) {
+			return attrs.size() != jarSize || attrs.lastModifiedTime().toMillis() != jarLastModifiedMillis;
 		}
 
 		@Override
@@ -1440,6 +1583,9 @@ public class LocalBundleStorage extends AbstractBundleStorage {
 				.makeImmutableNavigableMap(LocalBundleStorage.this.bundleInfoStates);
 		private NavigableMap<BundleIdentifier, PendingBundleInfoState> pendingBundleInfoStates = ImmutableUtils
 				.makeImmutableNavigableMap(LocalBundleStorage.this.pendingBundleInfoStates);
+		//the last modified time of the pending directory when it was last found to contain no added pending bundles
+		//    guarded by detectChangeLock
+		private FileTime unchangedPendingDirectoryLastModified;
 
 		public LocalBundleStorageViewImpl() {
 		}
@@ -1450,6 +1596,36 @@ public class LocalBundleStorage extends AbstractBundleStorage {
 			updateHashWithStorageKey(digest, storagekey);
 		}
 
+		@Override
+		public String getBundleIndexIdentity() {
+			MessageDigest digest;
+			try {
+				digest = MessageDigest.getInstance("MD5");
+			} catch (NoSuchAlgorithmException e) {
+				throw new AssertionError("JVM doesn't support MD5 hash.", e);
+			}
+			StringBuilder sb = new StringBuilder();
+			for (Entry<BundleIdentifier, BundleInfoState> entry : bundleInfoStates.entrySet()) {
+				BundleInfoState state = entry.getValue();
+				sb.append(entry.getKey()).append(':').append(state.jarSize).append(':')
+						.append(state.jarLastModifiedMillis).append('\n');
+			}
+			for (Entry<BundleIdentifier, PendingBundleInfoState> entry : pendingBundleInfoStates.entrySet()) {
+				sb.append(entry.getKey()).append(':').append(entry.getValue().bundlePath).append('\n');
+			}
+			digest.update(sb.toString().getBytes(StandardCharsets.UTF_8));
+			return StringUtils.toHexString(digest.digest());
+		}
+
+		@Override
+		public byte[] getKnownBundleHash(BundleIdentifier bundleid) {
+			AbstractNestRepositoryBundle loaded = loadedBundles.get(bundleid);
+			if (loaded instanceof JarNestRepositoryBundleImpl) {
+				return ((JarNestRepositoryBundleImpl) loaded).getSharedHashIfComputed();
+			}
+			return null;
+		}
+
 		@Override
 		public NestRepositoryBundle lookupTaskBundle(TaskName taskname)
 				throws NullPointerException, TaskNotFoundException {
@@ -1579,12 +1755,25 @@ public class LocalBundleStorage extends AbstractBundleStorage {
 				if (!this.pendingBundleInfoStates.equals(LocalBundleStorage.this.pendingBundleInfoStates)) {
 					return new Object();
 				}
-				//XXX don't collect all pending bundles, only check if there is at least one
+				//the pending directory is enumerated if it was modified, as bundles may be added by other processes
+				//    adding or removing a pending bundle modifies the directory, and only the file names are relevant
+				FileTime pendinglastmodified = getPendingDirectoryLastModified();
+				if (pendinglastmodified != null && pendinglastmodified.equals(unchangedPendingDirectoryLastModified)) {
+					return null;
+				}
+				long enumerationstartmillis = System.currentTimeMillis();
+				//    only the file names are listed, the attributes are read for the matching ones
 				NavigableMap<BundleIdentifier, NavigableMap<Integer, Path>> pendingbundles = getPendingBundles();
 				NavigableMap<BundleIdentifier, Entry<Integer, Path>> reducedpendingbundles = reduceInterestedPendingBundles(
 						pendingbundles);
 				if (ObjectUtils.isNullOrEmpty(reducedpendingbundles)) {
 					//no added pending bundles
+					//only record the last modified time if it is old enough, else a subsequent modification may
+					//not change it
+					if (pendinglastmodified != null && enumerationstartmillis
+							- pendinglastmodified.toMillis() > PENDING_DIRECTORY_MODIFICATION_STABLE_MILLIS) {
+						unchangedPendingDirectoryLastModified = pendinglastmodified;
+					}
 					return null;
 				}
 				return new Object();
@@ -1619,6 +1808,8 @@ public class LocalBundleStorage extends AbstractBundleStorage {
 				//copy the state from the owner
 				this.pendingBundleInfoStates = ImmutableUtils
 						.makeImmutableNavigableMap(LocalBundleStorage.this.pendingBundleInfoStates);
+				//the interested pending bundles depend on the copied state
+				this.unchangedPendingDirectoryLastModified = null;
 			}
 		}
 
@@ -106,11 +106,13 @@ public class ParameterBundleStorage extends AbstractBundleStorage {
 		}
 
 		public static AbstractStorageKey create(NestRepositoryImpl repository,
-				@SuppressWarnings("unused") Map<String, String> userparams) {
+				@SuppressWarnings("unused") Map<String, String> userparams, boolean mappedjarreader) {
 			//user param unused warning is suppressed, the parameter is present to keep consistency with the other kind of storage key
 			//    create methods
-			return new ParameterStorageKey(repository.getRepositoryStorageDirectory()
+			ParameterStorageKey result = new ParameterStorageKey(repository.getRepositoryStorageDirectory()
 					.resolve(ParameterBundleStorageView.DEFAULT_STORAGE_NAME));
+			result.mappedJarReader = mappedjarreader;
+			return result;
 		}
 
 		@Override
@@ -121,11 +123,13 @@ public class ParameterBundleStorage extends AbstractBundleStorage {
 		@Override
 		public void writeExternal(ObjectOutput out) throws IOException {
 			out.writeObject(storageDirectory);
+			out.writeBoolean(mappedJarReader);
 		}
 
 		@Override
 		public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
 			storageDirectory = (SakerPath) in.readObject();
+			mappedJarReader = in.readBoolean();
 		}
 
 		@Override
@@ -133,6 +137,7 @@ public class ParameterBundleStorage extends AbstractBundleStorage {
 			final int prime = 31;
 			int result = 1;
 			result = prime * result + ((storageDirectory == null) ? 0 : storageDirectory.hashCode());
+			result = prime * result + (mappedJarReader ? 1231 : 1237);
 			return result;
 		}
 
@@ -145,6 +150,8 @@ public class ParameterBundleStorage extends AbstractBundleStorage {
 			if (getClass() != obj.getClass())
 				return false;
 			ParameterStorageKey other = (ParameterStorageKey) obj;
+			if (mappedJarReader != other.mappedJarReader)
+				return false;
 			if (storageDirectory == null) {
 				if (other.storageDirectory != null)
 					return false;
@@ -408,6 +415,28 @@ public class ParameterBundleStorage extends AbstractBundleStorage {
 			}
 		}
 
+		@Override
+		public String getBundleIndexIdentity() {
+			MessageDigest digest;
+			try {
+				digest = MessageDigest.getInstance("MD5");
+			} catch (NoSuchAlgorithmException e) {
+				throw new AssertionError("JVM doesn't support MD5 hash.", e);
+			}
+			//the hashes of the bundles are computed when the view is created
+			updateStorageViewHash(digest);
+			return StringUtils.toHexString(digest.digest());
+		}
+
+		@Override
+		public byte[] getKnownBundleHash(BundleIdentifier bundleid) {
+			LoadedViewBundleInfo info = bundles.get(bundleid);
+			if (info == null) {
+				return null;
+			}
+			return info.loaded.getSharedHashIfComputed();
+		}
+
 		@Override
 		public StorageViewKey getStorageViewKey() {
 			return storageViewKey;
@@ -15,13 +15,18 @@
  */
 package saker.nest.bundle.storage;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.Closeable;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
 import java.io.Externalizable;
 import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.io.OutputStream;
@@ -32,21 +37,30 @@ import java.net.ProtocolException;
 import java.net.URI;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
+import java.security.GeneralSecurityException;
 import java.security.KeyFactory;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.security.SecureRandom;
 import java.security.Signature;
+import java.security.SignatureException;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.X509EncodedKeySpec;
 import java.util.ArrayList;
@@ -70,6 +84,11 @@ import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.zip.GZIPInputStream;
@@ -86,9 +105,10 @@ import saker.build.thirdparty.saker.util.io.ByteArrayRegion;
 import saker.build.thirdparty.saker.util.io.IOUtils;
 import saker.build.thirdparty.saker.util.io.StreamUtils;
 import saker.build.thirdparty.saker.util.io.function.IOSupplier;
-import saker.build.thirdparty.saker.util.thread.ThreadUtils;
 import saker.nest.ConfiguredRepositoryStorage;
 import saker.nest.NestRepositoryImpl;
+import saker.nest.RepositoryIOExecutor;
+import saker.nest.RepositoryIOExecutor.TaskGroup;
 import saker.nest.bundle.AbstractNestRepositoryBundle;
 import saker.nest.bundle.BundleIdentifier;
 import saker.nest.bundle.BundleInformation;
@@ -113,8 +133,6 @@ import testing.saker.nest.NestMetric;
 import testing.saker.nest.TestFlag;
 
 public class ServerBundleStorage extends AbstractBundleStorage {
-	//XXX we should employ some sort of caching for index files. Like If-None-Match or Etag based caching.
-
 	private static final String HTTP_USER_AGENT = "saker.nest/" + saker.nest.meta.Versions.VERSION_STRING_FULL
 			+ " (saker.build " + saker.build.meta.Versions.VERSION_STRING_FULL + ")";
 
@@ -136,6 +154,8 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 		protected String serverHost;
 		protected transient SakerPath storageDirectory;
 		protected transient String serverSecondaryHost;
+		protected int requestsMaxConnections;
+		protected long indexStaleGracePeriodMillis;
 
 		/**
 		 * For {@link Externalizable}.
@@ -143,13 +163,17 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 		public ServerStorageKey() {
 		}
 
-		private ServerStorageKey(Path storageDirectory, String serverHost, String serverSecondaryHost) {
+		private ServerStorageKey(Path storageDirectory, String serverHost, String serverSecondaryHost,
+				int requestsMaxConnections, long indexStaleGracePeriodMillis) {
 			this.storageDirectory = SakerPath.valueOf(storageDirectory);
 			this.serverHost = serverHost;
 			this.serverSecondaryHost = serverSecondaryHost;
+			this.requestsMaxConnections = requestsMaxConnections;
+			this.indexStaleGracePeriodMillis = indexStaleGracePeriodMillis;
 		}
 
-		public static AbstractStorageKey create(NestRepositoryImpl repository, Map<String, String> userparams) {
+		public static AbstractStorageKey create(NestRepositoryImpl repository, Map<String, String> userparams,
+				boolean mappedjarreader) {
 			String serverhost = userparams.getOrDefault(ServerBundleStorageView.PARAMETER_URL,
 					ServerBundleStorageView.REPOSITORY_DEFAULT_SERVER_URL);
 			String secondaryhost = userparams.get(ServerBundleStorageView.PARAMETER_SECONDARY_URL);
@@ -161,11 +185,40 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 			if ("".equals(secondaryhost) || "null".equals(secondaryhost)) {
 				secondaryhost = null;
 			}
+			int maxconnections = ServerBundleStorageView.DEFAULT_REQUESTS_MAX_CONNECTIONS;
+			String maxconnectionsstr = userparams.get(ServerBundleStorageView.PARAMETER_REQUESTS_MAX_CONNECTIONS);
+			if (maxconnectionsstr != null) {
+				try {
+					maxconnections = Integer.parseInt(maxconnectionsstr.trim());
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException("Failed to parse argument for: "
+							+ ServerBundleStorageView.PARAMETER_REQUESTS_MAX_CONNECTIONS + " : " + maxconnectionsstr,
+							e);
+				}
+				if (maxconnections < 1) {
+					throw new IllegalArgumentException("Invalid maximum connection count: " + maxconnections);
+				}
+			}
+			long stalegraceseconds = ServerBundleStorageView.DEFAULT_INDEX_STALE_GRACE_PERIOD_SECONDS;
+			String stalegracestr = userparams.get(ServerBundleStorageView.PARAMETER_INDEX_STALE_GRACE_PERIOD);
+			if (stalegracestr != null) {
+				try {
+					stalegraceseconds = Long.parseLong(stalegracestr.trim());
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException("Failed to parse argument for: "
+							+ ServerBundleStorageView.PARAMETER_INDEX_STALE_GRACE_PERIOD + " : " + stalegracestr, e);
+				}
+				if (stalegraceseconds < 0) {
+					throw new IllegalArgumentException("Invalid stale index grace period: " + stalegraceseconds);
+				}
+			}
 
-			return new ServerStorageKey(
+			ServerStorageKey result = new ServerStorageKey(
 					repository.getRepositoryStorageDirectory().resolve(ServerBundleStorageView.DEFAULT_STORAGE_NAME)
 							.resolve(ConfiguredRepositoryStorage.getSubDirectoryNameForServerStorage(serverhost)),
-					serverhost, secondaryhost);
+					serverhost, secondaryhost, maxconnections, TimeUnit.SECONDS.toMillis(stalegraceseconds));
+			result.mappedJarReader = mappedjarreader;
+			return result;
 		}
 
 		@Override
@@ -182,6 +235,9 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 			out.writeObject(storageDirectory);
 			out.writeObject(serverHost);
 			out.writeObject(serverSecondaryHost);
+			out.writeInt(requestsMaxConnections);
+			out.writeLong(indexStaleGracePeriodMillis);
+			out.writeBoolean(mappedJarReader);
 		}
 
 		@Override
@@ -189,6 +245,9 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 			storageDirectory = (SakerPath) in.readObject();
 			serverHost = (String) in.readObject();
 			serverSecondaryHost = (String) in.readObject();
+			requestsMaxConnections = in.readInt();
+			indexStaleGracePeriodMillis = in.readLong();
+			mappedJarReader = in.readBoolean();
 		}
 
 		@Override
@@ -196,6 +255,9 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 			final int prime = 31;
 			int result = 1;
 			result = prime * result + ((serverHost == null) ? 0 : serverHost.hashCode());
+			result = prime * result + requestsMaxConnections;
+			result = prime * result + (int) (indexStaleGracePeriodMillis ^ (indexStaleGracePeriodMillis >>> 32));
+			result = prime * result + (mappedJarReader ? 1231 : 1237);
 			return result;
 		}
 
@@ -208,6 +270,12 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 			if (getClass() != obj.getClass())
 				return false;
 			ServerStorageKey other = (ServerStorageKey) obj;
+			if (requestsMaxConnections != other.requestsMaxConnections)
+				return false;
+			if (indexStaleGracePeriodMillis != other.indexStaleGracePeriodMillis)
+				return false;
+			if (mappedJarReader != other.mappedJarReader)
+				return false;
 			if (serverHost == null) {
 				if (other.serverHost != null)
 					return false;
@@ -228,6 +296,7 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 	private static final String BUNDLE_STORAGE_DIRECTORY_NAME = "bundle_storage";
 	private static final String BUNDLES_DIRECTORY_NAME = "bundles";
 	private static final String BUNDLE_LIB_STORAGE_DIRECTORY_NAME = "bundle_lib_storage";
+	private static final String VERIFICATION_LEDGER_FILE_NAME = "verification_ledger";
 
 	private final String serverHost;
 	private final Path storageDirectory;
@@ -242,8 +311,11 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 
 	private final ServerStorageKey storageKey;
 
-	private final IndexManager<NavigableMap<String, NavigableSet<BundleIdentifier>>> packageBundlesIndexManager;
-	private final IndexManager<NavigableMap<String, NavigableSet<BundleIdentifier>>> tasksIndexManager;
+	private final ServerRequestClient requestClient;
+	private final VerificationLedger verificationLedger;
+
+	private final IndexManager<Map<String, NavigableSet<BundleIdentifier>>> packageBundlesIndexManager;
+	private final IndexManager<Map<String, NavigableSet<BundleIdentifier>>> tasksIndexManager;
 
 	private static final int MAX_INCLUDED_BUNDLE_SIGNATURE_KEY_VERSION = 1;
 	private final ConcurrentSkipListMap<Integer, PublicKey> bundleSignatureKeys = new ConcurrentSkipListMap<>();
@@ -279,13 +351,49 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 	private final class LoadedBundleState implements Closeable {
 		protected final JarNestRepositoryBundleImpl bundle;
 		protected final Map<BundleSignatureVerificationConfiguration, VerificationState> verifiedSignatures = new ConcurrentHashMap<>();
+		/**
+		 * The verification ledger entry for the bundle file if it was verified in a previous session, and the file
+		 * was not modified since.
+		 * <p>
+		 * Only assigned in the constructor.
+		 */
+		protected VerificationLedgerEntry ledgerEntry;
 
 		public LoadedBundleState(BundleIdentifier bundleid, BundleSignatureHolder signatureholder, Path bundlepath,
 				BundleSignatureVerificationConfiguration verifyconfig, boolean offline)
 				throws IOException, BundleLoadingFailedException {
-			bundle = createBundle(bundleid, bundlepath, channel -> {
+			ContentVerifier verifier = channel -> {
+				verifyBundleWithConfigImpl(verifyconfig, signatureholder, offline, bundleid, channel, bundlepath);
+			};
+			ledgerEntry = verificationLedger.getMatchingEntry(bundleid, bundlepath);
+			JarNestRepositoryBundleImpl created = createBundle(bundleid, bundlepath,
+					ledgerEntry == null ? null : ledgerEntry.hash, verifier);
+			if (ledgerEntry != null && verificationLedger.getMatchingEntry(bundleid, bundlepath) != ledgerEntry) {
+				//the file was modified while it was being opened, the ledger entry may not belong to the opened file
+				//    load it again, and verify without the ledger
+				IOUtils.close(created);
+				ledgerEntry = null;
+				created = createBundle(bundleid, bundlepath, null, verifier);
+			}
+			bundle = created;
+		}
+
+		public LoadedBundleState(BundleIdentifier bundleid, DownloadedBundle downloaded,
+				BundleSignatureVerificationConfiguration verifyconfig, boolean offline)
+				throws IOException, BundleLoadingFailedException {
+			ledgerEntry = null;
+			if (downloaded.verifiedConfiguration != null) {
+				//the signature was verified when the bundle was downloaded
+				verifiedSignatures.put(downloaded.verifiedConfiguration, SIGNATURE_VERIFIED);
+			}
+			Path bundlepath = downloaded.bundle;
+			BundleSignatureHolder signatureholder = downloaded.signature;
+			bundle = createBundle(bundleid, bundlepath, downloaded.hash, channel -> {
 				verifyBundleWithConfigImpl(verifyconfig, signatureholder, offline, bundleid, channel, bundlepath);
 			});
+			if (downloaded.verifiedConfiguration != null) {
+				verificationLedger.record(bundleid, bundlepath, signatureholder.getVersion(), downloaded.hash);
+			}
 		}
 
 		@Override
@@ -314,9 +422,11 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 			VerificationState nstate = new VerificationState(VERIFICATION_STATE_VERIFYING, offline);
 			synchronized (nstate) {
 				VerificationState prevverifstate = verifiedSignatures.putIfAbsent(verifyconfig, nstate);
+				boolean allowcached = true;
 				if (TestFlag.ENABLED) {
 					if (!TestFlag.metric().allowCachedVerificationState(bundleid.toString())) {
 						prevverifstate = null;
+						allowcached = false;
 					}
 				}
 				if (prevverifstate != null) {
@@ -337,6 +447,12 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 						//don't throw and try to verify again if we can do the verification online
 					}
 				}
+				if (allowcached && ledgerEntry != null
+						&& ledgerEntry.signatureVersion >= verifyconfig.getMinSignatureVersion()) {
+					//the bundle was verified previously, and the file hasn't been modified since
+					verifiedSignatures.put(verifyconfig, SIGNATURE_VERIFIED);
+					return;
+				}
 				Path signaturefilepath = getBundleSignaturePathFromBundlePath(bundlepath);
 				if (signatureholder == null) {
 					signatureholder = BundleSignatureHolder.fromFile(signaturefilepath);
@@ -371,20 +487,41 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 					verifiedSignatures.put(verifyconfig, new VerificationState(exc, offline));
 					throw exc;
 				}
+				//read the attributes before the verification, so a concurrent modification is detected when recording
+				BasicFileAttributes verifiedattrs;
+				try {
+					verifiedattrs = Files.readAttributes(bundlepath, BasicFileAttributes.class);
+				} catch (IOException e) {
+					verifiedattrs = null;
+				}
+				byte[] verifiedhash;
 				try {
 					if (channel == null) {
 						channel = bundle.getChannel();
 						synchronized (bundle) {
-							verifyBundleSignature(channel, bundleid, verifyconfig, signatureholder, offline);
+							verifiedhash = verifyBundleSignature(channel, bundleid, verifyconfig, signatureholder,
+									offline);
 						}
 					} else {
-						verifyBundleSignature(channel, bundleid, verifyconfig, signatureholder, offline);
+						verifiedhash = verifyBundleSignature(channel, bundleid, verifyconfig, signatureholder,
+								offline);
+					}
+					if (ledgerEntry != null && ledgerEntry.hash != null
+							&& !MessageDigest.isEqual(ledgerEntry.hash, verifiedhash)) {
+						//the hash of the bundle was taken from the ledger, but the contents are different
+						throw new NestSignatureVerificationException(
+								"Failed to verify bundle, contents changed since previous verification: " + bundleid);
 					}
 					verifiedSignatures.put(verifyconfig, SIGNATURE_VERIFIED);
 				} catch (Throwable e) {
 					verifiedSignatures.put(verifyconfig, new VerificationState(e, offline));
 					throw e;
 				}
+				if (!verifyconfig.canLoadWithoutSignature() && verifiedattrs != null) {
+					//the signature was actually verified, persist it
+					verificationLedger.record(bundleid, bundlepath, verifiedattrs, signatureholder.getVersion(),
+							verifiedhash);
+				}
 				if (downloadedsignature != null) {
 					try {
 						downloadedsignature.writeTo(signaturefilepath);
@@ -404,12 +541,17 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 		this.serverHost = storagekey.serverHost;
 		this.storageDirectory = LocalFileProvider.toRealPath(storagekey.storageDirectory);
 		this.bundlesDirectory = storageDirectory.resolve(BUNDLES_DIRECTORY_NAME);
-		this.packageBundlesIndexManager = new BundlesIndexManager(this.storageDirectory.resolve("index/bundles"),
-				createAppendedUrlOrNull(serverHost, "/bundles/index"),
-				createAppendedUrlOrNull(storagekey.serverSecondaryHost, "/bundles/index"));
-		this.tasksIndexManager = new TasksIndexManager(this.storageDirectory.resolve("index/tasks"),
+		this.requestClient = new ServerRequestClient(storagekey.requestsMaxConnections,
+				repository.getIOExecutor());
+		this.verificationLedger = new VerificationLedger(storageDirectory.resolve(VERIFICATION_LEDGER_FILE_NAME));
+		this.packageBundlesIndexManager = new BundlesIndexManager(requestClient,
+				this.storageDirectory.resolve("index/bundles"), createAppendedUrlOrNull(serverHost, "/bundles/index"),
+				createAppendedUrlOrNull(storagekey.serverSecondaryHost, "/bundles/index"),
+				storagekey.indexStaleGracePeriodMillis);
+		this.tasksIndexManager = new TasksIndexManager(requestClient, this.storageDirectory.resolve("index/tasks"),
 				createAppendedUrlOrNull(serverHost, "/tasks/index"),
-				createAppendedUrlOrNull(storagekey.serverSecondaryHost, "/tasks/index"));
+				createAppendedUrlOrNull(storagekey.serverSecondaryHost, "/tasks/index"),
+				storagekey.indexStaleGracePeriodMillis);
 	}
 
 	private PublicKey getBundleSignatureKey(int version, boolean offline) throws IOException {
@@ -454,7 +596,7 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 							"Cannot fetch bundle signing key for offline storage: " + serverHost);
 				}
 				// fetch from server
-				ByteArrayRegion retrievedkeybytes = makeServerRequest(FLAG_REQUEST_FOLLOW_REDIRECTS,
+				ByteArrayRegion retrievedkeybytes = requestClient.makeServerRequest(FLAG_REQUEST_FOLLOW_REDIRECTS,
 						serverHost + "/bundle_signature_key/" + version, "GET", (url, rc, in, err, headerfunc) -> {
 							if (rc == HttpURLConnection.HTTP_OK) {
 								return StreamUtils.readStreamFully(in.get());
@@ -577,6 +719,7 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 	@Override
 	public void close() throws IOException {
 		closed = true;
+		requestClient.close();
 		IOException exc = null;
 		while (!bundleLoadLocks.isEmpty()) {
 			Entry<BundleIdentifier, Object> fe = bundleLoadLocks.pollFirstEntry();
@@ -618,7 +761,7 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 	protected NavigableSet<BundleIdentifier> getBundlesForTaskName(TaskName taskname,
 			IndexOperationOptions operationoptions) throws IOException {
 		String tasknamestr = taskname.getName();
-		NavigableMap<String, NavigableSet<BundleIdentifier>> index = tasksIndexManager.getIndexForName(operationoptions,
+		Map<String, NavigableSet<BundleIdentifier>> index = tasksIndexManager.getIndexForName(operationoptions,
 				tasknamestr);
 		NavigableSet<BundleIdentifier> result = ObjectUtils.getMapValue(index, tasknamestr);
 		if (ObjectUtils.isNullOrEmpty(result)) {
@@ -627,72 +770,355 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 		return result;
 	}
 
+	private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
 	private static final int FLAG_REQUEST_OFFLINE = 1 << 0;
 	private static final int FLAG_REQUEST_NO_DISCONNECT_ON_200 = 1 << 1;
 	private static final int FLAG_REQUEST_FOLLOW_REDIRECTS = 1 << 2;
 
-	private static <T> T makeServerRequest(int flags, String requesturl, String method, ServerRequestHandler<T> handler)
-			throws IOException {
-		if (((flags & FLAG_REQUEST_OFFLINE) == FLAG_REQUEST_OFFLINE)) {
-			throw new OfflineStorageIOException("Failed to make request in offline mode. (" + requesturl + ")");
+	/**
+	 * Client that is used to issue the HTTP requests of a server storage.
+	 * <p>
+	 * The client limits the number of concurrent connections to a given host, and attempts to keep the connections
+	 * alive after the requests are finished. The connections are pooled by the {@link HttpURLConnection} implementation
+	 * if they are not {@linkplain HttpURLConnection#disconnect() disconnected}, and the response body is fully read and
+	 * closed. This avoids performing the TCP and TLS handshakes for subsequent requests to the same host.
+	 * <p>
+	 * Redirects which are manually handled by the request handlers should be followed <b>after</b> the handler returns.
+	 * Otherwise the handler may be blocked if the host connection limit is reached.
+	 * <p>
+	 * The client also provides an executor for issuing independent requests concurrently. The requests are executed
+	 * on the I/O executor of the repository, and their parallelism is limited by the maximum number of connections per
+	 * host.
+	 */
+	private static final class ServerRequestClient {
+		/**
+		 * The maximum number of bytes that are read from an unconsumed response body in order to keep the connection
+		 * alive. If the remaining body is larger, the connection is closed instead.
+		 */
+		private static final int MAX_DRAIN_BYTE_COUNT = 64 * 1024;
+
+		private final int maxConnectionsPerHost;
+		private final ConcurrentHashMap<String, Semaphore> hostConnectionPermits = new ConcurrentHashMap<>();
+
+		private final TaskGroup fetchTaskGroup;
+
+		private final LongAdder requestCount = new LongAdder();
+		private final LongAdder keepAliveReleaseCount = new LongAdder();
+		private final LongAdder disconnectCount = new LongAdder();
+		private final LongAdder connectionWaitCount = new LongAdder();
+		private final LongAdder connectionWaitNanos = new LongAdder();
+
+		public ServerRequestClient(int maxConnectionsPerHost, RepositoryIOExecutor ioexecutor) {
+			this.maxConnectionsPerHost = maxConnectionsPerHost;
+			this.fetchTaskGroup = ioexecutor.newTaskGroup(maxConnectionsPerHost);
 		}
-		URL url = new URL(requesturl);
-		return makeURLRequest(flags, url, method, handler);
-	}
 
-	private static <T> T makeURLRequest(int flags, URL url, String method, ServerRequestHandler<T> handler)
-			throws IOException, ProtocolException, ServerConnectionFailedIOException {
-		if (((flags & FLAG_REQUEST_OFFLINE) == FLAG_REQUEST_OFFLINE)) {
-			throw new OfflineStorageIOException("Failed to make request in offline mode. (" + url + ")");
+		/**
+		 * Starts the argument task asynchronously.
+		 * <p>
+		 * The tasks shouldn't wait for other asynchronous tasks, as the number of threads executing them is limited.
+		 * 
+		 * @return <code>true</code> if the task was started, <code>false</code> if the client is closed or the
+		 *             asynchronous execution is disabled.
+		 */
+		public boolean executeAsync(Runnable task) {
+			if (TestFlag.ENABLED && !TestFlag.metric().allowAsyncServerRequests()) {
+				//keep the order of the requests deterministic during testing
+				return false;
+			}
+			try {
+				fetchTaskGroup.execute(task);
+			} catch (RejectedExecutionException e) {
+				//closed, or the executor is saturated
+				return false;
+			}
+			return true;
 		}
-		try {
-			if (TestFlag.ENABLED) {
-				NestMetric metric = TestFlag.metric();
-				String urlstr = url.toString();
-				Integer rc = metric.getServerRequestResponseCode(method, urlstr);
-				if (rc != null) {
-					return handler.handle(url, rc, () -> metric.getServerRequestResponseStream(method, urlstr),
-							() -> metric.getServerRequestResponseErrorStream(method, urlstr),
-							(header) -> metric.getServerRequestResponseHeaders(method, urlstr).get(header));
-				}
-			}
-			HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-			//set some timeout for the request not to deadlock the build
-			connection.setConnectTimeout(30000);
-			connection.setReadTimeout(30000);
-			connection.setRequestProperty("Accept-Encoding", "gzip");
-			connection.setRequestProperty("User-Agent", HTTP_USER_AGENT);
-			if (method != null) {
-				connection.setRequestMethod(method);
-			}
-			connection.setInstanceFollowRedirects(
-					(flags & FLAG_REQUEST_FOLLOW_REDIRECTS) == FLAG_REQUEST_FOLLOW_REDIRECTS);
-			int rc;
+
+		public void close() {
+			//don't wait for the running tasks, they are only performed for caching purposes
+			fetchTaskGroup.abort();
+		}
+
+		public ServerBundleStorageView.RequestStatistics getStatistics() {
+			return new RequestStatisticsImpl(requestCount.sum(), keepAliveReleaseCount.sum(), disconnectCount.sum(),
+					connectionWaitCount.sum(), connectionWaitNanos.sum());
+		}
+
+		public <T> T makeServerRequest(int flags, String requesturl, String method, ServerRequestHandler<T> handler)
+				throws IOException {
+			if (((flags & FLAG_REQUEST_OFFLINE) == FLAG_REQUEST_OFFLINE)) {
+				throw new OfflineStorageIOException("Failed to make request in offline mode. (" + requesturl + ")");
+			}
+			URL url = new URL(requesturl);
+			return makeURLRequest(flags, url, method, handler);
+		}
+
+		public <T> T makeServerRequest(int flags, String requesturl, String method,
+				Map<String, String> requestheaders, ServerRequestHandler<T> handler) throws IOException {
+			if (((flags & FLAG_REQUEST_OFFLINE) == FLAG_REQUEST_OFFLINE)) {
+				throw new OfflineStorageIOException("Failed to make request in offline mode. (" + requesturl + ")");
+			}
+			URL url = new URL(requesturl);
+			return makeURLRequest(flags, url, method, requestheaders, handler);
+		}
+
+		public <T> T makeURLRequest(int flags, URL url, String method, ServerRequestHandler<T> handler)
+				throws IOException, ProtocolException, ServerConnectionFailedIOException {
+			return makeURLRequest(flags, url, method, Collections.emptyMap(), handler);
+		}
+
+		public <T> T makeURLRequest(int flags, URL url, String method, Map<String, String> requestheaders,
+				ServerRequestHandler<T> handler)
+				throws IOException, ProtocolException, ServerConnectionFailedIOException {
+			if (((flags & FLAG_REQUEST_OFFLINE) == FLAG_REQUEST_OFFLINE)) {
+				throw new OfflineStorageIOException("Failed to make request in offline mode. (" + url + ")");
+			}
 			try {
-				connection.connect();
-				rc = connection.getResponseCode();
+				if (TestFlag.ENABLED) {
+					NestMetric metric = TestFlag.metric();
+					String urlstr = url.toString();
+					Integer rc = metric.getServerRequestResponseCode(method, urlstr);
+					if (rc != null) {
+						requestCount.increment();
+						metric.serverRequestPerformed(method, urlstr, rc);
+						return handler.handle(url, rc, () -> metric.getServerRequestResponseStream(method, urlstr),
+								() -> metric.getServerRequestResponseErrorStream(method, urlstr),
+								(header) -> metric.getServerRequestResponseHeaders(method, urlstr).get(header));
+					}
+				}
+				Semaphore permits = getHostConnectionPermits(url);
+				if (!permits.tryAcquire()) {
+					connectionWaitCount.increment();
+					long waitstart = System.nanoTime();
+					try {
+						permits.acquire();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException("Interrupted while waiting for connection to: " + url);
+					} finally {
+						connectionWaitNanos.add(System.nanoTime() - waitstart);
+					}
+				}
+				//the permit is released by the returned stream in case the response body is transferred to the caller
+				boolean permittransferred = false;
+				try {
+					HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+					//set some timeout for the request not to deadlock the build
+					connection.setConnectTimeout(30000);
+					connection.setReadTimeout(30000);
+					connection.setRequestProperty("Accept-Encoding", "gzip");
+					connection.setRequestProperty("User-Agent", HTTP_USER_AGENT);
+					for (Entry<String, String> entry : requestheaders.entrySet()) {
+						connection.setRequestProperty(entry.getKey(), entry.getValue());
+					}
+					if (method != null) {
+						connection.setRequestMethod(method);
+					}
+					connection.setInstanceFollowRedirects(
+							(flags & FLAG_REQUEST_FOLLOW_REDIRECTS) == FLAG_REQUEST_FOLLOW_REDIRECTS);
+					int rc;
+					try {
+						connection.connect();
+						rc = connection.getResponseCode();
+					} catch (IOException e) {
+						connection.disconnect();
+						disconnectCount.increment();
+						throw new ServerConnectionFailedIOException("Failed to connect to: " + url, e);
+					}
+					requestCount.increment();
+					if (TestFlag.ENABLED) {
+						TestFlag.metric().serverRequestPerformed(method, url.toString(), rc);
+					}
+					boolean transferbody = rc == HttpURLConnection.HTTP_OK
+							&& ((flags & FLAG_REQUEST_NO_DISCONNECT_ON_200) == FLAG_REQUEST_NO_DISCONNECT_ON_200);
+					ResponseInputStream[] responsestreams = { null, null };
+					T result;
+					try {
+						result = handler.handle(url, rc, () -> {
+							ResponseInputStream is = new ResponseInputStream(connection.getInputStream(),
+									transferbody ? permits : null);
+							responsestreams[0] = is;
+							return unGzipizeInputStream(connection, is);
+						}, () -> {
+							InputStream errstream = connection.getErrorStream();
+							if (errstream == null) {
+								return null;
+							}
+							ResponseInputStream is = new ResponseInputStream(errstream, null);
+							responsestreams[1] = is;
+							return unGzipizeInputStream(connection, is);
+						}, connection::getHeaderField);
+					} catch (Throwable e) {
+						connection.disconnect();
+						disconnectCount.increment();
+						if (responsestreams[0] != null && transferbody) {
+							//closing the stream releases the permit
+							permittransferred = true;
+							try {
+								responsestreams[0].close();
+							} catch (IOException e2) {
+								e.addSuppressed(e2);
+							}
+						}
+						throw e;
+					}
+					if (transferbody && responsestreams[0] != null) {
+						permittransferred = true;
+					} else if (releaseConnectionForReuse(connection, rc, responsestreams)) {
+						keepAliveReleaseCount.increment();
+					} else {
+						connection.disconnect();
+						disconnectCount.increment();
+					}
+					return result;
+				} finally {
+					if (!permittransferred) {
+						permits.release();
+					}
+				}
 			} catch (IOException e) {
-				throw new ServerConnectionFailedIOException("Failed to connect to: " + url, e);
+				throw new IOException("Failed to execute server request. (" + url + ")", e);
 			}
+		}
+
+		private Semaphore getHostConnectionPermits(URL url) {
+			String hostkey = url.getProtocol() + "://" + url.getHost() + ":" + url.getPort();
+			return hostConnectionPermits.computeIfAbsent(hostkey, k -> new Semaphore(maxConnectionsPerHost));
+		}
+
+		private static boolean releaseConnectionForReuse(HttpURLConnection connection, int rc,
+				ResponseInputStream[] responsestreams) {
+			//the response body needs to be fully consumed and closed in order for the connection to be reused
 			try {
-				return handler.handle(url, rc, () -> unGzipizeInputStream(connection, connection.getInputStream()),
-						() -> unGzipizeInputStream(connection, connection.getErrorStream()),
-						connection::getHeaderField);
-			} finally {
-				if (rc != 200 || ((flags & FLAG_REQUEST_NO_DISCONNECT_ON_200) != FLAG_REQUEST_NO_DISCONNECT_ON_200)) {
-					connection.disconnect();
+				boolean opened = false;
+				for (ResponseInputStream is : responsestreams) {
+					if (is == null) {
+						continue;
+					}
+					opened = true;
+					if (is.isClosed()) {
+						//the connection implementation handles the remaining bytes when the stream is closed
+						continue;
+					}
+					try {
+						if (!drainStream(is)) {
+							return false;
+						}
+					} finally {
+						is.close();
+					}
+				}
+				if (!opened) {
+					try (InputStream is = rc >= 400 ? connection.getErrorStream() : connection.getInputStream()) {
+						if (is != null) {
+							return drainStream(is);
+						}
+					}
 				}
+				return true;
+			} catch (IOException e) {
+				return false;
 			}
-		} catch (IOException e) {
-			throw new IOException("Failed to execute server request. (" + url + ")", e);
+		}
+
+		private static boolean drainStream(InputStream is) throws IOException {
+			byte[] buf = new byte[8 * 1024];
+			int count = 0;
+			for (int read; (read = is.read(buf)) > 0;) {
+				count += read;
+				if (count > MAX_DRAIN_BYTE_COUNT) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private static InputStream unGzipizeInputStream(HttpURLConnection connection, InputStream is)
+				throws IOException {
+			if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+				return new GZIPInputStream(is);
+			}
+			return is;
 		}
 	}
 
-	private static InputStream unGzipizeInputStream(HttpURLConnection connection, InputStream is) throws IOException {
-		if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
-			return new GZIPInputStream(is);
+	private static final class RequestStatisticsImpl implements ServerBundleStorageView.RequestStatistics {
+		private final long requestCount;
+		private final long keepAliveReleaseCount;
+		private final long disconnectCount;
+		private final long connectionWaitCount;
+		private final long connectionWaitNanos;
+
+		public RequestStatisticsImpl(long requestCount, long keepAliveReleaseCount, long disconnectCount,
+				long connectionWaitCount, long connectionWaitNanos) {
+			this.requestCount = requestCount;
+			this.keepAliveReleaseCount = keepAliveReleaseCount;
+			this.disconnectCount = disconnectCount;
+			this.connectionWaitCount = connectionWaitCount;
+			this.connectionWaitNanos = connectionWaitNanos;
+		}
+
+		@Override
+		public long getRequestCount() {
+			return requestCount;
+		}
+
+		@Override
+		public long getKeepAliveReleaseCount() {
+			return keepAliveReleaseCount;
+		}
+
+		@Override
+		public long getDisconnectCount() {
+			return disconnectCount;
+		}
+
+		@Override
+		public long getConnectionWaitCount() {
+			return connectionWaitCount;
+		}
+
+		@Override
+		public long getConnectionWaitNanos() {
+			return connectionWaitNanos;
+		}
+
+		@Override
+		public String toString() {
+			return getClass().getSimpleName() + "[requestCount=" + requestCount + ", keepAliveReleaseCount="
+					+ keepAliveReleaseCount + ", disconnectCount=" + disconnectCount + ", connectionWaitCount="
+					+ connectionWaitCount + ", connectionWaitNanos=" + connectionWaitNanos + "]";
+		}
+	}
+
+	private static final class ResponseInputStream extends FilterInputStream {
+		private final AtomicBoolean closed = new AtomicBoolean();
+		private final Semaphore permits;
+
+		public ResponseInputStream(InputStream in, Semaphore permits) {
+			super(in);
+			this.permits = permits;
+		}
+
+		public boolean isClosed() {
+			return closed.get();
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (!closed.compareAndSet(false, true)) {
+				return;
+			}
+			try {
+				super.close();
+			} finally {
+				if (permits != null) {
+					permits.release();
+				}
+			}
 		}
-		return is;
 	}
 
 	private static class BundleSignatureHolder {
@@ -832,12 +1258,18 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 
 	}
 
-	private void verifyBundleSignature(SeekableByteChannel channel, BundleIdentifier bundleid,
+	/**
+	 * Verifies the signature of the bundle contents read from the channel.
+	 * 
+	 * @return The {@linkplain JarNestRepositoryBundleImpl#BUNDLE_HASH_ALGORITHM hash} of the verified contents or
+	 *             <code>null</code> if no verification was performed.
+	 */
+	private byte[] verifyBundleSignature(SeekableByteChannel channel, BundleIdentifier bundleid,
 			BundleSignatureVerificationConfiguration verificationconfiguration, BundleSignatureHolder signatureholder,
 			boolean offline) throws NestSignatureVerificationException {
 		if (verificationconfiguration.canLoadWithoutSignature()) {
 			//no need to verify
-			return;
+			return null;
 		}
 		if (signatureholder == null) {
 			throw new NestSignatureVerificationException("Failed to verify, missing bundle signature: " + bundleid);
@@ -864,12 +1296,18 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 			InputStream in = Channels.newInputStream(channel);
 			signature = Signature.getInstance(BUNDLE_SIGNATURE_ALGORITHM);
 			signature.initVerify(signaturekey);
-			StreamUtils.copyStream(in, signature);
+			//compute the hash of the same bytes that are verified
+			MessageDigest digest = MessageDigest.getInstance(JarNestRepositoryBundleImpl.BUNDLE_HASH_ALGORITHM);
+			byte[] buf = new byte[1024 * 8];
+			for (int read; (read = in.read(buf)) > 0;) {
+				signature.update(buf, 0, read);
+				digest.update(buf, 0, read);
+			}
 			boolean verified = signature.verify(signatureholder.signatureBytes);
 			if (!verified) {
 				throw new BundleLoadingFailedException("Failed to verify, invalid bundle signature: " + bundleid);
 			}
-			return;
+			return digest.digest();
 		} catch (Exception e) {
 			throw new NestSignatureVerificationException("Failed to verify bundle signature: " + bundleid, e);
 		}
@@ -879,7 +1317,7 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 			throws IOException {
 		String requesturl = getBundleDownloadURL(bundleid);
 		//don't follow redirects
-		return makeServerRequest((offline ? FLAG_REQUEST_OFFLINE : 0), requesturl, "HEAD",
+		return requestClient.makeServerRequest((offline ? FLAG_REQUEST_OFFLINE : 0), requesturl, "HEAD",
 				(url, rc, ins, errs, headerfunc) -> {
 					BundleSignatureHolder sig = getSignatureFromHeaders(headerfunc);
 					if (sig != null) {
@@ -890,100 +1328,629 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 				});
 	}
 
+	private static final class VerificationLedgerEntry {
+		protected final long size;
+		protected final long lastModifiedMillis;
+		protected final String fileKey;
+		protected final int signatureVersion;
+		/**
+		 * The bundle hash or <code>null</code> if not known.
+		 */
+		protected final byte[] hash;
+
+		public VerificationLedgerEntry(long size, long lastModifiedMillis, String fileKey, int signatureVersion,
+				byte[] hash) {
+			this.size = size;
+			this.lastModifiedMillis = lastModifiedMillis;
+			this.fileKey = fileKey;
+			this.signatureVersion = signatureVersion;
+			this.hash = hash;
+		}
+
+		public VerificationLedgerEntry(BasicFileAttributes attrs, int signatureVersion, byte[] hash) {
+			this(attrs.size(), attrs.lastModifiedTime().toMillis(), getFileKeyString(attrs), signatureVersion, hash);
+		}
+
+		public boolean isSameFile(BasicFileAttributes attrs) {
+			return size == attrs.size() && lastModifiedMillis == attrs.lastModifiedTime().toMillis()
+					&& fileKey.equals(getFileKeyString(attrs));
+		}
+
+		private static String getFileKeyString(BasicFileAttributes attrs) {
+			Object filekey = attrs.fileKey();
+			if (filekey == null) {
+				return "";
+			}
+			//the separator characters of the ledger file are not allowed
+			return filekey.toString().replace('\t', ' ').replace('\n', ' ');
+		}
+	}
+
+	/**
+	 * Persistent record of the bundles that were successfully verified by the storage.
+	 * <p>
+	 * The entries contain the identity of the bundle file at the time of the verification. That is the size, last
+	 * modification time, and file key of the file. If the bundle file has the same identity when it is loaded again,
+	 * the signature verification is skipped, as the file is considered to be unmodified. If a file is modified, its
+	 * identity will no longer match, and it is verified again.
+	 * <p>
+	 * The ledger file is appended with a new line for each verification, and the last entry for a bundle is in
+	 * effect. The file is compacted when loaded, if it contains many outdated entries. The file is accessed while
+	 * holding a file lock to allow concurrent use by multiple processes.
+	 */
+	private static final class VerificationLedger {
+		private static final char SEPARATOR = '\t';
+
+		private final Path ledgerPath;
+		private final Object loadLock = new Object();
+		private volatile ConcurrentHashMap<BundleIdentifier, VerificationLedgerEntry> entries;
+
+		public VerificationLedger(Path ledgerPath) {
+			this.ledgerPath = ledgerPath;
+		}
+
+		public VerificationLedgerEntry getMatchingEntry(BundleIdentifier bundleid, Path bundlepath) {
+			VerificationLedgerEntry entry = getEntries().get(bundleid);
+			if (entry == null) {
+				return null;
+			}
+			try {
+				if (entry.isSameFile(Files.readAttributes(bundlepath, BasicFileAttributes.class))) {
+					return entry;
+				}
+			} catch (IOException e) {
+			}
+			return null;
+		}
+
+		public void record(BundleIdentifier bundleid, Path bundlepath, int signatureversion, byte[] hash) {
+			try {
+				record(bundleid, bundlepath, Files.readAttributes(bundlepath, BasicFileAttributes.class),
+						signatureversion, hash);
+			} catch (IOException e) {
+				//the file doesn't exist
+			}
+		}
+
+		/**
+		 * Records the verification of the bundle if the file still has the same attributes that were read before the
+		 * verification.
+		 */
+		public void record(BundleIdentifier bundleid, Path bundlepath, BasicFileAttributes verifiedattrs,
+				int signatureversion, byte[] hash) {
+			VerificationLedgerEntry entry = new VerificationLedgerEntry(verifiedattrs, signatureversion, hash);
+			try {
+				if (!entry.isSameFile(Files.readAttributes(bundlepath, BasicFileAttributes.class))) {
+					//modified during the verification
+					return;
+				}
+			} catch (IOException e) {
+				return;
+			}
+			getEntries().put(bundleid, entry);
+			StringBuilder sb = new StringBuilder();
+			appendEntry(sb, bundleid, entry);
+			//synchronize to avoid overlapping file locks in this JVM
+			synchronized (this) {
+				try (FileChannel channel = FileChannel.open(ledgerPath, StandardOpenOption.CREATE,
+						StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+						FileLock lock = channel.lock()) {
+					ByteBuffer buffer = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+					while (buffer.hasRemaining()) {
+						channel.write(buffer);
+					}
+				} catch (IOException | OverlappingFileLockException e) {
+					//failed to persist, the bundle is verified again in the next session
+				}
+			}
+		}
+
+		private ConcurrentHashMap<BundleIdentifier, VerificationLedgerEntry> getEntries() {
+			ConcurrentHashMap<BundleIdentifier, VerificationLedgerEntry> result = entries;
+			if (result != null) {
+				return result;
+			}
+			synchronized (loadLock) {
+				result = entries;
+				if (result == null) {
+					result = load();
+					entries = result;
+				}
+				return result;
+			}
+		}
+
+		private ConcurrentHashMap<BundleIdentifier, VerificationLedgerEntry> load() {
+			ConcurrentHashMap<BundleIdentifier, VerificationLedgerEntry> result = new ConcurrentHashMap<>();
+			if (!Files.isRegularFile(ledgerPath)) {
+				return result;
+			}
+			synchronized (this) {
+				try (FileChannel channel = FileChannel.open(ledgerPath, StandardOpenOption.READ,
+						StandardOpenOption.WRITE);
+						FileLock lock = channel.lock()) {
+					//don't close the created input stream, as that would close the channel
+					InputStream in = Channels.newInputStream(channel);
+					String content = StreamUtils.readStreamStringFully(in, StandardCharsets.UTF_8);
+					int linecount = 0;
+					for (String line : content.split("\n")) {
+						if (line.isEmpty()) {
+							continue;
+						}
+						++linecount;
+						parseEntry(line, result);
+					}
+					if (linecount > result.size() * 2 + 64) {
+						//compact the file
+						StringBuilder sb = new StringBuilder();
+						for (Entry<BundleIdentifier, VerificationLedgerEntry> entry : result.entrySet()) {
+							appendEntry(sb, entry.getKey(), entry.getValue());
+						}
+						channel.truncate(0);
+						ByteBuffer buffer = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+						while (buffer.hasRemaining()) {
+							channel.write(buffer, buffer.position());
+						}
+					}
+				} catch (IOException | OverlappingFileLockException e) {
+					//failed to read, the bundles are verified again
+				}
+			}
+			return result;
+		}
+
+		private static void parseEntry(String line,
+				ConcurrentHashMap<BundleIdentifier, VerificationLedgerEntry> result) {
+			String[] parts = line.split(String.valueOf(SEPARATOR), -1);
+			if (parts.length != 6) {
+				//malformed
+				return;
+			}
+			try {
+				BundleIdentifier bundleid = BundleIdentifier.valueOf(parts[0]);
+				byte[] hash = parts[5].isEmpty() ? null : Base64.getUrlDecoder().decode(parts[5]);
+				result.put(bundleid, new VerificationLedgerEntry(Long.parseLong(parts[1]), Long.parseLong(parts[2]),
+						parts[3], Integer.parseInt(parts[4]), hash));
+			} catch (IllegalArgumentException e) {
+				//malformed
+			}
+		}
+
+		private static void appendEntry(StringBuilder sb, BundleIdentifier bundleid, VerificationLedgerEntry entry) {
+			sb.append(bundleid.toString());
+			sb.append(SEPARATOR);
+			sb.append(entry.size);
+			sb.append(SEPARATOR);
+			sb.append(entry.lastModifiedMillis);
+			sb.append(SEPARATOR);
+			sb.append(entry.fileKey);
+			sb.append(SEPARATOR);
+			sb.append(entry.signatureVersion);
+			sb.append(SEPARATOR);
+			if (entry.hash != null) {
+				sb.append(Base64.getUrlEncoder().encodeToString(entry.hash));
+			}
+			sb.append('\n');
+		}
+	}
+
 	private static class DownloadedBundle {
 		protected final Path bundle;
 		protected final BundleSignatureHolder signature;
+		protected final URL redirectURL;
+		/**
+		 * The verification configuration that the bundle signature was verified with during download or
+		 * <code>null</code> if it wasn't verified.
+		 */
+		protected final BundleSignatureVerificationConfiguration verifiedConfiguration;
+		/**
+		 * The bundle hash computed during download or <code>null</code> if not available.
+		 */
+		protected final byte[] hash;
 
 		public DownloadedBundle(Path bundle, BundleSignatureHolder signature) {
+			this(bundle, signature, null, null);
+		}
+
+		public DownloadedBundle(Path bundle, BundleSignatureHolder signature,
+				BundleSignatureVerificationConfiguration verifiedConfiguration, byte[] hash) {
 			this.bundle = bundle;
 			this.signature = signature;
+			this.redirectURL = null;
+			this.verifiedConfiguration = verifiedConfiguration;
+			this.hash = hash;
+		}
+
+		public DownloadedBundle(URL redirectURL) {
+			this.bundle = null;
+			this.signature = null;
+			this.redirectURL = redirectURL;
+			this.verifiedConfiguration = null;
+			this.hash = null;
 		}
 	}
 
-	private DownloadedBundle downloadBundle(BundleIdentifier bundleid, Path resultjarpath, boolean offline)
+	/**
+	 * Downloads the bundle to the specified path.
+	 * <p>
+	 * The bundle is downloaded to a partial file next to the result path. If the download is interrupted, the partial
+	 * file is kept, and the next download attempt resumes it with a range request. The validator of the partially
+	 * downloaded response is stored in a separate info file, which is also used to lock the partial download between
+	 * processes.
+	 * <p>
+	 * The bundle hash and the signature are computed while the response is being written to the file, so the
+	 * downloaded bundle doesn't need to be read again to verify it. If the response contains an acceptable signature,
+	 * it is verified before the partial file is moved to the result path.
+	 */
+	private DownloadedBundle downloadBundle(BundleIdentifier bundleid, Path resultjarpath,
+			BundleSignatureVerificationConfiguration verifyconfig, boolean offline)
 			throws BundleLoadingFailedException {
 		try {
 			String requesturl = getBundleDownloadURL(bundleid);
 			int requestflags = offline ? FLAG_REQUEST_OFFLINE : 0;
-			return makeServerRequest(requestflags, requesturl, "GET", new ServerRequestHandler<DownloadedBundle>() {
-				private BundleSignatureHolder signatureHolder;
-				private int redirectCount = 0;
-
-				@Override
-				public DownloadedBundle handle(URL url, int rc, IOSupplier<? extends InputStream> ins,
-						IOSupplier<? extends InputStream> errs, Function<? super String, ? extends String> headerfunc)
-						throws IOException {
-					if (rc >= 300 && rc < 400) {
-						//redirection
-						if (signatureHolder == null) {
-							signatureHolder = getSignatureFromHeaders(headerfunc);
-						}
-						String location = headerfunc.apply("Location");
-						if (location == null) {
-							throw new IOException("No Location header for redirection. (" + rc + ")");
-						}
-						if (++redirectCount > 10) {
-							throw new IOException("Too many redirections for downloading bundle: " + bundleid
-									+ " (next: " + location + ")");
-						}
-						return makeURLRequest(requestflags, new URL(url, location), "GET", this);
-					}
-					if (rc == HttpURLConnection.HTTP_OK) {
-						//HTTP OK
-						//persist to a temporary file, then move that file to the target
-
-						if (signatureHolder == null) {
-							signatureHolder = getSignatureFromHeaders(headerfunc);
-						}
-
-						byte[] randbytes = new byte[8];
-						secureRandom.nextBytes(randbytes);
-						Path tempfilepath = resultjarpath.resolveSibling(resultjarpath.getFileName().toString()
-								+ ".temp_" + StringUtils.toHexString(randbytes) + ".jar");
-						Files.createDirectories(resultjarpath.getParent());
+			String filename = resultjarpath.getFileName().toString();
+			Path partialpath = resultjarpath.resolveSibling(filename + ".partial");
+			Path partialinfopath = resultjarpath.resolveSibling(filename + ".partial.info");
+			Files.createDirectories(resultjarpath.getParent());
+			DownloadedBundle result;
+			try (FileChannel infochannel = FileChannel.open(partialinfopath, StandardOpenOption.CREATE,
+					StandardOpenOption.READ, StandardOpenOption.WRITE);
+					FileLock lock = tryLockPartialDownload(infochannel)) {
+				if (lock == null) {
+					//the bundle is being downloaded concurrently by some other agent
+					//download to a different temporary file without resuming, not to interfere with it
+					byte[] randbytes = new byte[8];
+					secureRandom.nextBytes(randbytes);
+					Path tempfilepath = resultjarpath
+							.resolveSibling(filename + ".temp_" + StringUtils.toHexString(randbytes) + ".jar");
+					try {
+						return downloadBundleToPartialFile(bundleid, requesturl, requestflags, resultjarpath,
+								tempfilepath, null, verifyconfig, offline);
+					} finally {
 						try {
-							try (InputStream is = ins.get();
-									OutputStream os = Files.newOutputStream(tempfilepath,
-											StandardOpenOption.CREATE_NEW)) {
-								StreamUtils.copyStream(is, os);
-							}
-							try {
-								Files.move(tempfilepath, resultjarpath);
-							} catch (IOException e) {
-								//the moving of the file failed
-								//this can happen if some other process concurrently downloads the file
-								// and opens it without allowing us to overwrite
-								//we can continue execution, as we verify the contents of the JAR before opening it
-							}
-							return new DownloadedBundle(resultjarpath, signatureHolder);
-						} finally {
-							try {
-								Files.deleteIfExists(tempfilepath);
-							} catch (IOException e) {
-								//ignoreable
-							}
+							Files.deleteIfExists(tempfilepath);
+						} catch (IOException e) {
+							//ignoreable
 						}
 					}
-					String errstr = "";
-					IOException errexc = null;
-					try {
-						errstr = readErrorStreamOrEmpty(errs);
-					} catch (IOException e) {
-						errexc = e;
-					}
-					throw ObjectUtils
-							.sneakyThrow(IOUtils.addExc(
-									new BundleLoadingFailedException("Failed to download bundle: " + bundleid
-											+ " with HTTP response code: " + rc + " with error payload: " + errstr),
-									errexc));
 				}
-
-			});
+				result = downloadBundleToPartialFile(bundleid, requesturl, requestflags, resultjarpath, partialpath,
+						infochannel, verifyconfig, offline);
+			}
+			try {
+				Files.deleteIfExists(partialinfopath);
+			} catch (IOException e) {
+				//ignoreable, it is reused for later downloads
+			}
+			return result;
 		} catch (IOException e) {
 			throw new BundleLoadingFailedException("Failed to download bundle: " + bundleid, e);
 		}
 	}
 
+	private DownloadedBundle downloadBundleToPartialFile(BundleIdentifier bundleid, String requesturl,
+			int requestflags, Path resultjarpath, Path partialpath, FileChannel infochannel,
+			BundleSignatureVerificationConfiguration verifyconfig, boolean offline)
+			throws IOException, BundleLoadingFailedException {
+		long resumeoffset = 0;
+		String validator = null;
+		if (infochannel != null) {
+			validator = readPartialDownloadValidator(infochannel);
+			if (validator != null) {
+				try {
+					resumeoffset = Files.size(partialpath);
+				} catch (IOException e) {
+					//no partial file
+				}
+			}
+		}
+		while (true) {
+			Map<String, String> requestheaders;
+			if (resumeoffset > 0) {
+				requestheaders = new TreeMap<>();
+				requestheaders.put("Range", "bytes=" + resumeoffset + "-");
+				requestheaders.put("If-Range", validator);
+				//the range is interpreted on the encoded content, so don't let the server compress it
+				requestheaders.put("Accept-Encoding", "identity");
+			} else {
+				requestheaders = Collections.emptyMap();
+			}
+			BundleDownloadRequestHandler handler = new BundleDownloadRequestHandler(bundleid, partialpath,
+					infochannel, resumeoffset, verifyconfig, offline);
+			long starttime = System.nanoTime();
+			DownloadedBundle result;
+			try {
+				result = requestClient.makeServerRequest(requestflags, requesturl, "GET", requestheaders, handler);
+				while (result != null && result.redirectURL != null) {
+					result = requestClient.makeURLRequest(requestflags, result.redirectURL, "GET", requestheaders,
+							handler);
+				}
+			} catch (IOException e) {
+				if (handler.transferredBytes > 0) {
+					long elapsed = System.nanoTime() - starttime;
+					e.addSuppressed(new IOException("Bundle download interrupted after " + handler.transferredBytes
+							+ " bytes. ("
+							+ downloadSpeedToString(handler.transferredBytes * 1_000_000_000d / Math.max(elapsed, 1))
+							+ ")"));
+				}
+				throw e;
+			}
+			if (result == null) {
+				//the requested range cannot be satisfied, the partial file is probably invalid
+				if (resumeoffset == 0) {
+					throw new IOException("Unexpected response for bundle download: " + bundleid);
+				}
+				resumeoffset = 0;
+				continue;
+			}
+			if (TestFlag.ENABLED) {
+				TestFlag.metric().bundleDownloaded(bundleid.toString(), handler.resumed ? resumeoffset : 0,
+						handler.transferredBytes, System.nanoTime() - starttime);
+			}
+			BundleSignatureHolder signature = result.signature;
+			BundleSignatureVerificationConfiguration verifiedconfig = null;
+			if (handler.signatureVerifier != null) {
+				//verify before moving, so invalid partial downloads don't end up as the bundle
+				boolean verified;
+				try {
+					verified = handler.signatureVerifier.verify(signature.signatureBytes);
+				} catch (SignatureException e) {
+					verified = false;
+				}
+				if (!verified) {
+					clearPartialDownload(partialpath, infochannel);
+					if (handler.resumed) {
+						//the resumed parts may not belong together, try downloading the whole bundle
+						resumeoffset = 0;
+						continue;
+					}
+					throw new BundleLoadingFailedException(
+							"Failed to verify downloaded bundle, invalid bundle signature: " + bundleid);
+				}
+				verifiedconfig = verifyconfig;
+			}
+			if (infochannel != null) {
+				writePartialDownloadValidator(infochannel, null);
+			}
+			try {
+				Files.move(partialpath, resultjarpath);
+			} catch (IOException e) {
+				//the moving of the file failed
+				//this can happen if some other process concurrently downloads the file
+				// and opens it without allowing us to overwrite
+				//we can continue execution, as we verify the contents of the JAR before opening it
+				try {
+					Files.deleteIfExists(partialpath);
+				} catch (IOException e2) {
+					//ignoreable
+				}
+				//the verification and hash doesn't apply to the file of the other process
+				return new DownloadedBundle(resultjarpath, signature);
+			}
+			return new DownloadedBundle(resultjarpath, signature, verifiedconfig, handler.hashDigest.digest());
+		}
+	}
+
+	private static FileLock tryLockPartialDownload(FileChannel channel) throws IOException {
+		try {
+			return channel.tryLock();
+		} catch (OverlappingFileLockException e) {
+			//locked by this JVM
+			return null;
+		}
+	}
+
+	private static void clearPartialDownload(Path partialpath, FileChannel infochannel) throws IOException {
+		if (infochannel != null) {
+			writePartialDownloadValidator(infochannel, null);
+		}
+		Files.deleteIfExists(partialpath);
+	}
+
+	private static String readPartialDownloadValidator(FileChannel infochannel) throws IOException {
+		long size = infochannel.size();
+		if (size <= 0 || size > 4096) {
+			return null;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate((int) size);
+		while (buffer.hasRemaining()) {
+			if (infochannel.read(buffer, buffer.position()) < 0) {
+				return null;
+			}
+		}
+		String result = new String(buffer.array(), StandardCharsets.UTF_8);
+		if (result.isEmpty()) {
+			return null;
+		}
+		return result;
+	}
+
+	private static void writePartialDownloadValidator(FileChannel infochannel, String validator) throws IOException {
+		infochannel.truncate(0);
+		if (validator != null) {
+			ByteBuffer buffer = ByteBuffer.wrap(validator.getBytes(StandardCharsets.UTF_8));
+			while (buffer.hasRemaining()) {
+				infochannel.write(buffer, buffer.position());
+			}
+		}
+		infochannel.force(false);
+	}
+
+	private final class BundleDownloadRequestHandler implements ServerRequestHandler<DownloadedBundle> {
+		private final BundleIdentifier bundleId;
+		private final Path partialPath;
+		private final FileChannel infoChannel;
+		private final long resumeOffset;
+		private final BundleSignatureVerificationConfiguration verifyConfig;
+		private final boolean offline;
+
+		private BundleSignatureHolder signatureHolder;
+		private int redirectCount = 0;
+
+		protected boolean resumed;
+		protected long transferredBytes;
+		/**
+		 * The digest of the bundle contents that is updated when the response is written.
+		 */
+		protected MessageDigest hashDigest;
+		/**
+		 * The signature that is updated when the response is written or <code>null</code> if the signature is not
+		 * verified during the download.
+		 */
+		protected Signature signatureVerifier;
+
+		public BundleDownloadRequestHandler(BundleIdentifier bundleId, Path partialPath, FileChannel infoChannel,
+				long resumeOffset, BundleSignatureVerificationConfiguration verifyConfig, boolean offline) {
+			this.bundleId = bundleId;
+			this.partialPath = partialPath;
+			this.infoChannel = infoChannel;
+			this.resumeOffset = resumeOffset;
+			this.verifyConfig = verifyConfig;
+			this.offline = offline;
+		}
+
+		@Override
+		public DownloadedBundle handle(URL url, int rc, IOSupplier<? extends InputStream> ins,
+				IOSupplier<? extends InputStream> errs, Function<? super String, ? extends String> headerfunc)
+				throws IOException {
+			if (rc >= 300 && rc < 400) {
+				//redirection
+				if (signatureHolder == null) {
+					signatureHolder = getSignatureFromHeaders(headerfunc);
+				}
+				String location = headerfunc.apply("Location");
+				if (location == null) {
+					throw new IOException("No Location header for redirection. (" + rc + ")");
+				}
+				if (++redirectCount > 10) {
+					throw new IOException(
+							"Too many redirections for downloading bundle: " + bundleId + " (next: " + location + ")");
+				}
+				//the redirect is followed by the caller, after the current connection is released
+				return new DownloadedBundle(new URL(url, location));
+			}
+			if (rc == HttpURLConnection.HTTP_PARTIAL && resumeOffset > 0) {
+				//resume the partial download
+				if (signatureHolder == null) {
+					signatureHolder = getSignatureFromHeaders(headerfunc);
+				}
+				String contentrange = headerfunc.apply("Content-Range");
+				if (contentrange == null || !contentrange.trim().startsWith("bytes " + resumeOffset + "-")) {
+					throw new IOException("Unexpected Content-Range for resumed download of bundle: " + bundleId
+							+ " (" + contentrange + ")");
+				}
+				resumed = true;
+				startContentVerification();
+				//include the already downloaded part in the verification
+				try (InputStream is = Files.newInputStream(partialPath)) {
+					updateContentVerification(is, resumeOffset);
+				}
+				writeBody(ins, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+				return new DownloadedBundle(partialPath, signatureHolder);
+			}
+			if (rc == HttpURLConnection.HTTP_OK) {
+				//HTTP OK
+				//persist to the partial file, the caller moves that to the target
+				if (signatureHolder == null) {
+					signatureHolder = getSignatureFromHeaders(headerfunc);
+				}
+				if (infoChannel != null) {
+					Files.deleteIfExists(partialPath);
+					writePartialDownloadValidator(infoChannel, getResumeValidator(headerfunc));
+				}
+				startContentVerification();
+				writeBody(ins, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+				return new DownloadedBundle(partialPath, signatureHolder);
+			}
+			if (rc == HTTP_RANGE_NOT_SATISFIABLE && resumeOffset > 0) {
+				return null;
+			}
+			String errstr = "";
+			IOException errexc = null;
+			try {
+				errstr = readErrorStreamOrEmpty(errs);
+			} catch (IOException e) {
+				errexc = e;
+			}
+			throw ObjectUtils.sneakyThrow(IOUtils.addExc(new BundleLoadingFailedException("Failed to download bundle: "
+					+ bundleId + " with HTTP response code: " + rc + " with error payload: " + errstr), errexc));
+		}
+
+		private void writeBody(IOSupplier<? extends InputStream> ins, OpenOption... openoptions) throws IOException {
+			try (InputStream is = ins.get();
+					OutputStream os = Files.newOutputStream(partialPath, openoptions)) {
+				byte[] buffer = new byte[StreamUtils.DEFAULT_BUFFER_SIZE];
+				for (int read; (read = is.read(buffer)) > 0;) {
+					os.write(buffer, 0, read);
+					updateContentVerification(buffer, read);
+					transferredBytes += read;
+				}
+			}
+		}
+
+		private void startContentVerification() {
+			try {
+				hashDigest = MessageDigest.getInstance(JarNestRepositoryBundleImpl.BUNDLE_HASH_ALGORITHM);
+			} catch (NoSuchAlgorithmException e) {
+				throw new AssertionError(
+						"Hash algorithm not found: " + JarNestRepositoryBundleImpl.BUNDLE_HASH_ALGORITHM, e);
+			}
+			signatureVerifier = null;
+			if (verifyConfig.canLoadWithoutSignature() || signatureHolder == null
+					|| signatureHolder.getVersion() < verifyConfig.getMinSignatureVersion()) {
+				//the signature is not verified, or it is retrieved later
+				return;
+			}
+			try {
+				PublicKey signaturekey = getBundleSignatureKey(signatureHolder.getVersion(), offline);
+				if (signaturekey == null) {
+					return;
+				}
+				Signature verifier = Signature.getInstance(BUNDLE_SIGNATURE_ALGORITHM);
+				verifier.initVerify(signaturekey);
+				signatureVerifier = verifier;
+			} catch (IOException | GeneralSecurityException e) {
+				//the signature is verified when the bundle is opened, which reports the error
+			}
+		}
+
+		private void updateContentVerification(InputStream is, long count) throws IOException {
+			byte[] buffer = new byte[StreamUtils.DEFAULT_BUFFER_SIZE];
+			while (count > 0) {
+				int read = is.read(buffer, 0, (int) Math.min(buffer.length, count));
+				if (read <= 0) {
+					throw new IOException("Partially downloaded file is shorter than expected: " + partialPath);
+				}
+				updateContentVerification(buffer, read);
+				count -= read;
+			}
+		}
+
+		private void updateContentVerification(byte[] buffer, int count) throws IOException {
+			hashDigest.update(buffer, 0, count);
+			if (signatureVerifier != null) {
+				try {
+					signatureVerifier.update(buffer, 0, count);
+				} catch (SignatureException e) {
+					throw new IOException("Failed to update bundle signature.", e);
+				}
+			}
+		}
+
+		private static String getResumeValidator(Function<? super String, ? extends String> headerfunc) {
+			String etag = headerfunc.apply("ETag");
+			//weak entity tags cannot be used for range requests
+			if (!ObjectUtils.isNullOrEmpty(etag) && !etag.startsWith("W/")) {
+				return etag;
+			}
+			String lastmodified = headerfunc.apply("Last-Modified");
+			if (!ObjectUtils.isNullOrEmpty(lastmodified)) {
+				return lastmodified;
+			}
+			return null;
+		}
+	}
+
 	protected static BundleSignatureHolder getSignatureFromHeaders(
 			Function<? super String, ? extends String> headerfunc) {
 		BundleSignatureHolder result = BundleSignatureHolder.fromHeaders(headerfunc.apply("Nest-Bundle-Signature"),
@@ -997,13 +1964,13 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 		return result;
 	}
 
-	private JarNestRepositoryBundleImpl createBundle(BundleIdentifier bundleid, Path resultjarpath,
+	private JarNestRepositoryBundleImpl createBundle(BundleIdentifier bundleid, Path resultjarpath, byte[] bundlehash,
 			ContentVerifier verifier) throws IOException, BundleLoadingFailedException {
 		//require that all external dependencies have sha-256 defined for them
 
 		JarNestRepositoryBundleImpl result;
 		try {
-			result = JarNestRepositoryBundleImpl.create(this, resultjarpath, verifier);
+			result = JarNestRepositoryBundleImpl.create(this, resultjarpath, verifier, bundlehash);
 		} catch (NestSignatureVerificationException e) {
 			throw new BundleLoadingFailedException("Failed to load bundle: " + bundleid, e);
 		}
@@ -1121,6 +2088,12 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 		}
 	}
 
+	/**
+	 * Options for an index operation.
+	 * <p>
+	 * The callbacks are called on the thread that performs the index operation, therefore the subclasses don't need
+	 * to be thread safe. An instance shouldn't be shared between concurrently running operations.
+	 */
 	private static class IndexOperationOptions {
 		public static final IndexOperationOptions NOFLAGS = new IndexOperationOptions(0);
 		protected final int flags;
@@ -1179,6 +2152,36 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 		private static final String INDEX_TYPE_LOOKUP = "lookup";
 		private static final String INDEX_TYPE_INDEX = "index";
 
+		private static final int BINARY_INDEX_MAGIC = 0x4e494458;
+		private static final int BINARY_INDEX_VERSION = 1;
+		/**
+		 * Offset of the last modification time of the corresponding JSON index file in the binary index file.
+		 */
+		private static final int BINARY_INDEX_OFFSET_JSON_MODIFICATION_TIME = 8;
+		private static final int BINARY_INDEX_OFFSET_JSON_SIZE = 16;
+		private static final int BINARY_INDEX_HEADER_SIZE = 24;
+
+		private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+		private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+		private static final class IndexResponse {
+			public static final IndexResponse NOT_MODIFIED = new IndexResponse(null, Collections.emptyMap());
+
+			/**
+			 * The index JSON or <code>null</code> if the index was not modified.
+			 */
+			protected final JSONObject json;
+			/**
+			 * The request headers that can be used to revalidate the index later.
+			 */
+			protected final Map<String, String> validators;
+
+			public IndexResponse(JSONObject json, Map<String, String> validators) {
+				this.json = json;
+				this.validators = validators;
+			}
+		}
+
 		private static class Index<T> {
 			protected final String identity;
 			protected final String base;
@@ -1202,10 +2205,22 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 		private final String indexPrimaryRootUrl;
 		private String indexSecondaryRootUrl;
 
+		private final ServerRequestClient requestClient;
+
 		private final ConcurrentSkipListMap<String, Object> indexLocks = new ConcurrentSkipListMap<>();
 		private final ConcurrentSkipListMap<String, Index<T>> indexes = new ConcurrentSkipListMap<>();
+		private final Set<String> prefetchingIndexes = ConcurrentHashMap.newKeySet();
+
+		/**
+		 * The duration after the expiration of an index file while it is still used, and refreshed in the background.
+		 */
+		private final long staleGracePeriodMillis;
+		private final Set<String> refreshingIndexes = ConcurrentHashMap.newKeySet();
 
-		public IndexManager(Path rootDirectory, String indexPrimaryRootUrl, String indexSecondaryRootUrl) {
+		public IndexManager(ServerRequestClient requestClient, Path rootDirectory, String indexPrimaryRootUrl,
+				String indexSecondaryRootUrl, long staleGracePeriodMillis) {
+			this.requestClient = requestClient;
+			this.staleGracePeriodMillis = staleGracePeriodMillis;
 			this.rootDirectory = rootDirectory;
 			this.indexPrimaryRootUrl = indexPrimaryRootUrl;
 			this.indexSecondaryRootUrl = indexSecondaryRootUrl;
@@ -1215,6 +2230,19 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 			return getIndexDataForName(options, name, "", "");
 		}
 
+		/**
+		 * Gets the identity of the root index.
+		 * 
+		 * @return The identity, or <code>null</code> if the index is not available.
+		 */
+		public String getRootIndexIdentity(IndexOperationOptions options) throws IOException {
+			Index<T> idx = getIndexForName(options, "", "");
+			if (idx == null) {
+				return null;
+			}
+			return idx.identity;
+		}
+
 		private T getIndexDataForName(IndexOperationOptions options, String name, String additionalurl,
 				String expectedbase) throws IOException {
 			Index<T> idx = getIndexForName(options, additionalurl, expectedbase);
@@ -1229,6 +2257,7 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 					}
 					case INDEX_TYPE_INDEX: {
 						if (!ObjectUtils.isNullOrEmpty(idx.nextDataMap)) {
+							startSubIndexPrefetch(options, name, idx);
 							List<T> datas = new ArrayList<>(idx.nextDataMap.size());
 							for (Entry<String, String> entry : idx.nextDataMap.entrySet()) {
 								String nextbase = entry.getKey();
@@ -1355,6 +2384,7 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 					//XXX might paralellize
 					List<JSONObject> splits = new ArrayList<>(nextdatamap.size() + 1);
 					splits.add(indexobj);
+					boolean complete = true;
 					for (Entry<String, String> entry : nextdatamap.entrySet()) {
 						String expectedidentity = entry.getValue();
 						String splitfileadditionalurl = entry.getKey();
@@ -1366,6 +2396,7 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 						} catch (IOException e) {
 							if (((options.flags & FLAG_MISSING_INDEX_ACCEPTABLE) == FLAG_MISSING_INDEX_ACCEPTABLE)) {
 								options.missingIndexFile(splitfileadditionalurl, splitfileindexpath);
+								complete = false;
 								continue;
 							}
 							throw e;
@@ -1379,8 +2410,13 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 						splits.add(splitjson);
 					}
 					T data = generateData(splits);
-					return new Index<>(indexobj.getString("identity"), base, INDEX_TYPE_LOOKUP, data,
+					Index<T> result = new Index<>(indexobj.getString("identity"), base, INDEX_TYPE_LOOKUP, data,
 							Collections.emptyNavigableMap(), options.flags);
+					if (complete) {
+						//only cache the binary form if all the split files were available
+						writeBinaryIndexFile(additionalurl, result);
+					}
+					return result;
 				}
 				case INDEX_TYPE_INDEX: {
 					return parseIndexJSONType(indexobj, additionalurl, base, options);
@@ -1399,7 +2435,60 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 					return true;
 				}
 			}
-			return false;
+			return false;
+		}
+
+		/**
+		 * Starts loading the sub indexes of the argument index concurrently that match the given name.
+		 * <p>
+		 * The first matching sub index is not prefetched as that is loaded by the caller right away. The prefetching
+		 * only populates the loaded indexes, the caller should still retrieve the sub indexes in order to handle the
+		 * errors and to merge the data.
+		 * <p>
+		 * The argument options are not shared with the loader threads. If the options have callbacks, then no
+		 * prefetching is done, as the callbacks need to be called by the caller when it loads the sub indexes.
+		 */
+		private void startSubIndexPrefetch(IndexOperationOptions options, String name, Index<T> idx) {
+			if (options.getClass() != IndexOperationOptions.class) {
+				return;
+			}
+			int flags = options.flags;
+			boolean first = true;
+			for (Entry<String, String> entry : idx.nextDataMap.entrySet()) {
+				String nextbase = entry.getKey();
+				if (!nextbase.startsWith(name)) {
+					continue;
+				}
+				if (first) {
+					first = false;
+					continue;
+				}
+				String nextadditionalurl = entry.getValue();
+				Index<T> loaded = indexes.get(nextadditionalurl);
+				if (loaded != null && INDEX_TYPE_LOOKUP.equals(loaded.type) && nextbase.equals(loaded.base)
+						&& !shouldAttemptIndexReload(loaded, options)) {
+					//already loaded, and doesn't have sub indexes
+					continue;
+				}
+				if (!prefetchingIndexes.add(nextadditionalurl)) {
+					//already being loaded
+					continue;
+				}
+				IndexOperationOptions workeroptions = new IndexOperationOptions(flags);
+				boolean started = requestClient.executeAsync(() -> {
+					try {
+						getIndexDataForName(workeroptions, name, nextadditionalurl, nextbase);
+					} catch (IOException | RuntimeException e) {
+						//ignore, the exception is handled when the caller retrieves the index
+					} finally {
+						prefetchingIndexes.remove(nextadditionalurl);
+					}
+				});
+				if (!started) {
+					prefetchingIndexes.remove(nextadditionalurl);
+					return;
+				}
+			}
 		}
 
 		private Index<T> getIndexForName(IndexOperationOptions options, String additionalurl, String expectedbase)
@@ -1417,12 +2506,18 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 						gotidx = curidx;
 						continue index_retriever;
 					}
-					try {
-						JSONObject indexobj = makeIndexRequestOrLoadFromFile(options, additionalurl,
-								getIndexFilePath(additionalurl), null);
-						gotidx = parseIndexJSON(options, indexobj, additionalurl, expectedbase);
-					} catch (JSONException e) {
-						throw new IndexFileCorruptedIOException(e, expectedbase, additionalurl);
+					gotidx = loadBinaryIndexFile(options, additionalurl, expectedbase);
+					if (gotidx == null) {
+						gotidx = revalidateBinaryIndexFile(options, additionalurl, expectedbase);
+					}
+					if (gotidx == null) {
+						try {
+							JSONObject indexobj = makeIndexRequestOrLoadFromFile(options, additionalurl,
+									getIndexFilePath(additionalurl), null);
+							gotidx = parseIndexJSON(options, indexobj, additionalurl, expectedbase);
+						} catch (JSONException e) {
+							throw new IndexFileCorruptedIOException(e, expectedbase, additionalurl);
+						}
 					}
 					indexes.put(additionalurl, gotidx);
 					return gotidx;
@@ -1441,6 +2536,220 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 			return Paths.get(rootDirectory + additionalurl + "/index.json");
 		}
 
+		private Path getBinaryIndexFilePath(String additionalurl) {
+			return Paths.get(rootDirectory + additionalurl + "/index.bin");
+		}
+
+		/**
+		 * Starts refreshing an expired index file in the background if it is still in the stale grace period.
+		 * <p>
+		 * Only a single refresh is performed for an index file at a time. The request is made without locking, so the
+		 * users of the stale index are not blocked by it. Only the update of the index file is performed while holding
+		 * the lock of the index, and only if the index file wasn't modified meanwhile.
+		 * 
+		 * @return <code>true</code> if the expired index file can be used by the caller as it is being refreshed.
+		 */
+		private boolean startStaleIndexRefresh(IndexOperationOptions options, String additionalurl,
+				Path indexfilepath, long modtime, long currenttime) {
+			if (modtime > currenttime
+					|| modtime + INDEX_INVALIDATION_TIME_MILLIS + staleGracePeriodMillis < currenttime) {
+				//not in the grace period
+				return false;
+			}
+			if (!refreshingIndexes.add(additionalurl)) {
+				//already being refreshed
+				return true;
+			}
+			IndexOperationOptions refreshoptions = new IndexOperationOptions(
+					options.flags & FLAG_REQUESTS_UNCACHE);
+			boolean started = requestClient.executeAsync(() -> {
+				try {
+					Path validatorsfilepath = getIndexValidatorsFilePath(additionalurl);
+					Map<String, String> validators = ((refreshoptions.flags
+							& FLAG_REQUESTS_UNCACHE) == FLAG_REQUESTS_UNCACHE) ? Collections.emptyMap()
+									: readIndexValidators(validatorsfilepath);
+					IndexResponse response = makeIndexResponseRequest(refreshoptions, additionalurl, validators);
+					synchronized (getIndexLock(additionalurl)) {
+						if (Files.getLastModifiedTime(indexfilepath).toMillis() != modtime) {
+							//the index file was updated meanwhile
+							return;
+						}
+						if (response.json == null) {
+							revalidateIndexFile(additionalurl, indexfilepath);
+						} else {
+							writeIndexFile(additionalurl, indexfilepath, validatorsfilepath, response);
+						}
+					}
+				} catch (IOException | RuntimeException e) {
+					//failed to refresh, will be attempted again the next time the stale index is used
+				} finally {
+					refreshingIndexes.remove(additionalurl);
+				}
+			});
+			if (!started) {
+				refreshingIndexes.remove(additionalurl);
+			}
+			return started;
+		}
+
+		private Path getIndexValidatorsFilePath(String additionalurl) {
+			return Paths.get(rootDirectory + additionalurl + "/index.validators");
+		}
+
+		/**
+		 * Loads the binary representation of a lookup index if it is up to date with the JSON index file.
+		 * <p>
+		 * The binary index file contains the generated data of a lookup index and its split files. It is valid as long
+		 * as it was generated for the same index identity as the JSON index file. The modification time and size of
+		 * the JSON file are checked first to quickly reject out of date binary files. The expiration is checked the
+		 * same way as for the JSON index file.
+		 * <p>
+		 * Locked by the caller.
+		 * 
+		 * @return The loaded index or <code>null</code> if the binary index file is not present or cannot be used.
+		 */
+		private Index<T> loadBinaryIndexFile(IndexOperationOptions options, String additionalurl,
+				String expectedbase) {
+			if (((options.flags & FLAG_NO_LOADING_FROM_FILE) == FLAG_NO_LOADING_FROM_FILE)) {
+				return null;
+			}
+			Path indexfilepath = getIndexFilePath(additionalurl);
+			Path binaryfilepath = getBinaryIndexFilePath(additionalurl);
+			try {
+				BasicFileAttributes jsonattrs = Files.readAttributes(indexfilepath, BasicFileAttributes.class);
+				long modtime = jsonattrs.lastModifiedTime().toMillis();
+				if (!((options.flags & FLAG_OFFLINE) == FLAG_OFFLINE)) {
+					long currenttime = System.currentTimeMillis();
+					if (modtime > currenttime || modtime + INDEX_INVALIDATION_TIME_MILLIS < currenttime) {
+						//the index file is considered to be expired
+						if (!startStaleIndexRefresh(options, additionalurl, indexfilepath, modtime, currenttime)) {
+							return null;
+						}
+						//use the stale index while it is being refreshed
+					}
+				}
+				ByteBuffer buffer;
+				try (FileChannel channel = FileChannel.open(binaryfilepath, StandardOpenOption.READ)) {
+					buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+				}
+				if (buffer.getInt(0) != BINARY_INDEX_MAGIC || buffer.getInt(4) != BINARY_INDEX_VERSION) {
+					return null;
+				}
+				if (buffer.getLong(BINARY_INDEX_OFFSET_JSON_MODIFICATION_TIME) != modtime
+						|| buffer.getLong(BINARY_INDEX_OFFSET_JSON_SIZE) != jsonattrs.size()) {
+					//the JSON file was changed since the binary file was written
+					return null;
+				}
+				buffer.position(BINARY_INDEX_HEADER_SIZE);
+				String identity = readBinaryIndexString(buffer);
+				String base = readBinaryIndexString(buffer);
+				if (!expectedbase.equals(base)) {
+					return null;
+				}
+				if (!identity.equals(readIndexFileIdentity(indexfilepath))) {
+					//the binary file was generated for a different version of the index
+					return null;
+				}
+				T data = readBinaryData(buffer);
+				options.indexFileOfflineReused(additionalurl, indexfilepath);
+				return new Index<>(identity, base, INDEX_TYPE_LOOKUP, data, Collections.emptyNavigableMap(),
+						options.flags);
+			} catch (IOException | RuntimeException e) {
+				//the binary file doesn't exist, or malformed
+				return null;
+			}
+		}
+
+		/**
+		 * Writes the binary representation of the argument lookup index next to the JSON index file.
+		 * <p>
+		 * Locked by the caller.
+		 */
+		private void writeBinaryIndexFile(String additionalurl, Index<T> index) {
+			if (!INDEX_TYPE_LOOKUP.equals(index.type) || index.data == null || index.identity == null) {
+				return;
+			}
+			Path indexfilepath = getIndexFilePath(additionalurl);
+			Path binaryfilepath = getBinaryIndexFilePath(additionalurl);
+			Path tempsibling = binaryfilepath.resolveSibling(UUID.randomUUID() + ".temp");
+			try {
+				BasicFileAttributes jsonattrs = Files.readAttributes(indexfilepath, BasicFileAttributes.class);
+				try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+						Files.newOutputStream(tempsibling, StandardOpenOption.CREATE_NEW)))) {
+					out.writeInt(BINARY_INDEX_MAGIC);
+					out.writeInt(BINARY_INDEX_VERSION);
+					out.writeLong(jsonattrs.lastModifiedTime().toMillis());
+					out.writeLong(jsonattrs.size());
+					writeBinaryIndexString(out, index.identity);
+					writeBinaryIndexString(out, index.base);
+					writeBinaryData(index.data, out);
+				}
+				Files.move(tempsibling, binaryfilepath, StandardCopyOption.REPLACE_EXISTING);
+			} catch (IOException | RuntimeException e) {
+				//failed to write the binary file, the index will be loaded from the JSON file next time
+				//the replacement can fail if the previous binary file is still mapped by the process
+			} finally {
+				try {
+					Files.deleteIfExists(tempsibling);
+				} catch (IOException e) {
+				}
+			}
+		}
+
+		private static void writeBinaryIndexString(DataOutput out, String str) throws IOException {
+			byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+
+		/**
+		 * Reads the identity of the argument JSON index file.
+		 * <p>
+		 * The top level entries of the JSON object are only parsed until the identity is found.
+		 * 
+		 * @return The identity or <code>null</code> if not found.
+		 */
+		private static String readIndexFileIdentity(Path indexfilepath) throws IOException {
+			try (InputStream is = Files.newInputStream(indexfilepath);
+					InputStreamReader reader = new InputStreamReader(is, StandardCharsets.UTF_8)) {
+				JSONTokener tokener = new JSONTokener(reader);
+				if (tokener.nextClean() != '{') {
+					return null;
+				}
+				while (true) {
+					char c = tokener.nextClean();
+					if (c == 0 || c == '}') {
+						return null;
+					}
+					tokener.back();
+					String key = tokener.nextValue().toString();
+					if (tokener.nextClean() != ':') {
+						return null;
+					}
+					Object value = tokener.nextValue();
+					if ("identity".equals(key)) {
+						return value instanceof String ? (String) value : null;
+					}
+					c = tokener.nextClean();
+					if (c != ',' && c != ';') {
+						return null;
+					}
+				}
+			} catch (JSONException e) {
+				return null;
+			}
+		}
+
+		private static String readBinaryIndexString(ByteBuffer buffer) throws IOException {
+			int len = buffer.getInt();
+			if (len < 0 || len > buffer.remaining()) {
+				throw new IOException("Invalid string length: " + len);
+			}
+			byte[] bytes = new byte[len];
+			buffer.get(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
 		private Index<T> parseIndexJSONType(JSONObject indexobj, String additionalurl, String base,
 				IndexOperationOptions options) {
 			JSONObject nextmap = indexobj.optJSONObject("next");
@@ -1498,7 +2807,11 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 							long modtime = lastmodtime.toMillis();
 							if (modtime > currenttime || modtime + INDEX_INVALIDATION_TIME_MILLIS < currenttime) {
 								//the index file is considered to be expired
-								break file_reader;
+								if (!startStaleIndexRefresh(options, additionalurl, indexfilepath, modtime,
+										currenttime)) {
+									break file_reader;
+								}
+								//use the stale index while it is being refreshed
 							}
 							acceptcached = true;
 						}
@@ -1525,103 +2838,373 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 					//the index file doesn't exist or cant be read
 				}
 			}
-			return makeIndexRequest(options, additionalurl, indexfilepath);
+			//if an identity is expected, then the file is missing or known to be out of date, don't revalidate
+			return makeIndexRequest(options, additionalurl, indexfilepath, expectedidentity == null);
 		}
 
 		//locked by the caller
 		private JSONObject makeIndexRequest(IndexOperationOptions options, String additionalurl, Path indexfilepath)
 				throws IOException {
+			return makeIndexRequest(options, additionalurl, indexfilepath, true);
+		}
+
+		/**
+		 * Requests the index from the server and writes it to the index file.
+		 * <p>
+		 * If revalidation is allowed, and the response validators of the index file were stored previously, then a
+		 * conditional request is issued. If the server responds that the index is not modified, then only the
+		 * modification time of the index file is updated.
+		 * <p>
+		 * Locked by the caller.
+		 */
+		private JSONObject makeIndexRequest(IndexOperationOptions options, String additionalurl, Path indexfilepath,
+				boolean revalidate) throws IOException {
+			IndexResponse response = requestIndexUpdate(options, additionalurl, indexfilepath, revalidate);
+			if (response.json != null) {
+				return response.json;
+			}
+			JSONObject revalidated = readIndexFile(indexfilepath);
+			if (revalidated != null) {
+				return revalidated;
+			}
+			//failed to use the existing file, query it again
+			return requestIndexUpdate(options, additionalurl, indexfilepath, false).json;
+		}
+
+		/**
+		 * Requests the index from the server and updates the index file according to the response.
+		 * <p>
+		 * The index file is not read by this method.
+		 * <p>
+		 * Locked by the caller.
+		 * 
+		 * @return The response or {@link IndexResponse#NOT_MODIFIED} if the index file was successfully revalidated.
+		 */
+		private IndexResponse requestIndexUpdate(IndexOperationOptions options, String additionalurl,
+				Path indexfilepath, boolean revalidate) throws IOException {
 			boolean offline = (options.flags & FLAG_OFFLINE) == FLAG_OFFLINE;
 			if (offline) {
 				throw new OfflineStorageIndexIOException(additionalurl, indexfilepath);
 			}
-			JSONObject resultjson;
+			Path validatorsfilepath = getIndexValidatorsFilePath(additionalurl);
+			if (revalidate && ((options.flags & (FLAG_REQUESTS_UNCACHE | FLAG_NO_LOADING_FROM_FILE)) == 0)) {
+				Map<String, String> validators = readIndexValidators(validatorsfilepath);
+				if (!validators.isEmpty()) {
+					IndexResponse response = makeIndexResponseRequest(options, additionalurl, validators);
+					if (response.json == null) {
+						if (revalidateIndexFile(additionalurl, indexfilepath)) {
+							return response;
+						}
+						//failed to update the existing file, query it again
+					} else {
+						writeIndexFile(additionalurl, indexfilepath, validatorsfilepath, response);
+						return response;
+					}
+				}
+			}
+			IndexResponse response = makeIndexResponseRequest(options, additionalurl, Collections.emptyMap());
+			if (response.json != null) {
+				writeIndexFile(additionalurl, indexfilepath, validatorsfilepath, response);
+			}
+			return response;
+		}
+
+		/**
+		 * Revalidates the expired index file with the server, and loads the binary index file if the index was not
+		 * modified.
+		 * <p>
+		 * This avoids parsing the JSON index file if the server responds that it is not modified. If the server sends
+		 * a new index, then that is parsed and returned.
+		 * <p>
+		 * Locked by the caller.
+		 * 
+		 * @return The index or <code>null</code> if the index file is not expired (or can be used in the stale grace
+		 *             period), or the binary index file cannot be used.
+		 */
+		private Index<T> revalidateBinaryIndexFile(IndexOperationOptions options, String additionalurl,
+				String expectedbase) throws IOException {
+			if (((options.flags & (FLAG_OFFLINE | FLAG_REQUESTS_UNCACHE | FLAG_NO_LOADING_FROM_FILE)) != 0)) {
+				return null;
+			}
+			Path indexfilepath = getIndexFilePath(additionalurl);
+			try {
+				long modtime = Files.getLastModifiedTime(indexfilepath).toMillis();
+				long currenttime = System.currentTimeMillis();
+				if (!(modtime > currenttime
+						|| modtime + INDEX_INVALIDATION_TIME_MILLIS + staleGracePeriodMillis < currenttime)) {
+					//not expired, or in the stale grace period
+					//the binary file is not usable for other reasons
+					return null;
+				}
+				if (!Files.isRegularFile(getBinaryIndexFilePath(additionalurl))) {
+					return null;
+				}
+			} catch (IOException e) {
+				//the index file doesn't exist
+				return null;
+			}
+			IndexResponse response = requestIndexUpdate(options, additionalurl, indexfilepath, true);
+			if (response.json != null) {
+				try {
+					return parseIndexJSON(options, response.json, additionalurl, expectedbase);
+				} catch (JSONException e) {
+					throw new IndexFileCorruptedIOException(e, expectedbase, additionalurl);
+				}
+			}
+			return loadBinaryIndexFile(options, additionalurl, expectedbase);
+		}
+
+		private IndexResponse makeIndexResponseRequest(IndexOperationOptions options, String additionalurl,
+				Map<String, String> validators) throws IOException {
+			IndexResponse result;
 			if (indexSecondaryRootUrl != null && ((options.flags & FLAG_REQUESTS_UNCACHE) != FLAG_REQUESTS_UNCACHE)) {
 				try {
-					resultjson = makeJsonIndexRequest(options, additionalurl, indexSecondaryRootUrl);
+					result = makeJsonIndexRequest(options, additionalurl, indexSecondaryRootUrl, validators);
 				} catch (ServerConnectionFailedIOException e) {
 					//try to connect to the primary server
 					//disable further connection to the secondary server
 					indexSecondaryRootUrl = null;
 					try {
-						resultjson = makeJsonIndexRequest(options, additionalurl, indexPrimaryRootUrl);
+						result = makeJsonIndexRequest(options, additionalurl, indexPrimaryRootUrl, validators);
 					} catch (IOException e2) {
 						e2.addSuppressed(e);
 						throw e2;
 					}
 				} catch (JSONException e) {
 					//shouldnt really happen, but in this case fall back to the primary url
-					resultjson = null;
+					result = null;
 				} catch (IOException e) {
 					// fall back to primary url
-					resultjson = null;
+					result = null;
 				}
-				if (resultjson == null) {
-					resultjson = makeJsonIndexRequest(options, additionalurl, indexPrimaryRootUrl);
+				if (result == null) {
+					result = makeJsonIndexRequest(options, additionalurl, indexPrimaryRootUrl, validators);
 				}
 			} else {
-				resultjson = makeJsonIndexRequest(options, additionalurl, indexPrimaryRootUrl);
+				result = makeJsonIndexRequest(options, additionalurl, indexPrimaryRootUrl, validators);
 			}
-			if (resultjson != null) {
-				Path tempsibling = indexfilepath.resolveSibling(UUID.randomUUID() + ".temp");
+			return result;
+		}
+
+		private void writeIndexFile(String additionalurl, Path indexfilepath, Path validatorsfilepath,
+				IndexResponse response) {
+			Path tempsibling = indexfilepath.resolveSibling(UUID.randomUUID() + ".temp");
+			try {
+				Files.createDirectories(indexfilepath.getParent());
+				try (OutputStream os = Files.newOutputStream(tempsibling, StandardOpenOption.CREATE_NEW);
+						OutputStreamWriter writer = new OutputStreamWriter(os, StandardCharsets.UTF_8)) {
+					response.json.write(writer);
+				}
+				//delete the validators first, so they are never associated with a different file
+				Files.deleteIfExists(validatorsfilepath);
+				//we can replace the existing file
+				Files.move(tempsibling, indexfilepath, StandardCopyOption.REPLACE_EXISTING);
+				//remove from the index so it can be refreshed
+				indexes.remove(additionalurl);
+			} catch (IOException e) {
+				//failed to write the index file, shouldn't happen, only if the index has a path with "index.json"
+				return;
+			} finally {
 				try {
-					Files.createDirectories(indexfilepath.getParent());
-					try (OutputStream os = Files.newOutputStream(tempsibling, StandardOpenOption.CREATE_NEW);
-							OutputStreamWriter writer = new OutputStreamWriter(os, StandardCharsets.UTF_8)) {
-						resultjson.write(writer);
-					}
-					//we can replace the existing file
-					Files.move(tempsibling, indexfilepath, StandardCopyOption.REPLACE_EXISTING);
-					//remove from the index so it can be refreshed
-					indexes.remove(additionalurl);
+					Files.deleteIfExists(tempsibling);
 				} catch (IOException e) {
-					//failed to write the index file, shouldn't happen, only if the index has a path with "index.json"
-				} finally {
-					try {
-						Files.deleteIfExists(tempsibling);
-					} catch (IOException e) {
+				}
+			}
+			if (!response.validators.isEmpty()) {
+				writeIndexValidators(validatorsfilepath, response.validators);
+			}
+		}
+
+		/**
+		 * Updates the modification time of the index file after the server responded that it is not modified.
+		 * <p>
+		 * The modification time in the binary index file is updated as well, so it stays valid.
+		 * 
+		 * @return <code>true</code> if the modification time was updated.
+		 */
+		private boolean revalidateIndexFile(String additionalurl, Path indexfilepath) {
+			try {
+				BasicFileAttributes prevattrs = Files.readAttributes(indexfilepath, BasicFileAttributes.class);
+				Files.setLastModifiedTime(indexfilepath, FileTime.fromMillis(System.currentTimeMillis()));
+				//query the time again, as the file system may have lower precision
+				long modtime = Files.getLastModifiedTime(indexfilepath).toMillis();
+				updateBinaryIndexFileModificationTime(additionalurl, prevattrs, modtime);
+				return true;
+			} catch (IOException e) {
+				return false;
+			}
+		}
+
+		private static JSONObject readIndexFile(Path indexfilepath) {
+			try (InputStream is = Files.newInputStream(indexfilepath);
+					InputStreamReader reader = new InputStreamReader(is, StandardCharsets.UTF_8)) {
+				return new JSONObject(new JSONTokener(reader));
+			} catch (IOException | JSONException e) {
+				return null;
+			}
+		}
+
+		private void updateBinaryIndexFileModificationTime(String additionalurl, BasicFileAttributes prevjsonattrs,
+				long modtime) {
+			try (FileChannel channel = FileChannel.open(getBinaryIndexFilePath(additionalurl), StandardOpenOption.READ,
+					StandardOpenOption.WRITE)) {
+				ByteBuffer header = ByteBuffer.allocate(BINARY_INDEX_HEADER_SIZE);
+				while (header.hasRemaining()) {
+					if (channel.read(header, header.position()) < 0) {
+						return;
 					}
 				}
+				if (header.getInt(0) != BINARY_INDEX_MAGIC || header.getInt(4) != BINARY_INDEX_VERSION
+						|| header.getLong(BINARY_INDEX_OFFSET_JSON_MODIFICATION_TIME) != prevjsonattrs
+								.lastModifiedTime().toMillis()
+						|| header.getLong(BINARY_INDEX_OFFSET_JSON_SIZE) != prevjsonattrs.size()) {
+					//the binary file doesn't belong to the JSON file
+					return;
+				}
+				ByteBuffer modtimebuf = ByteBuffer.allocate(8);
+				modtimebuf.putLong(0, modtime);
+				while (modtimebuf.hasRemaining()) {
+					channel.write(modtimebuf, BINARY_INDEX_OFFSET_JSON_MODIFICATION_TIME + modtimebuf.position());
+				}
+			} catch (IOException e) {
+				//the binary file doesn't exist or failed to update, it will be regenerated
 			}
-			return resultjson;
 		}
 
-		private static JSONObject makeJsonIndexRequest(IndexOperationOptions options, String additionalurl,
-				String rooturl) throws IOException {
+		private IndexResponse makeJsonIndexRequest(IndexOperationOptions options, String additionalurl,
+				String rooturl, Map<String, String> validators) throws IOException {
 			boolean offline = (options.flags & FLAG_OFFLINE) == FLAG_OFFLINE;
 			String url = rooturl + additionalurl;
 			if (((options.flags & FLAG_REQUESTS_UNCACHE) == FLAG_REQUESTS_UNCACHE)) {
 				url += "?uncache-" + UUID.randomUUID();
 			}
-			return makeServerRequest((offline ? FLAG_REQUEST_OFFLINE : 0) | FLAG_REQUEST_FOLLOW_REDIRECTS, url, "GET",
+			int requestflags = (offline ? FLAG_REQUEST_OFFLINE : 0) | FLAG_REQUEST_FOLLOW_REDIRECTS;
+			return requestClient.makeServerRequest(requestflags, url, "GET", validators,
 					(requrl, rc, ins, errs, headerfunc) -> {
 						if (rc == HttpURLConnection.HTTP_OK) {
+							JSONObject json;
 							try (InputStream is = ins.get();
 									InputStreamReader reader = new InputStreamReader(is, StandardCharsets.UTF_8)) {
-								return new JSONObject(new JSONTokener(reader));
+								json = new JSONObject(new JSONTokener(reader));
 							}
+							return new IndexResponse(json, getResponseValidators(headerfunc));
+						}
+						if (rc == HttpURLConnection.HTTP_NOT_MODIFIED && !validators.isEmpty()) {
+							return IndexResponse.NOT_MODIFIED;
 						}
 						throw new IOException("Unexpected response code from request: " + rc);
 					});
 		}
 
+		private static Map<String, String> getResponseValidators(
+				Function<? super String, ? extends String> headerfunc) {
+			Map<String, String> result = new TreeMap<>();
+			String etag = headerfunc.apply("ETag");
+			if (!ObjectUtils.isNullOrEmpty(etag)) {
+				result.put(HEADER_IF_NONE_MATCH, etag);
+			}
+			String lastmodified = headerfunc.apply("Last-Modified");
+			if (!ObjectUtils.isNullOrEmpty(lastmodified)) {
+				result.put(HEADER_IF_MODIFIED_SINCE, lastmodified);
+			}
+			return result;
+		}
+
+		private static Map<String, String> readIndexValidators(Path validatorsfilepath) {
+			try (InputStream is = Files.newInputStream(validatorsfilepath);
+					InputStreamReader reader = new InputStreamReader(is, StandardCharsets.UTF_8)) {
+				JSONObject json = new JSONObject(new JSONTokener(reader));
+				Map<String, String> result = new TreeMap<>();
+				for (String header : new String[] { HEADER_IF_NONE_MATCH, HEADER_IF_MODIFIED_SINCE }) {
+					String val = json.optString(header, null);
+					if (!ObjectUtils.isNullOrEmpty(val)) {
+						result.put(header, val);
+					}
+				}
+				return result;
+			} catch (IOException | JSONException e) {
+				//the file doesn't exist or cant be read
+				return Collections.emptyMap();
+			}
+		}
+
+		private static void writeIndexValidators(Path validatorsfilepath, Map<String, String> validators) {
+			Path tempsibling = validatorsfilepath.resolveSibling(UUID.randomUUID() + ".temp");
+			try {
+				try (OutputStream os = Files.newOutputStream(tempsibling, StandardOpenOption.CREATE_NEW);
+						OutputStreamWriter writer = new OutputStreamWriter(os, StandardCharsets.UTF_8)) {
+					new JSONObject(validators).write(writer);
+				}
+				Files.move(tempsibling, validatorsfilepath, StandardCopyOption.REPLACE_EXISTING);
+			} catch (IOException | JSONException e) {
+				//failed to write, the index will be downloaded without revalidation
+			} finally {
+				try {
+					Files.deleteIfExists(tempsibling);
+				} catch (IOException e) {
+				}
+			}
+		}
+
 		protected abstract T generateData(Collection<JSONObject> lookups);
 
 		protected abstract T mergeData(Collection<? extends T> datas);
 
+		protected abstract T readBinaryData(ByteBuffer buffer) throws IOException;
+
+		protected abstract void writeBinaryData(T data, DataOutput out) throws IOException;
+
 		public void updateIndexFiles() throws IOException {
 			getIndexForName(new IndexOperationOptions(FLAG_NO_LOADING_FROM_FILE | FLAG_REQUESTS_UNCACHE), "");
 		}
 	}
 
-	private static final class TasksIndexManager
-			extends IndexManager<NavigableMap<String, NavigableSet<BundleIdentifier>>> {
-		public TasksIndexManager(Path rootDirectory, String indexPrimaryRootUrl, String indexSecondaryRootUrl) {
-			super(rootDirectory, indexPrimaryRootUrl, indexSecondaryRootUrl);
+	private static abstract class BundleIdentifierMapIndexManager
+			extends IndexManager<Map<String, NavigableSet<BundleIdentifier>>> {
+		public BundleIdentifierMapIndexManager(ServerRequestClient requestClient, Path rootDirectory,
+				String indexPrimaryRootUrl, String indexSecondaryRootUrl, long staleGracePeriodMillis) {
+			super(requestClient, rootDirectory, indexPrimaryRootUrl, indexSecondaryRootUrl, staleGracePeriodMillis);
+		}
+
+		@Override
+		protected Map<String, NavigableSet<BundleIdentifier>> mergeData(
+				Collection<? extends Map<String, NavigableSet<BundleIdentifier>>> datas) {
+			if (ObjectUtils.isNullOrEmpty(datas)) {
+				return Collections.emptyNavigableMap();
+			}
+			NavigableMap<String, NavigableSet<BundleIdentifier>> result = new TreeMap<>();
+			for (Map<String, NavigableSet<BundleIdentifier>> data : datas) {
+				for (Entry<String, NavigableSet<BundleIdentifier>> entry : data.entrySet()) {
+					result.computeIfAbsent(entry.getKey(), Functionals.treeSetComputer()).addAll(entry.getValue());
+				}
+			}
+			return result;
+		}
+
+		@Override
+		protected Map<String, NavigableSet<BundleIdentifier>> readBinaryData(ByteBuffer buffer) throws IOException {
+			return BundleIndexTable.read(buffer);
+		}
+
+		@Override
+		protected void writeBinaryData(Map<String, NavigableSet<BundleIdentifier>> data, DataOutput out)
+				throws IOException {
+			if (!(data instanceof NavigableMap)) {
+				//the keys must be in order
+				data = new TreeMap<>(data);
+			}
+			BundleIndexTable.write(data, out);
+		}
+	}
+
+	private static final class TasksIndexManager extends BundleIdentifierMapIndexManager {
+		public TasksIndexManager(ServerRequestClient requestClient, Path rootDirectory, String indexPrimaryRootUrl,
+				String indexSecondaryRootUrl, long staleGracePeriodMillis) {
+			super(requestClient, rootDirectory, indexPrimaryRootUrl, indexSecondaryRootUrl, staleGracePeriodMillis);
 		}
 
 		@Override
-		protected NavigableMap<String, NavigableSet<BundleIdentifier>> generateData(Collection<JSONObject> lookups) {
+		protected Map<String, NavigableSet<BundleIdentifier>> generateData(Collection<JSONObject> lookups) {
 			NavigableMap<String, NavigableSet<BundleIdentifier>> result = new TreeMap<>();
 			for (JSONObject lookup : lookups) {
 				if (lookup == null) {
@@ -1667,31 +3250,16 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 			}
 			return result;
 		}
-
-		@Override
-		protected NavigableMap<String, NavigableSet<BundleIdentifier>> mergeData(
-				Collection<? extends NavigableMap<String, NavigableSet<BundleIdentifier>>> datas) {
-			if (ObjectUtils.isNullOrEmpty(datas)) {
-				return Collections.emptyNavigableMap();
-			}
-			NavigableMap<String, NavigableSet<BundleIdentifier>> result = new TreeMap<>();
-			for (NavigableMap<String, NavigableSet<BundleIdentifier>> data : datas) {
-				for (Entry<String, NavigableSet<BundleIdentifier>> entry : data.entrySet()) {
-					result.computeIfAbsent(entry.getKey(), Functionals.treeSetComputer()).addAll(entry.getValue());
-				}
-			}
-			return result;
-		}
 	}
 
-	private static final class BundlesIndexManager
-			extends IndexManager<NavigableMap<String, NavigableSet<BundleIdentifier>>> {
-		public BundlesIndexManager(Path rootDirectory, String indexPrimaryRootUrl, String indexSecondaryRootUrl) {
-			super(rootDirectory, indexPrimaryRootUrl, indexSecondaryRootUrl);
+	private static final class BundlesIndexManager extends BundleIdentifierMapIndexManager {
+		public BundlesIndexManager(ServerRequestClient requestClient, Path rootDirectory, String indexPrimaryRootUrl,
+				String indexSecondaryRootUrl, long staleGracePeriodMillis) {
+			super(requestClient, rootDirectory, indexPrimaryRootUrl, indexSecondaryRootUrl, staleGracePeriodMillis);
 		}
 
 		@Override
-		protected NavigableMap<String, NavigableSet<BundleIdentifier>> generateData(Collection<JSONObject> lookups) {
+		protected Map<String, NavigableSet<BundleIdentifier>> generateData(Collection<JSONObject> lookups) {
 			NavigableMap<String, NavigableSet<BundleIdentifier>> result = new TreeMap<>();
 			for (JSONObject lookup : lookups) {
 				if (lookup == null) {
@@ -1723,21 +3291,6 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 			}
 			return result;
 		}
-
-		@Override
-		protected NavigableMap<String, NavigableSet<BundleIdentifier>> mergeData(
-				Collection<? extends NavigableMap<String, NavigableSet<BundleIdentifier>>> datas) {
-			if (ObjectUtils.isNullOrEmpty(datas)) {
-				return Collections.emptyNavigableMap();
-			}
-			NavigableMap<String, NavigableSet<BundleIdentifier>> result = new TreeMap<>();
-			for (NavigableMap<String, NavigableSet<BundleIdentifier>> data : datas) {
-				for (Entry<String, NavigableSet<BundleIdentifier>> entry : data.entrySet()) {
-					result.computeIfAbsent(entry.getKey(), Functionals.treeSetComputer()).addAll(entry.getValue());
-				}
-			}
-			return result;
-		}
 	}
 
 	private static final class ServerStorageViewKeyImpl implements StorageViewKey, Externalizable {
@@ -1871,6 +3424,11 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 			return ServerBundleStorage.this.getServerHost();
 		}
 
+		@Override
+		public RequestStatistics getRequestStatistics() {
+			return requestClient.getStatistics();
+		}
+
 		@Override
 		public Map<? extends ExternalArchiveKey, ? extends ExternalArchive> loadExternalArchives(
 				ExternalDependencyInformation depinfo)
@@ -1884,34 +3442,35 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 				throw new FileNotFoundException("Failed to download external dependency without SHA-256: " + uri);
 			}
 			String url = serverHost + "/external/mirror/" + BundleUtils.sha256(uri) + "/" + expectedhashes.sha256;
-			return makeServerRequest((offline ? FLAG_REQUEST_OFFLINE : 0) | FLAG_REQUEST_NO_DISCONNECT_ON_200
-					| FLAG_REQUEST_FOLLOW_REDIRECTS, url, "GET", (requrl, rc, ins, errs, headerfunc) -> {
-						if (rc == HttpURLConnection.HTTP_OK) {
-							//HTTP OK
-							return ins.get();
-						}
-						IOException ee = null;
-						String errcontent = "";
-						try {
-							errcontent = StreamUtils.readStreamStringFully(errs.get());
-						} catch (IOException e) {
-							ee = e;
-						}
-						StringBuilder sb = new StringBuilder();
-						sb.append("Failed to download external dependency: ");
-						sb.append(uri);
-						sb.append(" from ");
-						sb.append(url);
-						sb.append(" Response code: ");
-						sb.append(rc);
-						if (!errcontent.isEmpty()) {
-							sb.append(" Response content: ");
-							sb.append(errcontent);
-						}
-						IOException exc = new IOException(sb.toString());
-						IOUtils.addExc(exc, ee);
-						throw exc;
-					});
+			int requestflags = (offline ? FLAG_REQUEST_OFFLINE : 0) | FLAG_REQUEST_NO_DISCONNECT_ON_200
+					| FLAG_REQUEST_FOLLOW_REDIRECTS;
+			return requestClient.makeServerRequest(requestflags, url, "GET", (requrl, rc, ins, errs, headerfunc) -> {
+				if (rc == HttpURLConnection.HTTP_OK) {
+					//HTTP OK
+					return ins.get();
+				}
+				IOException ee = null;
+				String errcontent = "";
+				try {
+					errcontent = StreamUtils.readStreamStringFully(errs.get());
+				} catch (IOException e) {
+					ee = e;
+				}
+				StringBuilder sb = new StringBuilder();
+				sb.append("Failed to download external dependency: ");
+				sb.append(uri);
+				sb.append(" from ");
+				sb.append(url);
+				sb.append(" Response code: ");
+				sb.append(rc);
+				if (!errcontent.isEmpty()) {
+					sb.append(" Response content: ");
+					sb.append(errcontent);
+				}
+				IOException exc = new IOException(sb.toString());
+				IOUtils.addExc(exc, ee);
+				throw exc;
+			});
 		}
 
 		@Override
@@ -1938,6 +3497,25 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 					.getBytes(StandardCharsets.UTF_8));
 		}
 
+		@Override
+		public String getBundleIndexIdentity() {
+			try {
+				return packageBundlesIndexManager.getRootIndexIdentity(new IndexOperationOptions(
+						this.uncacheRequestsIndexFlag | (offline ? IndexManager.FLAG_OFFLINE : 0)));
+			} catch (IOException e) {
+				return null;
+			}
+		}
+
+		@Override
+		public byte[] getKnownBundleHash(BundleIdentifier bundleid) {
+			LoadedBundleState state = loadedBundles.get(bundleid);
+			if (state == null) {
+				return null;
+			}
+			return state.bundle.getSharedHashIfComputed();
+		}
+
 		@Override
 		public NestRepositoryBundle lookupTaskBundle(TaskName taskname) throws TaskNotFoundException, IOException {
 			NavigableSet<BundleIdentifier> bundlesfortask = getBundlesForTaskName(taskname,
@@ -1959,7 +3537,7 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 			Objects.requireNonNull(bundleid, "bundle identifier");
 			String packagename = bundleid.getName();
 			try {
-				NavigableMap<String, NavigableSet<BundleIdentifier>> packages = packageBundlesIndexManager
+				Map<String, NavigableSet<BundleIdentifier>> packages = packageBundlesIndexManager
 						.getIndexForName(
 								new IndexOperationOptions(
 										this.uncacheRequestsIndexFlag | (offline ? IndexManager.FLAG_OFFLINE : 0)),
@@ -1995,7 +3573,7 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 			}
 
 			try {
-				NavigableMap<String, NavigableSet<BundleIdentifier>> packages = packageBundlesIndexManager
+				Map<String, NavigableSet<BundleIdentifier>> packages = packageBundlesIndexManager
 						.getIndexForName(
 								new IndexOperationOptions(
 										this.uncacheRequestsIndexFlag | (offline ? IndexManager.FLAG_OFFLINE : 0)),
@@ -2070,10 +3648,11 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 						}
 					}
 					//download the bundle
-					DownloadedBundle downloadres = downloadBundle(bundleid, bundlejarpath, offline);
+					DownloadedBundle downloadres = downloadBundle(bundleid, bundlejarpath,
+							signatureVerificationConfiguration, offline);
 					try {
-						got = new LoadedBundleState(bundleid, downloadres.signature, downloadres.bundle,
-								signatureVerificationConfiguration, offline);
+						got = new LoadedBundleState(bundleid, downloadres, signatureVerificationConfiguration,
+								offline);
 					} catch (IOException e) {
 						throw new BundleLoadingFailedException(
 								"Failed to load bundle: " + bundleid + " from storage: " + bundlejarpath, e);
@@ -2119,7 +3698,7 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 						this.uncacheRequestsIndexFlag | IndexManager.FLAG_MISSING_INDEX_ACCEPTABLE
 								| IndexManager.FLAG_OFFLINE,
 						this::startTaskIndexAsyncDownload);
-				NavigableMap<String, NavigableSet<BundleIdentifier>> taskbundles = tasksIndexManager
+				Map<String, NavigableSet<BundleIdentifier>> taskbundles = tasksIndexManager
 						.getIndexForName(opoptions, "");
 				if (!ObjectUtils.isNullOrEmpty(taskbundles)) {
 					NavigableSet<String> qualifierbuffer = new TreeSet<>();
@@ -2153,7 +3732,7 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 						this.uncacheRequestsIndexFlag | IndexManager.FLAG_MISSING_INDEX_ACCEPTABLE
 								| IndexManager.FLAG_OFFLINE,
 						this::startBundleIndexAsyncDownload);
-				NavigableMap<String, NavigableSet<BundleIdentifier>> bundlepackages = packageBundlesIndexManager
+				Map<String, NavigableSet<BundleIdentifier>> bundlepackages = packageBundlesIndexManager
 						.getIndexForName(opoptions, "");
 				if (!ObjectUtils.isNullOrEmpty(bundlepackages)) {
 					bundlepackages.values().forEach(result::addAll);
@@ -2216,8 +3795,9 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 			};
 			if (TestFlag.ENABLED) {
 				runnable.run();
-			} else {
-				ThreadUtils.startDaemonThread("Bundle downloader", runnable);
+			} else if (!repository.executeIOAsync(runnable)) {
+				//too many pending downloads, allow it to be retried later
+				informationProviderAsyncDownloadedBundles.remove(chosenbundle);
 			}
 		}
 
@@ -2245,8 +3825,9 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 			};
 			if (TestFlag.ENABLED) {
 				runnable.run();
-			} else {
-				ThreadUtils.startDaemonThread("Task index downloader", runnable);
+			} else if (!repository.executeIOAsync(runnable)) {
+				//too many pending downloads, allow it to be retried later
+				taskInformationProviderAsyncDownloadedIndexes.remove(additionalurl);
 			}
 		}
 
@@ -2275,8 +3856,9 @@ public class ServerBundleStorage extends AbstractBundleStorage {
 			};
 			if (TestFlag.ENABLED) {
 				runnable.run();
-			} else {
-				ThreadUtils.startDaemonThread("Bundle index downloader", runnable);
+			} else if (!repository.executeIOAsync(runnable)) {
+				//too many pending downloads, allow it to be retried later
+				bundleInformationProviderAsyncDownloadedIndexes.remove(additionalurl);
 			}
 		}
 
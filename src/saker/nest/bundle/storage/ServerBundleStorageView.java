@@ -66,7 +66,7 @@ public interface ServerBundleStorageView extends BundleStorageView {
 	 * <pre>
 	 * &lt;{@link RepositoryBuildEnvironment#getIdentifier() repo-id}&gt;.&lt;{@link NestBundleStorageConfiguration#PARAMETER_NEST_REPOSITORY_STORAGE_CONFIGURATION storage-name}&gt;.&lt;param&gt;
 	 * </pre>
-	 *
+	 * 
 	 * In some case the {@linkplain #PARAMETER_SECONDARY_URL secondary URL} can take precedence when issuing requests
 	 * for load balancing purposes.
 	 * <p>
@@ -153,6 +153,66 @@ public interface ServerBundleStorageView extends BundleStorageView {
 	 * @since saker.nest 0.8.2
 	 */
 	public static final String PARAMETER_REQUESTS_UNCACHE = "requests.uncache";
+	/**
+	 * Specifies the maximum number of concurrent connections that the storage opens to a given host.
+	 * <p>
+	 * The parameter must be prefixed by the repository identifier and storage name in the following format:
+	 * 
+	 * <pre>
+	 * &lt;{@link RepositoryBuildEnvironment#getIdentifier() repo-id}&gt;.&lt;{@link NestBundleStorageConfiguration#PARAMETER_NEST_REPOSITORY_STORAGE_CONFIGURATION storage-name}&gt;.&lt;param&gt;
+	 * </pre>
+	 * 
+	 * The storage keeps the connections to the servers alive after the requests are finished, so subsequent requests
+	 * can reuse them without establishing new connections. The number of connections to a single host is limited by
+	 * the value of this parameter. If more requests are issued concurrently, they will wait for a previous request to
+	 * finish.
+	 * <p>
+	 * The value of the parameter must be a positive integer. The default value is
+	 * <code>{@value #DEFAULT_REQUESTS_MAX_CONNECTIONS}</code>.
+	 * <p>
+	 * The connection limit is part of the storage configuration. Build configurations that use different limits for
+	 * the same server will load the storage separately, and each storage limits its own connections.
+	 * 
+	 * @since saker.nest 0.8.10
+	 */
+	public static final String PARAMETER_REQUESTS_MAX_CONNECTIONS = "requests.connections.max";
+	/**
+	 * The default value of the {@link #PARAMETER_REQUESTS_MAX_CONNECTIONS} parameter.
+	 * 
+	 * @since saker.nest 0.8.10
+	 */
+	public static final int DEFAULT_REQUESTS_MAX_CONNECTIONS = 5;
+	/**
+	 * Specifies the duration in seconds for which an expired index file is still used while it is being refreshed in
+	 * the background.
+	 * <p>
+	 * The parameter must be prefixed by the repository identifier and storage name in the following format:
+	 * 
+	 * <pre>
+	 * &lt;{@link RepositoryBuildEnvironment#getIdentifier() repo-id}&gt;.&lt;{@link NestBundleStorageConfiguration#PARAMETER_NEST_REPOSITORY_STORAGE_CONFIGURATION storage-name}&gt;.&lt;param&gt;
+	 * </pre>
+	 * 
+	 * The storage caches the index files that are downloaded from the server, and considers them to be expired after a
+	 * given time. If an expired index file is used within the duration specified by this parameter after its
+	 * expiration, then it is used right away, and a refresh of the index is started in the background. If the index is
+	 * used after the grace period, then the caller waits for the index file to be downloaded.
+	 * <p>
+	 * The value of the parameter must be a non-negative integer. Specifying 0 disables the background refreshing. The
+	 * default value is <code>{@value #DEFAULT_INDEX_STALE_GRACE_PERIOD_SECONDS}</code>, therefore the background
+	 * refreshing is disabled by default.
+	 * <p>
+	 * The grace period is part of the storage configuration. Build configurations that use different grace periods for
+	 * the same server will load the storage separately.
+	 * 
+	 * @since saker.nest 0.8.10
+	 */
+	public static final String PARAMETER_INDEX_STALE_GRACE_PERIOD = "index.stale.grace";
+	/**
+	 * The default value of the {@link #PARAMETER_INDEX_STALE_GRACE_PERIOD} parameter.
+	 * 
+	 * @since saker.nest 0.8.10
+	 */
+	public static final long DEFAULT_INDEX_STALE_GRACE_PERIOD_SECONDS = 0;
 	/**
 	 * Specifies if the bundle signature verification should be disabled by the storage.
 	 * <p>
@@ -222,4 +282,66 @@ public interface ServerBundleStorageView extends BundleStorageView {
 	 * @see #PARAMETER_OFFLINE
 	 */
 	public boolean isOffline();
+
+	/**
+	 * Gets the statistics of the network requests that the storage issued.
+	 * <p>
+	 * The statistics are collected for the underlying storage, and contain the requests issued by all storage views
+	 * that use the same server. They can be used to diagnose the network performance of the storage.
+	 * 
+	 * @return A snapshot of the current request statistics.
+	 * @since saker.nest 0.8.10
+	 */
+	public RequestStatistics getRequestStatistics();
+
+	/**
+	 * Contains statistics about the network requests issued by a server storage.
+	 * <p>
+	 * The interface represents a data container.
+	 * <p>
+	 * This interface is not to be implemented by clients.
+	 * 
+	 * @see ServerBundleStorageView#getRequestStatistics()
+	 * @since saker.nest 0.8.10
+	 */
+	public interface RequestStatistics {
+		/**
+		 * Gets the number of requests that the storage issued.
+		 * 
+		 * @return The request count.
+		 */
+		public long getRequestCount();
+
+		/**
+		 * Gets the number of times a connection was kept alive after its request finished so it can be reused by
+		 * subsequent requests.
+		 * 
+		 * @return The number of connections released for reuse.
+		 */
+		public long getKeepAliveReleaseCount();
+
+		/**
+		 * Gets the number of times a connection was closed after its request instead of keeping it alive.
+		 * 
+		 * @return The number of disconnected connections.
+		 */
+		public long getDisconnectCount();
+
+		/**
+		 * Gets the number of requests that had to wait for a connection, because the
+		 * {@linkplain ServerBundleStorageView#PARAMETER_REQUESTS_MAX_CONNECTIONS maximum number of connections} to the
+		 * host were in use.
+		 * 
+		 * @return The number of waiting requests.
+		 */
+		public long getConnectionWaitCount();
+
+		/**
+		 * Gets the total time in nanoseconds that the requests spent waiting for a connection.
+		 * 
+		 * @return The wait time in nanoseconds.
+		 * @see #getConnectionWaitCount()
+		 */
+		public long getConnectionWaitNanos();
+	}
 }
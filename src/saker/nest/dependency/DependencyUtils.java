@@ -17,6 +17,8 @@ package saker.nest.dependency;
 
 import java.security.SecureRandom;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -32,6 +34,11 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.BiFunction;
 import java.util.function.Supplier;
 import java.util.regex.Pattern;
@@ -255,6 +262,70 @@ public class DependencyUtils {
 			BiFunction<? super BundleIdentifier, ? super BC, ? extends Iterable<? extends Entry<? extends BK, ? extends BC>>> bundleslookupfunction,
 			BiFunction<? super BK, ? super BC, ? extends BundleDependencyInformation> bundledependencieslookupfunction,
 			DependencyResolutionLogger<? super BC> logger) throws NullPointerException, IllegalArgumentException {
+		return satisfyDependencyDomain(basebundle, basebundlecontext, basedependencyinfo, bundleslookupfunction,
+				bundledependencieslookupfunction, logger, null);
+	}
+
+	/**
+	 * Executes the dependency resolution with the given arguments, and resolves the independent dependencies of the
+	 * root bundle concurrently.
+	 * <p>
+	 * This method works the same way as
+	 * {@link #satisfyDependencyDomain(BundleIdentifierHolder, Object, BundleDependencyInformation, BiFunction, BiFunction, DependencyResolutionLogger)},
+	 * but if an executor is specified, the direct dependencies of the root bundle are first resolved separately on
+	 * the executor. If the resolutions of the direct dependencies didn't look up any common bundles, then they
+	 * couldn't have affected each other, and their results are merged to produce the result of the resolution. If
+	 * there is any overlap between them, the dependencies are resolved sequentially. As the lookup functions are called
+	 * concurrently, the lookups that require I/O can overlap each other.
+	 * <p>
+	 * The result of the dependency resolution is the same as if the method was called without an executor.
+	 * <p>
+	 * The calling thread also takes part in the concurrent resolution. Any resolution that hasn't been started by the
+	 * executor by the time the calling thread gets to it is executed by the calling thread. Therefore the method
+	 * doesn't deadlock even if the executor is saturated, or doesn't execute the submitted tasks at all.
+	 * <p>
+	 * The lookup functions may be called concurrently by multiple threads, and they may be called for bundles that
+	 * the sequential resolution wouldn't look up. The concurrent resolution is only attempted if no logger is
+	 * specified, and the root bundle has no {@linkplain BundleInformation#DEPENDENCY_META_PRIVATE private}
+	 * dependencies.
+	 * 
+	 * @param <BK>
+	 *            The bundle key type. The type should be comparable using {@linkplain Object#equals(Object) equality}.
+	 * @param <BC>
+	 *            The bundle context type. The type should be comparable using {@linkplain Object#equals(Object)
+	 *            equality}.
+	 * @param basebundle
+	 *            The root bundle to resolve the dependencies of.
+	 * @param basebundlecontext
+	 *            The bundle context for the root bundle.
+	 * @param basedependencyinfo
+	 *            The dependency information of the root bundle that should be resolved.
+	 * @param bundleslookupfunction
+	 *            The function that looks up the bundles for a given bundle identifier.
+	 * @param bundledependencieslookupfunction
+	 *            The function that looks up the dependency information for a bundle.
+	 * @param logger
+	 *            The dependency resolution logger or <code>null</code> to not use one.
+	 * @param executor
+	 *            The executor to resolve the independent dependencies on or <code>null</code> to resolve them
+	 *            sequentially.
+	 * @return The result of the dependency resolution or <code>null</code> if the resolution failed.
+	 * @throws NullPointerException
+	 *             If the base bundle, base dependency information, bundle lookup function, or bundle dependencies
+	 *             lookup function arguments are <code>null</code>.
+	 * @throws IllegalArgumentException
+	 *             If the base bundle identifier doesn't have a {@linkplain BundleIdentifier#getVersionQualifier()
+	 *             version qualifier}.
+	 * @see #satisfyDependencyDomain(BundleIdentifierHolder, Object, BundleDependencyInformation, BiFunction,
+	 *          BiFunction, DependencyResolutionLogger)
+	 * @since saker.nest 0.8.10
+	 */
+	public static <BK extends BundleIdentifierHolder, BC> DependencyDomainResolutionResult<BK, BC> satisfyDependencyDomain(
+			BK basebundle, BC basebundlecontext, BundleDependencyInformation basedependencyinfo,
+			BiFunction<? super BundleIdentifier, ? super BC, ? extends Iterable<? extends Entry<? extends BK, ? extends BC>>> bundleslookupfunction,
+			BiFunction<? super BK, ? super BC, ? extends BundleDependencyInformation> bundledependencieslookupfunction,
+			DependencyResolutionLogger<? super BC> logger, Executor executor)
+			throws NullPointerException, IllegalArgumentException {
 		Objects.requireNonNull(basebundle, "base bundle");
 		Objects.requireNonNull(basedependencyinfo, "base dependency information");
 		Objects.requireNonNull(bundleslookupfunction, "bundles lookup function");
@@ -263,29 +334,46 @@ public class DependencyUtils {
 			throw new IllegalArgumentException("Base bundle identifier has no version: " + basebundle);
 		}
 
-		Map<Entry<? extends BundleIdentifier, ? extends BC>, Iterable<? extends Entry<? extends BK, ? extends BC>>> bundleslookupcache = new HashMap<>();
-		Map<BK, Supplier<BundleDependencyInformation>> dependencieslookupcache = new HashMap<>();
-		Map<BK, Supplier<BundleDependencyInformation>> dependencieswithoutspecialslookupcache = new HashMap<>();
-		Map<BK, BundleDependencyInformation> optionalhavingbundles = new HashMap<>();
+		int basespeciality = querySpecialDependencyFlags(basedependencyinfo);
+		if (logger != null || ((basespeciality & SPECIAL_PRIVATE) == SPECIAL_PRIVATE)) {
+			executor = null;
+		}
+
+		Map<Entry<? extends BundleIdentifier, ? extends BC>, Supplier<LookedUpBundles<BK, BC>>> bundleslookupcache;
+		Map<BK, Supplier<BundleDependencyInformation>> dependencieslookupcache;
+		Map<BK, Supplier<BundleDependencyInformation>> dependencieswithoutspecialslookupcache;
+		Map<BK, BundleDependencyInformation> optionalhavingbundles;
+		if (executor == null) {
+			bundleslookupcache = new HashMap<>();
+			dependencieslookupcache = new HashMap<>();
+			dependencieswithoutspecialslookupcache = new HashMap<>();
+			optionalhavingbundles = new HashMap<>();
+		} else {
+			bundleslookupcache = new ConcurrentHashMap<>();
+			dependencieslookupcache = new ConcurrentHashMap<>();
+			dependencieswithoutspecialslookupcache = new ConcurrentHashMap<>();
+			optionalhavingbundles = new ConcurrentHashMap<>();
+		}
 
 		Entry<? extends BK, ? extends BC> basebundleentry = ImmutableUtils.makeImmutableMapEntry(basebundle,
 				basebundlecontext);
-		int basespeciality = querySpecialDependencyFlags(basedependencyinfo);
 		if (((basespeciality & SPECIAL_OPTIONAL) == SPECIAL_OPTIONAL)) {
 			optionalhavingbundles.put(basebundle, basedependencyinfo);
 		}
 
-		BiFunction<? super BundleIdentifier, ? super BC, ? extends Iterable<? extends Entry<? extends BK, ? extends BC>>> cachingbundleslookupfunction = (
+		BiFunction<? super BundleIdentifier, ? super BC, LookedUpBundles<BK, BC>> cachingbundleslookupfunction = (
 				bi, bc) -> {
 			Entry<BundleIdentifier, BC> lookupentry = ImmutableUtils.makeImmutableMapEntry(bi, bc);
 			return bundleslookupcache.computeIfAbsent(lookupentry, kentry -> {
-				Iterable<? extends Entry<? extends BK, ? extends BC>> lookedup = bundleslookupfunction
-						.apply(kentry.getKey(), kentry.getValue());
-				if (lookedup == null) {
-					return Collections.emptyList();
-				}
-				return lookedup;
-			});
+				return LazySupplier.of(() -> {
+					Iterable<? extends Entry<? extends BK, ? extends BC>> lookedup = bundleslookupfunction
+							.apply(kentry.getKey(), kentry.getValue());
+					if (lookedup == null) {
+						return new LookedUpBundles<>(Collections.emptyList());
+					}
+					return new LookedUpBundles<>(lookedup);
+				});
+			}).get();
 		};
 
 		BundleDependencyInformation basedepinfowithoutspecials = withoutOptionalDependencies(basedependencyinfo);
@@ -324,12 +412,31 @@ public class DependencyUtils {
 		};
 
 		Map<PrivateScopeDependencyRoot<? extends BK, ? extends BC>, Optional<DomainResult<BK, BC>>> privatescopedomains = new HashMap<>();
-		DomainResult<BK, BC> basedomain = DomainResult.newDomain(basebundleentry);
-		{
+		//the conflicts are not used with a logger, as the skipped resolutions would be missing from the log
+		boolean useconflicts = logger == null
+				&& (!TestFlag.ENABLED || TestFlag.metric().isDependencyResolutionConflictCacheEnabled());
+		ResolutionConflicts<BK, BC> conflicts = useconflicts ? new ResolutionConflicts<>() : null;
+		DomainResult<BK, BC> basedomain;
+		Optional<DomainResult<BK, BC>> independentdomain = null;
+		if (executor != null) {
+			independentdomain = satisfyIndependentDependencies(executor, basebundleentry, basedepinfowithoutspecials,
+					cachingbundleslookupfunction, cachingbundledependencieswithoutspecialslookupfunction,
+					privatescopedomains, useconflicts);
+		}
+		if (independentdomain != null) {
+			basedomain = independentdomain.orElse(null);
+			if (basedomain == null) {
+				return null;
+			}
+			if (conflicts != null && !privatescopedomains.isEmpty()) {
+				conflicts.disable();
+			}
+		} else {
+			basedomain = DomainResult.newDomain(basebundleentry);
 			BundleResolutionState<BK, BC> bundleresstate = new BundleResolutionState<>(basedepinfowithoutspecials,
 					logger, basebundleentry);
 			satisfyBundleVersion(cachingbundleslookupfunction, cachingbundledependencieswithoutspecialslookupfunction,
-					basedomain, logger, bundleresstate, privatescopedomains);
+					basedomain, logger, bundleresstate, privatescopedomains, conflicts);
 			if (bundleresstate.isBackTracking()) {
 				return null;
 			}
@@ -363,7 +470,7 @@ public class DependencyUtils {
 							bundledomain.bundleEntry);
 					satisfyBundleVersion(cachingbundleslookupfunction,
 							cachingbundledependencieswithoutspecialslookupfunction, bundledomain, logger,
-							nbundleresstate, privatescopedomains);
+							nbundleresstate, privatescopedomains, conflicts);
 					if (!nbundleresstate.isBackTracking()) {
 						hadchange = true;
 					}
@@ -894,39 +1001,38 @@ public class DependencyUtils {
 	}
 
 	private static <BK extends BundleIdentifierHolder, BC> boolean satisfy(DependencyResolutionState<BK, BC> deprs,
-			BiFunction<? super BundleIdentifier, ? super BC, ? extends Iterable<? extends Entry<? extends BK, ? extends BC>>> bundleslookupfunction,
+			BiFunction<? super BundleIdentifier, ? super BC, LookedUpBundles<BK, BC>> bundleslookupfunction,
 			BiFunction<? super BK, ? super BC, ? extends BundleDependencyInformation> bundledependencieslookupfunction,
 			DomainResult<BK, BC> domain, DependencyResolutionLogger<? super BC> logger,
 			Map<PrivateScopeDependencyRoot<? extends BK, ? extends BC>, Optional<DomainResult<BK, BC>>> privatescopedomains,
-			boolean privatescope, BundleDependencyList deplist) {
+			ResolutionConflicts<BK, BC> conflicts, boolean privatescope, BundleDependencyList deplist) {
 		if (logger != null) {
 			logger.enter(deprs.versionlessBundleIdentifier, deprs.referringBundleContext);
 		}
 
 		BundleResolutionState<BK, BC> bundleresolutionstate;
 		while ((bundleresolutionstate = deprs.nextBundle()) != null) {
-			Entry<BundleIdentifier, ? extends BC> versionlessbundleresstatebundleentry = versionlessBundleEntry(
-					bundleresolutionstate.bundleEntry);
+			Entry<BundleIdentifier, ? extends BC> versionlessentry = bundleresolutionstate.versionlessBundleEntry;
 
-			domain.unpinBacktrack(versionlessbundleresstatebundleentry);
+			domain.unpinBacktrack(versionlessentry);
 			DomainResult<BK, BC> presentbundledomain;
 			if (privatescope) {
-				presentbundledomain = domain.getPrivatePinned(versionlessbundleresstatebundleentry);
+				presentbundledomain = domain.getPrivatePinned(versionlessentry);
 			} else {
-				presentbundledomain = domain.getPinned(versionlessbundleresstatebundleentry);
+				presentbundledomain = domain.getPinned(versionlessentry);
+				if (conflicts != null) {
+					conflicts.lookedUp(versionlessentry);
+				}
 			}
 			if (presentbundledomain != null) {
 				Entry<? extends BK, ? extends BC> presentbundle = presentbundledomain.bundleEntry;
-				String version = presentbundle.getKey().getBundleIdentifier().getVersionNumber();
-				for (BundleDependency bdep : deplist.getDependencies()) {
-					VersionRange range = bdep.getRange();
-					if (!range.includes(version)) {
-						if (logger != null) {
-							logger.dependencyVersionRangeMismatchForPinnedBundle(bdep,
-									presentbundle.getKey().getBundleIdentifier(), presentbundle.getValue());
-						}
-						return false;
+				BundleDependency mismatch = deprs.findRangeMismatch(presentbundle);
+				if (mismatch != null) {
+					if (logger != null) {
+						logger.dependencyVersionRangeMismatchForPinnedBundle(mismatch,
+								presentbundle.getKey().getBundleIdentifier(), presentbundle.getValue());
 					}
+					return false;
 				}
 				domain.pinDirectDependency(presentbundledomain);
 				if (logger != null) {
@@ -959,16 +1065,30 @@ public class DependencyUtils {
 						return true;
 					}
 				}
-				usedomain = DomainResult.newPrivateSubDomain(domain, bundleresolutionstate.bundleEntry);
+				usedomain = DomainResult.newPrivateSubDomain(domain, bundleresolutionstate);
 				privatescopedomains.put(privscope, Optional.of(usedomain));
 
 			} else {
-				usedomain = DomainResult.newSubDomain(domain, bundleresolutionstate.bundleEntry);
+				usedomain = DomainResult.newSubDomain(domain, bundleresolutionstate);
 			}
 			domain.pinDirectDependency(usedomain);
 
+			//only the new resolutions of bundle versions are recorded, as the continued ones depend on their
+			//previous state as well
+			boolean recordconflict = conflicts != null && !privatescope && !bundleresolutionstate.isBackTracking();
+			if (recordconflict) {
+				if (conflicts.isConflicting(usedomain)) {
+					//the bundle version failed to resolve previously with the same bundles pinned
+					domain.unpinDirectDependency(usedomain);
+					continue;
+				}
+				conflicts.startRecording();
+			}
 			satisfyBundleVersion(bundleslookupfunction, bundledependencieslookupfunction, usedomain, logger,
-					bundleresolutionstate, privatescopedomains);
+					bundleresolutionstate, privatescopedomains, conflicts);
+			if (recordconflict) {
+				conflicts.endRecording(usedomain, bundleresolutionstate.isBackTracking());
+			}
 			//satisfied the bundle, if we're no longer backtracking
 			if (!bundleresolutionstate.isBackTracking()) {
 				if (logger != null) {
@@ -989,11 +1109,12 @@ public class DependencyUtils {
 	}
 
 	private static <BK extends BundleIdentifierHolder, BC> void satisfyBundleVersion(
-			BiFunction<? super BundleIdentifier, ? super BC, ? extends Iterable<? extends Entry<? extends BK, ? extends BC>>> bundleslookupfunction,
+			BiFunction<? super BundleIdentifier, ? super BC, LookedUpBundles<BK, BC>> bundleslookupfunction,
 			BiFunction<? super BK, ? super BC, ? extends BundleDependencyInformation> bundledependencieslookupfunction,
 			DomainResult<BK, BC> domain, DependencyResolutionLogger<? super BC> logger,
 			BundleResolutionState<BK, BC> bundleresolutionstate,
-			Map<PrivateScopeDependencyRoot<? extends BK, ? extends BC>, Optional<DomainResult<BK, BC>>> privatescopedomains) {
+			Map<PrivateScopeDependencyRoot<? extends BK, ? extends BC>, Optional<DomainResult<BK, BC>>> privatescopedomains,
+			ResolutionConflicts<BK, BC> conflicts) {
 		if (logger != null) {
 			logger.enterVersion(bundleresolutionstate.getBundleKey().getBundleIdentifier(),
 					bundleresolutionstate.getBundleContext());
@@ -1004,9 +1125,12 @@ public class DependencyUtils {
 			BundleDependencyList deplist = bundleresolutionstate.dependencyInfo
 					.getDependencyList(deprs.versionlessBundleIdentifier);
 			boolean privatescope = ConfiguredRepositoryStorage.isAllPrivateDependencies(deplist);
+			if (privatescope && conflicts != null) {
+				conflicts.disable();
+			}
 
 			boolean satisfied = satisfy(deprs, bundleslookupfunction, bundledependencieslookupfunction, domain, logger,
-					privatescopedomains, privatescope, deplist);
+					privatescopedomains, conflicts, privatescope, deplist);
 			if (!satisfied) {
 				bundleresolutionstate.startBackTrack();
 			} else {
@@ -1019,6 +1143,100 @@ public class DependencyUtils {
 		}
 	}
 
+	/**
+	 * Resolves each direct dependency of the root bundle separately on the argument executor.
+	 * 
+	 * @return <code>null</code> if the dependencies needs to be resolved sequentially, an empty optional if the
+	 *             dependencies cannot be satisfied, or the domain of the root bundle.
+	 */
+	private static <BK extends BundleIdentifierHolder, BC> Optional<DomainResult<BK, BC>> satisfyIndependentDependencies(
+			Executor executor, Entry<? extends BK, ? extends BC> basebundleentry,
+			BundleDependencyInformation basedepinfo,
+			BiFunction<? super BundleIdentifier, ? super BC, LookedUpBundles<BK, BC>> bundleslookupfunction,
+			BiFunction<? super BK, ? super BC, ? extends BundleDependencyInformation> bundledependencieslookupfunction,
+			Map<PrivateScopeDependencyRoot<? extends BK, ? extends BC>, Optional<DomainResult<BK, BC>>> privatescopedomains,
+			boolean useconflicts) {
+		List<IndependentDependencyResolutionTask<BK, BC>> tasks = new ArrayList<>();
+		for (Entry<BundleIdentifier, ? extends BundleDependencyList> entry : basedepinfo.getDependencies()
+				.entrySet()) {
+			if (entry.getValue().isEmpty()) {
+				continue;
+			}
+			BundleDependencyInformation depinfo = BundleDependencyInformation
+					.create(Collections.singletonMap(entry.getKey(), entry.getValue()));
+			tasks.add(new IndependentDependencyResolutionTask<>(basebundleentry, depinfo, bundleslookupfunction,
+					bundledependencieslookupfunction, useconflicts));
+		}
+		if (tasks.size() < 2) {
+			//nothing to resolve concurrently
+			return null;
+		}
+		List<FutureTask<Void>> futures = new ArrayList<>(tasks.size());
+		for (IndependentDependencyResolutionTask<BK, BC> task : tasks) {
+			FutureTask<Void> future = new FutureTask<>(task, null);
+			futures.add(future);
+			try {
+				executor.execute(future);
+			} catch (RejectedExecutionException e) {
+				//the task is run by the calling thread
+			}
+		}
+		for (FutureTask<Void> future : futures) {
+			//run the task on this thread if it hasn't been started yet, no-op otherwise
+			future.run();
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			} catch (ExecutionException e) {
+				return null;
+			}
+		}
+
+		Set<BundleIdentifier> lookedupbundles = new HashSet<>();
+		lookedupbundles.add(basebundleentry.getKey().getBundleIdentifier().withoutMetaQualifiers());
+		for (IndependentDependencyResolutionTask<BK, BC> task : tasks) {
+			if (task.exception != null) {
+				//let the sequential resolution handle the exception if it occurs
+				return null;
+			}
+			for (BundleIdentifier bundleid : task.lookedupBundles) {
+				if (!lookedupbundles.add(bundleid)) {
+					//the resolutions may affect each other
+					return null;
+				}
+			}
+		}
+		for (IndependentDependencyResolutionTask<BK, BC> task : tasks) {
+			if (!task.satisfied) {
+				//as the resolution of the dependency doesn't depend on others, the sequential resolution fails too
+				return Optional.empty();
+			}
+		}
+		DomainResult<BK, BC> basedomain = DomainResult.newDomain(basebundleentry);
+		for (IndependentDependencyResolutionTask<BK, BC> task : tasks) {
+			for (DomainResult<BK, BC> depdomain : task.domain.directDependencies.values()) {
+				depdomain.parent = basedomain;
+				basedomain.pinDirectDependency(depdomain);
+			}
+			privatescopedomains.putAll(task.privateScopeDomains);
+		}
+		return Optional.of(basedomain);
+	}
+
+	private static BundleDependency getRangeMismatch(BundleDependencyList deplist,
+			Entry<? extends BundleIdentifierHolder, ?> bundle) {
+		String version = bundle.getKey().getBundleIdentifier().getVersionNumber();
+		for (BundleDependency bdep : deplist.getDependencies()) {
+			VersionRange range = bdep.getRange();
+			if (!range.includes(version)) {
+				return bdep;
+			}
+		}
+		return null;
+	}
+
 	private static <BK extends BundleIdentifierHolder, BC> Entry<BundleIdentifier, BC> versionlessBundleEntry(
 			Entry<? extends BK, ? extends BC> entry) {
 		return ImmutableUtils.makeImmutableMapEntry(entry.getKey().getBundleIdentifier().withoutMetaQualifiers(),
@@ -1090,10 +1308,12 @@ public class DependencyUtils {
 	}
 
 	private static final class DomainResult<BK extends BundleIdentifierHolder, BC> {
-		protected final DomainResult<BK, BC> parent;
+		//not final, as the independently resolved domains are moved to the actual root domain
+		protected DomainResult<BK, BC> parent;
 		protected final boolean privateParent;
 
 		protected final Entry<? extends BK, ? extends BC> bundleEntry;
+		protected final Entry<BundleIdentifier, ? extends BC> versionlessBundleEntry;
 		protected final Map<Entry<? extends BK, ? extends BC>, DomainResult<BK, BC>> directDependencies;
 		protected final Map<Entry<? extends BundleIdentifier, ? extends BC>, Entry<? extends BK, ? extends BC>> dependencyVersionlessLookup = new HashMap<>();
 
@@ -1122,13 +1342,15 @@ public class DependencyUtils {
 		}
 
 		public static <BK extends BundleIdentifierHolder, BC> DomainResult<BK, BC> newPrivateSubDomain(
-				DomainResult<BK, BC> parent, Entry<? extends BK, ? extends BC> bundleEntry) {
-			return new DomainResult<>(parent, true, bundleEntry);
+				DomainResult<BK, BC> parent, BundleResolutionState<BK, BC> bundleresolutionstate) {
+			return new DomainResult<>(parent, true, bundleresolutionstate.bundleEntry,
+					bundleresolutionstate.versionlessBundleEntry);
 		}
 
 		public static <BK extends BundleIdentifierHolder, BC> DomainResult<BK, BC> newSubDomain(
-				DomainResult<BK, BC> parent, Entry<? extends BK, ? extends BC> bundleEntry) {
-			return new DomainResult<>(parent, false, bundleEntry);
+				DomainResult<BK, BC> parent, BundleResolutionState<BK, BC> bundleresolutionstate) {
+			return new DomainResult<>(parent, false, bundleresolutionstate.bundleEntry,
+					bundleresolutionstate.versionlessBundleEntry);
 		}
 
 		protected DomainResult<BK, BC> findPinned(Entry<? extends BundleIdentifier, ? extends BC> versionlessBundleId,
@@ -1136,7 +1358,7 @@ public class DependencyUtils {
 			if (!searched.add(this)) {
 				return null;
 			}
-			if (versionlessBundleEntry(bundleEntry).equals(versionlessBundleId)) {
+			if (versionlessBundleEntry.equals(versionlessBundleId)) {
 				return this;
 			}
 			Entry<? extends BK, ? extends BC> deppinned = dependencyVersionlessLookup.get(versionlessBundleId);
@@ -1174,8 +1396,7 @@ public class DependencyUtils {
 		}
 
 		public void pinDirectDependency(DomainResult<BK, BC> domain) {
-			Entry<? extends BundleIdentifier, ? extends BC> versionlessbundleid = versionlessBundleEntry(
-					domain.bundleEntry);
+			Entry<? extends BundleIdentifier, ? extends BC> versionlessbundleid = domain.versionlessBundleEntry;
 			DomainResult<BK, BC> prev = this.directDependencies.put(domain.bundleEntry, domain);
 			if (prev != null) {
 				if (prev == domain) {
@@ -1201,8 +1422,7 @@ public class DependencyUtils {
 		}
 
 		public void unpinDirectDependency(DomainResult<BK, BC> domain) {
-			Entry<? extends BundleIdentifier, ? extends BC> versionlessbundleid = versionlessBundleEntry(
-					domain.bundleEntry);
+			Entry<? extends BundleIdentifier, ? extends BC> versionlessbundleid = domain.versionlessBundleEntry;
 			boolean removed = this.dependencyVersionlessLookup.remove(versionlessbundleid, domain.bundleEntry);
 			if (!removed) {
 				throw new AssertionError("Failed to unpin: " + versionlessbundleid + " with " + domain + ". present: "
@@ -1217,16 +1437,19 @@ public class DependencyUtils {
 
 		private DomainResult(Entry<? extends BK, ? extends BC> bundleEntry) {
 			this.bundleEntry = bundleEntry;
+			this.versionlessBundleEntry = versionlessBundleEntry(bundleEntry);
 			this.directDependencies = new HashMap<>();
 			this.parent = null;
 			this.privateParent = false;
 		}
 
 		private DomainResult(DomainResult<BK, BC> parent, boolean privateParent,
-				Entry<? extends BK, ? extends BC> bundleEntry) {
+				Entry<? extends BK, ? extends BC> bundleEntry,
+				Entry<BundleIdentifier, ? extends BC> versionlessBundleEntry) {
 			this.parent = parent;
 			this.privateParent = privateParent;
 			this.bundleEntry = bundleEntry;
+			this.versionlessBundleEntry = versionlessBundleEntry;
 			this.directDependencies = new HashMap<>();
 		}
 
@@ -1258,17 +1481,19 @@ public class DependencyUtils {
 		protected boolean backTracking = false;
 		protected final DependencyResolutionLogger<? super BC> logger;
 		protected final Entry<? extends BK, ? extends BC> bundleEntry;
+		protected final Entry<BundleIdentifier, ? extends BC> versionlessBundleEntry;
 
 		public BundleResolutionState(BundleDependencyInformation dependencyInfo,
 				DependencyResolutionLogger<? super BC> logger, Entry<? extends BK, ? extends BC> bundleEntry) {
 			this.bundleEntry = bundleEntry;
+			this.versionlessBundleEntry = versionlessBundleEntry(bundleEntry);
 			this.dependencyInfo = dependencyInfo;
 			this.logger = logger;
 			this.depsIt = ImmutableUtils.makeImmutableList(dependencyInfo.getDependencies().entrySet()).listIterator();
 		}
 
 		public DependencyResolutionState<BK, BC> next(
-				BiFunction<? super BundleIdentifier, ? super BC, ? extends Iterable<? extends Entry<? extends BK, ? extends BC>>> bundleslookupfunction,
+				BiFunction<? super BundleIdentifier, ? super BC, LookedUpBundles<BK, BC>> bundleslookupfunction,
 				BiFunction<? super BK, ? super BC, ? extends BundleDependencyInformation> bundledependencieslookupfunction) {
 			if (backTracking) {
 				if (resolutionStateBacktrack.isEmpty()) {
@@ -1343,19 +1568,21 @@ public class DependencyUtils {
 		protected final BundleDependencyList dependencyList;
 
 		protected final DependencyResolutionLogger<? super BC> logger;
-		protected final List<? extends Entry<? extends BK, ? extends BC>> lookedupBundles;
+		protected final LookedUpBundles<BK, BC> lookedupBundles;
+		//the indexes of the looked up bundles that are included by all dependencies in the dependency list
+		protected BitSet candidates;
 		protected final BiFunction<? super BK, ? super BC, ? extends BundleDependencyInformation> bundleDependenciesLookupFunction;
 
 		private BundleResolutionState<BK, BC> storedState;
 
 		public DependencyResolutionState(BundleIdentifier versionlessBundleId, BC referringBundleContext,
 //				Entry<? extends BundleIdentifier, ? extends BC> bundleId,
-				Iterable<? extends Entry<? extends BK, ? extends BC>> lookedupbundles, BundleDependencyList deplist,
+				LookedUpBundles<BK, BC> lookedupbundles, BundleDependencyList deplist,
 				BiFunction<? super BK, ? super BC, ? extends BundleDependencyInformation> bundledependencieslookupfunction,
 				DependencyResolutionLogger<? super BC> logger) {
 			this.versionlessBundleIdentifier = versionlessBundleId;
 			this.referringBundleContext = referringBundleContext;
-			this.lookedupBundles = ImmutableUtils.makeImmutableList(lookedupbundles);
+			this.lookedupBundles = lookedupbundles;
 			this.dependencyList = deplist;
 			this.bundleDependenciesLookupFunction = bundledependencieslookupfunction;
 			this.logger = logger;
@@ -1369,19 +1596,15 @@ public class DependencyUtils {
 		}
 
 		private BundleResolutionState<BK, BC> moveToNext() {
-			outer:
 			while (this.bundleIt.hasNext()) {
+				boolean candidate = candidates.get(this.bundleIt.nextIndex());
 				Entry<? extends BK, ? extends BC> n = this.bundleIt.next();
-				String vnumber = n.getKey().getBundleIdentifier().getVersionNumber();
-				Set<? extends BundleDependency> dependencies = dependencyList.getDependencies();
-				for (BundleDependency bdep : dependencies) {
-					VersionRange range = bdep.getRange();
-					if (!range.includes(vnumber)) {
-						if (logger != null) {
-							logger.dependencyVersionRangeMismatch(bdep, n.getKey().getBundleIdentifier(), n.getValue());
-						}
-						continue outer;
+				if (!candidate) {
+					if (logger != null) {
+						logger.dependencyVersionRangeMismatch(getRangeMismatch(dependencyList, n),
+								n.getKey().getBundleIdentifier(), n.getValue());
 					}
+					continue;
 				}
 				BundleDependencyInformation deps = bundleDependenciesLookupFunction.apply(n.getKey(), n.getValue());
 				if (deps == null) {
@@ -1402,17 +1625,283 @@ public class DependencyUtils {
 				return storedstate;
 			}
 			if (this.bundleIt == null) {
-				this.bundleIt = this.lookedupBundles.listIterator();
+				this.bundleIt = this.lookedupBundles.bundles.listIterator();
+				this.candidates = this.lookedupBundles.getCandidates(dependencyList);
 			}
 			return moveToNext();
 		}
 
+		//should be called after nextBundle()
+		public BundleDependency findRangeMismatch(Entry<? extends BK, ? extends BC> bundle) {
+			int idx = lookedupBundles.indexOf(bundle);
+			if (idx >= 0 && candidates.get(idx)) {
+				return null;
+			}
+			//the bundle may not be looked up for this dependency if it was pinned with a different lookup
+			return getRangeMismatch(dependencyList, bundle);
+		}
+
 		@Override
 		public String toString() {
 			return getClass().getSimpleName() + "[" + versionlessBundleIdentifier + "]";
 		}
 	}
 
+	private static final class IndependentDependencyResolutionTask<BK extends BundleIdentifierHolder, BC>
+			implements Runnable {
+		protected final DomainResult<BK, BC> domain;
+		protected final BundleDependencyInformation dependencyInfo;
+		protected final Map<PrivateScopeDependencyRoot<? extends BK, ? extends BC>, Optional<DomainResult<BK, BC>>> privateScopeDomains = new HashMap<>();
+		//the versionless identifiers of the bundles that the resolution looked up
+		protected final Set<BundleIdentifier> lookedupBundles = new HashSet<>();
+		protected final BiFunction<? super BundleIdentifier, ? super BC, LookedUpBundles<BK, BC>> bundlesLookupFunction;
+		protected final BiFunction<? super BK, ? super BC, ? extends BundleDependencyInformation> bundleDependenciesLookupFunction;
+		protected final boolean useConflicts;
+
+		protected boolean satisfied;
+		protected Throwable exception;
+
+		public IndependentDependencyResolutionTask(Entry<? extends BK, ? extends BC> basebundleentry,
+				BundleDependencyInformation dependencyInfo,
+				BiFunction<? super BundleIdentifier, ? super BC, LookedUpBundles<BK, BC>> bundleslookupfunction,
+				BiFunction<? super BK, ? super BC, ? extends BundleDependencyInformation> bundledependencieslookupfunction,
+				boolean useConflicts) {
+			this.domain = DomainResult.newDomain(basebundleentry);
+			this.dependencyInfo = dependencyInfo;
+			this.bundlesLookupFunction = bundleslookupfunction;
+			this.bundleDependenciesLookupFunction = bundledependencieslookupfunction;
+			this.useConflicts = useConflicts;
+		}
+
+		@Override
+		public void run() {
+			BiFunction<? super BundleIdentifier, ? super BC, LookedUpBundles<BK, BC>> recordinglookupfunction = (bi,
+					bc) -> {
+				lookedupBundles.add(bi.withoutMetaQualifiers());
+				return bundlesLookupFunction.apply(bi, bc);
+			};
+			BundleResolutionState<BK, BC> bundleresstate = new BundleResolutionState<>(dependencyInfo, null,
+					domain.bundleEntry);
+			try {
+				//the conflicts are recorded separately for each task, as the skipped resolutions don't look up bundles
+				satisfyBundleVersion(recordinglookupfunction, bundleDependenciesLookupFunction, domain, null,
+						bundleresstate, privateScopeDomains, useConflicts ? new ResolutionConflicts<>() : null);
+				satisfied = !bundleresstate.isBackTracking();
+			} catch (Throwable e) {
+				exception = e;
+			}
+		}
+	}
+
+	private static final class LookedUpBundles<BK extends BundleIdentifierHolder, BC> {
+		protected final List<? extends Entry<? extends BK, ? extends BC>> bundles;
+		private final Map<Entry<? extends BK, ? extends BC>, Integer> indexes = new HashMap<>();
+		//the looked up bundles are filtered for the same dependency lists many times during backtracking and when
+		//multiple bundles depend on them with the same ranges, so the candidates are cached as bit sets of indexes
+		//the candidates of a dependency list are the intersection of the candidates of its ranges
+		//concurrent, as the looked up bundles may be shared by concurrent resolutions
+		private final Map<BundleDependencyList, BitSet> candidates = new ConcurrentHashMap<>();
+		private final Map<VersionRange, BitSet> rangeCandidates = new ConcurrentHashMap<>();
+
+		public LookedUpBundles(Iterable<? extends Entry<? extends BK, ? extends BC>> bundles) {
+			this.bundles = ImmutableUtils.makeImmutableList(bundles);
+			int i = 0;
+			for (Entry<? extends BK, ? extends BC> bundle : this.bundles) {
+				indexes.putIfAbsent(bundle, i++);
+			}
+		}
+
+		public int indexOf(Entry<? extends BK, ? extends BC> bundle) {
+			Integer idx = indexes.get(bundle);
+			return idx == null ? -1 : idx;
+		}
+
+		//the returned bit set shouldn't be modified
+		public BitSet getCandidates(BundleDependencyList deplist) {
+			BitSet result = candidates.get(deplist);
+			if (result == null) {
+				result = new BitSet(bundles.size());
+				result.set(0, bundles.size());
+				for (BundleDependency bdep : deplist.getDependencies()) {
+					result.and(getRangeCandidates(bdep.getRange()));
+				}
+				candidates.put(deplist, result);
+			}
+			return result;
+		}
+
+		private BitSet getRangeCandidates(VersionRange range) {
+			BitSet result = rangeCandidates.get(range);
+			if (result == null) {
+				result = new BitSet(bundles.size());
+				int i = 0;
+				for (Entry<? extends BK, ? extends BC> bundle : bundles) {
+					if (range.includes(bundle.getKey().getBundleIdentifier().getVersionNumber())) {
+						result.set(i);
+					}
+					++i;
+				}
+				rangeCandidates.put(range, result);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * The failed resolutions of bundle versions with the bundles that they looked up.
+	 * <p>
+	 * The resolution of a bundle version only depends on its dependencies and the bundles that are pinned outside of
+	 * its domain when it is started. If it fails, then it fails again if the bundles that it looked up are pinned
+	 * with the same versions. The backtracking often retries the same bundle versions after changing unrelated
+	 * dependencies, in which case the resolution can be skipped, as the conflict is known.
+	 * <p>
+	 * A conflict is only recorded if each bundle that was looked up is pinned with at most one version outside of the
+	 * domain, so the order in which the domains are searched doesn't affect the resolution.
+	 * <p>
+	 * The conflicts are discarded when a private dependency is encountered, as the resolution of those depends on the
+	 * previously resolved private scopes as well.
+	 */
+	private static final class ResolutionConflicts<BK extends BundleIdentifierHolder, BC> {
+		//limit the number of conflicts that are checked for a bundle version
+		private static final int MAX_BUNDLE_CONFLICT_COUNT = 8;
+
+		//the looked up versionless bundle entries mapped to the versioned entry that was pinned, or null if none
+		private final Map<Entry<? extends BK, ? extends BC>, List<Map<Entry<BundleIdentifier, ? extends BC>, Entry<? extends BK, ? extends BC>>>> conflicts = new HashMap<>();
+		//the bundles looked up by the resolutions in progress
+		//the resolutions are nested, so a resolution looked up the bundles after the index where it was started
+		private final List<Entry<BundleIdentifier, ? extends BC>> lookedUp = new ArrayList<>();
+		private final ArrayDeque<Integer> recordingStartIndexes = new ArrayDeque<>();
+		private boolean disabled = false;
+
+		public void disable() {
+			disabled = true;
+			conflicts.clear();
+			lookedUp.clear();
+			recordingStartIndexes.clear();
+		}
+
+		public void lookedUp(Entry<BundleIdentifier, ? extends BC> versionlessentry) {
+			if (!recordingStartIndexes.isEmpty()) {
+				lookedUp.add(versionlessentry);
+			}
+		}
+
+		public void startRecording() {
+			if (disabled) {
+				return;
+			}
+			recordingStartIndexes.addLast(lookedUp.size());
+		}
+
+		public void endRecording(DomainResult<BK, BC> domain, boolean failed) {
+			if (disabled) {
+				return;
+			}
+			int startidx = recordingStartIndexes.removeLast();
+			//checking the conflict is more expensive than looking up a single bundle again
+			if (failed && lookedUp.size() - startidx > 1) {
+				addConflict(domain, new HashSet<>(lookedUp.subList(startidx, lookedUp.size())));
+			}
+			if (recordingStartIndexes.isEmpty()) {
+				lookedUp.clear();
+			}
+		}
+
+		public boolean isConflicting(DomainResult<BK, BC> domain) {
+			if (disabled) {
+				return false;
+			}
+			List<Map<Entry<BundleIdentifier, ? extends BC>, Entry<? extends BK, ? extends BC>>> bundleconflicts = conflicts
+					.get(domain.bundleEntry);
+			if (bundleconflicts == null) {
+				return false;
+			}
+			Set<Entry<BundleIdentifier, ? extends BC>> lookedup = new HashSet<>();
+			for (Map<Entry<BundleIdentifier, ? extends BC>, Entry<? extends BK, ? extends BC>> conflict : bundleconflicts) {
+				lookedup.addAll(conflict.keySet());
+			}
+			Map<Entry<BundleIdentifier, ? extends BC>, Set<Entry<? extends BK, ? extends BC>>> pinned = collectOutsidePinned(
+					domain, lookedup);
+			for (Map<Entry<BundleIdentifier, ? extends BC>, Entry<? extends BK, ? extends BC>> conflict : bundleconflicts) {
+				if (isPinnedSame(conflict, pinned)) {
+					//the skipped resolution would've looked up the same bundles
+					if (!recordingStartIndexes.isEmpty()) {
+						lookedUp.addAll(conflict.keySet());
+					}
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private void addConflict(DomainResult<BK, BC> domain, Set<Entry<BundleIdentifier, ? extends BC>> lookedup) {
+			Map<Entry<BundleIdentifier, ? extends BC>, Set<Entry<? extends BK, ? extends BC>>> pinned = collectOutsidePinned(
+					domain, lookedup);
+			Map<Entry<BundleIdentifier, ? extends BC>, Entry<? extends BK, ? extends BC>> conflict = new HashMap<>();
+			for (Entry<BundleIdentifier, ? extends BC> versionlessentry : lookedup) {
+				Set<Entry<? extends BK, ? extends BC>> pinnedentries = pinned.get(versionlessentry);
+				if (pinnedentries == null) {
+					conflict.put(versionlessentry, null);
+				} else if (pinnedentries.size() == 1) {
+					conflict.put(versionlessentry, pinnedentries.iterator().next());
+				} else {
+					//the found version depends on the search order
+					return;
+				}
+			}
+			List<Map<Entry<BundleIdentifier, ? extends BC>, Entry<? extends BK, ? extends BC>>> bundleconflicts = conflicts
+					.computeIfAbsent(domain.bundleEntry, x -> new ArrayList<>());
+			if (bundleconflicts.size() >= MAX_BUNDLE_CONFLICT_COUNT) {
+				bundleconflicts.remove(0);
+			}
+			bundleconflicts.add(conflict);
+		}
+
+		private static <BK extends BundleIdentifierHolder, BC> boolean isPinnedSame(
+				Map<Entry<BundleIdentifier, ? extends BC>, Entry<? extends BK, ? extends BC>> conflict,
+				Map<Entry<BundleIdentifier, ? extends BC>, Set<Entry<? extends BK, ? extends BC>>> pinned) {
+			for (Entry<Entry<BundleIdentifier, ? extends BC>, Entry<? extends BK, ? extends BC>> entry : conflict
+					.entrySet()) {
+				Set<Entry<? extends BK, ? extends BC>> pinnedentries = pinned.get(entry.getKey());
+				Entry<? extends BK, ? extends BC> conflictentry = entry.getValue();
+				if (conflictentry == null) {
+					if (pinnedentries != null) {
+						return false;
+					}
+				} else if (pinnedentries == null || pinnedentries.size() != 1
+						|| !pinnedentries.contains(conflictentry)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		//collects the versions of the bundles that are pinned in the whole domain tree, except in the argument domain
+		private static <BK extends BundleIdentifierHolder, BC> Map<Entry<BundleIdentifier, ? extends BC>, Set<Entry<? extends BK, ? extends BC>>> collectOutsidePinned(
+				DomainResult<BK, BC> domain, Set<Entry<BundleIdentifier, ? extends BC>> versionlessentries) {
+			DomainResult<BK, BC> root = domain;
+			while (root.parent != null) {
+				root = root.parent;
+			}
+			Map<Entry<BundleIdentifier, ? extends BC>, Set<Entry<? extends BK, ? extends BC>>> result = new HashMap<>();
+			Set<DomainResult<BK, BC>> visited = new HashSet<>();
+			visited.add(domain);
+			ArrayDeque<DomainResult<BK, BC>> stack = new ArrayDeque<>();
+			stack.add(root);
+			while (!stack.isEmpty()) {
+				DomainResult<BK, BC> dr = stack.removeLast();
+				if (!visited.add(dr)) {
+					continue;
+				}
+				if (versionlessentries.contains(dr.versionlessBundleEntry)) {
+					result.computeIfAbsent(dr.versionlessBundleEntry, x -> new HashSet<>()).add(dr.bundleEntry);
+				}
+				stack.addAll(dr.directDependencies.values());
+			}
+			return result;
+		}
+	}
+
 	@Deprecated
 	private static final class ResolutionResult<BK extends BundleIdentifierHolder, BC>
 			implements DependencyResolutionResult<BK, BC> {
@@ -49,6 +49,32 @@ public class ForwardingNestMetric implements NestMetric {
 				: NestMetric.super.overrideServerBundleSignaturePublicKey(server, version);
 	}
 
+	@Override
+	public boolean allowAsyncServerRequests() {
+		return metric != null ? metric.allowAsyncServerRequests() : NestMetric.super.allowAsyncServerRequests();
+	}
+
+	@Override
+	public void archiveEntryBytesCacheClosed(long hitcount, long misscount) {
+		if (metric != null) {
+			metric.archiveEntryBytesCacheClosed(hitcount, misscount);
+		}
+	}
+
+	@Override
+	public void classPathResolutionCacheLookup(String bundleid, boolean hit) {
+		if (metric != null) {
+			metric.classPathResolutionCacheLookup(bundleid, hit);
+		}
+	}
+
+	@Override
+	public void externalArchiveFetchesClosed(long fetchcount, long fetchedbytecount, long sharedfetchcount) {
+		if (metric != null) {
+			metric.externalArchiveFetchesClosed(fetchcount, fetchedbytecount, sharedfetchcount);
+		}
+	}
+
 	@Override
 	public boolean allowCachedVerificationState(String bundleid) {
 		return metric != null ? metric.allowCachedVerificationState(bundleid)
@@ -81,6 +107,32 @@ public class ForwardingNestMetric implements NestMetric {
 						userparameters);
 	}
 
+	@Override
+	public boolean isConfiguredStorageCacheEnabled() {
+		return metric != null ? metric.isConfiguredStorageCacheEnabled()
+				: NestMetric.super.isConfiguredStorageCacheEnabled();
+	}
+
+	@Override
+	public void configuredStorageCacheCheckout(Object configuredstorage, boolean reused) {
+		if (metric != null) {
+			metric.configuredStorageCacheCheckout(configuredstorage, reused);
+		}
+	}
+
+	@Override
+	public void configuredStorageCacheEvicted(Object configuredstorage) {
+		if (metric != null) {
+			metric.configuredStorageCacheEvicted(configuredstorage);
+		}
+	}
+
+	@Override
+	public long overrideConfiguredStorageCacheIdleEvictionMillis(long millis) {
+		return metric != null ? metric.overrideConfiguredStorageCacheIdleEvictionMillis(millis)
+				: NestMetric.super.overrideConfiguredStorageCacheIdleEvictionMillis(millis);
+	}
+
 	@Override
 	public Boolean overrideServerUncacheRequestsValue() {
 		return metric != null ? metric.overrideServerUncacheRequestsValue()
@@ -92,4 +144,31 @@ public class ForwardingNestMetric implements NestMetric {
 		return metric != null ? metric.overrideNativeLibraryPath(cl, libpath)
 				: NestMetric.super.overrideNativeLibraryPath(cl, libpath);
 	}
+
+	@Override
+	public void serverRequestPerformed(String method, String requesturl, int responsecode) {
+		if (metric != null) {
+			metric.serverRequestPerformed(method, requesturl, responsecode);
+		}
+	}
+
+	@Override
+	public void dependencyBundlePrefetched(String bundleid) {
+		if (metric != null) {
+			metric.dependencyBundlePrefetched(bundleid);
+		}
+	}
+
+	@Override
+	public void bundleDownloaded(String bundleid, long resumedbytes, long transferredbytes, long nanos) {
+		if (metric != null) {
+			metric.bundleDownloaded(bundleid, resumedbytes, transferredbytes, nanos);
+		}
+	}
+
+	@Override
+	public boolean isDependencyResolutionConflictCacheEnabled() {
+		return metric != null ? metric.isDependencyResolutionConflictCacheEnabled()
+				: NestMetric.super.isDependencyResolutionConflictCacheEnabled();
+	}
 }
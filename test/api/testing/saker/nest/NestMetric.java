@@ -49,6 +49,28 @@ public interface NestMetric {
 		return Collections.emptyMap();
 	}
 
+	public default void serverRequestPerformed(String method, String requesturl, int responsecode) {
+	}
+
+	public default void bundleDownloaded(String bundleid, long resumedbytes, long transferredbytes, long nanos) {
+	}
+
+	public default void dependencyBundlePrefetched(String bundleid) {
+	}
+
+	public default boolean allowAsyncServerRequests() {
+		return false;
+	}
+
+	public default void archiveEntryBytesCacheClosed(long hitcount, long misscount) {
+	}
+
+	public default void classPathResolutionCacheLookup(String bundleid, boolean hit) {
+	}
+
+	public default void externalArchiveFetchesClosed(long fetchcount, long fetchedbytecount, long sharedfetchcount) {
+	}
+
 	public default PublicKey overrideServerBundleSignaturePublicKey(String server, int version) {
 		return null;
 	}
@@ -72,6 +94,20 @@ public interface NestMetric {
 		return null;
 	}
 
+	public default boolean isConfiguredStorageCacheEnabled() {
+		return false;
+	}
+
+	public default void configuredStorageCacheCheckout(Object configuredstorage, boolean reused) {
+	}
+
+	public default void configuredStorageCacheEvicted(Object configuredstorage) {
+	}
+
+	public default long overrideConfiguredStorageCacheIdleEvictionMillis(long millis) {
+		return millis;
+	}
+
 	public default Boolean overrideServerUncacheRequestsValue() {
 		return false;
 	}
@@ -83,4 +119,8 @@ public interface NestMetric {
 	public default URL toURL(URI uri) throws MalformedURLException {
 		return uri.toURL();
 	}
+
+	public default boolean isDependencyResolutionConflictCacheEnabled() {
+		return true;
+	}
 }
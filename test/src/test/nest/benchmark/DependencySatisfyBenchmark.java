@@ -0,0 +1,516 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package test.nest.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import saker.build.thirdparty.saker.util.ImmutableUtils;
+import saker.build.thirdparty.saker.util.ObjectUtils;
+import saker.nest.bundle.BundleDependency;
+import saker.nest.bundle.BundleDependencyInformation;
+import saker.nest.bundle.BundleDependencyList;
+import saker.nest.bundle.BundleIdentifier;
+import saker.nest.bundle.BundleInformation;
+import saker.nest.bundle.BundleKey;
+import saker.nest.bundle.SimpleBundleKey;
+import saker.nest.dependency.DependencyDomainResolutionResult;
+import saker.nest.dependency.DependencyResolutionLogger;
+import saker.nest.dependency.DependencyUtils;
+import saker.nest.version.VersionRange;
+import testing.saker.SakerTest;
+import testing.saker.SakerTestCase;
+
+/**
+ * Measures the performance of {@link DependencyUtils#satisfyDependencyDomain} on synthetic dependency graphs.
+ * <p>
+ * Each scenario is warmed up, then resolved repeatedly for the measurement period. The throughput, the allocated
+ * bytes per resolution, the garbage collections during the measurement, and the number of version backtracking
+ * attempts are reported. The results are printed to the standard output, and written as JSON to the
+ * <code>BenchmarkOutputDirectory</code> if the parameter is set.
+ */
+@SakerTest
+public class DependencySatisfyBenchmark extends SakerTestCase {
+	private static final String PARAMETER_OUTPUT_DIRECTORY = "BenchmarkOutputDirectory";
+	private static final String PARAMETER_WARMUP_MILLIS = "WarmupMillis";
+	private static final String PARAMETER_MEASUREMENT_MILLIS = "MeasurementMillis";
+
+	private static final long DEFAULT_WARMUP_MILLIS = 2000;
+	private static final long DEFAULT_MEASUREMENT_MILLIS = 5000;
+
+	private static final String DEPENDENCY_KIND = "classpath";
+
+	@Override
+	public void runTest(Map<String, String> parameters) throws Throwable {
+		long warmupmillis = getLongParameter(parameters, PARAMETER_WARMUP_MILLIS, DEFAULT_WARMUP_MILLIS);
+		long measurementmillis = getLongParameter(parameters, PARAMETER_MEASUREMENT_MILLIS,
+				DEFAULT_MEASUREMENT_MILLIS);
+
+		List<Scenario> scenarios = new ArrayList<>();
+		scenarios.add(wideFanOut(300, 5, 10));
+		scenarios.add(deepChain(150, 4));
+		scenarios.add(conflictingRanges(4, 24));
+		scenarios.add(repeatedConflicts(10, 10, 40));
+		scenarios.add(privateDomains(100, 3, 6));
+		scenarios.add(optionalDependencies(200, 3));
+
+		List<ScenarioResult> results = new ArrayList<>();
+		for (Scenario scenario : scenarios) {
+			ScenarioResult result = run(scenario, warmupmillis, measurementmillis);
+			System.out.println(result);
+			results.add(result);
+		}
+
+		String outdir = parameters == null ? null : parameters.get(PARAMETER_OUTPUT_DIRECTORY);
+		if (outdir != null) {
+			Path outdirpath = Paths.get(outdir);
+			Files.createDirectories(outdirpath);
+			Path outpath = outdirpath.resolve(getClass().getSimpleName() + ".json");
+			try (Writer writer = new OutputStreamWriter(Files.newOutputStream(outpath), StandardCharsets.UTF_8)) {
+				writeJson(results, warmupmillis, measurementmillis, writer);
+			}
+			System.out.println("Benchmark results written to: " + outpath);
+		}
+	}
+
+	private static ScenarioResult run(Scenario scenario, long warmupmillis, long measurementmillis) {
+		CountingLogger logger = new CountingLogger();
+		DependencyDomainResolutionResult<BundleKey, Object> satisfied = scenario.satisfy(logger);
+		if (satisfied == null) {
+			throw fail("Failed to resolve scenario: " + scenario.name);
+		}
+
+		long warmupend = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(warmupmillis);
+		while (System.nanoTime() < warmupend) {
+			scenario.satisfy(null);
+		}
+
+		ThreadMXBean threadbean = ManagementFactory.getThreadMXBean();
+		long threadid = Thread.currentThread().getId();
+		long gccountstart = getGarbageCollectionCount();
+		long gctimestart = getGarbageCollectionTime();
+		long allocstart = getThreadAllocatedBytes(threadbean, threadid);
+
+		long ops = 0;
+		long start = System.nanoTime();
+		long measurementend = start + TimeUnit.MILLISECONDS.toNanos(measurementmillis);
+		long end;
+		do {
+			scenario.satisfy(null);
+			++ops;
+			end = System.nanoTime();
+		} while (end < measurementend);
+
+		long allocend = getThreadAllocatedBytes(threadbean, threadid);
+		ScenarioResult result = new ScenarioResult(scenario.name, scenario.bundleCount, ops, end - start);
+		if (allocstart >= 0 && allocend >= 0) {
+			result.allocatedBytesPerOp = (allocend - allocstart) / ops;
+		}
+		result.gcCount = getGarbageCollectionCount() - gccountstart;
+		result.gcTimeMillis = getGarbageCollectionTime() - gctimestart;
+		result.versionsTried = logger.versionsTried;
+		//the versions that were tried but are not part of the result were backtracked from
+		result.backtracks = logger.versionsTried - countDomains(satisfied, ObjectUtils.newIdentityHashSet());
+		result.failedLookups = logger.failedBundles;
+		result.rangeMismatches = logger.rangeMismatches;
+		return result;
+	}
+
+	private static Scenario wideFanOut(int width, int versions, int commonversions) {
+		Scenario result = new Scenario("wide_fan_out");
+		BundleBuilder root = result.root();
+		for (int i = 0; i < width; i++) {
+			String name = "fan.bundle" + i;
+			root.depend(name, "[1.0)");
+			for (int v = 0; v < versions; v++) {
+				result.bundle(name + "-v1." + v).depend("fan.common", "1");
+			}
+		}
+		for (int v = 0; v < commonversions; v++) {
+			result.bundle("fan.common-v1." + v);
+		}
+		return result;
+	}
+
+	private static Scenario deepChain(int depth, int versions) {
+		Scenario result = new Scenario("deep_chain");
+		result.root().depend("chain.bundle0", "[1.0)");
+		for (int i = 0; i < depth; i++) {
+			for (int v = 0; v < versions; v++) {
+				BundleBuilder builder = result.bundle("chain.bundle" + i + "-v1." + v);
+				if (i + 1 < depth) {
+					builder.depend("chain.bundle" + (i + 1), "[1.0)");
+				}
+			}
+		}
+		return result;
+	}
+
+	private static Scenario conflictingRanges(int pairs, int versions) {
+		//the second bundle in each pair is only compatible with the second highest version of the first one
+		//this causes the resolution to backtrack through the versions of the second bundle multiple times
+		Scenario result = new Scenario("conflicting_ranges");
+		BundleBuilder root = result.root();
+		for (int p = 0; p < pairs; p++) {
+			String first = "conflict.first" + p;
+			String second = "conflict.second" + p;
+			String shared = "conflict.shared" + p;
+			root.depend(first, "[1.0)").depend(second, "[1.0)");
+			for (int v = 0; v < versions; v++) {
+				result.bundle(first + "-v1." + v).depend(shared, "[1." + v + "]");
+				String secondrange = v == 0 ? "[1." + (versions - 2) + "]" : "[2." + v + "]";
+				result.bundle(second + "-v1." + v).depend(shared, secondrange);
+				result.bundle(shared + "-v1." + v);
+				result.bundle(shared + "-v2." + v);
+			}
+		}
+		return result;
+	}
+
+	private static Scenario repeatedConflicts(int between, int versions, int depth) {
+		//the versions of the last bundle depend on the lowest version of the first one through a chain of bundles
+		//the last bundle is resolved again after backtracking through each bundle between them
+		Scenario result = new Scenario("repeated_conflicts");
+		BundleBuilder root = result.root();
+		root.depend("repeated.first", "[1.0)");
+		result.bundle("repeated.first-v1.0");
+		result.bundle("repeated.first-v1.1");
+		for (int i = 0; i < between; i++) {
+			String name = "repeated.between" + i;
+			root.depend(name, "[1.0)");
+			result.bundle(name + "-v1.0");
+			result.bundle(name + "-v1.1");
+		}
+		root.depend("repeated.last", "[1.0)");
+		for (int v = 0; v < versions; v++) {
+			result.bundle("repeated.last-v1." + v).depend("repeated.chain0", "[1.0)");
+		}
+		for (int i = 0; i < depth; i++) {
+			BundleBuilder builder = result.bundle("repeated.chain" + i + "-v1.0");
+			if (i + 1 < depth) {
+				builder.depend("repeated.chain" + (i + 1), "[1.0)");
+			} else {
+				builder.depend("repeated.first", "[1.0]");
+			}
+		}
+		return result;
+	}
+
+	private static Scenario privateDomains(int count, int versions, int commonversions) {
+		Scenario result = new Scenario("private_domains");
+		BundleBuilder root = result.root();
+		root.depend("private.common", "[1.0)");
+		for (int i = 0; i < count; i++) {
+			String name = "private.bundle" + i;
+			root.dependPrivate(name, "[1.0)");
+			for (int v = 0; v < versions; v++) {
+				//each private domain pins a different version of the common bundle
+				result.bundle(name + "-v1." + v).depend("private.common", "[1." + (i % commonversions) + "]");
+			}
+		}
+		for (int v = 0; v < commonversions; v++) {
+			result.bundle("private.common-v1." + v);
+		}
+		return result;
+	}
+
+	private static Scenario optionalDependencies(int count, int versions) {
+		Scenario result = new Scenario("optional_dependencies");
+		BundleBuilder root = result.root();
+		for (int i = 0; i < count; i++) {
+			String name = "optional.bundle" + i;
+			String optname = "optional.extension" + i;
+			root.depend(name, "[1.0)");
+			for (int v = 0; v < versions; v++) {
+				//the optional dependency is only satisfiable for every other bundle
+				result.bundle(name + "-v1." + v).depend("optional.common", "1").dependOptional(optname, "[1.0)");
+			}
+			if (i % 2 == 0) {
+				for (int v = 0; v < versions; v++) {
+					result.bundle(optname + "-v1." + v).depend("optional.common", "[1." + v + ")");
+				}
+			}
+		}
+		for (int v = 0; v < versions; v++) {
+			result.bundle("optional.common-v1." + v);
+		}
+		return result;
+	}
+
+	private static void writeJson(List<ScenarioResult> results, long warmupmillis, long measurementmillis,
+			Writer writer) throws IOException {
+		writer.write("{\n");
+		writer.write("\t\"benchmark\": \"" + DependencySatisfyBenchmark.class.getSimpleName() + "\",\n");
+		writer.write("\t\"java.version\": \"" + System.getProperty("java.version") + "\",\n");
+		writer.write("\t\"warmupMillis\": " + warmupmillis + ",\n");
+		writer.write("\t\"measurementMillis\": " + measurementmillis + ",\n");
+		writer.write("\t\"results\": [");
+		for (int i = 0; i < results.size(); i++) {
+			if (i > 0) {
+				writer.write(",");
+			}
+			writer.write("\n\t\t");
+			results.get(i).writeJson(writer);
+		}
+		writer.write("\n\t]\n}\n");
+	}
+
+	private static int countDomains(DependencyDomainResolutionResult<?, ?> domain,
+			Set<DependencyDomainResolutionResult<?, ?>> visited) {
+		if (!visited.add(domain)) {
+			return 0;
+		}
+		int result = 1;
+		for (DependencyDomainResolutionResult<?, ?> dep : domain.getDirectDependencies().values()) {
+			result += countDomains(dep, visited);
+		}
+		return result;
+	}
+
+	private static long getLongParameter(Map<String, String> parameters, String name, long defaultvalue) {
+		if (parameters == null) {
+			return defaultvalue;
+		}
+		String val = parameters.get(name);
+		if (val == null) {
+			return defaultvalue;
+		}
+		return Long.parseLong(val);
+	}
+
+	private static long getThreadAllocatedBytes(ThreadMXBean threadbean, long threadid) {
+		if (threadbean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean sunbean = (com.sun.management.ThreadMXBean) threadbean;
+			if (sunbean.isThreadAllocatedMemorySupported() && sunbean.isThreadAllocatedMemoryEnabled()) {
+				return sunbean.getThreadAllocatedBytes(threadid);
+			}
+		}
+		return -1;
+	}
+
+	private static long getGarbageCollectionCount() {
+		long result = 0;
+		for (GarbageCollectorMXBean gcbean : ManagementFactory.getGarbageCollectorMXBeans()) {
+			result += Math.max(gcbean.getCollectionCount(), 0);
+		}
+		return result;
+	}
+
+	private static long getGarbageCollectionTime() {
+		long result = 0;
+		for (GarbageCollectorMXBean gcbean : ManagementFactory.getGarbageCollectorMXBeans()) {
+			result += Math.max(gcbean.getCollectionTime(), 0);
+		}
+		return result;
+	}
+
+	private static final class Scenario {
+		private static final BundleIdentifier ROOT_BUNDLE_ID = BundleIdentifier.valueOf("benchmark.root-v1");
+
+		protected final String name;
+		protected int bundleCount;
+		private final Map<BundleIdentifier, BundleBuilder> bundles = new LinkedHashMap<>();
+
+		private Map<BundleIdentifier, List<Entry<BundleKey, Object>>> lookupBundles;
+		private Map<BundleIdentifier, BundleDependencyInformation> dependencyInfos;
+
+		public Scenario(String name) {
+			this.name = name;
+		}
+
+		public BundleBuilder root() {
+			return bundle(ROOT_BUNDLE_ID.toString());
+		}
+
+		public BundleBuilder bundle(String bundleid) {
+			BundleIdentifier id = BundleIdentifier.valueOf(bundleid);
+			BundleBuilder builder = new BundleBuilder();
+			if (bundles.put(id, builder) != null) {
+				throw new IllegalArgumentException("Bundle present multiple times: " + id);
+			}
+			lookupBundles = null;
+			return builder;
+		}
+
+		public DependencyDomainResolutionResult<BundleKey, Object> satisfy(DependencyResolutionLogger<Object> logger) {
+			if (lookupBundles == null) {
+				build();
+			}
+			return DependencyUtils.satisfyDependencyDomain(new SimpleBundleKey(ROOT_BUNDLE_ID, null), null,
+					dependencyInfos.get(ROOT_BUNDLE_ID), (bid, bc) -> {
+						List<Entry<BundleKey, Object>> found = lookupBundles.get(bid);
+						return found == null ? Collections.emptyList() : found;
+					}, (bk, bc) -> dependencyInfos.get(bk.getBundleIdentifier()), logger);
+		}
+
+		private void build() {
+			//the bundles are looked up in descending version order the same way as the repository does
+			Map<BundleIdentifier, List<BundleIdentifier>> versions = new HashMap<>();
+			dependencyInfos = new HashMap<>();
+			for (Entry<BundleIdentifier, BundleBuilder> entry : bundles.entrySet()) {
+				BundleIdentifier bundleid = entry.getKey();
+				versions.computeIfAbsent(bundleid.withoutMetaQualifiers(), k -> new ArrayList<>()).add(bundleid);
+				dependencyInfos.put(bundleid, entry.getValue().toDependencyInformation());
+			}
+			lookupBundles = new HashMap<>();
+			for (Entry<BundleIdentifier, List<BundleIdentifier>> entry : versions.entrySet()) {
+				List<BundleIdentifier> ids = entry.getValue();
+				ids.sort((l, r) -> BundleIdentifier.compareVersionQualifiers(r.getVersionQualifier(),
+						l.getVersionQualifier()));
+				List<Entry<BundleKey, Object>> entries = new ArrayList<>(ids.size());
+				for (BundleIdentifier id : ids) {
+					entries.add(ImmutableUtils.makeImmutableMapEntry(new SimpleBundleKey(id, null), null));
+				}
+				lookupBundles.put(entry.getKey(), entries);
+			}
+			bundleCount = bundles.size();
+		}
+	}
+
+	private static final class BundleBuilder {
+		private final Map<BundleIdentifier, List<BundleDependency>> dependencies = new LinkedHashMap<>();
+
+		public BundleBuilder depend(String bundleid, String range) {
+			return depend(bundleid, range, false, false);
+		}
+
+		public BundleBuilder dependOptional(String bundleid, String range) {
+			return depend(bundleid, range, true, false);
+		}
+
+		public BundleBuilder dependPrivate(String bundleid, String range) {
+			return depend(bundleid, range, false, true);
+		}
+
+		private BundleBuilder depend(String bundleid, String range, boolean optional, boolean privatedep) {
+			BundleDependency.Builder builder = BundleDependency.builder().addKind(DEPENDENCY_KIND)
+					.setRange(VersionRange.valueOf(range));
+			if (optional) {
+				builder.addMetaData(BundleInformation.DEPENDENCY_META_OPTIONAL, "true");
+			}
+			if (privatedep) {
+				builder.addMetaData(BundleInformation.DEPENDENCY_META_PRIVATE, "true");
+			}
+			dependencies.computeIfAbsent(BundleIdentifier.valueOf(bundleid), k -> new ArrayList<>())
+					.add(builder.build());
+			return this;
+		}
+
+		public BundleDependencyInformation toDependencyInformation() {
+			Map<BundleIdentifier, BundleDependencyList> result = new LinkedHashMap<>();
+			for (Entry<BundleIdentifier, List<BundleDependency>> entry : dependencies.entrySet()) {
+				result.put(entry.getKey(), BundleDependencyList.create(entry.getValue()));
+			}
+			return BundleDependencyInformation.create(result);
+		}
+	}
+
+	private static final class CountingLogger implements DependencyResolutionLogger<Object> {
+		protected long versionsTried;
+		protected long failedBundles;
+		protected long rangeMismatches;
+
+		@Override
+		public void enterVersion(BundleIdentifier bundleid, Object bundlecontext) {
+			++versionsTried;
+		}
+
+		@Override
+		public void exit(BundleIdentifier bundleid, Object bundlecontext, BundleIdentifier matchedidentifier,
+				Object matchedbundlecontext) {
+			if (matchedidentifier == null) {
+				++failedBundles;
+			}
+		}
+
+		@Override
+		public void dependencyVersionRangeMismatch(BundleDependency dependency, BundleIdentifier bundleid,
+				Object bundlecontext) {
+			++rangeMismatches;
+		}
+
+		@Override
+		public void dependencyVersionRangeMismatchForPinnedBundle(BundleDependency dependency,
+				BundleIdentifier pinnedbundleid, Object pinnedbundlecontext) {
+			++rangeMismatches;
+		}
+	}
+
+	private static final class ScenarioResult {
+		protected final String name;
+		protected final int bundleCount;
+		protected final long ops;
+		protected final long elapsedNanos;
+		protected long allocatedBytesPerOp = -1;
+		protected long gcCount;
+		protected long gcTimeMillis;
+		protected long versionsTried;
+		protected long backtracks;
+		protected long failedLookups;
+		protected long rangeMismatches;
+
+		public ScenarioResult(String name, int bundleCount, long ops, long elapsedNanos) {
+			this.name = name;
+			this.bundleCount = bundleCount;
+			this.ops = ops;
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		public double getOpsPerSecond() {
+			return ops * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+		}
+
+		public double getMicrosPerOp() {
+			return elapsedNanos / 1000d / ops;
+		}
+
+		public void writeJson(Writer writer) throws IOException {
+			writer.write("{\"scenario\": \"" + name + "\", \"bundles\": " + bundleCount + ", \"ops\": " + ops
+					+ ", \"opsPerSecond\": " + String.format(Locale.ROOT, "%.3f", getOpsPerSecond())
+					+ ", \"microsPerOp\": " + String.format(Locale.ROOT, "%.3f", getMicrosPerOp())
+					+ ", \"allocatedBytesPerOp\": " + allocatedBytesPerOp + ", \"gcCount\": " + gcCount
+					+ ", \"gcTimeMillis\": " + gcTimeMillis + ", \"versionsTried\": " + versionsTried
+					+ ", \"backtracks\": " + backtracks + ", \"failedLookups\": " + failedLookups
+					+ ", \"rangeMismatches\": " + rangeMismatches + "}");
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT,
+					"%-24s %6d bundles %12.3f ops/s %12.3f us/op %12d B/op %4d gc (%d ms) %8d tried %8d backtracks",
+					name, bundleCount, getOpsPerSecond(), getMicrosPerOp(), allocatedBytesPerOp, gcCount,
+					gcTimeMillis, versionsTried, backtracks);
+		}
+	}
+}
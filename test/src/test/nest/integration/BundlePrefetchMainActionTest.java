@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package test.nest.integration;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import saker.build.file.path.SakerPath;
+import saker.build.file.provider.LocalFileProvider;
+import saker.build.runtime.repository.SakerRepository;
+import saker.build.thirdparty.saker.util.ObjectUtils;
+import test.nest.util.BasicServerNestMetric;
+import testing.saker.SakerTest;
+import testing.saker.build.tests.EnvironmentTestCase;
+import testing.saker.build.tests.TestUtils;
+import testing.saker.nest.NestMetric;
+import testing.saker.nest.TestFlag;
+import testing.saker.nest.util.NestIntegrationTestUtils;
+
+/**
+ * Tests that the dependency bundles are prefetched on the I/O executor of the repository.
+ * <p>
+ * The download of the transitive dependency is blocked until the direct dependency is prefetched, so the resolution
+ * can only finish if the prefetching runs concurrently with it.
+ */
+@SakerTest
+public class BundlePrefetchMainActionTest extends ManualLoadedRepositoryTestCase {
+	//just a random uuid
+	private static final String PROPERTY_NAME = "0c1e6f44-27a8-4c8e-9d0e-5b0f3f6e9a21";
+
+	public static class SimpleMain {
+		public static void main(String[] args) {
+			new Dependent();
+
+			System.setProperty(PROPERTY_NAME, args[0]);
+		}
+	}
+
+	public static class Dependent {
+		public Dependent() {
+			new Third();
+		}
+	}
+
+	public static class Third {
+	}
+
+	@Override
+	protected Path getStorageDirectory() {
+		return super.getStorageDirectory().resolve(this.getClass().getName());
+	}
+
+	private String classSubDirPath = getClass().getName().replace('.', '/');
+	private Path bundleOutDir = EnvironmentTestCase.getTestingBaseBuildDirectory().resolve(classSubDirPath);
+	private Path workingDir = EnvironmentTestCase.getTestingBaseWorkingDirectory().resolve(classSubDirPath);
+	private final CountDownLatch depPrefetchedLatch = new CountDownLatch(1);
+	private NestMetric nm = new NestMetricImplementation();
+
+	@Override
+	public void runTest(Map<String, String> parameters) throws Throwable {
+		TestFlag.set(nm);
+		LocalFileProvider.getInstance().clearDirectoryRecursively(getStorageDirectory());
+		super.runTest(parameters);
+	}
+
+	@Override
+	protected void runTestOnRepo(SakerRepository repo) throws Exception {
+		System.clearProperty(PROPERTY_NAME);
+
+		TreeMap<String, Set<Class<?>>> bundleclasses = TestUtils.<String, Set<Class<?>>>treeMapBuilder()//
+				.put("simple.bundle-v1", ObjectUtils.newHashSet(SimpleMain.class))//
+				.put("dep.bundle-v1", ObjectUtils.newHashSet(Dependent.class))//
+				.put("third.bundle-v1", ObjectUtils.newHashSet(Third.class))//
+				.build();
+
+		NestIntegrationTestUtils.createAllJarsFromDirectoriesWithClasses(LocalFileProvider.getInstance(),
+				SakerPath.valueOf(workingDir).resolve("bundles"), bundleOutDir, bundleclasses);
+
+		repo.executeAction("main", "-Unest.repository.storage.configuration=[:server]",
+				"-Unest.server.url=https://testurl", "-Unest.repository.bundle.prefetch.threads=2", "-bundle",
+				"simple.bundle-v1", "first-arg");
+
+		assertEquals(System.clearProperty(PROPERTY_NAME), "first-arg");
+		assertEquals(depPrefetchedLatch.getCount(), 0L);
+	}
+
+	private final class NestMetricImplementation extends BasicServerNestMetric {
+		@Override
+		public void dependencyBundlePrefetched(String bundleid) {
+			if ("dep.bundle-v1".equals(bundleid)) {
+				depPrefetchedLatch.countDown();
+			}
+		}
+
+		@Override
+		public Integer getServerRequestResponseCode(String method, String requesturl) throws IOException {
+			if (requesturl.startsWith("https://testurl/bundle/download/")) {
+				return HttpURLConnection.HTTP_OK;
+			}
+			if ("https://testurl/bundles/index".equals(requesturl)) {
+				return HttpURLConnection.HTTP_OK;
+			}
+			return super.getServerRequestResponseCode(method, requesturl);
+		}
+
+		@Override
+		public InputStream getServerRequestResponseStream(String method, String requesturl) throws IOException {
+			String downloadurl = "https://testurl/bundle/download/";
+			if (requesturl.startsWith(downloadurl)) {
+				String bundleid = requesturl.substring(downloadurl.length());
+				if ("third.bundle-v1".equals(bundleid)) {
+					//the resolution reaches the third bundle after it loaded the direct dependency
+					//if the prefetching doesn't run concurrently, the latch is never released
+					try {
+						if (!depPrefetchedLatch.await(60, TimeUnit.SECONDS)) {
+							throw new AssertionError("Direct dependency wasn't prefetched.");
+						}
+					} catch (InterruptedException e) {
+						throw new IOException(e);
+					}
+				}
+				return Files.newInputStream(bundleOutDir.resolve(bundleid + ".jar"));
+			}
+			if ("https://testurl/bundles/index".equals(requesturl)) {
+				return Files.newInputStream(workingDir.resolve("bundlesindex/index.json"));
+			}
+			return super.getServerRequestResponseStream(method, requesturl);
+		}
+	}
+}
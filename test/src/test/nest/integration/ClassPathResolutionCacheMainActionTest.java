@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package test.nest.integration;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import saker.build.file.path.SakerPath;
+import saker.build.file.provider.LocalFileProvider;
+import saker.build.runtime.repository.SakerRepository;
+import saker.build.thirdparty.saker.util.ObjectUtils;
+import testing.saker.SakerTest;
+import testing.saker.build.tests.EnvironmentTestCase;
+import testing.saker.build.tests.TestUtils;
+import testing.saker.nest.NestMetric;
+import testing.saker.nest.TestFlag;
+import testing.saker.nest.util.NestIntegrationTestUtils;
+
+/**
+ * Tests that the dependency resolution results of the class loaders are reused between the repository
+ * configurations, and are invalidated when a bundle in the storages changes.
+ */
+@SakerTest
+public class ClassPathResolutionCacheMainActionTest extends ManualLoadedRepositoryTestCase {
+	//just a random uuid
+	private static final String PROPERTY_NAME = "5f0d3a7e-8c41-4b2e-a3f9-1d6c2e8b7a90";
+
+	public static class SimpleMain {
+		public static void main(String[] args) {
+			new Dependent();
+
+			System.setProperty(PROPERTY_NAME, args[0]);
+		}
+	}
+
+	public static class Dependent {
+		public Dependent() {
+			new Third();
+		}
+	}
+
+	public static class DependentAddition {
+	}
+
+	public static class Third {
+	}
+
+	@Override
+	protected Path getStorageDirectory() {
+		return super.getStorageDirectory().resolve(this.getClass().getName());
+	}
+
+	private String classSubDirPath = getClass().getName().replace('.', '/');
+	private Path bundleOutDir = EnvironmentTestCase.getTestingBaseBuildDirectory().resolve(classSubDirPath);
+	private Path workingDir = EnvironmentTestCase.getTestingBaseWorkingDirectory().resolve(classSubDirPath);
+	private final List<Boolean> cacheLookups = Collections.synchronizedList(new ArrayList<>());
+	private NestMetric nm = new NestMetricImplementation();
+
+	@Override
+	public void runTest(Map<String, String> parameters) throws Throwable {
+		TestFlag.set(nm);
+		LocalFileProvider.getInstance().clearDirectoryRecursively(getStorageDirectory());
+		super.runTest(parameters);
+	}
+
+	@Override
+	protected void runTestOnRepo(SakerRepository repo) throws Exception {
+		TreeMap<String, Set<Class<?>>> bundleclasses = TestUtils.<String, Set<Class<?>>>treeMapBuilder()//
+				.put("simple.bundle-v1", ObjectUtils.newHashSet(SimpleMain.class))//
+				.put("dep.bundle-v1", ObjectUtils.newHashSet(Dependent.class))//
+				.put("third.bundle-v1", ObjectUtils.newHashSet(Third.class))//
+				.build();
+		createBundles(bundleclasses);
+
+		runMain(repo, bundleclasses, "first");
+		assertEquals(cacheLookups, Arrays.asList(false));
+
+		//the stored resolution is used
+		runMain(repo, bundleclasses, "second");
+		assertEquals(cacheLookups, Arrays.asList(true));
+
+		//the contents of a dependency changes, the stored resolution is not used
+		bundleclasses.put("dep.bundle-v1", ObjectUtils.newHashSet(Dependent.class, DependentAddition.class));
+		createBundles(bundleclasses);
+		runMain(repo, bundleclasses, "third");
+		assertEquals(cacheLookups, Arrays.asList(false));
+
+		runMain(repo, bundleclasses, "fourth");
+		assertEquals(cacheLookups, Arrays.asList(true));
+
+		//the cache can be turned off
+		runMain(repo, bundleclasses, "fifth", "-Unest.repository.dependency.resolution.cache=false");
+		assertEquals(cacheLookups, Collections.emptyList());
+	}
+
+	private void createBundles(TreeMap<String, Set<Class<?>>> bundleclasses) throws Exception {
+		NestIntegrationTestUtils.createAllJarsFromDirectoriesWithClasses(LocalFileProvider.getInstance(),
+				SakerPath.valueOf(workingDir).resolve("bundles"), bundleOutDir, bundleclasses);
+	}
+
+	private void runMain(SakerRepository repo, TreeMap<String, Set<Class<?>>> bundleclasses, String arg,
+			String... additionalargs) throws Exception {
+		System.clearProperty(PROPERTY_NAME);
+		cacheLookups.clear();
+
+		List<String> args = new ArrayList<>();
+		args.add("main");
+		args.add("-Unest.server.offline=true");
+		args.add("-Unest.repository.storage.configuration=[:local,:params]");
+		args.add(NestIntegrationTestUtils.createParameterBundlesUserParameter(bundleclasses.keySet(), bundleOutDir));
+		args.addAll(Arrays.asList(additionalargs));
+		args.add("-bundle");
+		args.add("simple.bundle-v1");
+		args.add(arg);
+		repo.executeAction(args.toArray(new String[args.size()]));
+
+		assertEquals(System.clearProperty(PROPERTY_NAME), arg);
+	}
+
+	private final class NestMetricImplementation implements NestMetric {
+		@Override
+		public void classPathResolutionCacheLookup(String bundleid, boolean hit) {
+			if ("simple.bundle-v1".equals(bundleid)) {
+				cacheLookups.add(hit);
+			}
+		}
+	}
+}
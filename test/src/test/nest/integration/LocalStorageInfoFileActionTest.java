@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package test.nest.integration;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+
+import saker.build.file.path.SakerPath;
+import saker.build.file.provider.LocalFileProvider;
+import saker.build.runtime.repository.SakerRepository;
+import saker.build.thirdparty.saker.util.io.ByteArrayRegion;
+import testing.saker.SakerTest;
+import testing.saker.build.tests.EnvironmentTestCase;
+import testing.saker.nest.util.NestIntegrationTestUtils;
+
+/**
+ * Tests the reading and writing of the binary info file of the local bundle storage.
+ * <p>
+ * The storage contains more bundles than the parallel validation threshold, so the installed JARs are validated
+ * concurrently when the info file is read.
+ */
+@SakerTest
+public class LocalStorageInfoFileActionTest extends ManualLoadedRepositoryTestCase {
+	//just a random uuid
+	private static final String PROPERTY_NAME = "9a4c2d71-5e3b-4f80-b6a2-7c1e9d0f3b58";
+
+	private static final int FILLER_BUNDLE_COUNT = 20;
+	private static final int INFO_SERIALIZATION_VERSION = 2;
+	private static final int INFO_HEADER_LENGTH = 8;
+
+	public static class SimpleMain {
+		public static void main(String[] args) {
+			System.setProperty(PROPERTY_NAME, "simple-" + args[0]);
+		}
+	}
+
+	public static class ReplacedSimpleMain {
+		public static void main(String[] args) {
+			System.setProperty(PROPERTY_NAME, "replaced-" + args[0]);
+		}
+	}
+
+	@Override
+	protected Path getStorageDirectory() {
+		return super.getStorageDirectory().resolve(this.getClass().getName());
+	}
+
+	private String classSubDirPath = getClass().getName().replace('.', '/');
+	private Path bundleOutDir = EnvironmentTestCase.getTestingBaseBuildDirectory().resolve(classSubDirPath);
+
+	private RepositoryAction phaseAction;
+
+	@Override
+	public void runTest(Map<String, String> parameters) throws Throwable {
+		LocalFileProvider.getInstance().clearDirectoryRecursively(getStorageDirectory());
+		LocalFileProvider.getInstance().clearDirectoryRecursively(bundleOutDir);
+		Files.createDirectories(bundleOutDir);
+
+		NavigableSet<String> bundleids = new TreeSet<>();
+		writeBundle(bundleOutDir.resolve("simple.bundle-v1.jar"), "simple.bundle-v1", SimpleMain.class);
+		bundleids.add("simple.bundle-v1");
+		for (int i = 0; i < FILLER_BUNDLE_COUNT; i++) {
+			String bundleid = "filler.bundle" + i + "-v1";
+			writeBundle(bundleOutDir.resolve(bundleid + ".jar"), bundleid, null);
+			bundleids.add(bundleid);
+		}
+
+		phaseAction = repo -> repo.executeAction("local", "install", "-Unest.server.offline=true",
+				bundleOutDir + "/*.jar");
+		super.runTest(parameters);
+
+		//the pending bundles are installed and the info file is written
+		runMain(parameters, "first", "simple-first");
+		Path infofile = getInfoFile();
+		NavigableMap<String, Long> infosizes = readInfoFile(infofile);
+		assertEquals(infosizes.keySet(), bundleids);
+		for (Entry<String, Long> entry : infosizes.entrySet()) {
+			assertEquals(entry.getValue(), Files.size(getInstalledBundleJar(entry.getKey())), entry.getKey());
+		}
+
+		//the JAR is modified in the storage, which should be detected by the validation
+		writeBundle(getInstalledBundleJar("simple.bundle-v1"), "simple.bundle-v1", ReplacedSimpleMain.class);
+		runMain(parameters, "second", "replaced-second");
+		runMain(parameters, "third", "replaced-third");
+
+		//the data length in the header is out of bounds, the bundles are discovered again
+		try (FileChannel channel = FileChannel.open(infofile, StandardOpenOption.WRITE)) {
+			ByteBuffer buf = ByteBuffer.allocate(4);
+			buf.putInt(0, Integer.MAX_VALUE);
+			channel.write(buf, 4);
+		}
+		runMain(parameters, "fourth", "replaced-fourth");
+		assertEquals(readInfoFile(infofile).keySet(), bundleids);
+
+		//the info file is truncated
+		try (FileChannel channel = FileChannel.open(infofile, StandardOpenOption.WRITE)) {
+			channel.truncate(channel.size() - 3);
+		}
+		runMain(parameters, "fifth", "replaced-fifth");
+		NavigableMap<String, Long> rewrittensizes = readInfoFile(infofile);
+		assertEquals(rewrittensizes.keySet(), bundleids);
+		assertEquals(rewrittensizes.get("simple.bundle-v1"), Files.size(getInstalledBundleJar("simple.bundle-v1")));
+	}
+
+	@Override
+	protected void runTestOnRepo(SakerRepository repo) throws Exception {
+		phaseAction.run(repo);
+	}
+
+	private void runMain(Map<String, String> parameters, String arg, String expectedproperty) throws Throwable {
+		phaseAction = repo -> {
+			System.clearProperty(PROPERTY_NAME);
+			repo.executeAction("main", "-Unest.server.offline=true",
+					"-Unest.repository.storage.configuration=[:local]", "-bundle", "simple.bundle-v1", arg);
+			assertEquals(System.clearProperty(PROPERTY_NAME), expectedproperty);
+		};
+		super.runTest(parameters);
+	}
+
+	private Path getInfoFile() throws IOException {
+		return findStorageFile("storage.info");
+	}
+
+	private Path getInstalledBundleJar(String bundleid) throws IOException {
+		return findStorageFile(bundleid + ".jar");
+	}
+
+	private Path findStorageFile(String filename) throws IOException {
+		Path storagedir = getStorageDirectory();
+		List<Path> found = new ArrayList<>();
+		try (Stream<Path> files = Files.walk(storagedir)) {
+			files.filter(p -> p.getFileName().toString().equals(filename)).forEach(p -> {
+				//only search the installed bundles
+				for (Path name : storagedir.relativize(p)) {
+					if (name.toString().equals("bundles")) {
+						found.add(p);
+						return;
+					}
+				}
+			});
+		}
+		assertEquals(found.size(), 1, filename + " in " + found);
+		return found.get(0);
+	}
+
+	private static NavigableMap<String, Long> readInfoFile(Path infofile) throws IOException {
+		ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(infofile));
+		assertEquals(buf.getInt(), INFO_SERIALIZATION_VERSION);
+		assertEquals(buf.getInt(), buf.capacity() - INFO_HEADER_LENGTH);
+		NavigableMap<String, Long> result = new TreeMap<>();
+		int count = buf.getInt();
+		for (int i = 0; i < count; i++) {
+			String bundleid = readString(buf);
+			long size = buf.getLong();
+			//last modified
+			buf.getLong();
+			int taskcount = buf.getInt();
+			assertEquals(taskcount, 0);
+			result.put(bundleid, size);
+		}
+		assertFalse(buf.hasRemaining());
+		return result;
+	}
+
+	@FunctionalInterface
+	private interface RepositoryAction {
+		public void run(SakerRepository repo) throws Exception;
+	}
+
+	private static String readString(ByteBuffer buf) {
+		byte[] bytes = new byte[buf.getInt()];
+		buf.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeBundle(Path target, String bundleid, Class<?> mainclass) throws IOException {
+		Manifest manifest = new Manifest();
+		Attributes attrs = manifest.getMainAttributes();
+		attrs.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		attrs.putValue("Nest-Bundle-Format-Version", "1");
+		attrs.putValue("Nest-Bundle-Identifier", bundleid);
+		if (mainclass != null) {
+			attrs.put(Attributes.Name.MAIN_CLASS, mainclass.getName());
+		}
+		ByteArrayOutputStream manifestbytes = new ByteArrayOutputStream();
+		manifest.write(manifestbytes);
+
+		//the manifest should be the first entry
+		Map<SakerPath, ByteArrayRegion> entries = new LinkedHashMap<>();
+		entries.put(SakerPath.valueOf("META-INF/MANIFEST.MF"), ByteArrayRegion.wrap(manifestbytes.toByteArray()));
+		if (mainclass != null) {
+			NestIntegrationTestUtils.addClassesAsEntries(entries, mainclass);
+		}
+		Files.write(target, NestIntegrationTestUtils.createJarWithEntries(entries).copyOptionally());
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package test.nest.integration;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeMap;
+
+import saker.build.file.path.SakerPath;
+import saker.build.file.provider.LocalFileProvider;
+import saker.build.runtime.repository.SakerRepository;
+import saker.build.thirdparty.saker.util.ObjectUtils;
+import saker.build.thirdparty.saker.util.ReflectUtils;
+import saker.build.thirdparty.saker.util.io.ByteArrayRegion;
+import saker.build.util.java.JavaTools;
+import testing.saker.SakerTest;
+import testing.saker.build.tests.EnvironmentTestCase;
+import testing.saker.build.tests.TestUtils;
+import testing.saker.nest.util.NestIntegrationTestUtils;
+
+/**
+ * Tests that a class that is only present in a versioned directory of a multi-release dependency bundle is found.
+ */
+@SakerTest
+public class MultiReleaseDependencyMainActionTest extends ManualLoadedRepositoryTestCase {
+	//just a random uuid
+	private static final String PROPERTY_NAME = "9a5d2c71-0e3b-4f8d-b6a4-7c1e83f2d560";
+
+	private static final String VERSIONED_CLASS_NAME = "test.nest.integration."
+			+ "MultiReleaseDependencyMainActionTest$Versioned";
+
+	public static class SimpleMain {
+		public static void main(String[] args) throws Exception {
+			ClassLoader cl = SimpleMain.class.getClassLoader();
+			//load multiple times, as the failed lookups are cached
+			for (int i = 0; i < 2; i++) {
+				Class<?> c = Class.forName(VERSIONED_CLASS_NAME, false, cl);
+				if (c.getClassLoader() == cl) {
+					throw new AssertionError("Class loaded by the wrong class loader: " + c.getClassLoader());
+				}
+			}
+
+			System.setProperty(PROPERTY_NAME, args[0]);
+		}
+	}
+
+	public static class Versioned {
+	}
+
+	@Override
+	protected void runTestOnRepo(SakerRepository repo) throws Exception {
+		if (JavaTools.getCurrentJavaMajorVersion() < 9) {
+			//multi-release JARs are not supported
+			return;
+		}
+		System.clearProperty(PROPERTY_NAME);
+
+		TreeMap<String, Set<Class<?>>> bundleclasses = TestUtils.<String, Set<Class<?>>>treeMapBuilder()//
+				.put("simple.bundle-v1", ObjectUtils.newHashSet(SimpleMain.class))//
+				.put("dep.bundle-v1", Collections.emptySet())//
+				.build();
+
+		String classsubdirpath = getClass().getName().replace('.', '/');
+		Path workdir = EnvironmentTestCase.getTestingBaseWorkingDirectory().resolve(classsubdirpath);
+		Path bundleoutdir = EnvironmentTestCase.getTestingBaseBuildDirectory().resolve(classsubdirpath);
+		NestIntegrationTestUtils.createAllJarsFromDirectoriesWithClasses(LocalFileProvider.getInstance(),
+				SakerPath.valueOf(workdir).resolve("bundles"), bundleoutdir, bundleclasses);
+
+		//overwrite the dependency bundle so the class is only present in the versioned directory
+		TreeMap<SakerPath, ByteArrayRegion> depentries = new TreeMap<>();
+		depentries.put(SakerPath.valueOf("META-INF/MANIFEST.MF"), ByteArrayRegion
+				.wrap(Files.readAllBytes(workdir.resolve("bundles/dep.bundle-v1/META-INF/MANIFEST.MF"))));
+		depentries.put(SakerPath.valueOf("META-INF/versions/9/" + VERSIONED_CLASS_NAME.replace('.', '/') + ".class"),
+				ReflectUtils.getClassBytesUsingClassLoader(Versioned.class));
+		ByteArrayRegion depjarbytes = NestIntegrationTestUtils.createJarWithEntries(depentries);
+		Files.write(bundleoutdir.resolve("dep.bundle-v1.jar"), depjarbytes.copyOptionally());
+
+		repo.executeAction("main", "-Unest.server.offline=true",
+				NestIntegrationTestUtils.createParameterBundlesUserParameter(bundleclasses.keySet(), bundleoutdir),
+				"-bundle", "simple.bundle-v1", "first-arg");
+
+		assertEquals(System.clearProperty(PROPERTY_NAME), "first-arg");
+	}
+
+}
@@ -24,9 +24,12 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import saker.build.file.path.SakerPath;
 import saker.build.file.provider.LocalFileProvider;
@@ -39,7 +42,6 @@ import test.nest.util.BasicServerNestMetric;
 import testing.saker.SakerTest;
 import testing.saker.build.tests.EnvironmentTestCase;
 import testing.saker.build.tests.TestUtils;
-import testing.saker.nest.NestMetric;
 import testing.saker.nest.TestFlag;
 import testing.saker.nest.util.NestIntegrationTestUtils;
 
@@ -59,13 +61,23 @@ public class ServerStorageExternalDependencyMainActionTest extends ManualLoadedR
 	private String classSubDirPath = getClass().getName().replace('.', '/');
 	private Path bundleOutDir = EnvironmentTestCase.getTestingBaseBuildDirectory().resolve(classSubDirPath);
 	private Path workingDir = EnvironmentTestCase.getTestingBaseWorkingDirectory().resolve(classSubDirPath);
-	private NestMetric nm = new NestMetricImplementation();
+	private NestMetricImplementation nm = new NestMetricImplementation();
 
 	@Override
 	public void runTest(Map<String, String> parameters) throws Throwable {
 		TestFlag.set(nm);
 		LocalFileProvider.getInstance().clearDirectoryRecursively(getStorageDirectory());
 		super.runTest(parameters);
+
+		//the external archive is downloaded once
+		assertEquals(nm.fetchCount, 1L);
+		assertEquals(nm.fetchedByteCount, (long) nm.externalBytes.values().iterator().next().getLength());
+		//the lock files are removed after the archives are loaded
+		try (Stream<Path> files = Files.walk(getStorageDirectory())) {
+			List<Path> lockfiles = files.filter(p -> p.getFileName().toString().endsWith(".lock"))
+					.collect(Collectors.toList());
+			assertTrue(lockfiles.isEmpty(), "Lock files: " + lockfiles);
+		}
 	}
 
 	@Override
@@ -91,6 +103,8 @@ public class ServerStorageExternalDependencyMainActionTest extends ManualLoadedR
 
 	private final class NestMetricImplementation extends BasicServerNestMetric {
 		private Map<String, ByteArrayRegion> externalBytes = new TreeMap<>();
+		private long fetchCount = -1;
+		private long fetchedByteCount = -1;
 		{
 			try {
 				ByteArrayRegion bytes = NestIntegrationTestUtils.createJarBytesWithClasses(
@@ -103,6 +117,12 @@ public class ServerStorageExternalDependencyMainActionTest extends ManualLoadedR
 			externalBytes.keySet().forEach(System.out::println);
 		}
 
+		@Override
+		public void externalArchiveFetchesClosed(long fetchcount, long fetchedbytecount, long sharedfetchcount) {
+			this.fetchCount = fetchcount;
+			this.fetchedByteCount = fetchedbytecount;
+		}
+
 		@Override
 		public Integer getServerRequestResponseCode(String method, String requesturl) throws IOException {
 			if ("https://testurl/bundle/download/simple.bundle-v1".equals(requesturl)) {
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package test.nest.integration.execution;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import saker.build.file.path.SakerPath;
+import saker.build.file.provider.LocalFileProvider;
+import saker.build.runtime.execution.ExecutionContext;
+import saker.build.task.ParameterizableTask;
+import saker.build.task.Task;
+import saker.build.task.TaskContext;
+import saker.build.task.TaskFactory;
+import saker.build.thirdparty.saker.util.ObjectUtils;
+import testing.saker.SakerTest;
+import testing.saker.build.tests.CollectingMetricEnvironmentTestCase;
+import testing.saker.build.tests.EnvironmentTestCaseConfiguration;
+import testing.saker.build.tests.TestUtils;
+import testing.saker.nest.NestMetric;
+import testing.saker.nest.TestFlag;
+import testing.saker.nest.util.NestIntegrationTestUtils;
+
+/**
+ * Tests that the configured repository storages are reused by the builds with the same configuration, and they are
+ * evicted when there are too many idle ones, or they are idle for too long.
+ */
+@SakerTest
+public class ConfiguredStorageCacheTaskTest extends CollectingMetricEnvironmentTestCase {
+	//just a random uuid
+	private static final String PROPERTY_NAME = "8c2d5f7a-41e9-4b36-b0a8-9e5c3f1d2a67";
+
+	private static final String USER_PARAMETER_CONFIG = "test.config";
+	private static final String USER_PARAMETER_STORAGE_CACHE = "nest.repository.configured.storage.cache";
+
+	public static class SimpleTask implements TaskFactory<String>, ParameterizableTask<String>, Externalizable {
+		private static final long serialVersionUID = 1L;
+
+		public SimpleTask() {
+		}
+
+		@Override
+		public String run(TaskContext taskcontext) throws Exception {
+			System.setProperty(PROPERTY_NAME, "hello");
+			return "hello";
+		}
+
+		@Override
+		public Task<? extends String> createTask(ExecutionContext executioncontext) {
+			return this;
+		}
+
+		@Override
+		public int hashCode() {
+			return getClass().hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return ObjectUtils.isSameClass(this, obj);
+		}
+
+		@Override
+		public void writeExternal(ObjectOutput out) throws IOException {
+		}
+
+		@Override
+		public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		}
+	}
+
+	private static final UUID[] PRIVATE_REPO_UUIDS = { UUID.fromString("b7e3a9c1-5d24-4f80-9a6e-1c8f2d4b7e95"),
+			UUID.fromString("2f6c8d1e-a4b3-4975-8e02-d5b1c7a9f364") };
+	private AtomicInteger invocationId = new AtomicInteger();
+
+	private NestMetricImplementation nm;
+
+	@Override
+	protected boolean isRepositoriesCacheable() {
+		//keep the loaded repository between the builds, as it holds the cached storages
+		return true;
+	}
+
+	@Override
+	protected Set<EnvironmentTestCaseConfiguration> getTestConfigurations() {
+		return EnvironmentTestCaseConfiguration.builder(super.getTestConfigurations())
+				.setEnvironmentStorageDirectory(null).build();
+	}
+
+	@Override
+	protected void runTestImpl() throws Throwable {
+		UUID privarerepouuid = PRIVATE_REPO_UUIDS[invocationId.getAndIncrement()];
+		nm = new NestMetricImplementation();
+		TestFlag.set(nm);
+		System.clearProperty(PROPERTY_NAME);
+
+		Path bundleoutdir = getBuildDirectory().resolve("bundleout");
+		Path workdir = getWorkingDirectory();
+
+		TreeMap<String, Set<Class<?>>> bundleclasses = TestUtils.<String, Set<Class<?>>>treeMapBuilder()//
+				.put("simple.bundle-v1", ObjectUtils.newHashSet(SimpleTask.class))//
+				.build();
+
+		parameters.setRepositoryConfiguration(
+				NestExecutionTestUtils.createPrivateRepositoryConfiguration(testParameters, privarerepouuid));
+		TreeMap<String, String> userparams = new TreeMap<>();
+		userparams.put("nest.server.offline", "true");
+		userparams.put("nest.params.bundles",
+				NestIntegrationTestUtils.createParameterBundlesParameter(bundleclasses.keySet(), bundleoutdir));
+
+		NestIntegrationTestUtils.createAllJarsFromDirectoriesWithClasses(LocalFileProvider.getInstance(),
+				SakerPath.valueOf(workdir).resolve("bundles"), bundleoutdir, bundleclasses);
+
+		runBuild(userparams, "a");
+		assertEquals(System.clearProperty(PROPERTY_NAME), "hello");
+		Object storagea = nm.assertCheckout(false);
+
+		//same configuration, the storage is reused
+		runBuild(userparams, "a");
+		assertEmpty(getMetric().getRunTaskIdFactories());
+		assertTrue(nm.assertCheckout(true) == storagea, "Not reused.");
+
+		//different configuration, a new storage is used, and the previous one is kept
+		runBuild(userparams, "b");
+		Object storageb = nm.assertCheckout(false);
+		assertTrue(storageb != storagea, "Reused.");
+
+		runBuild(userparams, "a");
+		assertTrue(nm.assertCheckout(true) == storagea, "Not reused.");
+		assertEmpty(nm.evicted);
+
+		//the least recently used idle storages are evicted when there are too many of them
+		for (int i = 0; i < 4; i++) {
+			runBuild(userparams, "c" + i);
+			nm.assertCheckout(false);
+		}
+		assertEquals(nm.evicted, Arrays.asList(storageb, storagea));
+		nm.evicted.clear();
+
+		runBuild(userparams, "a");
+		assertTrue(nm.assertCheckout(false) != storagea, "Reused.");
+		//the oldest of the 4 other idle storages are evicted
+		assertEquals(nm.evicted.size(), 1);
+		nm.evicted.clear();
+
+		//the storages are not cached if turned off
+		TreeMap<String, String> uncachedparams = new TreeMap<>(userparams);
+		uncachedparams.put(USER_PARAMETER_STORAGE_CACHE, "false");
+		runBuild(uncachedparams, "a");
+		Object uncachedstorage = nm.assertCheckout(false);
+		runBuild(uncachedparams, "a");
+		assertTrue(nm.assertCheckout(false) != uncachedstorage, "Reused.");
+		assertEmpty(nm.evicted);
+
+		//the idle storages are evicted after the timeout
+		nm.idleEvictionMillis = 0;
+		runBuild(userparams, "d");
+		Object storaged = nm.assertCheckout(false);
+		runBuild(userparams, "d");
+		assertTrue(nm.assertCheckout(false) != storaged, "Reused.");
+		assertTrue(nm.evicted.contains(storaged), "Not evicted.");
+	}
+
+	private void runBuild(TreeMap<String, String> userparams, String config) throws Throwable {
+		TreeMap<String, String> params = new TreeMap<>(userparams);
+		params.put(USER_PARAMETER_CONFIG, config);
+		parameters.setUserParameters(params);
+		runScriptTask("build");
+	}
+
+	private final class NestMetricImplementation implements NestMetric {
+		protected final List<Object> checkouts = Collections.synchronizedList(new ArrayList<>());
+		protected final List<Boolean> checkoutReuses = Collections.synchronizedList(new ArrayList<>());
+		protected final List<Object> evicted = Collections.synchronizedList(new ArrayList<>());
+		protected volatile Long idleEvictionMillis;
+
+		@Override
+		public boolean isConfiguredStorageCacheEnabled() {
+			return true;
+		}
+
+		@Override
+		public void configuredStorageCacheCheckout(Object configuredstorage, boolean reused) {
+			checkouts.add(configuredstorage);
+			checkoutReuses.add(reused);
+		}
+
+		@Override
+		public void configuredStorageCacheEvicted(Object configuredstorage) {
+			evicted.add(configuredstorage);
+		}
+
+		@Override
+		public long overrideConfiguredStorageCacheIdleEvictionMillis(long millis) {
+			Long override = idleEvictionMillis;
+			return override == null ? millis : override;
+		}
+
+		protected Object assertCheckout(boolean reused) {
+			assertEquals(checkouts.size(), 1, "checkouts: " + checkouts);
+			assertEquals(checkoutReuses.get(0), reused);
+			Object result = checkouts.get(0);
+			checkouts.clear();
+			checkoutReuses.clear();
+			return result;
+		}
+	}
+}
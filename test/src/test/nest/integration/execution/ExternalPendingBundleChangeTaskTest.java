@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package test.nest.integration.execution;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import saker.build.file.path.SakerPath;
+import saker.build.file.provider.LocalFileProvider;
+import saker.build.runtime.execution.ExecutionContext;
+import saker.build.task.ParameterizableTask;
+import saker.build.task.Task;
+import saker.build.task.TaskContext;
+import saker.build.task.TaskFactory;
+import saker.build.thirdparty.saker.util.ObjectUtils;
+import testing.saker.SakerTest;
+import testing.saker.build.tests.CollectingMetricEnvironmentTestCase;
+import testing.saker.build.tests.EnvironmentTestCaseConfiguration;
+import testing.saker.build.tests.TestUtils;
+import testing.saker.nest.util.NestIntegrationTestUtils;
+
+/**
+ * Tests that the bundles which are added to the pending directory of the local storage by others (e.g. a different
+ * process) are detected by the next build right away.
+ */
+@SakerTest
+public class ExternalPendingBundleChangeTaskTest extends CollectingMetricEnvironmentTestCase {
+	//just a random uuid
+	private static final String EXPORTEDTASK_PROPERTY_NAME = "3e7b91c4-0d5a-4f26-8a1e-6c2f4b9d7e03";
+
+	private static final Pattern PATTERN_PENDING_FILE_NAME = Pattern
+			.compile("exported\\.bundle-v1\\.b([1-9a-fA-F][0-9a-fA-F]*)\\.jar");
+
+	public static class ExportedTask implements TaskFactory<String>, ParameterizableTask<String>, Externalizable {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public Task<? extends String> createTask(ExecutionContext executioncontext) {
+			return this;
+		}
+
+		@Override
+		public int hashCode() {
+			return getClass().hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return ObjectUtils.isSameClass(this, obj);
+		}
+
+		@Override
+		public void writeExternal(ObjectOutput out) throws IOException {
+		}
+
+		@Override
+		public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		}
+
+		@Override
+		public String run(TaskContext taskcontext) throws Exception {
+			try {
+				Class.forName("test.nest.integration.execution.ExternalPendingBundleChangeTaskTest$AdditionClass",
+						false, ExportedTask.class.getClassLoader());
+				try {
+					Class.forName(
+							"test.nest.integration.execution.ExternalPendingBundleChangeTaskTest$AdditionClassV3",
+							false, ExportedTask.class.getClassLoader());
+					System.setProperty(EXPORTEDTASK_PROPERTY_NAME, "exported3");
+				} catch (ClassNotFoundException e) {
+					System.setProperty(EXPORTEDTASK_PROPERTY_NAME, "exported2");
+				}
+			} catch (ClassNotFoundException e) {
+				System.setProperty(EXPORTEDTASK_PROPERTY_NAME, "exported");
+			}
+
+			return "export";
+		}
+	}
+
+	public static class AdditionClass {
+	}
+
+	public static class AdditionClassV3 {
+	}
+
+	private static final UUID[] PRIVATE_REPO_UUIDS = { UUID.fromString("d4f1a6b2-93c7-4e58-a0b1-2f8e7c6d5a34"),
+			UUID.fromString("61c9e3f0-7a2b-4d85-9e14-b3a0c5d8f279") };
+	private AtomicInteger invocationId = new AtomicInteger();
+
+	@Override
+	protected Set<EnvironmentTestCaseConfiguration> getTestConfigurations() {
+		return EnvironmentTestCaseConfiguration.builder(super.getTestConfigurations())
+				.setEnvironmentStorageDirectory(null).build();
+	}
+
+	@Override
+	protected void runTestImpl() throws Throwable {
+		UUID privarerepouuid = PRIVATE_REPO_UUIDS[invocationId.getAndIncrement()];
+
+		Path bundleoutdir = getBuildDirectory().resolve("bundleout");
+		Path workdir = getWorkingDirectory();
+
+		TreeMap<String, Set<Class<?>>> bundleclasses = TestUtils.<String, Set<Class<?>>>treeMapBuilder()//
+				.put("simple.bundle-v1", ObjectUtils.newHashSet(LocalBundleInstallingTask.class))//
+				.build();
+
+		parameters.setRepositoryConfiguration(
+				NestExecutionTestUtils.createPrivateRepositoryConfiguration(testParameters, privarerepouuid));
+		TreeMap<String, String> userparams = new TreeMap<>();
+		userparams.put("nest.server.offline", "true");
+		userparams.put("nest.params.bundles",
+				NestIntegrationTestUtils.createParameterBundlesParameter(bundleclasses.keySet(), bundleoutdir));
+		parameters.setUserParameters(userparams);
+
+		//clear the repository storage directory for a clean state
+		Path repostoragedir = environment.getRepositoryManager().getRepositoryStorageDirectory(
+				parameters.getRepositoryConfiguration().getRepositories().iterator().next().getClassPathLocation());
+		LocalFileProvider.getInstance().clearDirectoryRecursively(repostoragedir);
+
+		NestIntegrationTestUtils.createAllJarsFromDirectoriesWithClasses(LocalFileProvider.getInstance(),
+				SakerPath.valueOf(workdir).resolve("bundles"), bundleoutdir, bundleclasses);
+
+		NestIntegrationTestUtils.exportBundleBase64ToUserParameter(parameters, workdir,
+				LocalBundleInstallingTask.EXPORT_JAR_BASE64_USER_PARAMETER, "exported.bundle-v1",
+				ObjectUtils.newHashSet(ExportedTask.class));
+
+		runScriptTask("export");
+
+		runScriptTask("use");
+		assertEquals(System.clearProperty(EXPORTEDTASK_PROPERTY_NAME), "exported");
+
+		Path pendingdir = findPendingDirectory(repostoragedir);
+
+		//add the new versions to the pending directory directly, the same way as other processes would
+		//    the builds are run right after, so the changes must be detected without any delay
+		addPendingBundle(pendingdir, workdir, ObjectUtils.newHashSet(ExportedTask.class, AdditionClass.class));
+		runScriptTask("use");
+		assertEquals(System.clearProperty(EXPORTEDTASK_PROPERTY_NAME), "exported2");
+
+		addPendingBundle(pendingdir, workdir,
+				ObjectUtils.newHashSet(ExportedTask.class, AdditionClass.class, AdditionClassV3.class));
+		runScriptTask("use");
+		assertEquals(System.clearProperty(EXPORTEDTASK_PROPERTY_NAME), "exported3");
+
+		//no changes
+		runScriptTask("use");
+		assertEquals(System.clearProperty(EXPORTEDTASK_PROPERTY_NAME), null);
+	}
+
+	private static Path findPendingDirectory(Path repostoragedir) throws IOException {
+		//the pending directory is next to the bundles directory that contains the info file
+		List<Path> found = new ArrayList<>();
+		try (Stream<Path> files = Files.walk(repostoragedir)) {
+			files.filter(p -> p.getFileName().toString().equals("storage.info"))
+					.forEach(p -> found.add(p.getParent().resolveSibling("pending")));
+		}
+		assertEquals(found.size(), 1, "local storages: " + found);
+		Path result = found.get(0);
+		Files.createDirectories(result);
+		return result;
+	}
+
+	private static void addPendingBundle(Path pendingdir, Path workdir, Set<Class<?>> classes) throws IOException {
+		int maxversion = 0;
+		try (Stream<Path> files = Files.list(pendingdir)) {
+			for (Path p : (Iterable<Path>) files::iterator) {
+				Matcher matcher = PATTERN_PENDING_FILE_NAME.matcher(p.getFileName().toString());
+				if (matcher.matches()) {
+					maxversion = Math.max(maxversion, Integer.parseUnsignedInt(matcher.group(1), 16));
+				}
+			}
+		}
+		Path tempfile = pendingdir.resolveSibling("test-" + UUID.randomUUID() + ".jar");
+		try (OutputStream os = Files.newOutputStream(tempfile)) {
+			NestIntegrationTestUtils
+					.createStreamWritableJarFromDirectoryWithClasses(LocalFileProvider.getInstance(),
+							SakerPath.valueOf(workdir.resolve("bundles").resolve("exported.bundle-v1")), classes)
+					.writeTo(os);
+		}
+		Files.move(tempfile,
+				pendingdir.resolve("exported.bundle-v1.b" + Integer.toHexString(maxversion + 1) + ".jar"),
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+}
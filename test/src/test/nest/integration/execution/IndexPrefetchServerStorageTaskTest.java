@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package test.nest.integration.execution;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.net.HttpURLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import saker.build.file.path.SakerPath;
+import saker.build.file.provider.LocalFileProvider;
+import saker.build.runtime.execution.ExecutionContext;
+import saker.build.task.ParameterizableTask;
+import saker.build.task.Task;
+import saker.build.task.TaskContext;
+import saker.build.task.TaskFactory;
+import saker.build.thirdparty.saker.util.ObjectUtils;
+import test.nest.util.BasicServerNestMetric;
+import testing.saker.SakerTest;
+import testing.saker.build.tests.CollectingMetricEnvironmentTestCase;
+import testing.saker.build.tests.EnvironmentTestCaseConfiguration;
+import testing.saker.build.tests.TestUtils;
+import testing.saker.nest.NestMetric;
+import testing.saker.nest.TestFlag;
+import testing.saker.nest.util.NestIntegrationTestUtils;
+
+/**
+ * Tests that the sub indexes of an index are loaded concurrently.
+ * <p>
+ * The request for the first sub index is blocked until the second one is requested by the prefetching.
+ */
+@SakerTest
+public class IndexPrefetchServerStorageTaskTest extends CollectingMetricEnvironmentTestCase {
+	//just a random uuid
+	private static final String PROPERTY_NAME = "6e0c1a5f-3b9e-4f6a-a1d2-8c74e51b0f93";
+
+	private static final String TASK_INDEX_A_URL = "https://testurl/tasks/index/a";
+	private static final String TASK_INDEX_B_URL = "https://testurl/tasks/index/b";
+
+	public static class SimpleTask implements TaskFactory<String>, ParameterizableTask<String>, Externalizable {
+		private static final long serialVersionUID = 1L;
+
+		public SimpleTask() {
+		}
+
+		@Override
+		public String run(TaskContext taskcontext) throws Exception {
+			System.setProperty(PROPERTY_NAME, "hello");
+			return "hello";
+		}
+
+		@Override
+		public Task<? extends String> createTask(ExecutionContext executioncontext) {
+			return this;
+		}
+
+		@Override
+		public int hashCode() {
+			return getClass().hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return ObjectUtils.isSameClass(this, obj);
+		}
+
+		@Override
+		public void writeExternal(ObjectOutput out) throws IOException {
+		}
+
+		@Override
+		public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		}
+	}
+
+	private Path bundleOutDir = getBuildDirectory().resolve("bundleout");
+	private NestMetricImplementation nm = new NestMetricImplementation();
+
+	@Override
+	public void executeRunning() throws Exception {
+		TestFlag.set(nm);
+		super.executeRunning();
+	}
+
+	@Override
+	protected Set<EnvironmentTestCaseConfiguration> getTestConfigurations() {
+		return EnvironmentTestCaseConfiguration.builder(super.getTestConfigurations())
+				.setEnvironmentStorageDirectory(null).build();
+	}
+
+	@Override
+	protected void runTestImpl() throws Throwable {
+		TreeMap<String, Set<Class<?>>> bundleclasses = TestUtils.<String, Set<Class<?>>>treeMapBuilder()//
+				.put("simple.bundle-v1", ObjectUtils.newHashSet(SimpleTask.class))//
+				.build();
+		System.clearProperty(PROPERTY_NAME);
+
+		parameters.setRepositoryConfiguration(NestExecutionTestUtils.createRepositoryConfiguration(testParameters));
+		TreeMap<String, String> userparams = new TreeMap<>();
+		userparams.put("nest.repository.storage.configuration", "[:server]");
+		userparams.put("nest.server.url", "https://testurl");
+		parameters.setUserParameters(userparams);
+
+		//clear the repository storage directory for a clean state
+		LocalFileProvider.getInstance()
+				.clearDirectoryRecursively(environment.getRepositoryManager().getRepositoryStorageDirectory(parameters
+						.getRepositoryConfiguration().getRepositories().iterator().next().getClassPathLocation()));
+
+		Path workdir = getWorkingDirectory();
+		NestIntegrationTestUtils.createAllJarsFromDirectoriesWithClasses(LocalFileProvider.getInstance(),
+				SakerPath.valueOf(workdir).resolve("bundles"), bundleOutDir, bundleclasses);
+
+		runScriptTask("build");
+		assertEquals(System.clearProperty(PROPERTY_NAME), "hello");
+
+		assertTrue(nm.subIndexPrefetched.getCount() == 0, "Sub index was not prefetched.");
+		Thread athread = nm.requestThreads.get(TASK_INDEX_A_URL);
+		Thread bthread = nm.requestThreads.get(TASK_INDEX_B_URL);
+		assertNonNull(athread);
+		assertNonNull(bthread);
+		assertTrue(athread != bthread, "Sub indexes were loaded on the same thread.");
+	}
+
+	private final class NestMetricImplementation extends BasicServerNestMetric {
+		protected final CountDownLatch subIndexPrefetched = new CountDownLatch(1);
+		protected final Map<String, Thread> requestThreads = new ConcurrentHashMap<>();
+
+		@Override
+		public boolean allowAsyncServerRequests() {
+			return true;
+		}
+
+		@Override
+		public Integer getServerRequestResponseCode(String method, String requesturl) throws IOException {
+			switch (requesturl) {
+				case "https://testurl/bundle/download/simple.bundle-v1":
+				case "https://testurl/tasks/index":
+				case "https://testurl/bundles/index": {
+					return HttpURLConnection.HTTP_OK;
+				}
+				case TASK_INDEX_A_URL:
+				case TASK_INDEX_B_URL: {
+					requestThreads.putIfAbsent(requesturl, Thread.currentThread());
+					return HttpURLConnection.HTTP_OK;
+				}
+				default: {
+					break;
+				}
+			}
+			return super.getServerRequestResponseCode(method, requesturl);
+		}
+
+		@Override
+		public InputStream getServerRequestResponseStream(String method, String requesturl) throws IOException {
+			switch (requesturl) {
+				case "https://testurl/bundle/download/simple.bundle-v1": {
+					return Files.newInputStream(bundleOutDir.resolve("simple.bundle-v1.jar"));
+				}
+				case "https://testurl/tasks/index": {
+					return Files.newInputStream(getWorkingDirectory().resolve("taskindex/index.json"));
+				}
+				case TASK_INDEX_A_URL: {
+					try {
+						//wait for the prefetching of the other sub index to start
+						subIndexPrefetched.await(60, TimeUnit.SECONDS);
+					} catch (InterruptedException e) {
+						throw new IOException(e);
+					}
+					return Files.newInputStream(getWorkingDirectory().resolve("taskindex/a.json"));
+				}
+				case TASK_INDEX_B_URL: {
+					subIndexPrefetched.countDown();
+					return Files.newInputStream(getWorkingDirectory().resolve("taskindex/b.json"));
+				}
+				case "https://testurl/bundles/index": {
+					return Files.newInputStream(getWorkingDirectory().resolve("bundlesindex/index.json"));
+				}
+				default: {
+					break;
+				}
+			}
+			return super.getServerRequestResponseStream(method, requesturl);
+		}
+	}
+}
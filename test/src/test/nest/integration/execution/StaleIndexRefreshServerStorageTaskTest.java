@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package test.nest.integration.execution;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.net.HttpURLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import saker.build.file.path.SakerPath;
+import saker.build.file.provider.LocalFileProvider;
+import saker.build.runtime.execution.ExecutionContext;
+import saker.build.task.ParameterizableTask;
+import saker.build.task.Task;
+import saker.build.task.TaskContext;
+import saker.build.task.TaskFactory;
+import saker.build.thirdparty.saker.util.ObjectUtils;
+import saker.nest.ConfiguredRepositoryStorage;
+import saker.nest.bundle.storage.ServerBundleStorageView;
+import test.nest.util.BasicServerNestMetric;
+import testing.saker.SakerTest;
+import testing.saker.build.tests.CollectingMetricEnvironmentTestCase;
+import testing.saker.build.tests.EnvironmentTestCaseConfiguration;
+import testing.saker.build.tests.TestUtils;
+import testing.saker.nest.TestFlag;
+import testing.saker.nest.util.NestIntegrationTestUtils;
+
+/**
+ * Tests that an expired index file is used in the stale grace period, and it is refreshed in the background.
+ * <p>
+ * The refreshing request is blocked until the build finishes.
+ */
+@SakerTest
+public class StaleIndexRefreshServerStorageTaskTest extends CollectingMetricEnvironmentTestCase {
+	//just a random uuid
+	private static final String PROPERTY_NAME = "f1a3c9e2-5d47-4b8e-9c06-2e7b4d8a1f35";
+
+	private static final long EXPIRED_INDEX_AGE_MILLIS = TimeUnit.HOURS.toMillis(4);
+
+	public static class SimpleTask implements TaskFactory<String>, ParameterizableTask<String>, Externalizable {
+		private static final long serialVersionUID = 1L;
+
+		public SimpleTask() {
+		}
+
+		@Override
+		public String run(TaskContext taskcontext) throws Exception {
+			System.setProperty(PROPERTY_NAME, "hello");
+			return "hello";
+		}
+
+		@Override
+		public Task<? extends String> createTask(ExecutionContext executioncontext) {
+			return this;
+		}
+
+		@Override
+		public int hashCode() {
+			return getClass().hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return ObjectUtils.isSameClass(this, obj);
+		}
+
+		@Override
+		public void writeExternal(ObjectOutput out) throws IOException {
+		}
+
+		@Override
+		public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		}
+	}
+
+	private Path bundleOutDir = getBuildDirectory().resolve("bundleout");
+	private NestMetricImplementation nm = new NestMetricImplementation();
+
+	@Override
+	public void executeRunning() throws Exception {
+		TestFlag.set(nm);
+		super.executeRunning();
+	}
+
+	@Override
+	protected Set<EnvironmentTestCaseConfiguration> getTestConfigurations() {
+		return EnvironmentTestCaseConfiguration.builder(super.getTestConfigurations())
+				.setEnvironmentStorageDirectory(null).build();
+	}
+
+	@Override
+	protected void runTestImpl() throws Throwable {
+		TreeMap<String, Set<Class<?>>> bundleclasses = TestUtils.<String, Set<Class<?>>>treeMapBuilder()//
+				.put("simple.bundle-v1", ObjectUtils.newHashSet(SimpleTask.class))//
+				.build();
+		System.clearProperty(PROPERTY_NAME);
+
+		parameters.setRepositoryConfiguration(NestExecutionTestUtils.createRepositoryConfiguration(testParameters));
+		TreeMap<String, String> userparams = new TreeMap<>();
+		userparams.put("nest.repository.storage.configuration", "[:server]");
+		userparams.put("nest.server.url", "https://testurl");
+		userparams.put("nest.server." + ServerBundleStorageView.PARAMETER_INDEX_STALE_GRACE_PERIOD,
+				Long.toString(TimeUnit.DAYS.toSeconds(1)));
+		parameters.setUserParameters(userparams);
+
+		Path repostoragedir = environment.getRepositoryManager().getRepositoryStorageDirectory(
+				parameters.getRepositoryConfiguration().getRepositories().iterator().next().getClassPathLocation());
+		//clear the repository storage directory for a clean state
+		LocalFileProvider.getInstance().clearDirectoryRecursively(repostoragedir);
+
+		Path workdir = getWorkingDirectory();
+		NestIntegrationTestUtils.createAllJarsFromDirectoriesWithClasses(LocalFileProvider.getInstance(),
+				SakerPath.valueOf(workdir).resolve("bundles"), bundleOutDir, bundleclasses);
+
+		//place an expired task index file in the storage
+		Path taskindexfile = repostoragedir.resolve(ServerBundleStorageView.DEFAULT_STORAGE_NAME)
+				.resolve(ConfiguredRepositoryStorage.getSubDirectoryNameForServerStorage("https://testurl"))
+				.resolve("index/tasks/index.json");
+		Files.createDirectories(taskindexfile.getParent());
+		Files.copy(workdir.resolve("taskindex/index.json"), taskindexfile);
+		long expiredmodtime = System.currentTimeMillis() - EXPIRED_INDEX_AGE_MILLIS;
+		Files.setLastModifiedTime(taskindexfile, FileTime.fromMillis(expiredmodtime));
+
+		runScriptTask("build");
+		assertEquals(System.clearProperty(PROPERTY_NAME), "hello");
+
+		assertTrue(nm.refreshStarted.await(60, TimeUnit.SECONDS), "Index refresh not started.");
+		nm.buildFinished = true;
+		nm.refreshRelease.countDown();
+		assertTrue(nm.refreshFinished.await(60, TimeUnit.SECONDS), "Index refresh not finished.");
+		//the build shouldn't wait for the refresh
+		assertFalse(nm.refreshTimedOut);
+
+		//wait for the index file to be updated by the background refresh
+		long endnanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+		while (Files.getLastModifiedTime(taskindexfile).toMillis() == expiredmodtime) {
+			if (System.nanoTime() > endnanos) {
+				fail("Index file was not refreshed.");
+			}
+			Thread.sleep(50);
+		}
+	}
+
+	private final class NestMetricImplementation extends BasicServerNestMetric {
+		protected final CountDownLatch refreshStarted = new CountDownLatch(1);
+		protected final CountDownLatch refreshRelease = new CountDownLatch(1);
+		protected final CountDownLatch refreshFinished = new CountDownLatch(1);
+		protected volatile boolean buildFinished;
+		protected volatile boolean refreshTimedOut;
+
+		@Override
+		public boolean allowAsyncServerRequests() {
+			return true;
+		}
+
+		@Override
+		public Integer getServerRequestResponseCode(String method, String requesturl) throws IOException {
+			switch (requesturl) {
+				case "https://testurl/bundle/download/simple.bundle-v1":
+				case "https://testurl/tasks/index":
+				case "https://testurl/bundles/index": {
+					return HttpURLConnection.HTTP_OK;
+				}
+				default: {
+					break;
+				}
+			}
+			return super.getServerRequestResponseCode(method, requesturl);
+		}
+
+		@Override
+		public InputStream getServerRequestResponseStream(String method, String requesturl) throws IOException {
+			switch (requesturl) {
+				case "https://testurl/bundle/download/simple.bundle-v1": {
+					return Files.newInputStream(bundleOutDir.resolve("simple.bundle-v1.jar"));
+				}
+				case "https://testurl/tasks/index": {
+					refreshStarted.countDown();
+					try {
+						//released after the build finished
+						if (!refreshRelease.await(60, TimeUnit.SECONDS) || !buildFinished) {
+							refreshTimedOut = true;
+						}
+					} catch (InterruptedException e) {
+						throw new IOException(e);
+					} finally {
+						refreshFinished.countDown();
+					}
+					return Files.newInputStream(getWorkingDirectory().resolve("taskindex/index.json"));
+				}
+				case "https://testurl/bundles/index": {
+					return Files.newInputStream(getWorkingDirectory().resolve("bundlesindex/index.json"));
+				}
+				default: {
+					break;
+				}
+			}
+			return super.getServerRequestResponseStream(method, requesturl);
+		}
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package test.nest.unit;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+
+import saker.build.thirdparty.saker.util.io.ByteArrayRegion;
+import saker.build.thirdparty.saker.util.io.UnsyncByteArrayInputStream;
+import saker.nest.bundle.ArchiveEntryBytesCache;
+import saker.nest.bundle.ExternalArchive;
+import saker.nest.bundle.ExternalArchiveKey;
+import testing.saker.SakerTest;
+import testing.saker.SakerTestCase;
+
+@SakerTest
+public class ArchiveEntryBytesCacheUnitTest extends SakerTestCase {
+	private static final int ENTRY_SIZE = 50;
+
+	@Override
+	public void runTest(Map<String, String> parameters) throws Throwable {
+		//the maximum entry size is 100
+		ArchiveEntryBytesCache cache = new ArchiveEntryBytesCache(800);
+		TestArchive a = new TestArchive(new byte[] { 1 });
+		TestArchive samehash = new TestArchive(new byte[] { 1 });
+		TestArchive otherhash = new TestArchive(new byte[] { 2 });
+		for (int i = 0; i < 20; i++) {
+			a.entries.put("e" + i, new byte[ENTRY_SIZE]);
+			samehash.entries.put("e" + i, new byte[ENTRY_SIZE]);
+			otherhash.entries.put("e" + i, new byte[ENTRY_SIZE]);
+		}
+		a.entries.put("large", new byte[101]);
+
+		ByteArrayRegion e0 = cache.getEntryBytes(a, "e0");
+		assertStatistics(cache, 0, 1);
+		assertTrue(cache.getEntryBytes(a, "e0") == e0);
+		assertStatistics(cache, 1, 1);
+		assertEquals(a.openCount, 1);
+
+		//shared between archives with the same hash
+		assertTrue(cache.getEntryBytes(samehash, "e0") == e0);
+		assertStatistics(cache, 2, 1);
+		assertEquals(samehash.openCount, 0);
+
+		cache.getEntryBytes(otherhash, "e0");
+		assertStatistics(cache, 2, 2);
+		assertEquals(otherhash.openCount, 1);
+
+		//too large to be cached
+		cache.getEntryBytes(a, "large");
+		cache.getEntryBytes(a, "large");
+		assertStatistics(cache, 2, 4);
+		assertEquals(a.openCount, 3);
+
+		//exceed the maximum size, the least recently used entries are evicted
+		for (int i = 1; i < 20; i++) {
+			cache.getEntryBytes(a, "e" + i);
+		}
+		assertStatistics(cache, 2, 23);
+		cache.getEntryBytes(a, "e19");
+		assertStatistics(cache, 3, 23);
+		cache.getEntryBytes(a, "e0");
+		assertStatistics(cache, 3, 24);
+
+		cache.clear();
+		cache.getEntryBytes(a, "e19");
+		assertStatistics(cache, 3, 25);
+	}
+
+	private static void assertStatistics(ArchiveEntryBytesCache cache, long hits, long misses) {
+		assertEquals(cache.getHitCount(), hits);
+		assertEquals(cache.getMissCount(), misses);
+	}
+
+	private static class TestArchive implements ExternalArchive {
+		protected final byte[] hash;
+		protected final NavigableMap<String, byte[]> entries = new TreeMap<>();
+		protected int openCount;
+
+		public TestArchive(byte[] hash) {
+			this.hash = hash;
+		}
+
+		@Override
+		public ExternalArchiveKey getArchiveKey() {
+			return null;
+		}
+
+		@Override
+		public byte[] getHash() {
+			return hash.clone();
+		}
+
+		@Override
+		public NavigableSet<String> getEntryNames() {
+			return entries.navigableKeySet();
+		}
+
+		@Override
+		public InputStream openEntry(String name) throws NullPointerException, IOException {
+			byte[] bytes = entries.get(name);
+			if (bytes == null) {
+				throw new IOException("Entry not found: " + name);
+			}
+			++openCount;
+			return new UnsyncByteArrayInputStream(bytes);
+		}
+	}
+}
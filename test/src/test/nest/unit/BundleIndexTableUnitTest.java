@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package test.nest.unit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import saker.nest.bundle.BundleIdentifier;
+import saker.nest.bundle.storage.BundleIndexTable;
+import testing.saker.SakerTest;
+import testing.saker.SakerTestCase;
+
+@SakerTest
+public class BundleIndexTableUnitTest extends SakerTestCase {
+	@Override
+	public void runTest(Map<String, String> parameters) throws Throwable {
+		TreeMap<String, Set<BundleIdentifier>> data = new TreeMap<>();
+		data.put("first", bundles("first-v1", "first-v2", "first-q-v1"));
+		data.put("second", bundles("second-v1"));
+		data.put("third.empty", bundles());
+		data.put("\u00e1ccent", bundles("accent-v1"));
+
+		BundleIndexTable table = BundleIndexTable.read(ByteBuffer.wrap(write(data)));
+		assertEquals(table.size(), data.size());
+		assertEquals(table, data);
+		assertEquals(new ArrayList<>(table.keySet()), new ArrayList<>(data.keySet()));
+		assertEquals(table.get("first"), bundles("first-v1", "first-v2", "first-q-v1"));
+		assertEquals(table.get("third.empty"), bundles());
+		assertEquals(table.get("\u00e1ccent"), bundles("accent-v1"));
+		assertEquals(table.get("nonexistent"), null);
+		assertEquals(table.get(""), null);
+		assertEquals(table.get("zzz"), null);
+		assertTrue(!table.containsKey("nonexistent"));
+		assertTrue(table.containsKey("second"));
+
+		//the value sets are views that behave the same way as the written sets
+		NavigableSet<BundleIdentifier> firstvalues = table.get("first");
+		NavigableSet<BundleIdentifier> expectedfirst = bundles("first-v1", "first-v2", "first-q-v1");
+		assertEquals(new ArrayList<>(firstvalues), new ArrayList<>(expectedfirst));
+		assertEquals(new ArrayList<>(firstvalues.descendingSet()), new ArrayList<>(expectedfirst.descendingSet()));
+		assertEquals(firstvalues.first(), expectedfirst.first());
+		assertEquals(firstvalues.last(), expectedfirst.last());
+		for (BundleIdentifier probe : bundles("first-v1", "first-v1.5", "first-q-v1", "a-v1", "zzz-v1")) {
+			assertEquals(firstvalues.contains(probe), expectedfirst.contains(probe));
+			assertEquals(firstvalues.lower(probe), expectedfirst.lower(probe));
+			assertEquals(firstvalues.floor(probe), expectedfirst.floor(probe));
+			assertEquals(firstvalues.ceiling(probe), expectedfirst.ceiling(probe));
+			assertEquals(firstvalues.higher(probe), expectedfirst.higher(probe));
+			assertEquals(firstvalues.headSet(probe, true), expectedfirst.headSet(probe, true));
+			assertEquals(firstvalues.tailSet(probe, false), expectedfirst.tailSet(probe, false));
+		}
+		assertException(UnsupportedOperationException.class, () -> firstvalues.add(BundleIdentifier.valueOf("x-v1")));
+		assertTrue(table.get("third.empty").isEmpty());
+
+		BundleIndexTable empty = BundleIndexTable.read(ByteBuffer.wrap(write(Collections.emptyMap())));
+		assertTrue(empty.isEmpty());
+		assertEquals(empty.get("first"), null);
+
+		//the table starts at the current position of the buffer
+		byte[] tablebytes = write(data);
+		ByteBuffer offsetbuf = ByteBuffer.allocate(tablebytes.length + 3);
+		offsetbuf.position(3);
+		offsetbuf.put(tablebytes);
+		offsetbuf.position(3);
+		assertEquals(BundleIndexTable.read(offsetbuf), data);
+
+		LinkedHashMap<String, Set<BundleIdentifier>> unordered = new LinkedHashMap<>();
+		unordered.put("b", bundles("b-v1"));
+		unordered.put("a", bundles("a-v1"));
+		assertException(IllegalArgumentException.class, () -> write(unordered));
+
+		//the keys are ordered by their UTF-8 bytes, which differs from the natural order for supplementary characters
+		TreeMap<String, Set<BundleIdentifier>> supplementary = new TreeMap<>();
+		supplementary.put("\ud83d\ude00", bundles("a-v1"));
+		supplementary.put("\uffee", bundles("b-v1"));
+		assertException(IllegalArgumentException.class, () -> write(supplementary));
+
+		Map<String, Set<BundleIdentifier>> unorderedvalues = Collections.singletonMap("a", new LinkedHashSet<>(
+				Arrays.asList(BundleIdentifier.valueOf("a-v2"), BundleIdentifier.valueOf("a-v1"))));
+		assertException(IllegalArgumentException.class, () -> write(unorderedvalues));
+
+		assertException(IOException.class,
+				() -> BundleIndexTable.read(ByteBuffer.wrap(Arrays.copyOf(tablebytes, tablebytes.length - 1))));
+		assertException(IOException.class, () -> BundleIndexTable.read(ByteBuffer.wrap(new byte[2])));
+
+		//the bundle identifiers are validated when read, so the binary file is considered unreadable
+		//    the last bytes of the data are the bundle identifiers of the last key
+		byte[] validvalues = write(Collections.singletonMap("a", bundles("a-v1", "a-v2")));
+		byte[] invalidvalue = validvalues.clone();
+		invalidvalue[invalidvalue.length - 1] = ' ';
+		assertException(IOException.class, () -> BundleIndexTable.read(ByteBuffer.wrap(invalidvalue)));
+		byte[] unorderedvaluebytes = validvalues.clone();
+		unorderedvaluebytes[unorderedvaluebytes.length - 5] = '2';
+		unorderedvaluebytes[unorderedvaluebytes.length - 1] = '1';
+		assertException(IOException.class, () -> BundleIndexTable.read(ByteBuffer.wrap(unorderedvaluebytes)));
+	}
+
+	private static byte[] write(Map<String, ? extends Set<BundleIdentifier>> data) throws Exception {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(baos)) {
+			BundleIndexTable.write(data, out);
+		}
+		return baos.toByteArray();
+	}
+
+	private static NavigableSet<BundleIdentifier> bundles(String... ids) {
+		NavigableSet<BundleIdentifier> result = new TreeSet<>();
+		for (String id : ids) {
+			result.add(BundleIdentifier.valueOf(id));
+		}
+		return result;
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package test.nest.unit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+
+import saker.nest.bundle.CompactStringSet;
+import testing.saker.SakerTest;
+import testing.saker.SakerTestCase;
+
+@SakerTest
+public class CompactStringSetUnitTest extends SakerTestCase {
+	@Override
+	public void runTest(Map<String, String> parameters) throws Throwable {
+		List<String> elements = Arrays.asList("b/B.class", "a/A.class", "a/Ab.class", "a/A.class", "",
+				"META-INF/MANIFEST.MF", "\u00e1/C.class", "\ud83d\ude00.txt", "a/A");
+		TreeSet<String> expected = new TreeSet<>(elements);
+		CompactStringSet set = CompactStringSet.create(elements);
+
+		assertEquals(set, expected);
+		assertEquals(set.size(), expected.size());
+		assertEquals(new ArrayList<>(set), new ArrayList<>(expected));
+		assertEquals(toList(set.descendingIterator()), toList(expected.descendingIterator()));
+		assertEquals(new ArrayList<>(set.descendingSet()), new ArrayList<>(expected.descendingSet()));
+		assertEquals(set.first(), expected.first());
+		assertEquals(set.last(), expected.last());
+
+		List<String> probes = new ArrayList<>(expected);
+		probes.addAll(Arrays.asList("0", "a", "a/B.class", "zzz", "a/A.clas", "a/A.classs"));
+		for (String p : probes) {
+			assertEquals(set.contains(p), expected.contains(p));
+			assertEquals(set.lower(p), expected.lower(p));
+			assertEquals(set.floor(p), expected.floor(p));
+			assertEquals(set.ceiling(p), expected.ceiling(p));
+			assertEquals(set.higher(p), expected.higher(p));
+			assertEquals(set.headSet(p), expected.headSet(p));
+			assertEquals(set.headSet(p, true), expected.headSet(p, true));
+			assertEquals(set.tailSet(p), expected.tailSet(p));
+			assertEquals(set.tailSet(p, false), expected.tailSet(p, false));
+			for (String p2 : probes) {
+				if (p.compareTo(p2) > 0) {
+					continue;
+				}
+				assertEquals(set.subSet(p, p2), expected.subSet(p, p2));
+				assertEquals(set.subSet(p, false, p2, true), expected.subSet(p, false, p2, true));
+			}
+		}
+		NavigableSet<String> sub = set.subSet("a", true, "b", false);
+		assertEquals(sub, expected.subSet("a", true, "b", false));
+		assertEquals(sub.first(), "a/A");
+		assertEquals(sub.last(), "a/Ab.class");
+		assertTrue(!sub.contains("b/B.class"));
+		assertEquals(sub.higher("a/Ab.class"), null);
+		assertEquals(sub.tailSet("a/A.class", false), expected.subSet("a/A.class", false, "b", false));
+
+		assertTrue(!set.contains(null));
+		assertTrue(!set.contains(123));
+		assertException(UnsupportedOperationException.class, () -> set.add("x"));
+		assertException(UnsupportedOperationException.class, () -> set.pollFirst());
+		assertException(IllegalArgumentException.class, () -> set.subSet("b", "a"));
+
+		CompactStringSet empty = CompactStringSet.create(Collections.emptyList());
+		assertTrue(empty.isEmpty());
+		assertTrue(!empty.contains(""));
+		assertEquals(empty.floor("a"), null);
+		assertException(NoSuchElementException.class, () -> empty.first());
+		assertException(NoSuchElementException.class, () -> empty.iterator().next());
+	}
+
+	private static List<String> toList(Iterator<String> it) {
+		List<String> result = new ArrayList<>();
+		while (it.hasNext()) {
+			result.add(it.next());
+		}
+		return result;
+	}
+}
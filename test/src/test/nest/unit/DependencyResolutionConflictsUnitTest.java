@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package test.nest.unit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+
+import saker.build.thirdparty.saker.util.ImmutableUtils;
+import saker.nest.bundle.BundleDependency;
+import saker.nest.bundle.BundleDependencyInformation;
+import saker.nest.bundle.BundleDependencyList;
+import saker.nest.bundle.BundleIdentifier;
+import saker.nest.bundle.BundleInformation;
+import saker.nest.bundle.BundleKey;
+import saker.nest.bundle.SimpleBundleKey;
+import saker.nest.dependency.DependencyDomainResolutionResult;
+import saker.nest.dependency.DependencyUtils;
+import saker.nest.version.VersionRange;
+import testing.saker.SakerTest;
+import testing.saker.SakerTestCase;
+import testing.saker.nest.NestMetric;
+import testing.saker.nest.TestFlag;
+
+@SakerTest
+public class DependencyResolutionConflictsUnitTest extends SakerTestCase {
+	private static final NestMetric CONFLICTS_DISABLED_METRIC = new NestMetric() {
+		@Override
+		public boolean isDependencyResolutionConflictCacheEnabled() {
+			return false;
+		}
+	};
+
+	private Map<BundleIdentifier, List<Entry<BundleKey, Object>>> bundles;
+	private Map<BundleIdentifier, BundleDependencyInformation> dependencies;
+
+	@Override
+	public void runTest(Map<String, String> parameters) throws Throwable {
+		//the shared dependency of the last bundle conflicts with the first, so the versions of the last bundle are
+		//tried again after backtracking through the versions of the bundles between them
+		clear();
+		List<String> rootdeps = new ArrayList<>();
+		addDependency(rootdeps, "first", "[1.0)");
+		for (int i = 0; i < 6; i++) {
+			addDependency(rootdeps, "between" + i, "[1.0)");
+			addBundle("between" + i + "-v1.1");
+			addBundle("between" + i + "-v1.0");
+		}
+		addDependency(rootdeps, "last", "[1.0)");
+		addBundle("root-v1", rootdeps.toArray(new String[0]));
+		addBundle("first-v1.1");
+		addBundle("first-v1.0");
+		for (int v = 3; v >= 0; v--) {
+			addBundle("last-v1." + v, "chain0", "[1.0)");
+		}
+		for (int i = 0; i < 10; i++) {
+			addBundle("chain" + i + "-v1.0", "chain" + (i + 1), "[1.0)");
+		}
+		addBundle("chain10-v1.0", "first", "[1.0]");
+		assertSameResolution("root-v1");
+
+		clear();
+		addBundle("root-v1", "a", "[1.0)", "b", "[1.0)");
+		addBundle("a-v1.2", "c", "[1.2]");
+		addBundle("a-v1.1", "c", "[1.1]");
+		addBundle("a-v1.0", "c", "[1.0]");
+		addBundle("b-v1.1", "d", "[1.0)");
+		addBundle("b-v1.0", "c", "[1.0]");
+		addBundle("c-v1.2");
+		addBundle("c-v1.1");
+		addBundle("c-v1.0");
+		addBundle("d-v1.0", "c", "[1.0]");
+		assertSameResolution("root-v1");
+
+		for (long seed = 0; seed < 2000; seed++) {
+			Random random = new Random(seed);
+			BundleIdentifier root = generateRandom(random);
+			assertSameResolution(root.toString());
+		}
+	}
+
+	private void assertSameResolution(String bundleid) {
+		BundleIdentifier basebundle = BundleIdentifier.valueOf(bundleid);
+		DependencyDomainResolutionResult<?, ?> expected;
+		TestFlag.set(CONFLICTS_DISABLED_METRIC);
+		try {
+			expected = satisfy(basebundle);
+		} finally {
+			TestFlag.set(null);
+		}
+		DependencyDomainResolutionResult<?, ?> result = satisfy(basebundle);
+		assertEquals(result, expected, "Resolution result of " + bundleid);
+	}
+
+	private DependencyDomainResolutionResult<?, ?> satisfy(BundleIdentifier basebundle) {
+		return DependencyUtils.satisfyDependencyDomain(new SimpleBundleKey(basebundle, null), null,
+				dependencies.get(basebundle), (bid, bc) -> {
+					List<Entry<BundleKey, Object>> found = bundles.get(bid);
+					if (found == null) {
+						return Collections.emptyList();
+					}
+					return found;
+				}, (bk, bc) -> dependencies.get(bk.getBundleIdentifier()), null);
+	}
+
+	private void clear() {
+		bundles = new HashMap<>();
+		dependencies = new HashMap<>();
+	}
+
+	private static void addDependency(List<String> deps, String bundlename, String range) {
+		deps.add(bundlename);
+		deps.add(range);
+	}
+
+	//the bundles need to be added in descending version order
+	private void addBundle(String bundleid, String... deps) {
+		Map<BundleIdentifier, BundleDependencyList> deplists = new LinkedHashMap<>();
+		for (int i = 0; i < deps.length; i += 2) {
+			deplists.put(BundleIdentifier.valueOf(deps[i]), BundleDependencyList.create(Collections.singleton(
+					BundleDependency.builder().addKind("runtime").setRange(VersionRange.valueOf(deps[i + 1])).build())));
+		}
+		addBundle(BundleIdentifier.valueOf(bundleid), BundleDependencyInformation.create(deplists));
+	}
+
+	private void addBundle(BundleIdentifier bundleid, BundleDependencyInformation depinfo) {
+		dependencies.put(bundleid, depinfo);
+		bundles.computeIfAbsent(bundleid.withoutMetaQualifiers(), x -> new ArrayList<>())
+				.add(ImmutableUtils.makeImmutableMapEntry(new SimpleBundleKey(bundleid, null), null));
+	}
+
+	private BundleIdentifier generateRandom(Random random) {
+		clear();
+		int namecount = 2 + random.nextInt(9);
+		int[] versioncounts = new int[namecount];
+		for (int i = 0; i < namecount; i++) {
+			versioncounts[i] = 1 + random.nextInt(5);
+		}
+		List<BundleIdentifier> all = new ArrayList<>();
+		for (int i = 0; i < namecount; i++) {
+			for (int v = versioncounts[i] - 1; v >= 0; v--) {
+				Map<BundleIdentifier, List<BundleDependency>> deps = new LinkedHashMap<>();
+				int depcount = random.nextInt(4);
+				for (int d = 0; d < depcount; d++) {
+					//the bundle with the index of namecount doesn't exist
+					int target = random.nextInt(namecount + 1);
+					if (target == i) {
+						continue;
+					}
+					int targetversioncount = target == namecount ? 2 : versioncounts[target];
+					int low = random.nextInt(targetversioncount);
+					int high = low + random.nextInt(targetversioncount - low + 1);
+					String range;
+					if (random.nextInt(6) == 0) {
+						range = "[1.0)";
+					} else if (low == high) {
+						range = "[1." + low + "]";
+					} else {
+						range = "[1." + low + ", 1." + high + "]";
+					}
+					BundleDependency.Builder builder = BundleDependency.builder().addKind("kind" + d)
+							.setRange(VersionRange.valueOf(range));
+					if (random.nextInt(8) == 0) {
+						builder.addMetaData(BundleInformation.DEPENDENCY_META_OPTIONAL, "true");
+					}
+					if (random.nextInt(20) == 0) {
+						builder.addMetaData(BundleInformation.DEPENDENCY_META_PRIVATE, "true");
+					}
+					deps.computeIfAbsent(BundleIdentifier.valueOf("bundle" + target), x -> new ArrayList<>())
+							.add(builder.build());
+				}
+				Map<BundleIdentifier, BundleDependencyList> deplists = new LinkedHashMap<>();
+				for (Entry<BundleIdentifier, List<BundleDependency>> entry : deps.entrySet()) {
+					deplists.put(entry.getKey(), BundleDependencyList.create(entry.getValue()));
+				}
+				BundleIdentifier bundleid = BundleIdentifier.valueOf("bundle" + i + "-v1." + v);
+				addBundle(bundleid, BundleDependencyInformation.create(deplists));
+				all.add(bundleid);
+			}
+		}
+		return all.get(random.nextInt(all.size()));
+	}
+}
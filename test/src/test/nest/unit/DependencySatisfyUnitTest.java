@@ -28,6 +28,7 @@ import java.util.Random;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
 
 import saker.build.thirdparty.saker.util.ImmutableUtils;
 import saker.build.thirdparty.saker.util.ObjectUtils;
@@ -496,6 +497,25 @@ public class DependencySatisfyUnitTest extends SakerTestCase {
 				.assertSatisfiable("sjc-impl-v1", "sjc-api-v1")//
 				.assertNonRecurringDomains("sjc-api-v1")//
 		;
+
+		//independent dependencies that can be resolved concurrently
+		lookup()//
+				.bundle("first.bundle-v1").depend("second.bundle", "1").depend("third.bundle", "1").build()//
+				.bundle("second.bundle-v1.0").depend("second.dep", "1").build()//
+				.bundle("second.bundle-v1.1").depend("second.dep", "2").build()//
+				.bundle("second.dep-v1").build()//
+				.bundle("third.bundle-v1.0").depend("third.dep", "1").dependOptional("third.opt", "1").build()//
+				.bundle("third.dep-v1").build()//
+				.assertSatisfiable("first.bundle-v1", "second.bundle-v1.0", "third.bundle-v1.0", "second.dep-v1",
+						"third.dep-v1")//
+
+				.bundle("third.opt-v1").build()//
+				.assertSatisfiable("first.bundle-v1", "second.bundle-v1.0", "third.bundle-v1.0", "second.dep-v1",
+						"third.dep-v1", "third.opt-v1")//
+
+				.bundle("first.bundle-v2").depend("second.bundle", "1").depend("missing.bundle", "1").build()//
+				.assertNotSatisfiable("first.bundle-v2")//
+		;
 	}
 
 	private static LookupContext lookup() {
@@ -681,7 +701,13 @@ public class DependencySatisfyUnitTest extends SakerTestCase {
 			}
 			BundleDependencyInformation depinfo = BundleDependencyInformation.create(dependencies);
 
-			DependencyDomainResolutionResult<?, ?> satisfyres = runSatisfy(PSEUDO_BASE_BUNDLE_ID, depinfo);
+			DependencyDomainResolutionResult<?, ?> satisfyres = runSatisfy(PSEUDO_BASE_BUNDLE_ID, depinfo, null);
+			DependencyDomainResolutionResult<?, ?> concurrentres = runSatisfy(PSEUDO_BASE_BUNDLE_ID, depinfo,
+					ForkJoinPool.commonPool());
+			assertEquals(concurrentres, satisfyres, "Concurrent resolution result");
+			DependencyDomainResolutionResult<?, ?> unloggedres = runSatisfy(PSEUDO_BASE_BUNDLE_ID, depinfo, null,
+					false);
+			assertEquals(unloggedres, satisfyres, "Resolution result without logger");
 			return satisfyres;
 		}
 
@@ -707,9 +733,17 @@ public class DependencySatisfyUnitTest extends SakerTestCase {
 		}
 
 		private DependencyDomainResolutionResult<?, ?> runSatisfy(BundleIdentifier basebundle,
-				BundleDependencyInformation depinfo) {
-			TestDependencyResolutionLogger<Object> logger = new TestDependencyResolutionLogger<>();
-			System.out.println("Start dependency resolution...");
+				BundleDependencyInformation depinfo, ForkJoinPool pool) {
+			//the logger is not used for concurrent resolution
+			return runSatisfy(basebundle, depinfo, pool, pool == null);
+		}
+
+		private DependencyDomainResolutionResult<?, ?> runSatisfy(BundleIdentifier basebundle,
+				BundleDependencyInformation depinfo, ForkJoinPool pool, boolean logged) {
+			//the resolution conflicts are only recorded without a logger
+			TestDependencyResolutionLogger<Object> logger = logged ? new TestDependencyResolutionLogger<>() : null;
+			System.out.println("Start dependency resolution..." + (pool == null ? "" : " (concurrent)")
+					+ (logged ? "" : " (without logger)"));
 			DependencyDomainResolutionResult<?, ?> satisfyres = DependencyUtils
 					.satisfyDependencyDomain(new SimpleBundleKey(basebundle, null), null, depinfo, (bid, bc) -> {
 						Map<String, BundleIdentifier> lookupres = new TreeMap<>(
@@ -727,13 +761,13 @@ public class DependencySatisfyUnitTest extends SakerTestCase {
 						}
 						Set<Entry<BundleKey, Object>> result = ObjectUtils
 								.singleValueMap(toBundleKeySet(lookupres.values()), null).entrySet();
-						if (result.isEmpty()) {
+						if (result.isEmpty() && logger != null) {
 							logger.noBundlesFound(bid, bc);
 						}
 						return result;
 					}, (bid, bc) -> {
 						return createDependencyInformation(bid.getBundleIdentifier());
-					}, logger);
+					}, logger, pool);
 			System.out.println("End.");
 			return satisfyres;
 		}
@@ -783,7 +817,12 @@ public class DependencySatisfyUnitTest extends SakerTestCase {
 			BundleIdentifier basebundle = BundleIdentifier.valueOf(bundleid);
 
 			BundleDependencyInformation depinfo = createDependencyInformation(basebundle);
-			DependencyDomainResolutionResult<?, ?> satisfyres = runSatisfy(basebundle, depinfo);
+			DependencyDomainResolutionResult<?, ?> satisfyres = runSatisfy(basebundle, depinfo, null);
+			DependencyDomainResolutionResult<?, ?> concurrentres = runSatisfy(basebundle, depinfo,
+					ForkJoinPool.commonPool());
+			assertEquals(concurrentres, satisfyres, "Concurrent resolution result");
+			DependencyDomainResolutionResult<?, ?> unloggedres = runSatisfy(basebundle, depinfo, null, false);
+			assertEquals(unloggedres, satisfyres, "Resolution result without logger");
 			return satisfyres;
 		}
 
@@ -0,0 +1,328 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package test.nest.unit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import saker.build.file.provider.LocalFileProvider;
+import saker.build.thirdparty.saker.util.io.StreamUtils;
+import saker.nest.bundle.MappedJarReader;
+import testing.saker.SakerTest;
+import testing.saker.SakerTestCase;
+
+@SakerTest
+public class MappedJarReaderUnitTest extends SakerTestCase {
+	private static final int END_HEADER_SIGNATURE = 0x06054b50;
+
+	@Override
+	public void runTest(Map<String, String> parameters) throws Throwable {
+		Path dir = Files.createTempDirectory(getClass().getSimpleName());
+		try {
+			testCompareWithJarFile(dir);
+			testNestedArchive(dir);
+			testClose(dir);
+			testConcurrentStreamClose(dir);
+			testMalformed(dir);
+		} finally {
+			LocalFileProvider.getInstance().clearDirectoryRecursively(dir);
+			Files.deleteIfExists(dir);
+		}
+	}
+
+	private static void testCompareWithJarFile(Path dir) throws Exception {
+		Path jarpath = write(dir.resolve("compare.jar"), createTestJar());
+		try (MappedJarReader reader = MappedJarReader.open(jarpath);
+				JarFile jar = new JarFile(jarpath.toFile())) {
+			NavigableSet<String> jarnames = new TreeSet<>();
+			for (Enumeration<JarEntry> it = jar.entries(); it.hasMoreElements();) {
+				JarEntry entry = it.nextElement();
+				if (entry.isDirectory()) {
+					continue;
+				}
+				jarnames.add(entry.getName());
+				byte[] expected;
+				try (InputStream in = jar.getInputStream(entry)) {
+					expected = readAll(in);
+				}
+				assertEquals(reader.getEntryBytes(entry.getName()).copyOptionally(), expected, entry.getName());
+				try (InputStream in = reader.openEntry(entry.getName())) {
+					assertEquals(readAll(in), expected, entry.getName());
+				}
+			}
+			assertEquals(new ArrayList<>(reader.getEntryNames()), new ArrayList<>(jarnames));
+			assertFalse(reader.hasEntry("dir/"));
+			assertFalse(reader.hasEntry("nonexistent"));
+			assertException(IOException.class, () -> reader.getEntryBytes("nonexistent"));
+			assertException(IOException.class, () -> reader.openEntry("nonexistent"));
+		}
+	}
+
+	private static void testNestedArchive(Path dir) throws Exception {
+		byte[] nestedbytes = createTestJar();
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (ZipOutputStream zos = new ZipOutputStream(baos)) {
+			putStoredEntry(zos, "nested.jar", nestedbytes);
+			putEntry(zos, "deflated.jar", nestedbytes);
+		}
+		Path jarpath = write(dir.resolve("containing.jar"), baos.toByteArray());
+		Path nestedpath = write(dir.resolve("nested.jar"), nestedbytes);
+
+		MappedJarReader nested;
+		try (MappedJarReader reader = MappedJarReader.open(jarpath)) {
+			assertEquals(reader.openStoredEntryReader("deflated.jar"), null);
+			nested = reader.openStoredEntryReader("nested.jar");
+		}
+		//the nested reader can be used after the containing reader is closed
+		try (MappedJarReader expected = MappedJarReader.open(nestedpath)) {
+			assertEquals(nested.getArchiveSize(), nestedbytes.length);
+			assertEquals(nested.getEntryNames(), expected.getEntryNames());
+			for (String name : expected.getEntryNames()) {
+				byte[] expectedbytes = expected.getEntryBytes(name).copyOptionally();
+				assertEquals(nested.getEntryBytes(name).copyOptionally(), expectedbytes, name);
+			}
+		} finally {
+			nested.close();
+		}
+		assertException(IOException.class, () -> nested.getEntryBytes("stored.txt"));
+	}
+
+	private static void testClose(Path dir) throws Exception {
+		byte[] jarbytes = createTestJar();
+		Path jarpath = write(dir.resolve("close.jar"), jarbytes);
+		byte[] expected;
+		try (JarFile jar = new JarFile(jarpath.toFile());
+				InputStream in = jar.getInputStream(jar.getEntry("deflated.txt"))) {
+			expected = readAll(in);
+		}
+
+		MappedJarReader reader = MappedJarReader.open(jarpath);
+		InputStream in = reader.openEntry("deflated.txt");
+		reader.close();
+		//closing multiple times is fine
+		reader.close();
+		assertException(IOException.class, () -> reader.getEntryBytes("deflated.txt"));
+		assertException(IOException.class, () -> reader.openEntry("deflated.txt"));
+		assertException(IOException.class, () -> reader.openStoredEntryReader("stored.txt"));
+		//the opened stream keeps the file mapped
+		try {
+			assertEquals(readAll(in), expected);
+		} finally {
+			in.close();
+		}
+		assertException(IOException.class, () -> in.read());
+
+		//the file is unmapped, so it can be deleted on all platforms
+		Files.delete(jarpath);
+	}
+
+	private static void testConcurrentStreamClose(Path dir) throws Exception {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (ZipOutputStream zos = new ZipOutputStream(baos)) {
+			putStoredEntry(zos, "large.bin", randomBytes(1024 * 1024));
+		}
+		Path jarpath = write(dir.resolve("concurrentclose.jar"), baos.toByteArray());
+
+		for (int i = 0; i < 50; i++) {
+			InputStream in;
+			try (MappedJarReader reader = MappedJarReader.open(jarpath)) {
+				in = reader.openEntry("large.bin");
+			}
+			//the stream holds the last reference, closing it unmaps the file while the other thread reads it
+			//    the reads must fail with an exception instead of accessing the unmapped memory
+			Thread reader = new Thread(() -> {
+				byte[] buf = new byte[64];
+				try {
+					while (in.read(buf) >= 0) {
+						in.available();
+						in.skip(1);
+					}
+				} catch (IOException e) {
+					//closed concurrently
+				}
+			});
+			reader.start();
+			in.close();
+			reader.join();
+			assertException(IOException.class, () -> in.read());
+		}
+	}
+
+	private static void testMalformed(Path dir) throws Exception {
+		byte[] jarbytes = createTestJar();
+
+		assertOpenFails(dir, "empty.jar", new byte[0]);
+		assertOpenFails(dir, "garbage.jar", randomBytes(4096));
+		assertOpenFails(dir, "truncated.jar", Arrays.copyOf(jarbytes, jarbytes.length / 2));
+
+		int endpos = findEndHeader(jarbytes);
+		int cdoffset = getInt(jarbytes, endpos + 16);
+
+		//more entries than what fits the central directory
+		byte[] entrycount = jarbytes.clone();
+		putShort(entrycount, endpos + 10, 0xFFFE);
+		putShort(entrycount, endpos + 8, 0xFFFE);
+		assertOpenFails(dir, "entrycount.jar", entrycount);
+
+		//central directory out of bounds
+		byte[] cdoutofbounds = jarbytes.clone();
+		putInt(cdoutofbounds, endpos + 16, cdoffset + 1000);
+		assertOpenFails(dir, "cdoutofbounds.jar", cdoutofbounds);
+
+		//compressed size out of bounds
+		byte[] compressedsize = jarbytes.clone();
+		putInt(compressedsize, cdoffset + 20, 0x7FFFFFF0);
+		assertOpenFails(dir, "compressedsize.jar", compressedsize);
+
+		//the uncompressed size of a deflated entry is too large
+		//    the reading fails without allocating the claimed size
+		int deflatedcdpos = findCentralEntry(jarbytes, cdoffset, "deflated.txt");
+		byte[] uncompressedsize = jarbytes.clone();
+		putInt(uncompressedsize, deflatedcdpos + 24, 0x7FFFFFF0);
+		try (MappedJarReader reader = MappedJarReader.open(write(dir.resolve("uncompressedsize.jar"),
+				uncompressedsize))) {
+			assertException(IOException.class, () -> reader.getEntryBytes("deflated.txt"));
+		}
+
+		//invalid local header offset
+		byte[] localheader = jarbytes.clone();
+		putInt(localheader, deflatedcdpos + 42, 1);
+		try (MappedJarReader reader = MappedJarReader.open(write(dir.resolve("localheader.jar"), localheader))) {
+			assertException(IOException.class, () -> reader.getEntryBytes("deflated.txt"));
+			assertException(IOException.class, () -> reader.openEntry("deflated.txt"));
+		}
+	}
+
+	private static void assertOpenFails(Path dir, String name, byte[] bytes) throws Exception {
+		Path path = write(dir.resolve(name), bytes);
+		assertException(IOException.class, () -> MappedJarReader.open(path).close());
+	}
+
+	private static byte[] createTestJar() throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (ZipOutputStream zos = new ZipOutputStream(baos)) {
+			putEntry(zos, JarFile.MANIFEST_NAME, "Manifest-Version: 1.0\r\n\r\n".getBytes("UTF-8"));
+			zos.putNextEntry(new ZipEntry("dir/"));
+			zos.closeEntry();
+			putEntry(zos, "deflated.txt", repeat("deflated contents ", 10000));
+			putStoredEntry(zos, "stored.txt", "stored contents".getBytes("UTF-8"));
+			putEntry(zos, "dir/random.bin", randomBytes(100000));
+			putEntry(zos, "dir/empty.txt", new byte[0]);
+		}
+		return baos.toByteArray();
+	}
+
+	private static void putEntry(ZipOutputStream zos, String name, byte[] bytes) throws IOException {
+		zos.putNextEntry(new ZipEntry(name));
+		zos.write(bytes);
+		zos.closeEntry();
+	}
+
+	private static void putStoredEntry(ZipOutputStream zos, String name, byte[] bytes) throws IOException {
+		ZipEntry entry = new ZipEntry(name);
+		entry.setMethod(ZipEntry.STORED);
+		entry.setSize(bytes.length);
+		entry.setCompressedSize(bytes.length);
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+		entry.setCrc(crc.getValue());
+		zos.putNextEntry(entry);
+		zos.write(bytes);
+		zos.closeEntry();
+	}
+
+	private static byte[] repeat(String s, int count) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			sb.append(s);
+		}
+		return sb.toString().getBytes("UTF-8");
+	}
+
+	private static byte[] randomBytes(int len) {
+		byte[] result = new byte[len];
+		new Random(len).nextBytes(result);
+		return result;
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		return StreamUtils.readStreamFully(in).copyOptionally();
+	}
+
+	private static int findEndHeader(byte[] bytes) {
+		for (int i = bytes.length - 22; i >= 0; --i) {
+			if (getInt(bytes, i) == END_HEADER_SIGNATURE) {
+				return i;
+			}
+		}
+		throw fail("End header not found.");
+	}
+
+	private static int findCentralEntry(byte[] bytes, int cdoffset, String name) throws IOException {
+		byte[] namebytes = name.getBytes("UTF-8");
+		int pos = cdoffset;
+		while (true) {
+			int namelen = getShort(bytes, pos + 28);
+			if (namelen == namebytes.length && Arrays.equals(namebytes,
+					Arrays.copyOfRange(bytes, pos + 46, pos + 46 + namelen))) {
+				return pos;
+			}
+			pos += 46 + namelen + getShort(bytes, pos + 30) + getShort(bytes, pos + 32);
+		}
+	}
+
+	private static ByteBuffer le(byte[] bytes) {
+		return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static int getInt(byte[] bytes, int pos) {
+		return le(bytes).getInt(pos);
+	}
+
+	private static int getShort(byte[] bytes, int pos) {
+		return le(bytes).getShort(pos) & 0xFFFF;
+	}
+
+	private static void putInt(byte[] bytes, int pos, int value) {
+		le(bytes).putInt(pos, value);
+	}
+
+	private static void putShort(byte[] bytes, int pos, int value) {
+		le(bytes).putShort(pos, (short) value);
+	}
+
+	private static Path write(Path path, byte[] bytes) throws IOException {
+		Files.write(path, bytes);
+		return path;
+	}
+}
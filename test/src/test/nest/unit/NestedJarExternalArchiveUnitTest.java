@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package test.nest.unit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.jar.JarFile;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import saker.build.file.provider.LocalFileProvider;
+import saker.nest.bundle.JarExternalArchiveImpl;
+import saker.nest.bundle.NestedJarExternalArchiveImpl;
+import saker.nest.bundle.SimpleExternalArchiveKey;
+import saker.nest.exc.IllegalArchiveEntryNameException;
+import testing.saker.SakerTest;
+import testing.saker.SakerTestCase;
+
+@SakerTest
+public class NestedJarExternalArchiveUnitTest extends SakerTestCase {
+	private static final URI ARCHIVE_URI = URI.create("https://example.com/containing.jar");
+
+	@Override
+	public void runTest(Map<String, String> parameters) throws Throwable {
+		Path dir = Files.createTempDirectory(getClass().getSimpleName());
+		try {
+			testExtract(dir);
+			testExtractFailure(dir);
+			testCaseInsensitiveDuplicates(dir);
+		} finally {
+			LocalFileProvider.getInstance().clearDirectoryRecursively(dir);
+			Files.deleteIfExists(dir);
+		}
+	}
+
+	private static void testExtract(Path dir) throws Exception {
+		byte[] nestedbytes = createJar("a.txt", "b.txt");
+		Path containingpath = writeContainingJar(dir.resolve("extract.jar"), nestedbytes);
+		Path extractpath = dir.resolve("extract").resolve("nested.jar");
+		//a file with the same size but different contents is present at the extraction path
+		byte[] samesize = nestedbytes.clone();
+		samesize[samesize.length / 2] ^= 1;
+		Files.createDirectories(extractpath.getParent());
+		Files.write(extractpath, samesize);
+
+		try (JarExternalArchiveImpl containing = JarExternalArchiveImpl
+				.create(new SimpleExternalArchiveKey(ARCHIVE_URI), containingpath, null);
+				NestedJarExternalArchiveImpl nested = NestedJarExternalArchiveImpl.create(
+						new SimpleExternalArchiveKey(ARCHIVE_URI, "nested.jar"), containing, "nested.jar",
+						extractpath)) {
+			assertEquals(nested.getJarPath(), extractpath);
+			assertTrue(Arrays.equals(Files.readAllBytes(extractpath), nestedbytes));
+			//not extracted again
+			Files.write(extractpath, samesize);
+			assertEquals(nested.getJarPath(), extractpath);
+			assertTrue(Arrays.equals(Files.readAllBytes(extractpath), samesize));
+		}
+	}
+
+	private static void testExtractFailure(Path dir) throws Exception {
+		byte[] nestedbytes = createJar("a.txt");
+		Path containingpath = writeContainingJar(dir.resolve("failure.jar"), nestedbytes);
+		//the parent of the extraction path is a file, so the directory can't be created
+		Path parentfile = dir.resolve("failure-parent");
+		Files.write(parentfile, new byte[0]);
+		Path extractpath = parentfile.resolve("nested.jar");
+
+		try (JarExternalArchiveImpl containing = JarExternalArchiveImpl
+				.create(new SimpleExternalArchiveKey(ARCHIVE_URI), containingpath, null);
+				NestedJarExternalArchiveImpl nested = NestedJarExternalArchiveImpl.create(
+						new SimpleExternalArchiveKey(ARCHIVE_URI, "nested.jar"), containing, "nested.jar",
+						extractpath)) {
+			//no exception is thrown, the callers fail when they access the file
+			assertEquals(nested.getJarPath(), extractpath);
+			assertFalse(Files.exists(extractpath));
+
+			//attempted again
+			Files.delete(parentfile);
+			assertEquals(nested.getJarPath(), extractpath);
+			assertTrue(Arrays.equals(Files.readAllBytes(extractpath), nestedbytes));
+		}
+	}
+
+	private static void testCaseInsensitiveDuplicates(Path dir) throws Exception {
+		byte[] nestedbytes = createJar("dir/entry.txt", "DIR/Entry.txt");
+		Path containingpath = writeContainingJar(dir.resolve("duplicates.jar"), nestedbytes);
+		try (JarExternalArchiveImpl containing = JarExternalArchiveImpl
+				.create(new SimpleExternalArchiveKey(ARCHIVE_URI), containingpath, null)) {
+			assertException(IllegalArchiveEntryNameException.class,
+					() -> NestedJarExternalArchiveImpl.create(new SimpleExternalArchiveKey(ARCHIVE_URI, "nested.jar"),
+							containing, "nested.jar", dir.resolve("duplicates").resolve("nested.jar")).close());
+		}
+	}
+
+	private static Path writeContainingJar(Path path, byte[] nestedbytes) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (ZipOutputStream zos = new ZipOutputStream(baos)) {
+			putEntry(zos, JarFile.MANIFEST_NAME, "Manifest-Version: 1.0\r\n\r\n".getBytes("UTF-8"));
+			ZipEntry entry = new ZipEntry("nested.jar");
+			entry.setMethod(ZipEntry.STORED);
+			entry.setSize(nestedbytes.length);
+			entry.setCompressedSize(nestedbytes.length);
+			CRC32 crc = new CRC32();
+			crc.update(nestedbytes);
+			entry.setCrc(crc.getValue());
+			zos.putNextEntry(entry);
+			zos.write(nestedbytes);
+			zos.closeEntry();
+		}
+		Files.write(path, baos.toByteArray());
+		return path;
+	}
+
+	private static byte[] createJar(String... entrynames) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (ZipOutputStream zos = new ZipOutputStream(baos)) {
+			putEntry(zos, JarFile.MANIFEST_NAME, "Manifest-Version: 1.0\r\n\r\n".getBytes("UTF-8"));
+			for (String name : entrynames) {
+				putEntry(zos, name, ("contents of " + name).getBytes("UTF-8"));
+			}
+		}
+		return baos.toByteArray();
+	}
+
+	private static void putEntry(ZipOutputStream zos, String name, byte[] bytes) throws IOException {
+		zos.putNextEntry(new ZipEntry(name));
+		zos.write(bytes);
+		zos.closeEntry();
+	}
+}
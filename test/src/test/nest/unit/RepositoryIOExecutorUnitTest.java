@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package test.nest.unit;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import saker.nest.RepositoryIOExecutor;
+import saker.nest.RepositoryIOExecutor.TaskGroup;
+import testing.saker.SakerTest;
+import testing.saker.SakerTestCase;
+
+@SakerTest
+public class RepositoryIOExecutorUnitTest extends SakerTestCase {
+	@Override
+	public void runTest(Map<String, String> parameters) throws Throwable {
+		testParallelismLimit();
+		testExceptions();
+		testSaturatedExecutor();
+		testAbort();
+	}
+
+	private static void testParallelismLimit() throws Exception {
+		RepositoryIOExecutor executor = new RepositoryIOExecutor(8, 256, false);
+		try {
+			AtomicInteger running = new AtomicInteger();
+			AtomicInteger maxrunning = new AtomicInteger();
+			AtomicInteger finished = new AtomicInteger();
+			try (TaskGroup group = executor.newTaskGroup(2)) {
+				for (int i = 0; i < 20; i++) {
+					group.offer(() -> {
+						int c = running.incrementAndGet();
+						maxrunning.accumulateAndGet(c, Math::max);
+						Thread.sleep(5);
+						running.decrementAndGet();
+						finished.incrementAndGet();
+					});
+				}
+			}
+			assertEquals(finished.get(), 20);
+			//the closing thread may also execute a task
+			assertTrue(maxrunning.get() <= 3, "max running: " + maxrunning.get());
+
+			//the group can be reused after closing
+			try (TaskGroup group = executor.newTaskGroup(2)) {
+				group.offer(finished::incrementAndGet);
+			}
+			assertEquals(finished.get(), 21);
+		} finally {
+			executor.close();
+		}
+	}
+
+	private static void testExceptions() throws Exception {
+		RepositoryIOExecutor executor = new RepositoryIOExecutor(4, 256, false);
+		try {
+			TaskGroup group = executor.newTaskGroup(4);
+			group.offer(() -> {
+				throw new UnsupportedOperationException("first");
+			});
+			group.offer(() -> {
+				throw new UnsupportedOperationException("second");
+			});
+			group.offer(() -> {
+			});
+			try {
+				group.close();
+				fail();
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof UnsupportedOperationException, "cause: " + e.getCause());
+				assertEquals(e.getSuppressed().length, 1);
+			}
+			//the exceptions are reported only once
+			group.close();
+		} finally {
+			executor.close();
+		}
+	}
+
+	private static void testSaturatedExecutor() throws Exception {
+		RepositoryIOExecutor executor = new RepositoryIOExecutor(1, 0, false);
+		try {
+			CountDownLatch started = new CountDownLatch(1);
+			CountDownLatch release = new CountDownLatch(1);
+			TaskGroup blocking = executor.newTaskGroup(1);
+			blocking.execute(() -> {
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+			});
+			started.await();
+
+			TaskGroup group = executor.newTaskGroup(1);
+			assertException(RejectedExecutionException.class, () -> group.execute(() -> {
+			}));
+
+			//the offered tasks are executed by the closing thread if the executor can't run them
+			Thread current = Thread.currentThread();
+			AtomicInteger callerran = new AtomicInteger();
+			group.offer(() -> {
+				if (Thread.currentThread() == current) {
+					callerran.incrementAndGet();
+				}
+			});
+			group.close();
+			assertEquals(callerran.get(), 1);
+
+			release.countDown();
+			blocking.close();
+		} finally {
+			executor.close();
+		}
+	}
+
+	private static void testAbort() throws Exception {
+		RepositoryIOExecutor executor = new RepositoryIOExecutor(1, 256, false);
+		try {
+			TaskGroup group = executor.newTaskGroup(1);
+			group.abort();
+			assertException(RejectedExecutionException.class, () -> group.execute(() -> {
+			}));
+			AtomicInteger ran = new AtomicInteger();
+			group.offer(ran::incrementAndGet);
+			group.close();
+			assertEquals(ran.get(), 0);
+		} finally {
+			executor.close();
+		}
+	}
+}